@@ -22,6 +22,7 @@ import javax.servlet.http.*;
 import com.webpagebytes.cms.engine.AdminRequestProcessorFactory;
 import com.webpagebytes.cms.engine.AjaxRequestProcessor;
 import com.webpagebytes.cms.engine.BaseRequestProcessorFactory;
+import com.webpagebytes.cms.engine.CacheInvalidationBus;
 import com.webpagebytes.cms.engine.ResourceRequestProcessor;
 import com.webpagebytes.cms.engine.WPBAuthenticationFactory;
 import com.webpagebytes.cms.engine.WPBServletUtility;
@@ -176,6 +177,8 @@ public class WPBAdminServlet extends HttpServlet {
 		{
 			throw new ServletException("WB Servlet initialization", e);
 		}
+		// the admin changes are sent to the other nodes when cache_invalidation_transport is configured
+		CacheInvalidationBus.startFromConfiguration();
 	}
 	
 	public void doGet(HttpServletRequest req, HttpServletResponse resp)
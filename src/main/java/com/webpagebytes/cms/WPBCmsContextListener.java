@@ -20,6 +20,8 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.servlet.ServletContextEvent;
 import javax.servlet.ServletContextListener;
+import com.webpagebytes.cms.engine.CacheInvalidationBus;
+import com.webpagebytes.cms.engine.DefaultWPBCacheFactory;
 import com.webpagebytes.cms.utility.CmsConfigurationFactory;
 
 /**
@@ -38,7 +40,8 @@ public class WPBCmsContextListener implements ServletContextListener {
 	
 	public void contextDestroyed(ServletContextEvent servletContext) {
 		
-		
+		CacheInvalidationBus.shutdown();
+		DefaultWPBCacheFactory.shutdown();
 	}
 
 	public void contextInitialized(ServletContextEvent servletContext) {
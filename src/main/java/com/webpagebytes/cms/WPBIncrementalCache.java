@@ -0,0 +1,42 @@
+/*
+ *   Copyright 2014 Webpagebytes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package com.webpagebytes.cms;
+
+import com.webpagebytes.cms.exception.WPBIOException;
+
+/**
+ * Optional interface for caches that can be updated one record at a time.
+ * When a record is created, changed or deleted the CMS calls upsert or evict instead of Refresh() on the caches
+ * that implement this interface. Caches that do not implement it are refreshed as a whole.
+ *
+ */
+public interface WPBIncrementalCache extends WPBRefreshableCache {
+	
+	/**
+	 * Reads the record with the provided externalKey from the admin data storage and adds or replaces it in the cache.
+	 * @param externalKey externalKey of the created or changed record
+	 * @throws WPBIOException Exception
+	 */
+	public void upsert(String externalKey) throws WPBIOException;
+	
+	/**
+	 * Removes the record with the provided externalKey from the cache.
+	 * @param externalKey externalKey of the deleted record
+	 * @throws WPBIOException Exception
+	 */
+	public void evict(String externalKey) throws WPBIOException;
+}
@@ -0,0 +1,178 @@
+/*
+ *   Copyright 2014 Webpagebytes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package com.webpagebytes.cms;
+
+import java.nio.charset.Charset;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Cache invalidation event sent between the CMS nodes. 
+ * The event identifies the record type (simple class name, for example WPBPage), the operation
+ * and the record externalKey. The externalKey is null when all the records of the type have to be reloaded.
+ * The fingerprint is the sending node cache fingerprint after the change.
+ * When the nodes share a secret the encoded event ends with a HMAC-SHA256 of its content, events without
+ * a valid HMAC are dropped when they are decoded.
+ */
+public class WPBInvalidationEvent {
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final String FORMAT = "wpbinv1";
+	private static final String HMAC_ALGORITHM = "HmacSHA256";
+	
+	/**
+	 * Operation of the events a node sends periodically with the fingerprint of each cache, the nodes with
+	 * another fingerprint reload the cache.
+	 */
+	public static final String HEARTBEAT = "HEARTBEAT";
+	
+	private final String nodeId;
+	private final String type;
+	private final String operation;
+	private final String externalKey;
+	private final String fingerPrint;
+	
+	public WPBInvalidationEvent(String nodeId, String type, String operation, String externalKey, String fingerPrint)
+	{
+		this.nodeId = nodeId;
+		this.type = type;
+		this.operation = operation;
+		this.externalKey = externalKey;
+		this.fingerPrint = fingerPrint;
+	}
+
+	public String getNodeId() {
+		return nodeId;
+	}
+
+	public String getType() {
+		return type;
+	}
+
+	public String getOperation() {
+		return operation;
+	}
+
+	public String getExternalKey() {
+		return externalKey;
+	}
+
+	public String getFingerPrint() {
+		return fingerPrint;
+	}
+	
+	/**
+	 * Encodes the event as UTF-8 text lines, without HMAC.
+	 * @return The encoded event.
+	 */
+	public byte[] toBytes()
+	{
+		return toBytes(null);
+	}
+	
+	/**
+	 * Encodes the event as UTF-8 text lines.
+	 * @param secret Secret shared by the nodes, the HMAC of the event is added when it is not null.
+	 * @return The encoded event.
+	 */
+	public byte[] toBytes(String secret)
+	{
+		StringBuilder sb = new StringBuilder(FORMAT);
+		for(String field: new String[] {nodeId, type, operation, externalKey, fingerPrint})
+		{
+			sb.append('\n');
+			if (field != null)
+			{
+				sb.append(field.replace('\n', ' '));
+			}
+		}
+		if (secret != null)
+		{
+			String signature = hmac(secret, sb.toString());
+			sb.append('\n').append(signature);
+		}
+		return sb.toString().getBytes(UTF8);
+	}
+	
+	/**
+	 * Decodes an event created with toBytes() without HMAC.
+	 * @param buffer Buffer with the encoded event.
+	 * @param offset Start of the event in buffer.
+	 * @param length Length of the event.
+	 * @return The decoded event or null if the buffer does not contain an event.
+	 */
+	public static WPBInvalidationEvent fromBytes(byte[] buffer, int offset, int length)
+	{
+		return fromBytes(buffer, offset, length, null);
+	}
+	
+	/**
+	 * Decodes an event created with toBytes(secret).
+	 * @param buffer Buffer with the encoded event.
+	 * @param offset Start of the event in buffer.
+	 * @param length Length of the event.
+	 * @param secret Secret shared by the nodes or null if the events are not signed.
+	 * @return The decoded event or null if the buffer does not contain an event or the HMAC does not match.
+	 */
+	public static WPBInvalidationEvent fromBytes(byte[] buffer, int offset, int length, String secret)
+	{
+		String text = new String(buffer, offset, length, UTF8);
+		String[] fields = text.split("\n", -1);
+		if (fields.length != (secret != null ? 7 : 6) || !FORMAT.equals(fields[0]))
+		{
+			return null;
+		}
+		if (secret != null)
+		{
+			String content = text.substring(0, text.lastIndexOf('\n'));
+			if (!MessageDigest.isEqual(hmac(secret, content).getBytes(UTF8), fields[6].getBytes(UTF8)))
+			{
+				return null;
+			}
+		}
+		for(int i = 1; i < 6; i++)
+		{
+			if (fields[i].length() == 0)
+			{
+				fields[i] = null;
+			}
+		}
+		return new WPBInvalidationEvent(fields[1], fields[2], fields[3], fields[4], fields[5]);
+	}
+	
+	private static String hmac(String secret, String content)
+	{
+		try
+		{
+			Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+			mac.init(new SecretKeySpec(secret.getBytes(UTF8), HMAC_ALGORITHM));
+			byte[] digest = mac.doFinal(content.getBytes(UTF8));
+			StringBuilder sb = new StringBuilder(digest.length * 2);
+			for(byte b: digest)
+			{
+				sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+			}
+			return sb.toString();
+		} catch (GeneralSecurityException e)
+		{
+			// HmacSHA256 is available in every Java runtime
+			throw new IllegalStateException(e);
+		}
+	}
+}
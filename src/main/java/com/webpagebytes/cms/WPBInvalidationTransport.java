@@ -0,0 +1,63 @@
+/*
+ *   Copyright 2014 Webpagebytes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package com.webpagebytes.cms;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Transport used to send cache invalidation events between the CMS nodes of a cluster.
+ * The node where a record was changed sends an event, the other nodes receive it and update their caches.
+ * The implementation class is set with the cache_invalidation_transport parameter of the general configuration section. 
+ * The fingerprints carried by the events are compared with the local ones only when they are hashes of the cache
+ * content, as the InMemoryCacheFactory fingerprints are. For other cache factories the events carry no fingerprint
+ * and no heartbeat is sent.
+ */
+public interface WPBInvalidationTransport {
+	
+	/**
+	 * Callback for the events received from the other nodes.
+	 */
+	public interface Receiver
+	{
+		/**
+		 * Called for each event received by the transport.
+		 * @param event The received event.
+		 */
+		public void receive(WPBInvalidationEvent event);
+	}
+	
+	/**
+	 * Initializes the transport and starts receiving events.
+	 * @param params Map of keys and values from the general configuration section.
+	 * @param receiver Callback for the received events.
+	 * @throws IOException Exception
+	 */
+	public void initialize(Map<String, String> params, Receiver receiver) throws IOException;
+	
+	/**
+	 * Sends an event to all the nodes. The transport can deliver the event to the sending node too.
+	 * @param event Event to send.
+	 * @throws IOException Exception
+	 */
+	public void send(WPBInvalidationEvent event) throws IOException;
+	
+	/**
+	 * Stops receiving events and releases the transport resources.
+	 */
+	public void close();
+}
@@ -0,0 +1,40 @@
+/*
+ *   Copyright 2014 Webpagebytes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package com.webpagebytes.cms;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * <p>
+ * WPBLocalFileStorage is an optional extension of WPBFileStorage for storages that keep the files on the local file system.
+ * </p>
+ * <p>
+ * When the configured WPBFileStorage implements this interface, the public files are served straight from the file channel,
+ * without going through an InputStream.
+ * </p>
+ */
+public interface WPBLocalFileStorage extends WPBFileStorage {
+
+	/**
+	 * Provides the local file system path of a stored file
+	 * @param file Represents a file location
+	 * @return Returns the path of the file content or null if the file is not available on the local file system
+	 * @throws IOException Exception
+	 */
+	public Path getLocalPath(WPBFilePath file) throws IOException;
+}
@@ -20,8 +20,9 @@ import java.io.IOException;
 
 import java.io.OutputStream;
 import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -34,14 +35,22 @@ import javax.servlet.http.HttpServletResponse;
 import com.webpagebytes.cms.cmsdata.WPBFile;
 import com.webpagebytes.cms.cmsdata.WPBUri;
 import com.webpagebytes.cms.cmsdata.WPBPage;
+import com.webpagebytes.cms.engine.CacheInvalidationBus;
 import com.webpagebytes.cms.engine.DefaultWPBCacheFactory;
 import com.webpagebytes.cms.engine.FileContentBuilder;
 import com.webpagebytes.cms.engine.InternalModel;
 import com.webpagebytes.cms.engine.ModelBuilder;
+import com.webpagebytes.cms.engine.NoBodyResponseWrapper;
 import com.webpagebytes.cms.engine.PageContentBuilder;
+import com.webpagebytes.cms.engine.GzipEncoding;
+import com.webpagebytes.cms.engine.HttpByteRange;
+import com.webpagebytes.cms.engine.ReusableByteArrayOutputStream;
+import com.webpagebytes.cms.engine.StaticPageEntry;
 import com.webpagebytes.cms.engine.URLMatcher;
 import com.webpagebytes.cms.engine.URLMatcherResult;
+import com.webpagebytes.cms.engine.URLMatcherTable;
 import com.webpagebytes.cms.engine.UriContentBuilder;
+import com.webpagebytes.cms.engine.Utf8StreamWriter;
 import com.webpagebytes.cms.engine.WPBCacheInstances;
 import com.webpagebytes.cms.engine.WPBServletUtility;
 import com.webpagebytes.cms.exception.WPBException;
@@ -51,6 +60,7 @@ import com.webpagebytes.cms.exception.WPBTemplateException;
 import com.webpagebytes.cms.utility.CmsConfiguration;
 import com.webpagebytes.cms.utility.CmsConfiguration.WPBSECTION;
 import com.webpagebytes.cms.utility.CmsConfigurationFactory;
+import com.webpagebytes.cms.utility.WPBTrace;
 
 /**
  * <p>  
@@ -86,6 +96,27 @@ public class WPBPublicContentServlet extends HttpServlet {
 	public static final String HEADER_CACHE_CONTROL = "Cache-Control";
 	public static final String HEADER_ETAG = "ETag";
 	public static final String HEADER_CONTENT_LENGTH = "Content-Length";
+	public static final String HEADER_ACCEPT_ENCODING = "Accept-Encoding";
+	public static final String HEADER_CONTENT_ENCODING = "Content-Encoding";
+	public static final String HEADER_VARY = "Vary";
+	public static final String HEADER_LAST_MODIFIED = "Last-Modified";
+	public static final String HEADER_IF_MODIFIED_SINCE = "If-Modified-Since";
+	public static final String HEADER_RANGE = "Range";
+	public static final String HEADER_IF_RANGE = "If-Range";
+	public static final String HEADER_ACCEPT_RANGES = "Accept-Ranges";
+	public static final String HEADER_CONTENT_RANGE = "Content-Range";
+	
+	// how template pages are written in the response:
+	// string - the page is rendered in a String then written with a Content-Length 
+	// buffer - the page is encoded while rendered in a reusable buffer then written with a Content-Length
+	// stream - the page is encoded while rendered straight in the response, using chunked transfer
+	public static final String PAGE_OUTPUT_MODE_STRING = "string";
+	public static final String PAGE_OUTPUT_MODE_BUFFER = "buffer";
+	public static final String PAGE_OUTPUT_MODE_STREAM = "stream";
+	
+	private static final String METHOD_PATCH = "PATCH";
+	// the number of HTTP verb indexes defined by WPBUrisCache, from HTTP_GET_INDEX to HTTP_PATCH_INDEX
+	private static final int HTTP_VERBS_COUNT = WPBUrisCache.HTTP_PATCH_INDEX + 1;
     
     
     
@@ -93,7 +124,7 @@ public class WPBPublicContentServlet extends HttpServlet {
 	
 	private String uriCommonPrefix = ""; 
 	
-	private URLMatcher urlMatcherArray[] = new URLMatcher[4];
+	private URLMatcherTable urlMatchers;
 	private PageContentBuilder pageContentBuilder;
 	private FileContentBuilder fileContentBuilder;
 	private UriContentBuilder uriContentBuilder;
@@ -102,6 +133,8 @@ public class WPBPublicContentServlet extends HttpServlet {
 	private ModelBuilder modelBuilder;
 	private String cache_query_param = CACHE_QUERY_PARAM;
 	private String cache_max_age = CACHE_MAX_AGE;
+	private String page_output_mode = PAGE_OUTPUT_MODE_STRING;
+	private boolean gzip_compression = true;
 	
 public WPBPublicContentServlet()
 {
@@ -110,12 +143,9 @@ public WPBPublicContentServlet()
 
 public void initUrls() throws WPBIOException
 {
-	for(int i=0; i<4; i++)
-	{
-		Set<String> uris = cacheInstances.getUriCache().getAllUris(i);
-		this.urlMatcherArray[i] = new URLMatcher();
-		this.urlMatcherArray[i].initialize(uris, cacheInstances.getUriCache().getFingerPrint());
-	}	
+	URLMatcherTable newUrlMatchers = new URLMatcherTable(cacheInstances.getUriCache(), HTTP_VERBS_COUNT);
+	newUrlMatchers.initialize();
+	this.urlMatchers = newUrlMatchers;
 }
 
 public void initBuilders() throws WPBException
@@ -178,6 +208,32 @@ public void init() throws ServletException
             cache_max_age = CACHE_MAX_AGE;
         }
     }
+    if ((generalParams != null) && generalParams.containsKey("page_output_mode"))
+    {
+        String mode = generalParams.get("page_output_mode");
+        if (PAGE_OUTPUT_MODE_BUFFER.equals(mode) || PAGE_OUTPUT_MODE_STREAM.equals(mode))
+        {
+            page_output_mode = mode;
+        }
+    }
+    if ((generalParams != null) && generalParams.containsKey("trace_sample_rate"))
+    {
+        try
+        {
+            WPBTrace.setSampleRate(Integer.valueOf(generalParams.get("trace_sample_rate")));
+        } catch (NumberFormatException e)
+        {
+            WPBTrace.setSampleRate(0);
+        }
+    }
+    if ((generalParams != null) && generalParams.containsKey("gzip_compression"))
+    {
+        gzip_compression = !"false".equalsIgnoreCase(generalParams.get("gzip_compression"));
+    }
+    if ((generalParams != null) && generalParams.containsKey("cache_invalidation_transport"))
+    {
+        CacheInvalidationBus.start(generalParams, cacheFactory);
+    }
 	
 	String initUriPrefix = servletUtility.getContextPath(this);
 	if (initUriPrefix.length() > 0)
@@ -200,20 +256,18 @@ public void init() throws ServletException
 	}
 }
 	
-private URLMatcher getUrlMatcher(HttpServletRequest req) throws WPBIOException
+private URLMatcher getUrlMatcher(int httpIndex) throws WPBIOException
 {
-	int currentHttpIndex = cacheInstances.getUriCache().httpToOperationIndex(req.getMethod().toUpperCase());
-	URLMatcher urlMatcher = urlMatcherArray[currentHttpIndex];
-	//reinitialize the matchurlToPattern if needed
-	if (cacheInstances.getUriCache().getFingerPrint().compareTo(urlMatcher.getFingerPrint())!= 0)
-	{
-		Set<String> allUris = cacheInstances.getUriCache().getAllUris(currentHttpIndex);
-		urlMatcher.initialize(allUris, cacheInstances.getUriCache().getFingerPrint());
-	}
-	return urlMatcher;
+	// the matcher is rebuilt aside and swapped if the uris cache was refreshed
+	return urlMatchers.get(httpIndex);
 }
-	
+
 private void handleRequestTypeText(WPBPage webPage, HttpServletRequest req, HttpServletResponse resp, InternalModel model) throws WPBException, IOException
+{
+	handleRequestTypeText(webPage, req, resp, model, true);
+}
+
+private void handleRequestTypeText(WPBPage webPage, HttpServletRequest req, HttpServletResponse resp, InternalModel model, boolean writeBody) throws WPBException, IOException
 {
 	if (webPage == null)
 	{
@@ -222,29 +276,91 @@ private void handleRequestTypeText(WPBPage webPage, HttpServletRequest req, Http
 	}
 	resp.setCharacterEncoding("UTF-8");
 	Integer isTemplateSource = webPage.getIsTemplateSource();
-	if (isTemplateSource != 1)
+	if (isTemplateSource == null || isTemplateSource != 1)
 	{
+		// static pages are served from the page encoded bytes, computed once per page version
+		StaticPageEntry entry = pageContentBuilder.getStaticPageEntry(webPage);
+		boolean gzip = false;
+		if (gzip_compression && entry.isCompressible())
+		{
+			resp.addHeader(HEADER_VARY, HEADER_ACCEPT_ENCODING);
+			gzip = entry.getGzipContent() != null && GzipEncoding.acceptsGzip(req.getHeader(HEADER_ACCEPT_ENCODING));
+		}
+		String eTag = gzip ? entry.getGzipETag() : entry.getETag();
 	    String ifNoneMatch = req.getHeader(HEADER_IF_NONE_MATCH);
-	    if (ifNoneMatch != null && ifNoneMatch.equals(webPage.getHash().toString()))
+	    if (ifNoneMatch != null && ifNoneMatch.equals(eTag))
 	    {
 	        resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
 	        return;
 	    }
-	    resp.addHeader(HEADER_ETAG, webPage.getHash().toString());
+	    if (eTag != null)
+	    {
+	    	resp.addHeader(HEADER_ETAG, eTag);
+	    }
 		String cqp = req.getParameter(cache_query_param);
 		if (cqp != null)
 		{
 			// this is a request that can be cached, to do customize the cache time
 			resp.addHeader(HEADER_CACHE_CONTROL, "max-age=".concat(cache_max_age));
 		}
-	} else
+		if (gzip)
+		{
+			resp.addHeader(HEADER_CONTENT_ENCODING, GzipEncoding.GZIP);
+		}
+		resp.addHeader(HEADER_CONTENT_LENGTH, gzip ? entry.getGzipContentLength() : entry.getContentLength());
+		resp.setContentType(entry.getContentType());
+		if (writeBody)
+		{
+			resp.getOutputStream().write(gzip ? entry.getGzipContent() : entry.getContent());
+		}
+		return;
+	}
+	
+	resp.addHeader(HEADER_CACHE_CONTROL, "no-cache;no-store;");
+	if (!writeBody)
 	{
-		resp.addHeader(HEADER_CACHE_CONTROL, "no-cache;no-store;");
+		// HEAD request for a template page, the page is not rendered so there is no content length
+		resp.setContentType(webPage.getContentType());
+		return;
+	}
+	if (page_output_mode.equals(PAGE_OUTPUT_MODE_STREAM))
+	{
+		// no Content-Length, the container will use chunked transfer
+		resp.setContentType(webPage.getContentType());
+		ServletOutputStream os = resp.getOutputStream();
+		Utf8StreamWriter writer = new Utf8StreamWriter(os);
+		try
+		{
+			pageContentBuilder.writePageContent(req, webPage, model, writer);
+		} finally
+		{
+			writer.close();
+		}
+		return;
+	}
+	if (page_output_mode.equals(PAGE_OUTPUT_MODE_BUFFER))
+	{
+		ReusableByteArrayOutputStream buffer = ReusableByteArrayOutputStream.acquire();
+		try
+		{
+			Utf8StreamWriter writer = new Utf8StreamWriter(buffer);
+			try
+			{
+				pageContentBuilder.writePageContent(req, webPage, model, writer);
+			} finally
+			{
+				writer.close();
+			}
+			resp.addHeader(HEADER_CONTENT_LENGTH, Integer.toString(buffer.size()));
+			resp.setContentType(webPage.getContentType());
+			buffer.writeTo(resp.getOutputStream());
+		} finally
+		{
+			buffer.release();
+		}
+		return;
 	}
 	byte[] content = pageContentBuilder.buildPageContent(req, webPage, model).getBytes("UTF-8");
-	        
-	        
-	        
 	resp.addHeader(HEADER_CONTENT_LENGTH, Integer.toString(content.length));
 	resp.setContentType(webPage.getContentType());			
 	ServletOutputStream os = resp.getOutputStream();
@@ -252,6 +368,11 @@ private void handleRequestTypeText(WPBPage webPage, HttpServletRequest req, Http
 }
 
 private void handleRequestTypeFile(String fileExternalKey, URLMatcherResult urlMatcherResult, HttpServletRequest req, HttpServletResponse resp) throws WPBException, IOException
+{
+	handleRequestTypeFile(fileExternalKey, urlMatcherResult, req, resp, true);
+}
+
+private void handleRequestTypeFile(String fileExternalKey, URLMatcherResult urlMatcherResult, HttpServletRequest req, HttpServletResponse resp, boolean writeBody) throws WPBException, IOException
 {
 	WPBFile wbFile = fileContentBuilder.find(fileExternalKey);
 	if (wbFile == null)
@@ -285,28 +406,201 @@ private void handleRequestTypeFile(String fileExternalKey, URLMatcherResult urlM
 	    }	    	    
 	}
 	
+	String rangeHeader = req.getHeader(HEADER_RANGE);
+	byte[] gzipContent = null;
+	if (gzip_compression && fileContentBuilder.isCompressible(fileResponse))
+	{
+		resp.addHeader(HEADER_VARY, HEADER_ACCEPT_ENCODING);
+		// range requests are answered from the identity content
+		if (rangeHeader == null && GzipEncoding.acceptsGzip(req.getHeader(HEADER_ACCEPT_ENCODING)))
+		{
+			gzipContent = fileContentBuilder.getGzipFileContent(fileResponse);
+		}
+	}
+	String eTag = fileResponse.getHash().toString();
+	if (gzipContent != null)
+	{
+		eTag = eTag.concat("-").concat(GzipEncoding.GZIP);
+	}
+	Date lastModified = fileResponse.getLastModified();
     String ifNoneMatch = req.getHeader(HEADER_IF_NONE_MATCH);
-    if (ifNoneMatch != null && ifNoneMatch.equals(fileResponse.getHash().toString()))
+    if (ifNoneMatch != null)
+    {
+    	// If-None-Match takes precedence over If-Modified-Since
+    	if (ifNoneMatch.equals(eTag))
+    	{
+	        resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+	        return;
+    	}
+    } else if (lastModified != null && !isModifiedSince(req, HEADER_IF_MODIFIED_SINCE, lastModified))
     {
         resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
         return;
     }
-    resp.addHeader(HEADER_ETAG, fileResponse.getHash().toString());
+    resp.addHeader(HEADER_ETAG, eTag);
+    if (lastModified != null)
+    {
+    	resp.setDateHeader(HEADER_LAST_MODIFIED, lastModified.getTime());
+    }
 	String cqp = req.getParameter(cache_query_param);
 	if (cqp != null)
 	{
 		// there is a request that can be cached
 		resp.addHeader(HEADER_CACHE_CONTROL, "max-age=".concat(cache_max_age));
 	}
+	if (gzipContent != null)
+	{
+		resp.addHeader(HEADER_CONTENT_ENCODING, GzipEncoding.GZIP);
+		resp.addHeader(HEADER_CONTENT_LENGTH, Integer.toString(gzipContent.length));
+		resp.setContentType(fileResponse.getAdjustedContentType());
+		if (writeBody)
+		{
+			resp.getOutputStream().write(gzipContent);
+		}
+		return;
+	}
+	Long size = fileResponse.getSize();
+	if (size != null)
+	{
+		resp.addHeader(HEADER_ACCEPT_RANGES, HttpByteRange.BYTES_UNIT);
+		if (rangeHeader != null && isRangeCurrent(req, eTag, lastModified))
+		{
+			List<HttpByteRange> ranges = HttpByteRange.parse(rangeHeader, size);
+			if (ranges != null && ranges.isEmpty())
+			{
+				resp.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+				resp.addHeader(HEADER_CONTENT_RANGE, HttpByteRange.BYTES_UNIT + " */" + size);
+				return;
+			}
+			if (ranges != null)
+			{
+				handleFileRanges(fileResponse, ranges, resp, writeBody);
+				return;
+			}
+		}
+	}
 	resp.addHeader(HEADER_CONTENT_LENGTH, fileResponse.getSize().toString());
+	resp.setContentType(fileResponse.getAdjustedContentType());
+	if (!writeBody)
+	{
+		return;
+	}
 	ServletOutputStream os = resp.getOutputStream();
-	resp.setContentType(fileResponse.getAdjustedContentType());													
 	fileContentBuilder.writeFileContent(fileResponse, os);
 }
 
+/*
+ * Returns false if the request date header is a date not older than lastModified
+ */
+private boolean isModifiedSince(HttpServletRequest req, String header, Date lastModified)
+{
+	long since = -1;
+	try
+	{
+		since = req.getDateHeader(header);
+	} catch (IllegalArgumentException e)
+	{
+		// not a date, ignore the header
+	}
+	// http dates have a resolution of one second
+	return since < 0 || (lastModified.getTime() / 1000) > (since / 1000);
+}
+
+/*
+ * Returns true if the If-Range header is missing or it matches the current file version 
+ */
+private boolean isRangeCurrent(HttpServletRequest req, String eTag, Date lastModified)
+{
+	String ifRange = req.getHeader(HEADER_IF_RANGE);
+	if (ifRange == null || ifRange.equals(eTag))
+	{
+		return true;
+	}
+	if (lastModified == null || ifRange.startsWith("\"") || ifRange.startsWith("W/"))
+	{
+		return false;
+	}
+	try
+	{
+		long date = req.getDateHeader(HEADER_IF_RANGE);
+		return date >= 0 && (lastModified.getTime() / 1000) == (date / 1000);
+	} catch (IllegalArgumentException e)
+	{
+		return false;
+	}
+}
+
+private void handleFileRanges(WPBFile wbFile, List<HttpByteRange> ranges, HttpServletResponse resp, boolean writeBody) throws WPBException, IOException
+{
+	long size = wbFile.getSize();
+	String contentType = wbFile.getAdjustedContentType();
+	resp.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+	if (ranges.size() == 1)
+	{
+		HttpByteRange range = ranges.get(0);
+		resp.addHeader(HEADER_CONTENT_RANGE, range.toContentRange(size));
+		resp.addHeader(HEADER_CONTENT_LENGTH, Long.toString(range.getLength()));
+		resp.setContentType(contentType);
+		if (writeBody)
+		{
+			fileContentBuilder.writeFileContent(wbFile, resp.getOutputStream(), range.getStart(), range.getLength());
+		}
+		return;
+	}
+	// multipart/byteranges response, the content length is computed before writing the parts
+	String boundary = "WPB" + Long.toHexString(wbFile.getHash()) + Long.toHexString(System.nanoTime());
+	byte[][] partHeaders = new byte[ranges.size()][];
+	byte[] closing = ("\r\n--" + boundary + "--\r\n").getBytes("ISO-8859-1");
+	long contentLength = closing.length;
+	for(int i = 0; i < ranges.size(); i++)
+	{
+		HttpByteRange range = ranges.get(i);
+		String partHeader = "\r\n--" + boundary + "\r\n" + 
+							"Content-Type: " + contentType + "\r\n" + 
+							HEADER_CONTENT_RANGE + ": " + range.toContentRange(size) + "\r\n\r\n";
+		partHeaders[i] = partHeader.getBytes("ISO-8859-1");
+		contentLength += partHeaders[i].length + range.getLength();
+	}
+	resp.addHeader(HEADER_CONTENT_LENGTH, Long.toString(contentLength));
+	resp.setContentType("multipart/byteranges; boundary=" + boundary);
+	if (!writeBody)
+	{
+		return;
+	}
+	ServletOutputStream os = resp.getOutputStream();
+	for(int i = 0; i < ranges.size(); i++)
+	{
+		HttpByteRange range = ranges.get(i);
+		os.write(partHeaders[i]);
+		fileContentBuilder.writeFileContent(wbFile, os, range.getStart(), range.getLength());
+	}
+	os.write(closing);
+}
+
 private void handleRequest(HttpServletRequest req, HttpServletResponse resp)
 	throws ServletException,
 	java.io.IOException
+{
+	String traceId = WPBTrace.isEnabled() ? WPBTrace.begin(req.getHeader(WPBTrace.CORRELATION_ID_HEADER)) : null;
+	if (traceId == null)
+	{
+		serveRequest(req, resp);
+		return;
+	}
+	resp.setHeader(WPBTrace.CORRELATION_ID_HEADER, traceId);
+	try
+	{
+		WPBTrace.event("servlet", req.getMethod(), req.getRequestURI());
+		serveRequest(req, resp);
+	} finally
+	{
+		WPBTrace.end();
+	}
+}
+
+private void serveRequest(HttpServletRequest req, HttpServletResponse resp)
+	throws ServletException,
+	java.io.IOException
 {
 	String uri = req.getRequestURI();
 	if (uriCommonPrefix.length()>0 && uri.startsWith(uriCommonPrefix))
@@ -314,12 +608,24 @@ private void handleRequest(HttpServletRequest req, HttpServletResponse resp)
 		uri = uri.substring(uriCommonPrefix.length());
 	}
 	
+	int currentHttpIndex = cacheInstances.getUriCache().httpToOperationIndex(req.getMethod());
+	if (currentHttpIndex < 0)
+	{
+		resp.setStatus(HttpServletResponse.SC_NOT_IMPLEMENTED);
+		return;
+	}
+	// HEAD requests are answered from the GET uris when there is no HEAD uri defined, without a response body
+	boolean writeBody = (currentHttpIndex != WPBUrisCache.HTTP_HEAD_INDEX);
+	
+	// read before any uri or page record is fetched, the output cached for this request is stored under it
+	String outputFingerPrint = pageContentBuilder.getOutputCacheFingerPrint();
+	
 	// urlMatcher will get the corresponding wbUri that macthes the current request 
 	URLMatcher urlMatcher = null;
 	req.setAttribute(CONTEXT_PATH, uriCommonPrefix);
 	try
 	{
-		urlMatcher = getUrlMatcher(req);
+		urlMatcher = getUrlMatcher(currentHttpIndex);
 	} catch (WPBIOException e)
 	{
 		//  nothing that can be done to serve better the request
@@ -331,13 +637,17 @@ private void handleRequest(HttpServletRequest req, HttpServletResponse resp)
 	try
 	{
 		URLMatcherResult urlMatcherResult = urlMatcher.matchUrlToPattern(uri);
+		if (urlMatcherResult == null && !writeBody)
+		{
+			currentHttpIndex = WPBUrisCache.HTTP_GET_INDEX;
+			urlMatcherResult = getUrlMatcher(currentHttpIndex).matchUrlToPattern(uri);
+		}
 		if (urlMatcherResult == null)
 		{
 			resp.setStatus(HttpServletResponse.SC_NOT_FOUND);
 			return;
 		} else
 		{
-			int currentHttpIndex = cacheInstances.getUriCache().httpToOperationIndex(req.getMethod().toUpperCase());
 			WPBUri wbUri = cacheInstances.getUriCache().get(urlMatcherResult.getUrlPattern(), currentHttpIndex);
 			
 			if ((null == wbUri) || (wbUri.getEnabled() == null) || (wbUri.getEnabled() == 0))
@@ -348,12 +658,14 @@ private void handleRequest(HttpServletRequest req, HttpServletResponse resp)
 			
 			// build the uri model
 			InternalModel model = new InternalModel();
+			model.setOutputCacheFingerPrint(outputFingerPrint);
 			WPBForward forward = new WPBForward();
 			modelBuilder.populateModelForUriData(req, wbUri, urlMatcherResult, model);
 			
 			if (wbUri.getResourceType() == WPBUri.RESOURCE_TYPE_URL_CONTROLLER)
 			{
-				uriContentBuilder.buildUriContent(req, resp, wbUri, model, forward);
+				// for HEAD the controller runs with a response that drops the body
+				uriContentBuilder.buildUriContent(req, writeBody ? resp : new NoBodyResponseWrapper(resp), wbUri, model, forward);
 				if (!forward.isRequestForwarded())
 				{
 					return;
@@ -370,11 +682,11 @@ private void handleRequest(HttpServletRequest req, HttpServletResponse resp)
 				{					
 					webPage = pageContentBuilder.findWebPage(wbUri.getResourceExternalKey());
 				}
-				handleRequestTypeText(webPage, req, resp, model);
+				handleRequestTypeText(webPage, req, resp, model, writeBody);
 			} else
 			if (wbUri.getResourceType() == WPBUri.RESOURCE_TYPE_FILE)
 			{
-				handleRequestTypeFile(wbUri.getResourceExternalKey(), urlMatcherResult, req, resp);
+				handleRequestTypeFile(wbUri.getResourceExternalKey(), urlMatcherResult, req, resp, writeBody);
 			} else
 			{
 				resp.setStatus(HttpServletResponse.SC_NOT_FOUND);
@@ -413,6 +725,20 @@ private void handleRequest(HttpServletRequest req, HttpServletResponse resp)
 	}
  }
 	
+protected void service(HttpServletRequest req, HttpServletResponse resp)
+	throws ServletException,
+	java.io.IOException
+{
+	// HttpServlet does not dispatch PATCH requests
+	if (METHOD_PATCH.equals(req.getMethod()))
+	{
+		handleRequest(req, resp);
+	} else
+	{
+		super.service(req, resp);
+	}
+}
+
 public void doGet(HttpServletRequest req, HttpServletResponse resp)
  throws ServletException,
         java.io.IOException
@@ -0,0 +1,43 @@
+/*
+ *   Copyright 2014 Webpagebytes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package com.webpagebytes.cms;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * <p>
+ * WPBRandomAccessFileStorage is an optional extension of WPBFileStorage for storages that can read a part of a file
+ * without reading the file from the beginning.
+ * </p>
+ * <p>
+ * When the configured WPBFileStorage implements this interface, the HTTP range requests for public files are served by reading only the
+ * requested bytes. Otherwise the file content is read from the beginning and the bytes before the range are skipped.
+ * </p>
+ */
+public interface WPBRandomAccessFileStorage extends WPBFileStorage {
+
+	/**
+	 * Provides access to a part of a stored file content
+	 * @param file Represents a file location
+	 * @param offset Position of the first byte to read
+	 * @param length Number of bytes to read
+	 * @return Returns an InputStream with at most length bytes of the file content, starting at offset
+	 * @throws IOException Exception
+	 */
+	public InputStream getFileContent(WPBFilePath file, long offset, long length) throws IOException;
+}
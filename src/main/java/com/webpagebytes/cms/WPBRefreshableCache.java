@@ -32,6 +32,9 @@ public interface WPBRefreshableCache {
     /**
      * Everytime the cache is refreshed it will generate a new fingerprint. A client that have a fingerprint
      * can check if in the meantime the cache was refreshed.
+     * The cache invalidation bus compares the fingerprints of different nodes only for the caches of
+     * InMemoryCacheFactory, whose fingerprints are hashes of the cache content. The fingerprints of other
+     * caches are not compared between nodes.
      * @return The cache current fingerprint.
      */
 	public abstract String getFingerPrint();
@@ -94,28 +94,29 @@ public abstract class WPBUrisCache implements WPBRefreshableCache {
 	 */
     public int httpToOperationIndex(String httpOperation)
     {
-        if (httpOperation.toUpperCase().equals("GET"))
+        // servlet containers pass the verb in upper case, the verb is upper cased only if it does not match as it is  
+        switch (httpOperation)
         {
+        case "GET":
             return HTTP_GET_INDEX;
-        } else if (httpOperation.toUpperCase().equals("POST"))
-        {
+        case "POST":
             return HTTP_POST_INDEX;
-        } else if (httpOperation.toUpperCase().equals("PUT"))
-        {
+        case "PUT":
             return HTTP_PUT_INDEX;
-        } else if (httpOperation.toUpperCase().equals("DELETE"))
-        {
+        case "DELETE":
             return HTTP_DELETE_INDEX;
-        } else if (httpOperation.toUpperCase().equals("HEAD"))
-        {
+        case "HEAD":
             return HTTP_HEAD_INDEX;
-        } else if (httpOperation.toUpperCase().equals("OPTIONS"))
-        {
+        case "OPTIONS":
             return HTTP_OPTIONS_INDEX;
-        } else if (httpOperation.toUpperCase().equals("PATCH"))
-        {
+        case "PATCH":
             return HTTP_PATCH_INDEX;
         }
+        String upperOperation = httpOperation.toUpperCase();
+        if (!upperOperation.equals(httpOperation))
+        {
+            return httpToOperationIndex(upperOperation);
+        }
         return -1;  
     }
     
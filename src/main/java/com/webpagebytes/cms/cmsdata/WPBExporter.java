@@ -250,6 +250,16 @@ public class WPBExporter {
 			properties.put("isTemplateSource", module.getIsTemplateSource().toString());
 		else
 			properties.put("isTemplateSource", "0");
+
+		if (module.getIsFragmentCached() != null)
+			properties.put("isFragmentCached", module.getIsFragmentCached().toString());
+		else
+			properties.put("isFragmentCached", "0");
+		
+		if (module.getFragmentCacheParams() != null)
+			properties.put("fragmentCacheParams", module.getFragmentCacheParams());
+		else
+			properties.put("fragmentCacheParams", "");
 		
 		if (module.getName() != null)
 			properties.put("name", module.getName());
@@ -313,6 +313,18 @@ public class WPBImporter {
 		Integer isTemplateSource = isTemplateSourceStr != null && !isTemplateSourceStr.equals("0") ? 1: 0;
 		pageModule.setIsTemplateSource(isTemplateSource);
 
+		String isFragmentCachedStr = (String) properties.get("isFragmentCached");
+		Integer isFragmentCached = isFragmentCachedStr != null && !isFragmentCachedStr.equals("0") ? 1: 0;
+		pageModule.setIsFragmentCached(isFragmentCached);
+		
+		if (properties.get("fragmentCacheParams") != null)
+		{
+			pageModule.setFragmentCacheParams(properties.get("fragmentCacheParams").toString().trim());
+		} else
+		{
+			pageModule.setFragmentCacheParams("");
+		}
+
 		return pageModule;
 	}
 
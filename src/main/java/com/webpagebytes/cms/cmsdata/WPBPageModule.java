@@ -38,6 +38,11 @@ public class WPBPageModule {
 	@WPBAdminFieldKey
 	private String externalKey;
 	
+	@WPBAdminFieldStore
+	private Integer isFragmentCached;
+	
+	@WPBAdminFieldStore
+	private String fragmentCacheParams;
 
 	public String getName() {
 		return name;
@@ -79,6 +84,22 @@ public class WPBPageModule {
 		this.externalKey = externalKey;
 	}
 
+	public Integer getIsFragmentCached() {
+		return isFragmentCached;
+	}
+
+	public void setIsFragmentCached(Integer isFragmentCached) {
+		this.isFragmentCached = isFragmentCached;
+	}
+
+	public String getFragmentCacheParams() {
+		return fragmentCacheParams;
+	}
+
+	public void setFragmentCacheParams(String fragmentCacheParams) {
+		this.fragmentCacheParams = fragmentCacheParams;
+	}
+
 	public String getVersion() {
 		return version;
 	}
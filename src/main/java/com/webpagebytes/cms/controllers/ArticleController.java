@@ -36,6 +36,7 @@ import com.webpagebytes.cms.WPBAdminDataStorage.AdminSortOperator;
 import com.webpagebytes.cms.cmsdata.WPBArticle;
 import com.webpagebytes.cms.cmsdata.WPBResource;
 import com.webpagebytes.cms.engine.DefaultWPBCacheFactory;
+import com.webpagebytes.cms.engine.WPBCacheInvalidation;
 import com.webpagebytes.cms.engine.WPBAdminDataStorageListener;
 import com.webpagebytes.cms.exception.WPBException;
 import com.webpagebytes.cms.exception.WPBIOException;
@@ -57,7 +58,7 @@ public class ArticleController extends Controller implements WPBAdminDataStorage
 		{
 			if (type.equals(WPBArticle.class))
 			{
-				wbArticleCache.Refresh();
+				WPBCacheInvalidation.invalidate(wbArticleCache, t, o);
 			}
 		} catch (WPBIOException e)
 		{
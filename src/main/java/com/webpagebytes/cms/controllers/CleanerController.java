@@ -22,89 +22,36 @@ import java.util.Map;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
-import com.webpagebytes.cms.WPBArticlesCache;
 import com.webpagebytes.cms.WPBAuthenticationResult;
 import com.webpagebytes.cms.WPBCacheFactory;
-import com.webpagebytes.cms.WPBFilesCache;
-import com.webpagebytes.cms.WPBMessagesCache;
-import com.webpagebytes.cms.WPBPageModulesCache;
-import com.webpagebytes.cms.WPBPagesCache;
-import com.webpagebytes.cms.WPBParametersCache;
-import com.webpagebytes.cms.WPBProjectCache;
-import com.webpagebytes.cms.WPBUrisCache;
-import com.webpagebytes.cms.cmsdata.WPBArticle;
-import com.webpagebytes.cms.cmsdata.WPBFile;
-import com.webpagebytes.cms.cmsdata.WPBMessage;
-import com.webpagebytes.cms.cmsdata.WPBParameter;
-import com.webpagebytes.cms.cmsdata.WPBProject;
-import com.webpagebytes.cms.cmsdata.WPBUri;
-import com.webpagebytes.cms.cmsdata.WPBPage;
-import com.webpagebytes.cms.cmsdata.WPBPageModule;
+import com.webpagebytes.cms.engine.CacheInvalidationBus;
 import com.webpagebytes.cms.engine.DefaultWPBCacheFactory;
-import com.webpagebytes.cms.engine.WPBAdminDataStorageListener;
 import com.webpagebytes.cms.exception.WPBException;
 
-public class CleanerController extends Controller implements WPBAdminDataStorageListener{
+public class CleanerController extends Controller {
 	
 	private WPBCacheFactory cacheFactory;
 	
 	public CleanerController()
 	{
 		cacheFactory = DefaultWPBCacheFactory.getInstance();
-		adminStorage.addStorageListener(this);
 	}
 	
-	public<T> void notify(
-			T t,
-			AdminDataStorageOperation operation,
-			Class<? extends Object> type) {	
-		try
-		{
-			if (type.equals(WPBUri.class))
-			{
-				WPBUrisCache urisCache = cacheFactory.getUrisCacheInstance();
-				urisCache.Refresh();
-			}
-			if (type.equals(WPBPage.class))
-			{
-				WPBPagesCache pagesCache = cacheFactory.getPagesCacheInstance();
-				pagesCache.Refresh();
-			}
-			if (type.equals(WPBPageModule.class))
-			{
-				WPBPageModulesCache modulesCache = cacheFactory.getPageModulesCacheInstance();
-				modulesCache.Refresh();
-			}
-			if (type.equals(WPBMessage.class))
-			{
-				WPBMessagesCache messagesCache = cacheFactory.getMessagesCacheInstance();
-				messagesCache.Refresh();
-			}
-			if (type.equals(WPBArticle.class))
-			{
-				WPBArticlesCache articlesCache = cacheFactory.getArticlesCacheInstance();
-				articlesCache.Refresh();
-			}
-			if (type.equals(WPBFile.class))
-			{
-				WPBFilesCache filesCache = cacheFactory.getFilesCacheInstance();
-				filesCache.Refresh();
-			}
-			if (type.equals(WPBParameter.class))
-			{
-				WPBParametersCache parametersCache = cacheFactory.getParametersCacheInstance();
-				parametersCache.Refresh();
-			}
-			if (type.equals(WPBProject.class))
-			{
-				WPBProjectCache projectCache = cacheFactory.getProjectCacheInstance();
-				projectCache.Refresh();
-			}
-			
-		} catch (WPBException e)
-		{
-			// do nothing
-		}
+	/*
+	 * The record changes are applied to the caches by the controller of each record type, the delete of all the
+	 * records is done without notifications and each cache is refreshed once at the end
+	 */
+	private void resetCache() throws WPBException
+	{
+		cacheFactory.getUrisCacheInstance().Refresh();
+		cacheFactory.getPagesCacheInstance().Refresh();
+		cacheFactory.getPageModulesCacheInstance().Refresh();
+		cacheFactory.getMessagesCacheInstance().Refresh();
+		cacheFactory.getArticlesCacheInstance().Refresh();
+		cacheFactory.getFilesCacheInstance().Refresh();
+		cacheFactory.getParametersCacheInstance().Refresh();
+		cacheFactory.getProjectCacheInstance().Refresh();
+		CacheInvalidationBus.refreshAll();
 	}
 	
 	public void deleteAll(HttpServletRequest request, HttpServletResponse response, String requestUri) throws WPBException
@@ -119,7 +66,15 @@ public class CleanerController extends Controller implements WPBAdminDataStorage
 		
 		try
 		{
-			deleteAll();
+			adminStorage.stopNotifications();
+			try
+			{
+				deleteAll();
+			} finally
+			{
+				adminStorage.startNotifications();
+			}
+			resetCache();
 			
 			returnJson.put(DATA, "{}");			
 			httpServletToolbox.writeBodyResponseAsJson(response, returnJson, null, authenticationResult);
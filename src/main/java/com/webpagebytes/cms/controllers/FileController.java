@@ -51,6 +51,7 @@ import com.webpagebytes.cms.cmsdata.WPBFile;
 import com.webpagebytes.cms.cmsdata.WPBResource;
 import com.webpagebytes.cms.cmsdata.WPBUri;
 import com.webpagebytes.cms.engine.DefaultWPBCacheFactory;
+import com.webpagebytes.cms.engine.WPBCacheInvalidation;
 import com.webpagebytes.cms.engine.WPBAdminDataStorageListener;
 import com.webpagebytes.cms.exception.WPBException;
 import com.webpagebytes.cms.exception.WPBIOException;
@@ -79,7 +80,7 @@ public class FileController extends Controller implements WPBAdminDataStorageLis
 		{
 			if (type.equals(WPBFile.class))
 			{
-				filesCache.Refresh();
+				WPBCacheInvalidation.invalidate(filesCache, t, o);
 			}
 		} catch (WPBIOException e)
 		{
@@ -405,6 +406,8 @@ public class FileController extends Controller implements WPBAdminDataStorageLis
 				return ;
 			}
 
+	        // each file is deleted and added again, the files cache is updated once at the end
+	        adminStorage.startBatch();
 	        try
 	        {
 	              ServletFileUpload upload = new ServletFileUpload();
@@ -456,6 +459,9 @@ public class FileController extends Controller implements WPBAdminDataStorageLis
 	            Map<String, String> errors = new HashMap<String, String>();     
 	            errors.put("", WPBErrors.WB_CANT_UPDATE_RECORD);
 	            httpServletToolbox.writeBodyResponseAsJson(response, jsonObjectConverter.JSONObjectFromMap(null), errors);          
+	        } finally
+	        {
+	            adminStorage.endBatch();
 	        }
 	    }
 
@@ -469,6 +475,7 @@ public class FileController extends Controller implements WPBAdminDataStorageLis
 		return ;
 	}
 
+	adminStorage.startBatch();
 	try
 	{
 	    ServletFileUpload upload = new ServletFileUpload();
@@ -526,6 +533,9 @@ public class FileController extends Controller implements WPBAdminDataStorageLis
 	Map<String, String> errors = new HashMap<String, String>();		
 	errors.put("", WPBErrors.WB_CANT_UPDATE_RECORD);
 	httpServletToolbox.writeBodyResponseAsJson(response, jsonObjectConverter.JSONObjectFromMap(null), errors);			
+	} finally
+	{
+		adminStorage.endBatch();
 	}
    }
 
@@ -631,6 +641,8 @@ public class FileController extends Controller implements WPBAdminDataStorageLis
 			return ;
 		}
 
+		// a directory is deleted with all its files
+		adminStorage.startBatch();
 		try
 		{
 			String key = (String)request.getAttribute("key");
@@ -649,7 +661,10 @@ public class FileController extends Controller implements WPBAdminDataStorageLis
 			Map<String, String> errors = new HashMap<String, String>();		
 			errors.put("", WPBErrors.WB_CANT_DELETE_RECORD);
 			httpServletToolbox.writeBodyResponseAsJson(response, jsonObjectConverter.JSONObjectFromMap(null), errors);	
-		}		
+		} finally
+		{
+			adminStorage.endBatch();
+		}
 	}
 
 	public void getAll(HttpServletRequest request, HttpServletResponse response, String requestUri) throws WPBException
@@ -50,6 +50,7 @@ import com.webpagebytes.cms.cmsdata.WPBProject;
 import com.webpagebytes.cms.cmsdata.WPBUri;
 import com.webpagebytes.cms.cmsdata.WPBPage;
 import com.webpagebytes.cms.cmsdata.WPBPageModule;
+import com.webpagebytes.cms.engine.CacheInvalidationBus;
 import com.webpagebytes.cms.engine.DefaultWPBCacheFactory;
 import com.webpagebytes.cms.engine.WPBAdminDataStorageFactory;
 import com.webpagebytes.cms.engine.WPBFileStorageFactory;
@@ -124,6 +125,8 @@ public class FlatStorageImporterExporterEx {
 	    cacheFactory.getFilesCacheInstance().Refresh();
 	    cacheFactory.getProjectCacheInstance().Refresh();
 	    cacheFactory.getUrisCacheInstance().Refresh();
+	    // the import did not send notifications, the other nodes reload everything
+	    CacheInvalidationBus.refreshAll();
 	    log.log(Level.INFO, "End reset cache for import");
         
 	}
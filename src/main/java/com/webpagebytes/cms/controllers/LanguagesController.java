@@ -38,6 +38,7 @@ import com.webpagebytes.cms.WPBCacheFactory;
 import com.webpagebytes.cms.WPBProjectCache;
 import com.webpagebytes.cms.cmsdata.WPBProject;
 import com.webpagebytes.cms.engine.DefaultWPBCacheFactory;
+import com.webpagebytes.cms.engine.WPBCacheInvalidation;
 import com.webpagebytes.cms.engine.LanguageLocaleManager;
 import com.webpagebytes.cms.engine.WPBAdminDataStorageListener;
 import com.webpagebytes.cms.exception.WPBException;
@@ -72,7 +73,7 @@ public class LanguagesController extends Controller implements WPBAdminDataStora
 		{
 			if (type.equals(WPBProject.class))
 			{
-				projectCache.Refresh();
+				WPBCacheInvalidation.invalidate(projectCache, t, o);
 			}
 		} catch (WPBIOException e)
 		{
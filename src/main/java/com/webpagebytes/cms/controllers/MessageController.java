@@ -40,6 +40,7 @@ import com.webpagebytes.cms.WPBAdminDataStorage.AdminSortOperator;
 import com.webpagebytes.cms.cmsdata.WPBMessage;
 import com.webpagebytes.cms.cmsdata.WPBResource;
 import com.webpagebytes.cms.engine.DefaultWPBCacheFactory;
+import com.webpagebytes.cms.engine.WPBCacheInvalidation;
 import com.webpagebytes.cms.engine.WPBAdminDataStorageListener;
 import com.webpagebytes.cms.exception.WPBException;
 import com.webpagebytes.cms.exception.WPBIOException;
@@ -63,7 +64,7 @@ public class MessageController extends Controller implements WPBAdminDataStorage
 		{
 			if (type.equals(WPBMessage.class))
 			{
-				wbMessageCache.Refresh();
+				WPBCacheInvalidation.invalidate(wbMessageCache, t, o);
 			}
 		} catch (WPBIOException e)
 		{
@@ -39,6 +39,7 @@ import com.webpagebytes.cms.cmsdata.WPBResource;
 import com.webpagebytes.cms.cmsdata.WPBUri;
 import com.webpagebytes.cms.cmsdata.WPBPage;
 import com.webpagebytes.cms.engine.DefaultWPBCacheFactory;
+import com.webpagebytes.cms.engine.WPBCacheInvalidation;
 import com.webpagebytes.cms.engine.JSONToFromObjectConverter;
 import com.webpagebytes.cms.engine.WPBAdminDataStorageListener;
 import com.webpagebytes.cms.engine.WPBInternalAdminDataStorage;
@@ -68,7 +69,7 @@ public class PageController extends Controller implements WPBAdminDataStorageLis
 			if (type.equals(WPBPage.class))
 			{
 				log.log(Level.INFO, "WbWebPage datastore notification, going to refresh the cache");
-				wbWebPageCache.Refresh();
+				WPBCacheInvalidation.invalidate(wbWebPageCache, t, o);
 			}
 		} catch (WPBIOException e)
 		{
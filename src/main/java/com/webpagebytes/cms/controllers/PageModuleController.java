@@ -34,6 +34,7 @@ import com.webpagebytes.cms.WPBAdminDataStorage.AdminSortOperator;
 import com.webpagebytes.cms.cmsdata.WPBResource;
 import com.webpagebytes.cms.cmsdata.WPBPageModule;
 import com.webpagebytes.cms.engine.DefaultWPBCacheFactory;
+import com.webpagebytes.cms.engine.WPBCacheInvalidation;
 import com.webpagebytes.cms.engine.JSONToFromObjectConverter;
 import com.webpagebytes.cms.engine.WPBAdminDataStorageListener;
 import com.webpagebytes.cms.engine.WPBInternalAdminDataStorage;
@@ -61,7 +62,7 @@ public class PageModuleController extends Controller implements WPBAdminDataStor
 		{
 			if (type.equals(WPBPageModule.class))
 			{
-				wbPageModuleCache.Refresh();
+				WPBCacheInvalidation.invalidate(wbPageModuleCache, t, o);
 			}
 		} catch (WPBIOException e)
 		{
@@ -35,6 +35,7 @@ import com.webpagebytes.cms.WPBAdminDataStorage.AdminSortOperator;
 import com.webpagebytes.cms.cmsdata.WPBParameter;
 import com.webpagebytes.cms.cmsdata.WPBResource;
 import com.webpagebytes.cms.engine.DefaultWPBCacheFactory;
+import com.webpagebytes.cms.engine.WPBCacheInvalidation;
 import com.webpagebytes.cms.engine.JSONToFromObjectConverter;
 import com.webpagebytes.cms.engine.WPBAdminDataStorageListener;
 import com.webpagebytes.cms.engine.WPBInternalAdminDataStorage;
@@ -60,7 +61,7 @@ public class ParameterController extends Controller implements WPBAdminDataStora
 		{
 			if (type.equals(WPBParameter.class))
 			{
-				wbParameterCache.Refresh();
+				WPBCacheInvalidation.invalidate(wbParameterCache, t, o);
 			}
 		} catch (WPBIOException e)
 		{
@@ -30,6 +30,7 @@ import com.webpagebytes.cms.cmsdata.WPBResource;
 import com.webpagebytes.cms.cmsdata.WPBUri;
 import com.webpagebytes.cms.cmsdata.WPBPage;
 import com.webpagebytes.cms.engine.DefaultWPBCacheFactory;
+import com.webpagebytes.cms.engine.WPBCacheInvalidation;
 import com.webpagebytes.cms.engine.JSONToFromObjectConverter;
 import com.webpagebytes.cms.engine.WPBAdminDataStorageListener;
 import com.webpagebytes.cms.engine.WPBInternalAdminDataStorage;
@@ -64,7 +65,7 @@ public class UriController extends Controller implements WPBAdminDataStorageList
 		{
 			if (type.equals(WPBUri.class))
 			{
-				wbUriCache.Refresh();
+				WPBCacheInvalidation.invalidate(wbUriCache, t, o);
 			}
 		} catch (WPBIOException e)
 		{
@@ -0,0 +1,34 @@
+/*
+ *   Copyright 2014 Webpagebytes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package com.webpagebytes.cms.engine;
+
+/*
+ * LRU cache of byte arrays bounded by the total number of cached bytes.
+ * All entries are dropped when the fingerprint of the cache the content comes from changes.
+ */
+class ByteArrayLruCache extends WeightedLruCache<Object, byte[]> {
+
+	public ByteArrayLruCache(long maxWeight)
+	{
+		super(maxWeight, maxWeight);
+	}
+	
+	protected long weigh(byte[] value)
+	{
+		return value.length;
+	}
+}
@@ -0,0 +1,377 @@
+/*
+ *   Copyright 2014 Webpagebytes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package com.webpagebytes.cms.engine;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.webpagebytes.cms.WPBCacheFactory;
+import com.webpagebytes.cms.WPBInvalidationEvent;
+import com.webpagebytes.cms.WPBInvalidationTransport;
+import com.webpagebytes.cms.WPBRefreshableCache;
+import com.webpagebytes.cms.cmsdata.WPBArticle;
+import com.webpagebytes.cms.cmsdata.WPBFile;
+import com.webpagebytes.cms.cmsdata.WPBMessage;
+import com.webpagebytes.cms.cmsdata.WPBPage;
+import com.webpagebytes.cms.cmsdata.WPBPageModule;
+import com.webpagebytes.cms.cmsdata.WPBParameter;
+import com.webpagebytes.cms.cmsdata.WPBProject;
+import com.webpagebytes.cms.cmsdata.WPBUri;
+import com.webpagebytes.cms.exception.WPBIOException;
+import com.webpagebytes.cms.utility.CmsConfiguration;
+import com.webpagebytes.cms.utility.CmsConfiguration.WPBSECTION;
+import com.webpagebytes.cms.utility.CmsConfigurationFactory;
+
+/*
+ * Keeps the caches of several CMS nodes in sync. The admin data storage notifications of this node are sent
+ * with a WPBInvalidationTransport after the local caches were updated, the events received from the other
+ * nodes are applied to the local caches.
+ * The bus is enabled with the cache_invalidation_transport parameter of the general configuration section.
+ * The fingerprints of two nodes are compared only when the cache factory computes them from the cache content
+ * (InMemoryCacheFactory), the fingerprints of other factories change on every refresh and never match.
+ * With content fingerprints a node reloads a cache when its fingerprint still differs after an event was applied,
+ * and every cache_invalidation_heartbeat seconds (default 60, 0 disables it) the node sends the fingerprint of
+ * each cache so a node that lost an event reloads the cache. Other factories only get the events, their heartbeat
+ * default is 0.
+ */
+public class CacheInvalidationBus implements WPBAdminDataStorageListener, WPBInvalidationTransport.Receiver {
+	private static final Logger log = Logger.getLogger(CacheInvalidationBus.class.getName());
+	
+	public static final int DEFAULT_HEARTBEAT = 60;
+	
+	private static final Class<?>[] RECORD_TYPES = { WPBUri.class, WPBPage.class, WPBPageModule.class, WPBParameter.class, 
+		WPBFile.class, WPBArticle.class, WPBMessage.class, WPBProject.class };
+	
+	private static CacheInvalidationBus instance;
+	private static final Object lock = new Object();
+	
+	private final WPBInvalidationTransport transport;
+	private final WPBCacheFactory cacheFactory;
+	private final String nodeId;
+	private final boolean contentFingerPrints;
+	private ScheduledExecutorService heartbeatExecutor;
+	
+	CacheInvalidationBus(WPBInvalidationTransport transport, WPBCacheFactory cacheFactory, String nodeId)
+	{
+		this(transport, cacheFactory, nodeId, cacheFactory instanceof InMemoryCacheFactory);
+	}
+	
+	/*
+	 * contentFingerPrints is true when the caches of two nodes with the same records have the same fingerprint
+	 */
+	CacheInvalidationBus(WPBInvalidationTransport transport, WPBCacheFactory cacheFactory, String nodeId, boolean contentFingerPrints)
+	{
+		this.transport = transport;
+		this.cacheFactory = cacheFactory;
+		this.nodeId = nodeId;
+		this.contentFingerPrints = contentFingerPrints;
+	}
+	
+	/*
+	 * Starts the bus if the configuration has a cache_invalidation_transport, it does nothing when the bus is already started.
+	 * Returns the bus or null if it is not enabled.
+	 */
+	public static CacheInvalidationBus start(Map<String, String> generalParams, WPBCacheFactory cacheFactory)
+	{
+		synchronized (lock)
+		{
+			if (instance != null)
+			{
+				return instance;
+			}
+			String transportClass = (generalParams != null) ? generalParams.get("cache_invalidation_transport") : null;
+			if (transportClass == null || transportClass.length() == 0 || cacheFactory == null)
+			{
+				return null;
+			}
+			try
+			{
+				WPBInvalidationTransport transport = (WPBInvalidationTransport) Class.forName(transportClass).newInstance();
+				CacheInvalidationBus bus = new CacheInvalidationBus(transport, cacheFactory, UUID.randomUUID().toString());
+				transport.initialize(generalParams, bus);
+				bus.attach(WPBAdminDataStorageFactory.getInstance());
+				bus.startHeartbeat(getHeartbeat(generalParams, bus.contentFingerPrints ? DEFAULT_HEARTBEAT : 0));
+				instance = bus;
+				log.log(Level.INFO, "Cache invalidation bus started with " + transportClass + " node " + bus.nodeId);
+			} catch (Exception e)
+			{
+				log.log(Level.SEVERE, "Cannot start the cache invalidation bus", e);
+			}
+			return instance;
+		}
+	}
+	
+	private static int getHeartbeat(Map<String, String> generalParams, int defaultValue)
+	{
+		String value = generalParams.get("cache_invalidation_heartbeat");
+		if (value != null && value.length() > 0)
+		{
+			try
+			{
+				return Integer.parseInt(value.trim());
+			} catch (NumberFormatException e)
+			{
+				log.log(Level.WARNING, "Invalid value for cache_invalidation_heartbeat: " + value);
+			}
+		}
+		return defaultValue;
+	}
+	
+	/*
+	 * Same as start, the parameters are read from the general section of the CMS configuration
+	 */
+	public static CacheInvalidationBus startFromConfiguration()
+	{
+		CmsConfiguration configuration = CmsConfigurationFactory.getConfiguration();
+		Map<String, String> generalParams = (configuration != null) ? configuration.getSectionParams(WPBSECTION.SECTION_GENERAL) : null;
+		if (generalParams == null || !generalParams.containsKey("cache_invalidation_transport"))
+		{
+			return null;
+		}
+		return start(generalParams, DefaultWPBCacheFactory.getInstance());
+	}
+	
+	public static CacheInvalidationBus getInstance()
+	{
+		synchronized (lock)
+		{
+			return instance;
+		}
+	}
+	
+	public static void shutdown()
+	{
+		synchronized (lock)
+		{
+			if (instance != null)
+			{
+				instance.stopHeartbeat();
+				instance.transport.close();
+				instance = null;
+			}
+		}
+	}
+	
+	/*
+	 * Tells the other nodes to reload all their caches, for example after an import that did not send notifications
+	 */
+	public static void refreshAll()
+	{
+		CacheInvalidationBus bus = getInstance();
+		if (bus != null)
+		{
+			for(Class<?> type: RECORD_TYPES)
+			{
+				bus.notify(null, AdminDataStorageOperation.DELETE_RECORDS, type);
+			}
+		}
+	}
+	
+	/*
+	 * Sends the notifications of the admin data storage to the other nodes
+	 */
+	public void attach(WPBInternalAdminDataStorage adminStorage)
+	{
+		adminStorage.setInvalidationBus(this);
+	}
+	
+	public String getNodeId()
+	{
+		return nodeId;
+	}
+	
+	synchronized void startHeartbeat(int seconds)
+	{
+		if (seconds <= 0 || heartbeatExecutor != null)
+		{
+			return;
+		}
+		if (!contentFingerPrints)
+		{
+			log.log(Level.WARNING, "The cache factory fingerprints are not computed from the content, cache_invalidation_heartbeat is ignored");
+			return;
+		}
+		heartbeatExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable runnable)
+			{
+				Thread thread = new Thread(runnable, "wpb-cache-heartbeat");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		heartbeatExecutor.scheduleWithFixedDelay(new Runnable() {
+			public void run()
+			{
+				try
+				{
+					sendHeartbeat();
+				} catch (RuntimeException e)
+				{
+					log.log(Level.WARNING, "Cannot send the cache heartbeat", e);
+				}
+			}
+		}, seconds, seconds, TimeUnit.SECONDS);
+	}
+	
+	synchronized void stopHeartbeat()
+	{
+		if (heartbeatExecutor != null)
+		{
+			heartbeatExecutor.shutdownNow();
+			heartbeatExecutor = null;
+		}
+	}
+	
+	/*
+	 * Sends the fingerprint of each cache, the caches with a pending reload are skipped
+	 */
+	void sendHeartbeat()
+	{
+		if (!contentFingerPrints)
+		{
+			return;
+		}
+		for(Class<?> type: RECORD_TYPES)
+		{
+			WPBRefreshableCache cache = getCache(type.getSimpleName());
+			if (cache == null || CacheReloader.isReloadPending(cache))
+			{
+				continue;
+			}
+			try
+			{
+				transport.send(new WPBInvalidationEvent(nodeId, type.getSimpleName(), WPBInvalidationEvent.HEARTBEAT, null, cache.getFingerPrint()));
+			} catch (IOException e)
+			{
+				log.log(Level.WARNING, "Cannot send the cache heartbeat for " + type.getSimpleName(), e);
+			}
+		}
+	}
+	
+	WPBRefreshableCache getCache(String type)
+	{
+		if (WPBUri.class.getSimpleName().equals(type))
+		{
+			return cacheFactory.getUrisCacheInstance();
+		} else if (WPBPage.class.getSimpleName().equals(type))
+		{
+			return cacheFactory.getPagesCacheInstance();
+		} else if (WPBPageModule.class.getSimpleName().equals(type))
+		{
+			return cacheFactory.getPageModulesCacheInstance();
+		} else if (WPBParameter.class.getSimpleName().equals(type))
+		{
+			return cacheFactory.getParametersCacheInstance();
+		} else if (WPBFile.class.getSimpleName().equals(type))
+		{
+			return cacheFactory.getFilesCacheInstance();
+		} else if (WPBArticle.class.getSimpleName().equals(type))
+		{
+			return cacheFactory.getArticlesCacheInstance();
+		} else if (WPBMessage.class.getSimpleName().equals(type))
+		{
+			return cacheFactory.getMessagesCacheInstance();
+		} else if (WPBProject.class.getSimpleName().equals(type))
+		{
+			return cacheFactory.getProjectCacheInstance();
+		}
+		return null;
+	}
+	
+	/*
+	 * Admin data storage notification of this node, called after the local caches were updated
+	 */
+	public<T> void notify(T obj, AdminDataStorageOperation operation, Class<? extends Object> type)
+	{
+		WPBRefreshableCache cache = getCache(type.getSimpleName());
+		if (cache == null)
+		{
+			return;
+		}
+		String key = WPBCacheInvalidation.getNotificationKey(obj, operation);
+		if (key == null)
+		{
+			operation = AdminDataStorageOperation.DELETE_RECORDS;
+		}
+		// while a background reload is pending the fingerprint is the previous one, the other nodes must not compare it
+		String fingerPrint = (contentFingerPrints && !CacheReloader.isReloadPending(cache)) ? cache.getFingerPrint() : null;
+		WPBInvalidationEvent event = new WPBInvalidationEvent(nodeId, type.getSimpleName(), operation.name(), key, fingerPrint);
+		try
+		{
+			transport.send(event);
+		} catch (IOException e)
+		{
+			log.log(Level.WARNING, "Cannot send the cache invalidation event for " + type.getSimpleName(), e);
+		}
+	}
+	
+	/*
+	 * Event received from the transport
+	 */
+	public void receive(WPBInvalidationEvent event)
+	{
+		if (nodeId.equals(event.getNodeId()))
+		{
+			return;
+		}
+		WPBRefreshableCache cache = getCache(event.getType());
+		if (cache == null)
+		{
+			return;
+		}
+		AdminDataStorageOperation operation = null;
+		try
+		{
+			operation = AdminDataStorageOperation.valueOf(event.getOperation());
+		} catch (Exception e)
+		{
+			// unknown operation, the cache is refreshed
+		}
+		// the fingerprints of two nodes can only be compared when they are computed from the content
+		String fingerPrint = contentFingerPrints ? event.getFingerPrint() : null;
+		try
+		{
+			if (event.getExternalKey() == null && fingerPrint != null && fingerPrint.equals(cache.getFingerPrint()))
+			{
+				// this node has the same content already
+				return;
+			}
+			if (WPBInvalidationEvent.HEARTBEAT.equals(event.getOperation()) && fingerPrint == null)
+			{
+				return;
+			}
+			WPBCacheInvalidation.invalidateKey(cache, event.getExternalKey(), operation);
+			if (event.getExternalKey() != null && fingerPrint != null && !CacheReloader.isReloadPending(cache) 
+					&& !fingerPrint.equals(cache.getFingerPrint()))
+			{
+				// the record was applied but the content is still not the same, this node lost an earlier event
+				log.log(Level.INFO, "Cache " + event.getType() + " differs from node " + event.getNodeId() + ", reloading it");
+				cache.Refresh();
+			}
+		} catch (WPBIOException e)
+		{
+			log.log(Level.WARNING, "Cannot apply the cache invalidation event for " + event.getType(), e);
+		}
+	}
+}
@@ -0,0 +1,76 @@
+/*
+ *   Copyright 2014 Webpagebytes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package com.webpagebytes.cms.engine;
+
+/*
+ * Read only copy of the background reload metrics of one cache, returned by InMemoryCacheFactory.getReloadStats().
+ * Durations and lags are in milliseconds, the lag is the time from the oldest refresh request to the publication
+ * of the snapshot that includes it.
+ */
+public class CacheReloadStats {
+	private final long reloads;
+	private final long failures;
+	private final long lastDuration;
+	private final long maxDuration;
+	private final long lastLag;
+	private final long maxLag;
+	private final long currentLag;
+	private final boolean pending;
+
+	CacheReloadStats(long reloads, long failures, long lastDuration, long maxDuration, long lastLag, long maxLag,
+			long currentLag, boolean pending)
+	{
+		this.reloads = reloads;
+		this.failures = failures;
+		this.lastDuration = lastDuration;
+		this.maxDuration = maxDuration;
+		this.lastLag = lastLag;
+		this.maxLag = maxLag;
+		this.currentLag = currentLag;
+		this.pending = pending;
+	}
+	public long getReloads() {
+		return reloads;
+	}
+	public long getFailures() {
+		return failures;
+	}
+	public long getLastDuration() {
+		return lastDuration;
+	}
+	public long getMaxDuration() {
+		return maxDuration;
+	}
+	public long getLastLag() {
+		return lastLag;
+	}
+	public long getMaxLag() {
+		return maxLag;
+	}
+	/*
+	 * Age of the oldest refresh request that is not loaded yet, 0 when the cache is up to date
+	 */
+	public long getCurrentLag() {
+		return currentLag;
+	}
+	/*
+	 * true while the cache serves its previous snapshot and a reload is waiting or running
+	 */
+	public boolean isPending() {
+		return pending;
+	}
+}
@@ -0,0 +1,329 @@
+/*
+ *   Copyright 2014 Webpagebytes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package com.webpagebytes.cms.engine;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.webpagebytes.cms.exception.WPBIOException;
+
+/*
+ * Background loader for the stale-while-revalidate refresh mode of InMemoryCacheFactory.
+ * Refresh() of a cache only schedules a reload, the cache keeps serving its previous snapshot until the loader
+ * thread publishes the new one, so the request threads never wait for a reload.
+ * The Refresh() calls received while a reload is waiting to run are coalesced in that reload, a failed reload
+ * is retried. When the oldest refresh request is older than maxStaleness the thread that calls Refresh() waits
+ * for the reload, this bounds how long the caches can stay stale when the refreshes come faster than the loads.
+ */
+class CacheReloader {
+	private static final Logger log = Logger.getLogger(CacheReloader.class.getName());
+	private static final long RETRY_DELAY = 1000;
+	
+	/*
+	 * Implemented by the caches, load() reads the records and publishes the new snapshot
+	 */
+	interface Loadable
+	{
+		public void load() throws WPBIOException;
+		public void setReloadTask(Task task);
+		public Task getReloadTask();
+	}
+	
+	private final ScheduledExecutorService executor;
+	private final long maxStaleness;
+	private final List<Loadable> caches = new ArrayList<Loadable>();
+	
+	/*
+	 * maxStaleness in milliseconds
+	 */
+	public CacheReloader(long maxStaleness)
+	{
+		this.maxStaleness = maxStaleness;
+		this.executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "wpb-cache-reload");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+	
+	public long getMaxStaleness()
+	{
+		return maxStaleness;
+	}
+	
+	public Task register(Loadable cache)
+	{
+		Task task = new Task(cache);
+		cache.setReloadTask(task);
+		synchronized (caches)
+		{
+			caches.add(cache);
+		}
+		return task;
+	}
+	
+	/*
+	 * Stops the loader thread, the registered caches are detached and Refresh() loads them in the calling thread
+	 */
+	public void shutdown()
+	{
+		synchronized (caches)
+		{
+			for(Loadable cache: caches)
+			{
+				cache.setReloadTask(null);
+			}
+			caches.clear();
+		}
+		executor.shutdownNow();
+	}
+	
+	/*
+	 * Reload metrics of the registered caches by cache class name
+	 */
+	public Map<String, CacheReloadStats> getStats()
+	{
+		Map<String, CacheReloadStats> stats = new LinkedHashMap<String, CacheReloadStats>();
+		synchronized (caches)
+		{
+			for(Loadable cache: caches)
+			{
+				Task task = cache.getReloadTask();
+				if (task != null)
+				{
+					stats.put(task.name, task.getStats());
+				}
+			}
+		}
+		return stats;
+	}
+	
+	/*
+	 * Refresh() of a cache, loads the cache in the calling thread if it has no reload task
+	 */
+	public static void refresh(Loadable cache) throws WPBIOException
+	{
+		Task task = cache.getReloadTask();
+		if (task != null)
+		{
+			task.refresh();
+		} else
+		{
+			cache.load();
+		}
+	}
+	
+	/*
+	 * Returns true if the cache has a refresh request that is not loaded yet, its fingerprint is the previous one
+	 */
+	public static boolean isReloadPending(Object cache)
+	{
+		Task task = (cache instanceof Loadable) ? ((Loadable) cache).getReloadTask() : null;
+		return task != null && task.isPending();
+	}
+	
+	/*
+	 * Reload state and metrics of one cache. Durations and lags are in milliseconds, the lag is the time from the
+	 * oldest refresh request to the publication of the snapshot that includes it.
+	 */
+	class Task implements Runnable
+	{
+		private final Loadable cache;
+		private final String name;
+		
+		private long requested;
+		private long loaded;
+		private long pendingSince;
+		private long nextPendingSince;
+		private boolean scheduled;
+		private boolean running;
+		private long failures;
+		private WPBIOException lastFailure;
+		
+		private volatile long reloads;
+		private volatile long lastDuration;
+		private volatile long maxDuration;
+		private volatile long lastLag;
+		private volatile long maxLag;
+		
+		Task(Loadable cache)
+		{
+			this.cache = cache;
+			this.name = cache.getClass().getSimpleName();
+		}
+		
+		public void refresh() throws WPBIOException
+		{
+			synchronized (this)
+			{
+				long now = System.currentTimeMillis();
+				long seq = ++requested;
+				if (pendingSince == 0)
+				{
+					pendingSince = now;
+				} else if (running && nextPendingSince == 0)
+				{
+					nextPendingSince = now;
+				}
+				if (!scheduled)
+				{
+					scheduled = true;
+					executor.execute(this);
+				}
+				if (now - pendingSince < maxStaleness)
+				{
+					return;
+				}
+				// the caches are too stale, the caller waits for the reload it requested
+				long failuresSeen = failures;
+				while (loaded < seq)
+				{
+					try
+					{
+						wait();
+					} catch (InterruptedException e)
+					{
+						Thread.currentThread().interrupt();
+						throw new WPBIOException("Interrupted while waiting for the " + name + " reload");
+					}
+					if (failures != failuresSeen)
+					{
+						throw lastFailure;
+					}
+				}
+			}
+		}
+		
+		public synchronized boolean isPending()
+		{
+			return loaded < requested;
+		}
+		
+		public void run()
+		{
+			long seq;
+			long since;
+			synchronized (this)
+			{
+				seq = requested;
+				since = pendingSince;
+				running = true;
+				nextPendingSince = 0;
+			}
+			long start = System.currentTimeMillis();
+			WPBIOException failure = null;
+			try
+			{
+				cache.load();
+			} catch (WPBIOException e)
+			{
+				failure = e;
+			} catch (RuntimeException e)
+			{
+				failure = new WPBIOException("Cannot reload " + name, e);
+			}
+			long end = System.currentTimeMillis();
+			synchronized (this)
+			{
+				running = false;
+				if (failure == null)
+				{
+					loaded = seq;
+					pendingSince = nextPendingSince;
+					lastDuration = end - start;
+					maxDuration = Math.max(maxDuration, lastDuration);
+					lastLag = end - since;
+					maxLag = Math.max(maxLag, lastLag);
+					reloads++;
+					if (requested > loaded)
+					{
+						executor.execute(this);
+					} else
+					{
+						scheduled = false;
+					}
+				} else
+				{
+					failures++;
+					lastFailure = failure;
+					executor.schedule(this, RETRY_DELAY, TimeUnit.MILLISECONDS);
+				}
+				notifyAll();
+			}
+			if (failure == null)
+			{
+				log.log(Level.INFO, name + " reloaded in " + lastDuration + " ms, lag " + lastLag + " ms");
+			} else
+			{
+				log.log(Level.WARNING, name + " reload failed, the previous snapshot is served", failure);
+			}
+		}
+		
+		public long getReloads()
+		{
+			return reloads;
+		}
+		
+		public synchronized long getFailures()
+		{
+			return failures;
+		}
+		
+		public long getLastDuration()
+		{
+			return lastDuration;
+		}
+		
+		public long getMaxDuration()
+		{
+			return maxDuration;
+		}
+		
+		public long getLastLag()
+		{
+			return lastLag;
+		}
+		
+		public long getMaxLag()
+		{
+			return maxLag;
+		}
+		
+		/*
+		 * Age of the oldest refresh request that is not loaded yet, 0 when the cache is up to date
+		 */
+		public synchronized long getCurrentLag()
+		{
+			return (pendingSince != 0) ? System.currentTimeMillis() - pendingSince : 0;
+		}
+		
+		public synchronized CacheReloadStats getStats()
+		{
+			return new CacheReloadStats(reloads, failures, lastDuration, maxDuration, lastLag, maxLag, getCurrentLag(), isPending());
+		}
+	}
+}
@@ -0,0 +1,135 @@
+/*
+ *   Copyright 2014 Webpagebytes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package com.webpagebytes.cms.engine;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/*
+ * Map put in the model of one request. It reads from a map shared by all the requests until it is changed for
+ * the first time, then it works on its own copy, so the page model providers and the request handlers can change
+ * the model maps without changing the shared map.
+ */
+class CopyOnWriteModelMap<K, V> extends AbstractMap<K, V> {
+
+	private final Map<K, V> shared;
+	private Map<K, V> copy;
+	
+	public CopyOnWriteModelMap(Map<K, V> shared)
+	{
+		this.shared = shared;
+	}
+	
+	private Map<K, V> current()
+	{
+		return (copy != null) ? copy : shared;
+	}
+	
+	private Map<K, V> writable()
+	{
+		if (copy == null)
+		{
+			copy = new HashMap<K, V>(shared);
+		}
+		return copy;
+	}
+	
+	public int size()
+	{
+		return current().size();
+	}
+	
+	public boolean containsKey(Object key)
+	{
+		return current().containsKey(key);
+	}
+	
+	public V get(Object key)
+	{
+		return current().get(key);
+	}
+	
+	public V put(K key, V value)
+	{
+		return writable().put(key, value);
+	}
+	
+	public V remove(Object key)
+	{
+		return current().containsKey(key) ? writable().remove(key) : null;
+	}
+	
+	public void putAll(Map<? extends K, ? extends V> map)
+	{
+		writable().putAll(map);
+	}
+	
+	public void clear()
+	{
+		copy = new HashMap<K, V>();
+	}
+	
+	public Set<Map.Entry<K, V>> entrySet()
+	{
+		return new AbstractSet<Map.Entry<K, V>>() {
+			public int size()
+			{
+				return CopyOnWriteModelMap.this.size();
+			}
+			public Iterator<Map.Entry<K, V>> iterator()
+			{
+				final boolean onCopy = (copy != null);
+				final Iterator<Map.Entry<K, V>> iterator = current().entrySet().iterator();
+				return new Iterator<Map.Entry<K, V>>() {
+					private K lastKey;
+					public boolean hasNext()
+					{
+						return iterator.hasNext();
+					}
+					public Map.Entry<K, V> next()
+					{
+						Map.Entry<K, V> entry = iterator.next();
+						lastKey = entry.getKey();
+						return new AbstractMap.SimpleEntry<K, V>(entry) {
+							private static final long serialVersionUID = 1L;
+							public V setValue(V value)
+							{
+								super.setValue(value);
+								return CopyOnWriteModelMap.this.put(getKey(), value);
+							}
+						};
+					}
+					public void remove()
+					{
+						if (onCopy)
+						{
+							iterator.remove();
+						} else
+						{
+							// the shared map is iterated, the entry is removed from the copy
+							CopyOnWriteModelMap.this.remove(lastKey);
+						}
+					}
+				};
+			}
+		};
+	}
+}
@@ -60,4 +60,19 @@ public class DefaultWPBCacheFactory {
 		}
 		return instance;
 	}
+	
+	/*
+	 * Releases the threads of the cache factory, called when the web application is stopped
+	 */
+	public static void shutdown()
+	{
+		synchronized (lock)
+		{
+			if (instance instanceof InMemoryCacheFactory)
+			{
+				((InMemoryCacheFactory) instance).shutdown();
+			}
+			instance = null;
+		}
+	}
 }
@@ -22,23 +22,89 @@ import java.io.IOException;
 
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.Map;
 
 import org.apache.commons.io.IOUtils;
 
 import com.webpagebytes.cms.WPBFilePath;
 import com.webpagebytes.cms.WPBFileStorage;
 import com.webpagebytes.cms.WPBFilesCache;
+import com.webpagebytes.cms.WPBLocalFileStorage;
+import com.webpagebytes.cms.WPBRandomAccessFileStorage;
 import com.webpagebytes.cms.cmsdata.WPBFile;
 import com.webpagebytes.cms.exception.WPBException;
 import com.webpagebytes.cms.exception.WPBIOException;
+import com.webpagebytes.cms.utility.CmsConfiguration;
+import com.webpagebytes.cms.utility.CmsConfigurationFactory;
+import com.webpagebytes.cms.utility.ContentTypeDetector;
+import com.webpagebytes.cms.utility.CmsConfiguration.WPBSECTION;
 
 public class FileContentBuilder {
+	// default total size in bytes of the gzip compressed files kept in memory
+	public static final long FILE_GZIP_CACHE_SIZE = 16 * 1024 * 1024;
+	// default maximum size in bytes of a file that is compressed
+	public static final long FILE_GZIP_MAX_SIZE = 1024 * 1024;
+	// default total size in bytes of the file contents kept in memory
+	public static final long FILE_CACHE_SIZE = 32 * 1024 * 1024;
+	// default maximum size in bytes of a file whose content is kept in memory
+	public static final long FILE_CACHE_MAX_SIZE = 64 * 1024;
+	
+	// marks a file that does not get smaller when compressed
+	private static final byte[] NOT_COMPRESSED = new byte[0];
+	
 	private WPBFileStorage cloudFileStorage;
 	private WPBFilesCache filesCache;
+	private ByteArrayLruCache gzipCache;
+	private long gzipMaxSize = FILE_GZIP_MAX_SIZE;
+	private ByteArrayLruCache fileCache;
+	private long fileCacheMaxSize = FILE_CACHE_MAX_SIZE;
+	
 	public FileContentBuilder(WPBCacheInstances cacheInstances)
 	{
 		filesCache = cacheInstances.getFilesCache();
 		cloudFileStorage = WPBFileStorageFactory.getInstance();
+		
+		CmsConfiguration configuration = CmsConfigurationFactory.getConfiguration();
+		Map<String, String> generalParams = (configuration != null) ? configuration.getSectionParams(WPBSECTION.SECTION_GENERAL) : null;
+		long gzipCacheSize = FILE_GZIP_CACHE_SIZE;
+		long fileCacheSize = FILE_CACHE_SIZE;
+		if (generalParams != null)
+		{
+			try
+			{
+				if (generalParams.containsKey("file_cache_size"))
+				{
+					fileCacheSize = Long.valueOf(generalParams.get("file_cache_size"));
+				}
+				if (generalParams.containsKey("file_cache_max_size"))
+				{
+					fileCacheMaxSize = Long.valueOf(generalParams.get("file_cache_max_size"));
+				}
+				if (generalParams.containsKey("file_gzip_cache_size"))
+				{
+					gzipCacheSize = Long.valueOf(generalParams.get("file_gzip_cache_size"));
+				}
+				if (generalParams.containsKey("file_gzip_max_size"))
+				{
+					gzipMaxSize = Long.valueOf(generalParams.get("file_gzip_max_size"));
+				}
+			} catch (NumberFormatException e)
+			{
+				gzipCacheSize = FILE_GZIP_CACHE_SIZE;
+				gzipMaxSize = FILE_GZIP_MAX_SIZE;
+				fileCacheSize = FILE_CACHE_SIZE;
+				fileCacheMaxSize = FILE_CACHE_MAX_SIZE;
+			}
+		}
+		if (gzipCacheSize > 0)
+		{
+			gzipCache = new ByteArrayLruCache(gzipCacheSize);
+		}
+		if (fileCacheSize > 0 && fileCacheMaxSize > 0)
+		{
+			fileCache = new ByteArrayLruCache(fileCacheSize);
+		}
 	}
 	public void initialize()
 	{
@@ -59,9 +125,93 @@ public class FileContentBuilder {
 			throw new WPBException ("cannot get file content ", e);
 		}
 	}
+	/*
+	 * Returns the local file system path of the file content or null if the file storage is not a local one
+	 */
+	private Path getLocalPath(WPBFile file) throws WPBException
+	{
+		if (!(cloudFileStorage instanceof WPBLocalFileStorage))
+		{
+			return null;
+		}
+		WPBFilePath cloudFile = new WPBFilePath("public", file.getBlobKey());
+		try
+		{
+			return ((WPBLocalFileStorage)cloudFileStorage).getLocalPath(cloudFile);
+		} catch (IOException e)
+		{
+			throw new WPBException ("cannot get file path ", e);
+		}
+	}
+	private String getCacheKey(WPBFile file)
+	{
+		return file.getBlobKey() + "/" + file.getHash();
+	}
+	
+	/*
+	 * Returns the file content from the in memory cache, reading it from the file storage on a miss.
+	 * Returns null if the file is too large to be kept in memory.
+	 */
+	private byte[] getCachedFileContent(WPBFile file) throws WPBException
+	{
+		Long size = file.getSize();
+		if (fileCache == null || size == null || size > fileCacheMaxSize)
+		{
+			return null;
+		}
+		String key = getCacheKey(file);
+		String fingerPrint = filesCache.getFingerPrint();
+		byte[] content = fileCache.get(key, fingerPrint);
+		if (content == null)
+		{
+			content = readFileContent(file);
+			fileCache.put(key, fingerPrint, content);
+		}
+		return content;
+	}
+	
+	private byte[] readFileContent(WPBFile file) throws WPBException
+	{
+		InputStream is = getFileContent(file);
+		try
+		{
+			return IOUtils.toByteArray(is);
+		} catch (IOException e)
+		{
+			throw new WPBIOException(e.getMessage(), e);
+		}
+		finally
+		{
+			IOUtils.closeQuietly(is);
+		}
+	}
+	
 	public void writeFileContent(WPBFile wbFile, OutputStream os) throws WPBException 
 	{
-		
+		byte[] content = getCachedFileContent(wbFile);
+		if (content != null)
+		{
+			try
+			{
+				os.write(content);
+			} catch (IOException e)
+			{
+				throw new WPBIOException(e.getMessage(), e);
+			}
+			return;
+		}
+		Path localPath = getLocalPath(wbFile);
+		if (localPath != null)
+		{
+			try
+			{
+				FileChannelTransfer.transfer(localPath, 0, Long.MAX_VALUE, os);
+			} catch (IOException e)
+			{
+				throw new WPBIOException(e.getMessage(), e);
+			}
+			return;
+		}
 		InputStream is = getFileContent(wbFile);				
 		try 
 		{
@@ -76,4 +226,111 @@ public class FileContentBuilder {
 			IOUtils.closeQuietly(is);
 		}
 	}
+	
+	/*
+	 * Writes length bytes of the file content starting at offset.
+	 * If the file storage supports positioned reads only the requested bytes are read.
+	 */
+	public void writeFileContent(WPBFile wbFile, OutputStream os, long offset, long length) throws WPBException
+	{
+		byte[] content = getCachedFileContent(wbFile);
+		Path localPath = (content == null) ? getLocalPath(wbFile) : null;
+		InputStream is = null;
+		try 
+		{
+			if (content != null)
+			{
+				if (offset < content.length)
+				{
+					os.write(content, (int)offset, (int)Math.min(length, content.length - offset));
+				}
+			} else
+			if (localPath != null)
+			{
+				FileChannelTransfer.transfer(localPath, offset, length, os);
+			} else
+			if (cloudFileStorage instanceof WPBRandomAccessFileStorage)
+			{
+				WPBFilePath cloudFile = new WPBFilePath("public", wbFile.getBlobKey());
+				is = ((WPBRandomAccessFileStorage)cloudFileStorage).getFileContent(cloudFile, offset, length);
+				IOUtils.copyLarge(is, os, 0, length);
+			} else
+			{
+				is = getFileContent(wbFile);
+				IOUtils.copyLarge(is, os, offset, length);
+			}
+		} catch (IOException e)
+		{
+			throw new WPBIOException(e.getMessage(), e);
+		}
+		finally
+		{
+			IOUtils.closeQuietly(is);
+		}
+	}
+	
+	/*
+	 * Returns true if the file response can be sent gzip compressed
+	 */
+	public boolean isCompressible(WPBFile wbFile)
+	{
+		Long size = wbFile.getSize();
+		return gzipCache != null && size != null && size >= GzipEncoding.MIN_SIZE && size <= gzipMaxSize && 
+			   ContentTypeDetector.isCompressible(wbFile.getAdjustedContentType());
+	}
+	
+	/*
+	 * Returns the gzip compressed file content or null if the compressed content is not smaller.
+	 * A file is compressed once per version, the result is kept in memory.
+	 */
+	public byte[] getGzipFileContent(WPBFile wbFile) throws WPBException
+	{
+		String key = getCacheKey(wbFile);
+		String fingerPrint = filesCache.getFingerPrint();
+		byte[] result = gzipCache.get(key, fingerPrint);
+		if (result == null)
+		{
+			byte[] content = getCachedFileContent(wbFile);
+			if (content == null)
+			{
+				content = readFileContent(wbFile);
+			}
+			try
+			{
+				result = GzipEncoding.compress(content, 0, content.length);
+			} catch (IOException e)
+			{
+				throw new WPBIOException(e.getMessage(), e);
+			}
+			if (result == null)
+			{
+				result = NOT_COMPRESSED;
+			}
+			gzipCache.put(key, fingerPrint, result);
+		}
+		return (result == NOT_COMPRESSED) ? null : result;
+	}
+	
+	/*
+	 * Statistics of the in memory file cache, all are 0 if the cache is disabled
+	 */
+	public long getFileCacheHits()
+	{
+		return (fileCache != null) ? fileCache.getHits() : 0;
+	}
+	
+	public long getFileCacheMisses()
+	{
+		return (fileCache != null) ? fileCache.getMisses() : 0;
+	}
+	
+	public long getFileCacheEvictions()
+	{
+		return (fileCache != null) ? fileCache.getEvictions() : 0;
+	}
+	
+	public long getFileCacheWeight()
+	{
+		return (fileCache != null) ? fileCache.getWeight() : 0;
+	}
 }
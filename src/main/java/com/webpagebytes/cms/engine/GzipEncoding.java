@@ -0,0 +1,106 @@
+/*
+ *   Copyright 2014 Webpagebytes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package com.webpagebytes.cms.engine;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.GZIPOutputStream;
+
+/*
+ * Helpers for the gzip content encoding of the public responses.
+ */
+public class GzipEncoding {
+
+	public static final String GZIP = "gzip";
+	
+	// content smaller than this is not worth compressing
+	public static final int MIN_SIZE = 256;
+	
+	/*
+	 * Returns true if the Accept-Encoding header value allows a gzip response
+	 */
+	public static boolean acceptsGzip(String acceptEncoding)
+	{
+		if (acceptEncoding == null)
+		{
+			return false;
+		}
+		boolean any = false;
+		String[] codings = acceptEncoding.split(",");
+		for(String coding: codings)
+		{
+			String name = coding;
+			boolean allowed = true;
+			int pos = coding.indexOf(';');
+			if (pos >= 0)
+			{
+				name = coding.substring(0, pos);
+				allowed = qualityAllowed(coding.substring(pos+1));
+			}
+			name = name.trim();
+			if (name.equalsIgnoreCase(GZIP) || name.equalsIgnoreCase("x-gzip"))
+			{
+				// an explicit gzip entry wins over *
+				return allowed;
+			}
+			if (name.equals("*"))
+			{
+				any = allowed;
+			}
+		}
+		return any;
+	}
+	
+	private static boolean qualityAllowed(String params)
+	{
+		for(String param: params.split(";"))
+		{
+			param = param.trim();
+			if (param.startsWith("q="))
+			{
+				try
+				{
+					return Double.parseDouble(param.substring(2).trim()) > 0;
+				} catch (NumberFormatException e)
+				{
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+	
+	/*
+	 * Returns the gzip compressed content or null if the compressed content is not smaller
+	 */
+	public static byte[] compress(byte[] content, int offset, int length) throws IOException
+	{
+		if (length < MIN_SIZE)
+		{
+			return null;
+		}
+		ByteArrayOutputStream bos = new ByteArrayOutputStream(length / 3 + 64);
+		GZIPOutputStream gzip = new GZIPOutputStream(bos, 8192);
+		gzip.write(content, offset, length);
+		gzip.close();
+		if (bos.size() >= length)
+		{
+			return null;
+		}
+		return bos.toByteArray();
+	}
+}
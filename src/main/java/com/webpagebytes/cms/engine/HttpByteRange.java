@@ -0,0 +1,139 @@
+/*
+ *   Copyright 2014 Webpagebytes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package com.webpagebytes.cms.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * A byte range of a HTTP Range request, start and end are inclusive.
+ */
+public class HttpByteRange {
+
+	public static final String BYTES_UNIT = "bytes";
+	
+	// requests with more ranges than this are answered with the full content
+	public static final int MAX_RANGES = 16;
+	
+	private final long start;
+	private final long end;
+	
+	public HttpByteRange(long start, long end)
+	{
+		this.start = start;
+		this.end = end;
+	}
+	
+	public long getStart() {
+		return start;
+	}
+	
+	public long getEnd() {
+		return end;
+	}
+	
+	public long getLength() {
+		return end - start + 1;
+	}
+	
+	/*
+	 * Returns the Content-Range header value of this range
+	 */
+	public String toContentRange(long size)
+	{
+		return BYTES_UNIT + " " + start + "-" + end + "/" + size;
+	}
+	
+	/*
+	 * Parses a Range header value for a content of the given size.
+	 * Returns null if the header is malformed and must be ignored, 
+	 * an empty list if none of the ranges can be satisfied, or the satisfiable ranges otherwise.
+	 */
+	public static List<HttpByteRange> parse(String header, long size)
+	{
+		if (header == null)
+		{
+			return null;
+		}
+		header = header.trim();
+		if (!header.startsWith(BYTES_UNIT + "="))
+		{
+			return null;
+		}
+		String[] specs = header.substring(BYTES_UNIT.length() + 1).split(",");
+		if (specs.length > MAX_RANGES)
+		{
+			return null;
+		}
+		List<HttpByteRange> ranges = new ArrayList<HttpByteRange>();
+		try
+		{
+			for(String spec: specs)
+			{
+				spec = spec.trim();
+				int pos = spec.indexOf('-');
+				if (pos < 0)
+				{
+					return null;
+				}
+				String first = spec.substring(0, pos).trim();
+				String last = spec.substring(pos+1).trim();
+				long start, end;
+				if (first.length() == 0)
+				{
+					// suffix range, the last bytes of the content
+					if (last.length() == 0)
+					{
+						return null;
+					}
+					long suffix = Long.parseLong(last);
+					if (suffix < 0)
+					{
+						return null;
+					}
+					if (suffix == 0)
+					{
+						continue;
+					}
+					start = Math.max(0, size - suffix);
+					end = size - 1;
+				} else
+				{
+					start = Long.parseLong(first);
+					end = (last.length() == 0) ? Long.MAX_VALUE : Long.parseLong(last);
+					if (start < 0 || end < start)
+					{
+						return null;
+					}
+					if (start >= size)
+					{
+						continue;
+					}
+					end = Math.min(end, size - 1);
+				}
+				if (size > 0)
+				{
+					ranges.add(new HttpByteRange(start, end));
+				}
+			}
+		} catch (NumberFormatException e)
+		{
+			return null;
+		}
+		return ranges;
+	}
+}
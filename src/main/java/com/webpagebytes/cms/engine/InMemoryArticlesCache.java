@@ -0,0 +1,97 @@
+/*
+ *   Copyright 2014 Webpagebytes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package com.webpagebytes.cms.engine;
+
+import com.webpagebytes.cms.WPBAdminDataStorage;
+import com.webpagebytes.cms.WPBIncrementalCache;
+import com.webpagebytes.cms.WPBArticlesCache;
+import com.webpagebytes.cms.cmsdata.WPBArticle;
+import com.webpagebytes.cms.exception.WPBIOException;
+
+/*
+ * WPBArticlesCache of InMemoryCacheFactory. Refresh() loads the records in a new map that replaces the current one,
+ * upsert and evict change only one record.
+ */
+class InMemoryArticlesCache implements WPBArticlesCache, WPBIncrementalCache, CacheReloader.Loadable {
+
+	private final WPBAdminDataStorage dataStorage;
+	private volatile CacheReloader.Task reloadTask;
+	private volatile InMemoryRecords<WPBArticle> records = InMemoryRecords.empty();
+	
+	public InMemoryArticlesCache(WPBAdminDataStorage dataStorage)
+	{
+		this.dataStorage = dataStorage;
+	}
+	
+	private static long hash(WPBArticle article)
+	{
+		return InMemoryFingerPrint.recordHash(article.getExternalKey(), article.getVersion(), article.getLastModified(),
+				article.getTitle(), article.getHtmlSource());
+	}
+	
+	public WPBArticle getByExternalKey(String externalKey) throws WPBIOException
+	{
+		return records.get(externalKey);
+	}
+	
+	public void Refresh() throws WPBIOException
+	{
+		CacheReloader.refresh(this);
+	}
+	
+	public void setReloadTask(CacheReloader.Task task)
+	{
+		reloadTask = task;
+	}
+	
+	public CacheReloader.Task getReloadTask()
+	{
+		return reloadTask;
+	}
+	
+	public synchronized void load() throws WPBIOException
+	{
+		InMemoryRecords.Builder<WPBArticle> builder = new InMemoryRecords.Builder<WPBArticle>();
+		for(WPBArticle article: dataStorage.getAllRecords(WPBArticle.class))
+		{
+			builder.add(article.getExternalKey(), article, hash(article));
+		}
+		records = builder.build();
+	}
+	
+	public synchronized void upsert(String externalKey) throws WPBIOException
+	{
+		WPBArticle article = dataStorage.get(externalKey, WPBArticle.class);
+		if (article == null)
+		{
+			records.remove(externalKey);
+		} else
+		{
+			records.put(externalKey, article, hash(article));
+		}
+	}
+	
+	public synchronized void evict(String externalKey) throws WPBIOException
+	{
+		records.remove(externalKey);
+	}
+	
+	public String getFingerPrint()
+	{
+		return records.getFingerPrint();
+	}
+}
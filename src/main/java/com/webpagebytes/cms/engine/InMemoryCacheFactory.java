@@ -0,0 +1,198 @@
+/*
+ *   Copyright 2014 Webpagebytes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package com.webpagebytes.cms.engine;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.webpagebytes.cms.WPBAdminDataStorage;
+import com.webpagebytes.cms.WPBArticlesCache;
+import com.webpagebytes.cms.WPBCacheFactory;
+import com.webpagebytes.cms.WPBFilesCache;
+import com.webpagebytes.cms.WPBMessagesCache;
+import com.webpagebytes.cms.WPBPageModulesCache;
+import com.webpagebytes.cms.WPBPagesCache;
+import com.webpagebytes.cms.WPBParametersCache;
+import com.webpagebytes.cms.WPBProjectCache;
+import com.webpagebytes.cms.WPBUrisCache;
+import com.webpagebytes.cms.exception.WPBIOException;
+
+/**
+ * In process WPBCacheFactory that loads all the CMS records from the admin data storage.
+ * Every cache keeps its records in concurrent maps, so lookups do not take any lock. Refresh() builds new maps
+ * and swaps them in, upsert() and evict() change the live maps in place while holding the cache lock: a record
+ * that keeps its key is replaced with a single put and a record that moves is published under the new key before
+ * the old key is removed, so a reader never misses a record that exists before and after the change.
+ * Fingerprints are computed from the records content, a Refresh() that loads the same records keeps the same fingerprint.
+ * To use it set com.webpagebytes.cms.engine.InMemoryCacheFactory as factoryclass of the wpbcache section.
+ * With the refresh_mode=background parameter Refresh() returns at once and the caches are reloaded by a
+ * background thread while the previous records are served, refresh_max_staleness (seconds, default 30) bounds
+ * how old a pending refresh request can get before the thread that calls Refresh() waits for the reload.
+ * getReloadStats() returns the reload durations and lags of each cache in that mode.
+ */
+public class InMemoryCacheFactory implements WPBCacheFactory {
+	private static final Logger log = Logger.getLogger(InMemoryCacheFactory.class.getName());
+	public static final String REFRESH_MODE_BACKGROUND = "background";
+	public static final int DEFAULT_MAX_STALENESS = 30;
+	
+	private WPBAdminDataStorage dataStorage;
+	private InMemoryUrisCache urisCache;
+	private InMemoryPagesCache pagesCache;
+	private InMemoryPageModulesCache pageModulesCache;
+	private InMemoryParametersCache parametersCache;
+	private InMemoryFilesCache filesCache;
+	private InMemoryArticlesCache articlesCache;
+	private InMemoryMessagesCache messagesCache;
+	private InMemoryProjectCache projectCache;
+	private CacheReloader reloader;
+	
+	public InMemoryCacheFactory()
+	{
+	}
+	
+	public InMemoryCacheFactory(WPBAdminDataStorage dataStorage)
+	{
+		this.dataStorage = dataStorage;
+	}
+	
+	public void initialize(Map<String, String> params) throws WPBIOException
+	{
+		if (dataStorage == null)
+		{
+			dataStorage = WPBAdminDataStorageFactory.getInstance();
+		}
+		if (dataStorage == null)
+		{
+			throw new WPBIOException("InMemoryCacheFactory cannot get the admin data storage");
+		}
+		urisCache = new InMemoryUrisCache(dataStorage);
+		pagesCache = new InMemoryPagesCache(dataStorage);
+		pageModulesCache = new InMemoryPageModulesCache(dataStorage);
+		parametersCache = new InMemoryParametersCache(dataStorage);
+		filesCache = new InMemoryFilesCache(dataStorage);
+		articlesCache = new InMemoryArticlesCache(dataStorage);
+		messagesCache = new InMemoryMessagesCache(dataStorage);
+		projectCache = new InMemoryProjectCache(dataStorage);
+		
+		long start = System.currentTimeMillis();
+		urisCache.Refresh();
+		pagesCache.Refresh();
+		pageModulesCache.Refresh();
+		parametersCache.Refresh();
+		filesCache.Refresh();
+		articlesCache.Refresh();
+		messagesCache.Refresh();
+		projectCache.Refresh();
+		log.log(Level.INFO, "InMemoryCacheFactory loaded the caches in " + (System.currentTimeMillis() - start) + " ms");
+		
+		if (params != null && REFRESH_MODE_BACKGROUND.equalsIgnoreCase(params.get("refresh_mode")))
+		{
+			int maxStaleness = DEFAULT_MAX_STALENESS;
+			String value = params.get("refresh_max_staleness");
+			if (value != null && value.length() > 0)
+			{
+				try
+				{
+					maxStaleness = Integer.parseInt(value.trim());
+				} catch (NumberFormatException e)
+				{
+					log.log(Level.WARNING, "Invalid value for refresh_max_staleness: " + value);
+				}
+			}
+			reloader = new CacheReloader(maxStaleness * 1000L);
+			for(CacheReloader.Loadable cache: new CacheReloader.Loadable[] {urisCache, pagesCache, pageModulesCache, parametersCache,
+					filesCache, articlesCache, messagesCache, projectCache})
+			{
+				reloader.register(cache);
+			}
+		}
+	}
+	
+	/*
+	 * Stops the background reloader thread, called when the web application is stopped
+	 */
+	public void shutdown()
+	{
+		if (reloader != null)
+		{
+			reloader.shutdown();
+		}
+	}
+	
+	/*
+	 * Reload metrics of each cache by cache class name, for example InMemoryPagesCache.
+	 * The map is empty unless refresh_mode is background.
+	 */
+	public Map<String, CacheReloadStats> getReloadStats()
+	{
+		if (reloader == null)
+		{
+			return Collections.emptyMap();
+		}
+		return reloader.getStats();
+	}
+	
+	/*
+	 * The background reloader, null unless refresh_mode is background
+	 */
+	CacheReloader getReloader()
+	{
+		return reloader;
+	}
+	
+	public WPBUrisCache getUrisCacheInstance()
+	{
+		return urisCache;
+	}
+	
+	public WPBPagesCache getPagesCacheInstance()
+	{
+		return pagesCache;
+	}
+	
+	public WPBPageModulesCache getPageModulesCacheInstance()
+	{
+		return pageModulesCache;
+	}
+	
+	public WPBParametersCache getParametersCacheInstance()
+	{
+		return parametersCache;
+	}
+	
+	public WPBFilesCache getFilesCacheInstance()
+	{
+		return filesCache;
+	}
+	
+	public WPBArticlesCache getArticlesCacheInstance()
+	{
+		return articlesCache;
+	}
+	
+	public WPBMessagesCache getMessagesCacheInstance()
+	{
+		return messagesCache;
+	}
+	
+	public WPBProjectCache getProjectCacheInstance()
+	{
+		return projectCache;
+	}
+}
@@ -0,0 +1,247 @@
+/*
+ *   Copyright 2014 Webpagebytes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package com.webpagebytes.cms.engine;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.webpagebytes.cms.WPBAdminDataStorage;
+import com.webpagebytes.cms.WPBFilesCache;
+import com.webpagebytes.cms.WPBIncrementalCache;
+import com.webpagebytes.cms.cmsdata.WPBFile;
+import com.webpagebytes.cms.exception.WPBIOException;
+
+/*
+ * WPBFilesCache of InMemoryCacheFactory, the full path of every file and directory is computed when the cache is refreshed.
+ * File paths are like dir1/dir2/file.txt, directory paths end with /
+ * A changed file updates only its own path, a changed directory rebuilds the paths from the records already in memory.
+ */
+class InMemoryFilesCache implements WPBFilesCache, WPBIncrementalCache, CacheReloader.Loadable {
+
+	// guards against owner cycles in corrupted data
+	private static final int MAX_DEPTH = 256;
+	
+	private static class Snapshot
+	{
+		final InMemoryRecords<WPBFile> records;
+		final ConcurrentHashMap<String, String> pathByKey = new ConcurrentHashMap<String, String>();
+		final ConcurrentHashMap<String, WPBFile> byPath = new ConcurrentHashMap<String, WPBFile>();
+		Snapshot(InMemoryRecords<WPBFile> records)
+		{
+			this.records = records;
+			for(Map.Entry<String, WPBFile> entry: records.getMap().entrySet())
+			{
+				addPath(entry.getKey(), entry.getValue());
+			}
+		}
+		
+		void addPath(String externalKey, WPBFile file)
+		{
+			String path = buildPath(file);
+			if (path != null)
+			{
+				pathByKey.put(externalKey, path);
+				byPath.put(normalize(path), file);
+			}
+		}
+		
+		void removePath(String externalKey, WPBFile file)
+		{
+			String path = pathByKey.remove(externalKey);
+			if (path != null)
+			{
+				byPath.remove(normalize(path), file);
+			}
+		}
+		
+		/*
+		 * The new path is published before the previous one is removed, a file that keeps its path
+		 * is replaced with a single put so the readers always find it
+		 */
+		void replacePath(String externalKey, WPBFile previous, WPBFile file)
+		{
+			String previousPath = pathByKey.get(externalKey);
+			String path = buildPath(file);
+			if (path != null)
+			{
+				pathByKey.put(externalKey, path);
+				byPath.put(normalize(path), file);
+			} else
+			{
+				pathByKey.remove(externalKey);
+			}
+			if (previousPath != null && (path == null || !normalize(previousPath).equals(normalize(path))))
+			{
+				byPath.remove(normalize(previousPath), previous);
+			}
+		}
+		
+		private String buildPath(WPBFile file)
+		{
+			StringBuilder sb = new StringBuilder(file.getFileName() != null ? file.getFileName() : "");
+			if (isDirectory(file))
+			{
+				sb.append('/');
+			}
+			WPBFile current = file;
+			for(int depth = 0; depth < MAX_DEPTH; depth++)
+			{
+				String owner = current.getOwnerExtKey();
+				if (owner == null || owner.length() == 0)
+				{
+					return sb.toString();
+				}
+				current = records.get(owner);
+				if (current == null)
+				{
+					// the parent directory was deleted
+					return null;
+				}
+				sb.insert(0, '/').insert(0, current.getFileName() != null ? current.getFileName() : "");
+			}
+			return null;
+		}
+	}
+	
+	private final WPBAdminDataStorage dataStorage;
+	private volatile CacheReloader.Task reloadTask;
+	private volatile Snapshot snapshot = new Snapshot(InMemoryRecords.<WPBFile>empty());
+	
+	public InMemoryFilesCache(WPBAdminDataStorage dataStorage)
+	{
+		this.dataStorage = dataStorage;
+	}
+	
+	private static long hash(WPBFile file)
+	{
+		return InMemoryFingerPrint.recordHash(file.getExternalKey(), file.getVersion(), file.getLastModified(),
+				file.getFileName(), file.getBlobKey(), file.getHash(), file.getSize(), file.getContentType(), file.getAdjustedContentType(),
+				file.getDirectoryFlag(), file.getOwnerExtKey());
+	}
+	
+	private static boolean isDirectory(WPBFile file)
+	{
+		return file.getDirectoryFlag() != null && file.getDirectoryFlag() == 1;
+	}
+	
+	private static String normalize(String path)
+	{
+		int start = 0;
+		int end = path.length();
+		while (start < end && path.charAt(start) == '/') start++;
+		while (end > start && path.charAt(end-1) == '/') end--;
+		return path.substring(start, end);
+	}
+	
+	public WPBFile getByExternalKey(String externalKey) throws WPBIOException
+	{
+		return snapshot.records.get(externalKey);
+	}
+	
+	public WPBFile geByPath(String filePath) throws WPBIOException
+	{
+		if (filePath == null)
+		{
+			return null;
+		}
+		return snapshot.byPath.get(normalize(filePath));
+	}
+	
+	public String getFullFilePath(WPBFile file) throws WPBIOException
+	{
+		if (file == null)
+		{
+			return null;
+		}
+		return snapshot.pathByKey.get(file.getExternalKey());
+	}
+	
+	public void Refresh() throws WPBIOException
+	{
+		CacheReloader.refresh(this);
+	}
+	
+	public void setReloadTask(CacheReloader.Task task)
+	{
+		reloadTask = task;
+	}
+	
+	public CacheReloader.Task getReloadTask()
+	{
+		return reloadTask;
+	}
+	
+	public synchronized void load() throws WPBIOException
+	{
+		InMemoryRecords.Builder<WPBFile> builder = new InMemoryRecords.Builder<WPBFile>();
+		for(WPBFile file: dataStorage.getAllRecords(WPBFile.class))
+		{
+			builder.add(file.getExternalKey(), file, hash(file));
+		}
+		snapshot = new Snapshot(builder.build());
+	}
+	
+	public synchronized void upsert(String externalKey) throws WPBIOException
+	{
+		WPBFile file = dataStorage.get(externalKey, WPBFile.class);
+		if (file == null)
+		{
+			evict(externalKey);
+			return;
+		}
+		Snapshot current = snapshot;
+		WPBFile previous = current.records.get(externalKey);
+		if (isDirectory(file) || (previous != null && isDirectory(previous)))
+		{
+			// the paths of all the files below the directory can change
+			current.records.put(externalKey, file, hash(file));
+			snapshot = new Snapshot(current.records);
+			return;
+		}
+		if (previous != null)
+		{
+			current.replacePath(externalKey, previous, file);
+		} else
+		{
+			current.addPath(externalKey, file);
+		}
+		current.records.put(externalKey, file, hash(file));
+	}
+	
+	public synchronized void evict(String externalKey) throws WPBIOException
+	{
+		Snapshot current = snapshot;
+		WPBFile previous = current.records.get(externalKey);
+		if (previous == null)
+		{
+			return;
+		}
+		if (isDirectory(previous))
+		{
+			current.records.remove(externalKey);
+			snapshot = new Snapshot(current.records);
+			return;
+		}
+		current.removePath(externalKey, previous);
+		current.records.remove(externalKey);
+	}
+	
+	public String getFingerPrint()
+	{
+		return snapshot.records.getFingerPrint();
+	}
+}
@@ -0,0 +1,87 @@
+/*
+ *   Copyright 2014 Webpagebytes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package com.webpagebytes.cms.engine;
+
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Date;
+
+/*
+ * Content fingerprint of a set of records. Each record contributes a hash of its externalKey, version,
+ * lastModified and of the fields that change what is rendered (sources, values, urls), so an update that
+ * does not bump the version or lastModified still changes the fingerprint.
+ * The hashes are summed so the result does not depend on the order the records were read in
+ * and a record can be added or removed without going through all the others.
+ * Two loads of the same records give the same fingerprint.
+ */
+class InMemoryFingerPrint {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private long sum;
+	private int count;
+
+	public static long recordHash(String externalKey, String version, Date lastModified, Object... content)
+	{
+		StringBuilder sb = new StringBuilder();
+		sb.append(externalKey).append('\n').append(version).append('\n');
+		sb.append(lastModified != null ? lastModified.getTime() : 0L);
+		for(Object field: content)
+		{
+			// the length keeps the field boundaries, "ab" + "c" and "a" + "bc" hash differently
+			String value = String.valueOf(field);
+			sb.append('\n').append(field != null ? value.length() : -1).append(':').append(value);
+		}
+		try
+		{
+			byte[] digest = MessageDigest.getInstance("MD5").digest(sb.toString().getBytes(UTF8));
+			long hash = 0;
+			for(int i = 0; i < 8; i++)
+			{
+				hash = (hash << 8) | (digest[i] & 0xFF);
+			}
+			return hash;
+		} catch (NoSuchAlgorithmException e)
+		{
+			// MD5 is always available, fall back to the string hash anyway
+			return sb.toString().hashCode();
+		}
+	}
+
+	public void add(long recordHash)
+	{
+		sum += recordHash;
+		count++;
+	}
+
+	public void remove(long recordHash)
+	{
+		sum -= recordHash;
+		count--;
+	}
+
+	public int getCount()
+	{
+		return count;
+	}
+
+	public String toString()
+	{
+		return Long.toHexString(sum) + "-" + count;
+	}
+}
@@ -0,0 +1,244 @@
+/*
+ *   Copyright 2014 Webpagebytes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package com.webpagebytes.cms.engine;
+
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.webpagebytes.cms.WPBAdminDataStorage;
+import com.webpagebytes.cms.WPBIncrementalCache;
+import com.webpagebytes.cms.WPBMessagesCache;
+import com.webpagebytes.cms.cmsdata.WPBMessage;
+import com.webpagebytes.cms.exception.WPBIOException;
+
+/*
+ * WPBMessagesCache of InMemoryCacheFactory, the messages are indexed per locale with a fingerprint for each locale
+ */
+class InMemoryMessagesCache implements WPBMessagesCache, WPBIncrementalCache, CacheReloader.Loadable {
+
+	private static class LocaleMessages
+	{
+		final ConcurrentHashMap<String, String> messages = new ConcurrentHashMap<String, String>();
+		final Map<String, String> readOnly = Collections.unmodifiableMap(messages);
+		final InMemoryFingerPrint fingerPrint = new InMemoryFingerPrint();
+		volatile String fingerPrintStr;
+		final String lcid;
+		LocaleMessages(String lcid)
+		{
+			this.lcid = lcid;
+			fingerPrintStr = lcid + ":" + fingerPrint.toString();
+		}
+	}
+	
+	private static class Snapshot
+	{
+		final InMemoryRecords<WPBMessage> records = InMemoryRecords.empty();
+		final ConcurrentHashMap<String, LocaleMessages> locales = new ConcurrentHashMap<String, LocaleMessages>();
+		final Set<String> localesView = Collections.unmodifiableSet(locales.keySet());
+		
+		private static boolean isIndexed(WPBMessage message)
+		{
+			return message.getLcid() != null && message.getName() != null;
+		}
+		
+		void add(WPBMessage message)
+		{
+			if (!isIndexed(message))
+			{
+				return;
+			}
+			LocaleMessages localeMessages = locales.get(message.getLcid());
+			if (localeMessages == null)
+			{
+				localeMessages = new LocaleMessages(message.getLcid());
+				locales.put(message.getLcid(), localeMessages);
+			}
+			long hash = hash(message);
+			localeMessages.messages.put(message.getName(), message.getValue() != null ? message.getValue() : "");
+			localeMessages.fingerPrint.add(hash);
+			localeMessages.fingerPrintStr = localeMessages.lcid + ":" + localeMessages.fingerPrint.toString();
+			records.put(message.getExternalKey(), message, hash);
+		}
+		
+		void remove(WPBMessage message)
+		{
+			records.remove(message.getExternalKey());
+			removeFromLocale(message);
+		}
+		
+		/*
+		 * A message that keeps its locale and name is replaced with a single put so the readers always find it,
+		 * otherwise the new message is published before the previous one is dropped
+		 */
+		void replace(WPBMessage previous, WPBMessage message)
+		{
+			boolean sameName = isIndexed(message) && message.getLcid().equals(previous.getLcid()) && message.getName().equals(previous.getName());
+			LocaleMessages localeMessages = sameName ? locales.get(message.getLcid()) : null;
+			if (localeMessages == null)
+			{
+				add(message);
+				if (!isIndexed(message))
+				{
+					records.remove(previous.getExternalKey());
+				}
+				removeFromLocale(previous);
+				return;
+			}
+			long hash = hash(message);
+			localeMessages.messages.put(message.getName(), message.getValue() != null ? message.getValue() : "");
+			localeMessages.fingerPrint.remove(hash(previous));
+			localeMessages.fingerPrint.add(hash);
+			localeMessages.fingerPrintStr = localeMessages.lcid + ":" + localeMessages.fingerPrint.toString();
+			records.put(message.getExternalKey(), message, hash);
+		}
+		
+		private void removeFromLocale(WPBMessage message)
+		{
+			LocaleMessages localeMessages = isIndexed(message) ? locales.get(message.getLcid()) : null;
+			if (localeMessages == null)
+			{
+				return;
+			}
+			localeMessages.messages.remove(message.getName());
+			localeMessages.fingerPrint.remove(hash(message));
+			localeMessages.fingerPrintStr = localeMessages.lcid + ":" + localeMessages.fingerPrint.toString();
+			if (localeMessages.messages.isEmpty())
+			{
+				locales.remove(message.getLcid());
+			}
+		}
+	}
+	
+	private final WPBAdminDataStorage dataStorage;
+	private volatile CacheReloader.Task reloadTask;
+	private volatile Snapshot snapshot = new Snapshot();
+	
+	public InMemoryMessagesCache(WPBAdminDataStorage dataStorage)
+	{
+		this.dataStorage = dataStorage;
+	}
+	
+	private static long hash(WPBMessage message)
+	{
+		return InMemoryFingerPrint.recordHash(message.getExternalKey(), message.getVersion(), message.getLastModified(),
+				message.getName(), message.getValue(), message.getLcid(), message.getIsTranslated());
+	}
+	
+	static String toLcid(Locale locale)
+	{
+		String country = locale.getCountry();
+		if (country != null && country.length() > 0)
+		{
+			return locale.getLanguage() + "_" + country;
+		}
+		return locale.getLanguage();
+	}
+	
+	public Map<String, String> getAllMessages(Locale locale) throws WPBIOException
+	{
+		return getAllMessages(toLcid(locale));
+	}
+	
+	public Map<String, String> getAllMessages(String lcid) throws WPBIOException
+	{
+		LocaleMessages localeMessages = (lcid != null) ? snapshot.locales.get(lcid) : null;
+		if (localeMessages == null)
+		{
+			return Collections.emptyMap();
+		}
+		return localeMessages.readOnly;
+	}
+	
+	public Set<String> getSupportedLocales()
+	{
+		return snapshot.localesView;
+	}
+	
+	public String getFingerPrint(Locale locale)
+	{
+		String lcid = toLcid(locale);
+		LocaleMessages localeMessages = snapshot.locales.get(lcid);
+		if (localeMessages == null)
+		{
+			// a locale without messages, the fingerprint changes when it gets its first message
+			return lcid + ":" + new InMemoryFingerPrint().toString();
+		}
+		return localeMessages.fingerPrintStr;
+	}
+	
+	public void Refresh() throws WPBIOException
+	{
+		CacheReloader.refresh(this);
+	}
+	
+	public void setReloadTask(CacheReloader.Task task)
+	{
+		reloadTask = task;
+	}
+	
+	public CacheReloader.Task getReloadTask()
+	{
+		return reloadTask;
+	}
+	
+	public synchronized void load() throws WPBIOException
+	{
+		Snapshot result = new Snapshot();
+		for(WPBMessage message: dataStorage.getAllRecords(WPBMessage.class))
+		{
+			result.add(message);
+		}
+		snapshot = result;
+	}
+	
+	public synchronized void upsert(String externalKey) throws WPBIOException
+	{
+		WPBMessage message = dataStorage.get(externalKey, WPBMessage.class);
+		if (message == null)
+		{
+			evict(externalKey);
+			return;
+		}
+		Snapshot current = snapshot;
+		WPBMessage previous = current.records.get(externalKey);
+		if (previous != null)
+		{
+			current.replace(previous, message);
+		} else
+		{
+			current.add(message);
+		}
+	}
+	
+	public synchronized void evict(String externalKey) throws WPBIOException
+	{
+		Snapshot current = snapshot;
+		WPBMessage previous = current.records.get(externalKey);
+		if (previous != null)
+		{
+			current.remove(previous);
+		}
+	}
+	
+	public String getFingerPrint()
+	{
+		return snapshot.records.getFingerPrint();
+	}
+}
@@ -0,0 +1,97 @@
+/*
+ *   Copyright 2014 Webpagebytes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package com.webpagebytes.cms.engine;
+
+import com.webpagebytes.cms.WPBAdminDataStorage;
+import com.webpagebytes.cms.WPBIncrementalCache;
+import com.webpagebytes.cms.WPBPageModulesCache;
+import com.webpagebytes.cms.cmsdata.WPBPageModule;
+import com.webpagebytes.cms.exception.WPBIOException;
+
+/*
+ * WPBPageModulesCache of InMemoryCacheFactory. Refresh() loads the records in a new map that replaces the current one,
+ * upsert and evict change only one record.
+ */
+class InMemoryPageModulesCache implements WPBPageModulesCache, WPBIncrementalCache, CacheReloader.Loadable {
+
+	private final WPBAdminDataStorage dataStorage;
+	private volatile CacheReloader.Task reloadTask;
+	private volatile InMemoryRecords<WPBPageModule> records = InMemoryRecords.empty();
+	
+	public InMemoryPageModulesCache(WPBAdminDataStorage dataStorage)
+	{
+		this.dataStorage = dataStorage;
+	}
+	
+	private static long hash(WPBPageModule module)
+	{
+		return InMemoryFingerPrint.recordHash(module.getExternalKey(), module.getVersion(), module.getLastModified(),
+				module.getName(), module.getHtmlSource(), module.getIsTemplateSource(), module.getIsFragmentCached(), module.getFragmentCacheParams());
+	}
+	
+	public WPBPageModule getByExternalKey(String externalKey) throws WPBIOException
+	{
+		return records.get(externalKey);
+	}
+	
+	public void Refresh() throws WPBIOException
+	{
+		CacheReloader.refresh(this);
+	}
+	
+	public void setReloadTask(CacheReloader.Task task)
+	{
+		reloadTask = task;
+	}
+	
+	public CacheReloader.Task getReloadTask()
+	{
+		return reloadTask;
+	}
+	
+	public synchronized void load() throws WPBIOException
+	{
+		InMemoryRecords.Builder<WPBPageModule> builder = new InMemoryRecords.Builder<WPBPageModule>();
+		for(WPBPageModule module: dataStorage.getAllRecords(WPBPageModule.class))
+		{
+			builder.add(module.getExternalKey(), module, hash(module));
+		}
+		records = builder.build();
+	}
+	
+	public synchronized void upsert(String externalKey) throws WPBIOException
+	{
+		WPBPageModule module = dataStorage.get(externalKey, WPBPageModule.class);
+		if (module == null)
+		{
+			records.remove(externalKey);
+		} else
+		{
+			records.put(externalKey, module, hash(module));
+		}
+	}
+	
+	public synchronized void evict(String externalKey) throws WPBIOException
+	{
+		records.remove(externalKey);
+	}
+	
+	public String getFingerPrint()
+	{
+		return records.getFingerPrint();
+	}
+}
@@ -0,0 +1,97 @@
+/*
+ *   Copyright 2014 Webpagebytes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package com.webpagebytes.cms.engine;
+
+import com.webpagebytes.cms.WPBAdminDataStorage;
+import com.webpagebytes.cms.WPBIncrementalCache;
+import com.webpagebytes.cms.WPBPagesCache;
+import com.webpagebytes.cms.cmsdata.WPBPage;
+import com.webpagebytes.cms.exception.WPBIOException;
+
+/*
+ * WPBPagesCache of InMemoryCacheFactory. Refresh() loads the records in a new map that replaces the current one,
+ * upsert and evict change only one record.
+ */
+class InMemoryPagesCache implements WPBPagesCache, WPBIncrementalCache, CacheReloader.Loadable {
+
+	private final WPBAdminDataStorage dataStorage;
+	private volatile CacheReloader.Task reloadTask;
+	private volatile InMemoryRecords<WPBPage> records = InMemoryRecords.empty();
+	
+	public InMemoryPagesCache(WPBAdminDataStorage dataStorage)
+	{
+		this.dataStorage = dataStorage;
+	}
+	
+	private static long hash(WPBPage page)
+	{
+		return InMemoryFingerPrint.recordHash(page.getExternalKey(), page.getVersion(), page.getLastModified(),
+				page.getName(), page.getHtmlSource(), page.getIsTemplateSource(), page.getContentType(), page.getPageModelProvider(), page.getHash());
+	}
+	
+	public WPBPage getByExternalKey(String externalKey) throws WPBIOException
+	{
+		return records.get(externalKey);
+	}
+	
+	public void Refresh() throws WPBIOException
+	{
+		CacheReloader.refresh(this);
+	}
+	
+	public void setReloadTask(CacheReloader.Task task)
+	{
+		reloadTask = task;
+	}
+	
+	public CacheReloader.Task getReloadTask()
+	{
+		return reloadTask;
+	}
+	
+	public synchronized void load() throws WPBIOException
+	{
+		InMemoryRecords.Builder<WPBPage> builder = new InMemoryRecords.Builder<WPBPage>();
+		for(WPBPage page: dataStorage.getAllRecords(WPBPage.class))
+		{
+			builder.add(page.getExternalKey(), page, hash(page));
+		}
+		records = builder.build();
+	}
+	
+	public synchronized void upsert(String externalKey) throws WPBIOException
+	{
+		WPBPage page = dataStorage.get(externalKey, WPBPage.class);
+		if (page == null)
+		{
+			records.remove(externalKey);
+		} else
+		{
+			records.put(externalKey, page, hash(page));
+		}
+	}
+	
+	public synchronized void evict(String externalKey) throws WPBIOException
+	{
+		records.remove(externalKey);
+	}
+	
+	public String getFingerPrint()
+	{
+		return records.getFingerPrint();
+	}
+}
@@ -0,0 +1,186 @@
+/*
+ *   Copyright 2014 Webpagebytes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package com.webpagebytes.cms.engine;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.webpagebytes.cms.WPBAdminDataStorage;
+import com.webpagebytes.cms.WPBIncrementalCache;
+import com.webpagebytes.cms.WPBParametersCache;
+import com.webpagebytes.cms.cmsdata.WPBParameter;
+import com.webpagebytes.cms.exception.WPBIOException;
+
+/*
+ * WPBParametersCache of InMemoryCacheFactory, the parameters of each owner are indexed in a list
+ * that is replaced, not changed, when one of the owner parameters changes
+ */
+class InMemoryParametersCache implements WPBParametersCache, WPBIncrementalCache, CacheReloader.Loadable {
+
+	private static class Snapshot
+	{
+		final InMemoryRecords<WPBParameter> records;
+		final ConcurrentHashMap<String, List<WPBParameter>> byOwner = new ConcurrentHashMap<String, List<WPBParameter>>();
+		Snapshot(InMemoryRecords<WPBParameter> records)
+		{
+			this.records = records;
+			Map<String, List<WPBParameter>> lists = new HashMap<String, List<WPBParameter>>();
+			for(WPBParameter parameter: records.getMap().values())
+			{
+				String owner = ownerKey(parameter.getOwnerExternalKey());
+				List<WPBParameter> list = lists.get(owner);
+				if (list == null)
+				{
+					list = new ArrayList<WPBParameter>();
+					lists.put(owner, list);
+				}
+				list.add(parameter);
+			}
+			for(Map.Entry<String, List<WPBParameter>> entry: lists.entrySet())
+			{
+				byOwner.put(entry.getKey(), Collections.unmodifiableList(entry.getValue()));
+			}
+		}
+		
+		void replace(String owner, WPBParameter previous, WPBParameter parameter)
+		{
+			List<WPBParameter> current = byOwner.get(owner);
+			List<WPBParameter> list = new ArrayList<WPBParameter>();
+			if (current != null)
+			{
+				for(WPBParameter item: current)
+				{
+					if (item != previous)
+					{
+						list.add(item);
+					}
+				}
+			}
+			if (parameter != null)
+			{
+				list.add(parameter);
+			}
+			if (list.isEmpty())
+			{
+				byOwner.remove(owner);
+			} else
+			{
+				byOwner.put(owner, Collections.unmodifiableList(list));
+			}
+		}
+	}
+	
+	private final WPBAdminDataStorage dataStorage;
+	private volatile CacheReloader.Task reloadTask;
+	private volatile Snapshot snapshot = new Snapshot(InMemoryRecords.<WPBParameter>empty());
+	
+	public InMemoryParametersCache(WPBAdminDataStorage dataStorage)
+	{
+		this.dataStorage = dataStorage;
+	}
+	
+	private static String ownerKey(String ownerExternalKey)
+	{
+		return (ownerExternalKey != null) ? ownerExternalKey : "";
+	}
+	
+	private static long hash(WPBParameter parameter)
+	{
+		return InMemoryFingerPrint.recordHash(parameter.getExternalKey(), parameter.getVersion(), parameter.getLastModified(),
+				parameter.getName(), parameter.getValue(), parameter.getOwnerExternalKey(), parameter.getOverwriteFromUrl(), parameter.getLocaleType());
+	}
+	
+	public WPBParameter getByExternalKey(String externalKey) throws WPBIOException
+	{
+		return snapshot.records.get(externalKey);
+	}
+	
+	public List<WPBParameter> getAllForOwner(String ownerExternalKey) throws WPBIOException
+	{
+		List<WPBParameter> result = snapshot.byOwner.get(ownerKey(ownerExternalKey));
+		if (result == null)
+		{
+			return Collections.emptyList();
+		}
+		return result;
+	}
+	
+	public void Refresh() throws WPBIOException
+	{
+		CacheReloader.refresh(this);
+	}
+	
+	public void setReloadTask(CacheReloader.Task task)
+	{
+		reloadTask = task;
+	}
+	
+	public CacheReloader.Task getReloadTask()
+	{
+		return reloadTask;
+	}
+	
+	public synchronized void load() throws WPBIOException
+	{
+		InMemoryRecords.Builder<WPBParameter> builder = new InMemoryRecords.Builder<WPBParameter>();
+		for(WPBParameter parameter: dataStorage.getAllRecords(WPBParameter.class))
+		{
+			builder.add(parameter.getExternalKey(), parameter, hash(parameter));
+		}
+		snapshot = new Snapshot(builder.build());
+	}
+	
+	public synchronized void upsert(String externalKey) throws WPBIOException
+	{
+		WPBParameter parameter = dataStorage.get(externalKey, WPBParameter.class);
+		if (parameter == null)
+		{
+			evict(externalKey);
+			return;
+		}
+		Snapshot current = snapshot;
+		WPBParameter previous = current.records.get(externalKey);
+		String owner = ownerKey(parameter.getOwnerExternalKey());
+		if (previous != null && !ownerKey(previous.getOwnerExternalKey()).equals(owner))
+		{
+			current.replace(ownerKey(previous.getOwnerExternalKey()), previous, null);
+			previous = null;
+		}
+		current.replace(owner, previous, parameter);
+		current.records.put(externalKey, parameter, hash(parameter));
+	}
+	
+	public synchronized void evict(String externalKey) throws WPBIOException
+	{
+		Snapshot current = snapshot;
+		WPBParameter previous = current.records.get(externalKey);
+		if (previous != null)
+		{
+			current.replace(ownerKey(previous.getOwnerExternalKey()), previous, null);
+			current.records.remove(externalKey);
+		}
+	}
+	
+	public String getFingerPrint()
+	{
+		return snapshot.records.getFingerPrint();
+	}
+}
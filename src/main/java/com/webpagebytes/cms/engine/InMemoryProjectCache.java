@@ -0,0 +1,137 @@
+/*
+ *   Copyright 2014 Webpagebytes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package com.webpagebytes.cms.engine;
+
+import java.util.Collections;
+import java.util.Set;
+
+import com.webpagebytes.cms.WPBAdminDataStorage;
+import com.webpagebytes.cms.WPBIncrementalCache;
+import com.webpagebytes.cms.WPBProjectCache;
+import com.webpagebytes.cms.cmsdata.WPBProject;
+import com.webpagebytes.cms.exception.WPBIOException;
+import com.webpagebytes.cms.utility.Pair;
+
+/*
+ * WPBProjectCache of InMemoryCacheFactory. When the project record does not exist yet the
+ * cache uses the same defaults as the languages administration page (en).
+ */
+class InMemoryProjectCache implements WPBProjectCache, WPBIncrementalCache, CacheReloader.Loadable {
+
+	private static final String DEFAULT_LANGUAGE = "en";
+	
+	private static class Snapshot
+	{
+		final WPBProject project;
+		final String defaultLanguage;
+		final Pair<String, String> defaultLocale;
+		final Set<String> supportedLocales;
+		final String fingerPrint;
+		
+		Snapshot(WPBProject project)
+		{
+			this.project = project;
+			String language = (project != null && project.getDefaultLanguage() != null) ? project.getDefaultLanguage() : DEFAULT_LANGUAGE;
+			defaultLanguage = language;
+			int pos = language.indexOf('_');
+			if (pos > 0)
+			{
+				defaultLocale = new Pair<String, String>(language.substring(0, pos), language.substring(pos+1));
+			} else
+			{
+				defaultLocale = new Pair<String, String>(language, "");
+			}
+			Set<String> locales = (project != null) ? project.getSupportedLanguagesSet() : null;
+			supportedLocales = (locales != null) ? Collections.unmodifiableSet(locales) : Collections.singleton(DEFAULT_LANGUAGE);
+			InMemoryFingerPrint builder = new InMemoryFingerPrint();
+			if (project != null)
+			{
+				builder.add(InMemoryFingerPrint.recordHash(project.getExternalKey(), project.getVersion(), project.getLastModified(),
+						project.getSupportedLanguages(), project.getDefaultLanguage()));
+			}
+			fingerPrint = builder.toString();
+		}
+	}
+	
+	private final WPBAdminDataStorage dataStorage;
+	private volatile CacheReloader.Task reloadTask;
+	private volatile Snapshot snapshot = new Snapshot(null);
+	
+	public InMemoryProjectCache(WPBAdminDataStorage dataStorage)
+	{
+		this.dataStorage = dataStorage;
+	}
+	
+	public String getDefaultLanguage() throws WPBIOException
+	{
+		return snapshot.defaultLanguage;
+	}
+	
+	public Pair<String, String> getDefaultLocale() throws WPBIOException
+	{
+		return snapshot.defaultLocale;
+	}
+	
+	public Set<String> getSupportedLocales() throws WPBIOException
+	{
+		return snapshot.supportedLocales;
+	}
+	
+	public WPBProject getProject() throws WPBIOException
+	{
+		return snapshot.project;
+	}
+	
+	public void Refresh() throws WPBIOException
+	{
+		CacheReloader.refresh(this);
+	}
+	
+	public void setReloadTask(CacheReloader.Task task)
+	{
+		reloadTask = task;
+	}
+	
+	public CacheReloader.Task getReloadTask()
+	{
+		return reloadTask;
+	}
+	
+	public synchronized void load() throws WPBIOException
+	{
+		snapshot = new Snapshot(dataStorage.get(WPBProject.PROJECT_KEY, WPBProject.class));
+	}
+	
+	public void upsert(String externalKey) throws WPBIOException
+	{
+		// there is only one project record
+		load();
+	}
+	
+	public synchronized void evict(String externalKey) throws WPBIOException
+	{
+		if (WPBProject.PROJECT_KEY.equals(externalKey))
+		{
+			snapshot = new Snapshot(null);
+		}
+	}
+	
+	public String getFingerPrint()
+	{
+		return snapshot.fingerPrint;
+	}
+}
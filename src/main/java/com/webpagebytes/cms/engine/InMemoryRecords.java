@@ -0,0 +1,117 @@
+/*
+ *   Copyright 2014 Webpagebytes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package com.webpagebytes.cms.engine;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * The records of one type, keyed by externalKey.
+ * Reads do not take any lock. Changes are done by the owning cache while it holds its own lock, the fingerprint
+ * is published after the map was changed so a reader that sees a new fingerprint also sees the new record.
+ */
+class InMemoryRecords<T> {
+
+	private final ConcurrentHashMap<String, T> map = new ConcurrentHashMap<String, T>();
+	private final ConcurrentHashMap<String, Long> hashes = new ConcurrentHashMap<String, Long>();
+	private final InMemoryFingerPrint fingerPrint = new InMemoryFingerPrint();
+	private volatile String fingerPrintStr = fingerPrint.toString();
+
+	public static <T> InMemoryRecords<T> empty()
+	{
+		return new InMemoryRecords<T>();
+	}
+
+	public T get(String externalKey)
+	{
+		return (externalKey != null) ? map.get(externalKey) : null;
+	}
+
+	public Map<String, T> getMap()
+	{
+		return Collections.unmodifiableMap(map);
+	}
+
+	public String getFingerPrint()
+	{
+		return fingerPrintStr;
+	}
+
+	public int size()
+	{
+		return map.size();
+	}
+
+	/*
+	 * Adds or replaces a record, returns the previous record with the same externalKey
+	 */
+	public T put(String externalKey, T record, long recordHash)
+	{
+		if (externalKey == null)
+		{
+			return null;
+		}
+		T previous = map.put(externalKey, record);
+		Long previousHash = hashes.put(externalKey, recordHash);
+		if (previousHash != null)
+		{
+			fingerPrint.remove(previousHash);
+		}
+		fingerPrint.add(recordHash);
+		fingerPrintStr = fingerPrint.toString();
+		return previous;
+	}
+
+	/*
+	 * Removes a record, returns the removed record or null if there was no record with the externalKey
+	 */
+	public T remove(String externalKey)
+	{
+		if (externalKey == null)
+		{
+			return null;
+		}
+		T previous = map.remove(externalKey);
+		Long previousHash = hashes.remove(externalKey);
+		if (previousHash != null)
+		{
+			fingerPrint.remove(previousHash);
+			fingerPrintStr = fingerPrint.toString();
+		}
+		return previous;
+	}
+
+	/*
+	 * Helper to build a records instance, the externalKey of each record is passed by the caller
+	 */
+	public static class Builder<T>
+	{
+		private final InMemoryRecords<T> records = new InMemoryRecords<T>();
+
+		public Builder<T> add(String externalKey, T record, long recordHash)
+		{
+			records.put(externalKey, record, recordHash);
+			return this;
+		}
+
+		public InMemoryRecords<T> build()
+		{
+			return records;
+		}
+	}
+}
@@ -0,0 +1,199 @@
+/*
+ *   Copyright 2014 Webpagebytes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package com.webpagebytes.cms.engine;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.webpagebytes.cms.WPBAdminDataStorage;
+import com.webpagebytes.cms.WPBIncrementalCache;
+import com.webpagebytes.cms.WPBUrisCache;
+import com.webpagebytes.cms.cmsdata.WPBUri;
+import com.webpagebytes.cms.exception.WPBIOException;
+
+/*
+ * WPBUrisCache of InMemoryCacheFactory, keeps the uris by externalKey and by path for each HTTP verb
+ */
+class InMemoryUrisCache extends WPBUrisCache implements WPBIncrementalCache, CacheReloader.Loadable {
+
+	private static final int HTTP_INDEX_COUNT = HTTP_PATCH_INDEX + 1;
+	
+	private class Snapshot
+	{
+		final InMemoryRecords<WPBUri> records;
+		final ConcurrentHashMap<String, WPBUri>[] byPath;
+		final Set<String>[] paths;
+		
+		@SuppressWarnings("unchecked")
+		Snapshot(InMemoryRecords<WPBUri> records)
+		{
+			this.records = records;
+			byPath = new ConcurrentHashMap[HTTP_INDEX_COUNT];
+			paths = new Set[HTTP_INDEX_COUNT];
+			for(int i = 0; i < HTTP_INDEX_COUNT; i++)
+			{
+				byPath[i] = new ConcurrentHashMap<String, WPBUri>();
+				paths[i] = Collections.unmodifiableSet(byPath[i].keySet());
+			}
+			for(WPBUri uri: records.getMap().values())
+			{
+				addPath(uri);
+			}
+		}
+		
+		private int index(WPBUri uri)
+		{
+			if (uri.getUri() == null || uri.getHttpOperation() == null)
+			{
+				return -1;
+			}
+			int index = httpToOperationIndex(uri.getHttpOperation());
+			return (index < HTTP_INDEX_COUNT) ? index : -1;
+		}
+		
+		void addPath(WPBUri uri)
+		{
+			int index = index(uri);
+			if (index >= 0)
+			{
+				byPath[index].put(uri.getUri(), uri);
+			}
+		}
+		
+		void removePath(WPBUri uri)
+		{
+			int index = index(uri);
+			if (index >= 0)
+			{
+				byPath[index].remove(uri.getUri(), uri);
+			}
+		}
+		
+		/*
+		 * The new uri is published before the previous one is removed. When the path and verb did not change
+		 * the put replaces the previous uri, and the remove does nothing because it only drops the previous value.
+		 */
+		void replacePath(WPBUri previous, WPBUri uri)
+		{
+			addPath(uri);
+			if (previous != uri)
+			{
+				removePath(previous);
+			}
+		}
+	}
+	
+	private final WPBAdminDataStorage dataStorage;
+	private volatile CacheReloader.Task reloadTask;
+	private volatile Snapshot snapshot = new Snapshot(InMemoryRecords.<WPBUri>empty());
+	
+	public InMemoryUrisCache(WPBAdminDataStorage dataStorage)
+	{
+		this.dataStorage = dataStorage;
+	}
+	
+	private static long hash(WPBUri uri)
+	{
+		return InMemoryFingerPrint.recordHash(uri.getExternalKey(), uri.getVersion(), uri.getLastModified(),
+				uri.getUri(), uri.getHttpOperation(), uri.getEnabled(), uri.getResourceType(), uri.getResourceExternalKey(), uri.getControllerClass());
+	}
+	
+	public WPBUri getByExternalKey(String externalKey) throws WPBIOException
+	{
+		return snapshot.records.get(externalKey);
+	}
+	
+	public WPBUri get(String uri, int httpIndex) throws WPBIOException
+	{
+		if (uri == null || httpIndex < 0 || httpIndex >= HTTP_INDEX_COUNT)
+		{
+			return null;
+		}
+		return snapshot.byPath[httpIndex].get(uri);
+	}
+	
+	public Set<String> getAllUris(int httpIndex) throws WPBIOException
+	{
+		if (httpIndex < 0 || httpIndex >= HTTP_INDEX_COUNT)
+		{
+			return Collections.emptySet();
+		}
+		return snapshot.paths[httpIndex];
+	}
+	
+	public void Refresh() throws WPBIOException
+	{
+		CacheReloader.refresh(this);
+	}
+	
+	public void setReloadTask(CacheReloader.Task task)
+	{
+		reloadTask = task;
+	}
+	
+	public CacheReloader.Task getReloadTask()
+	{
+		return reloadTask;
+	}
+	
+	public synchronized void load() throws WPBIOException
+	{
+		InMemoryRecords.Builder<WPBUri> builder = new InMemoryRecords.Builder<WPBUri>();
+		for(WPBUri uri: dataStorage.getAllRecords(WPBUri.class))
+		{
+			builder.add(uri.getExternalKey(), uri, hash(uri));
+		}
+		snapshot = new Snapshot(builder.build());
+	}
+	
+	public synchronized void upsert(String externalKey) throws WPBIOException
+	{
+		WPBUri uri = dataStorage.get(externalKey, WPBUri.class);
+		if (uri == null)
+		{
+			evict(externalKey);
+			return;
+		}
+		Snapshot current = snapshot;
+		WPBUri previous = current.records.get(externalKey);
+		if (previous != null)
+		{
+			current.replacePath(previous, uri);
+		} else
+		{
+			current.addPath(uri);
+		}
+		current.records.put(externalKey, uri, hash(uri));
+	}
+	
+	public synchronized void evict(String externalKey) throws WPBIOException
+	{
+		Snapshot current = snapshot;
+		WPBUri previous = current.records.get(externalKey);
+		if (previous != null)
+		{
+			current.removePath(previous);
+			current.records.remove(externalKey);
+		}
+	}
+	
+	public String getFingerPrint()
+	{
+		return snapshot.records.getFingerPrint();
+	}
+}
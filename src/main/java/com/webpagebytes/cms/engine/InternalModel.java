@@ -28,6 +28,7 @@ public class InternalModel implements WPBModel {
 
     protected WPBCmsModel cmsModel = new WPBCmsModel();
     protected WPBApplicationModel applicationModel = new WPBApplicationModel();
+    protected String outputCacheFingerPrint;
     
     public WPBCmsModel getCmsModel()
     {
@@ -38,6 +39,18 @@ public class InternalModel implements WPBModel {
         return applicationModel;
     }
 
+    /*
+     * Page output cache fingerprint read before the records of the request were fetched, null if it was not read
+     */
+    public String getOutputCacheFingerPrint()
+    {
+        return outputCacheFingerPrint;
+    }
+    public void setOutputCacheFingerPrint(String outputCacheFingerPrint)
+    {
+        this.outputCacheFingerPrint = outputCacheFingerPrint;
+    }
+
     public void transferModel(Map<String, Object> rootObject)
     {
         Set<String> keys = cmsModel.keySet();
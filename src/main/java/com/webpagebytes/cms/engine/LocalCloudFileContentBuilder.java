@@ -18,6 +18,7 @@ package com.webpagebytes.cms.engine;
 
 import java.io.InputStream;
 import java.nio.charset.Charset;
+import java.nio.file.Path;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -27,6 +28,7 @@ import org.apache.commons.io.IOUtils;
 import com.webpagebytes.cms.WPBFileInfo;
 import com.webpagebytes.cms.WPBFilePath;
 import com.webpagebytes.cms.WPBFileStorage;
+import com.webpagebytes.cms.WPBLocalFileStorage;
 import com.webpagebytes.cms.exception.WPBIOException;
 import com.webpagebytes.cms.utility.CmsBase64Utility;
 
@@ -54,8 +56,15 @@ public class LocalCloudFileContentBuilder {
 		InputStream is = null;
 		try
 		{
-			is = cloudFileStorage.getFileContent(cloudFile);
-			IOUtils.copy(is, response.getOutputStream());
+			Path localPath = (cloudFileStorage instanceof WPBLocalFileStorage) ? ((WPBLocalFileStorage)cloudFileStorage).getLocalPath(cloudFile) : null;
+			if (localPath != null)
+			{
+				FileChannelTransfer.transfer(localPath, 0, Long.MAX_VALUE, response.getOutputStream());
+			} else
+			{
+				is = cloudFileStorage.getFileContent(cloudFile);
+				IOUtils.copy(is, response.getOutputStream());
+			}
 			WPBFileInfo fileInfo = cloudFileStorage.getFileInfo(cloudFile);
 			response.setContentType(fileInfo.getContentType());
 			
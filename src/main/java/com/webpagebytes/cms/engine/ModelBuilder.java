@@ -16,12 +16,13 @@
 
 package com.webpagebytes.cms.engine;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.logging.Level;
-import java.util.logging.Logger;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.servlet.http.HttpServletRequest;
 
@@ -38,15 +39,60 @@ import com.webpagebytes.cms.utility.Pair;
 import com.webpagebytes.cms.utility.CmsConfiguration;
 import com.webpagebytes.cms.utility.CmsConfiguration.WPBSECTION;
 import com.webpagebytes.cms.utility.CmsConfigurationFactory;
+import com.webpagebytes.cms.utility.WPBTrace;
 
 public class ModelBuilder {
 
-	private static final Logger log = Logger.getLogger(ModelBuilder.class.getName());
 	private WPBCacheInstances cacheInstances;
 	private CmsConfiguration configuration;
 	private String baseModelUrlPath;
 	Map<String, String> setupGlobalParams;
 	public static final String BASE_MODEL_URL_PATH_HEADER = "X-BaseModelUrlPath";
+	
+	/*
+	 * The parameters of an owner (uri, page or "" for globals) as an immutable name to value map,
+	 * plus the parameters that have to be looked at for each request because they can be overwritten from the url
+	 * or carry the locale. The requests get the map wrapped in a CopyOnWriteModelMap.
+	 */
+	private static class OwnerParameters
+	{
+		final Map<String, String> values;
+		final WPBParameter[] urlParameters;
+		OwnerParameters(List<WPBParameter> parameters)
+		{
+			Map<String, String> map = new HashMap<String, String>();
+			List<WPBParameter> urlParams = new ArrayList<WPBParameter>();
+			for(WPBParameter param: parameters)
+			{
+				map.put(param.getName(), param.getValue());
+				Integer overwrite = param.getOverwriteFromUrl();
+				Integer localeType = param.getLocaleType();
+				if ((overwrite != null && overwrite == 1) || 
+					(localeType != null && (localeType == WPBParameter.PARAMETER_LOCALE_LANGUAGE || localeType == WPBParameter.PARAMETER_LOCALE_COUNTRY)))
+				{
+					urlParams.add(param);
+				}
+			}
+			this.values = Collections.unmodifiableMap(map);
+			this.urlParameters = urlParams.toArray(new WPBParameter[urlParams.size()]);
+		}
+	}
+	
+	/*
+	 * The OwnerParameters built for one fingerprint of the parameters cache
+	 */
+	private static class ParametersSnapshot
+	{
+		final String fingerPrint;
+		final ConcurrentHashMap<String, OwnerParameters> owners = new ConcurrentHashMap<String, OwnerParameters>();
+		volatile Map<String, String> globals;
+		ParametersSnapshot(String fingerPrint)
+		{
+			this.fingerPrint = fingerPrint;
+		}
+	}
+	private volatile ParametersSnapshot parametersSnapshot = new ParametersSnapshot(null);
+	
 	public ModelBuilder(WPBCacheInstances cacheInstances)
 	{
 		this.cacheInstances = cacheInstances;
@@ -74,15 +120,35 @@ public class ModelBuilder {
 	{
 		WPBParametersCache parametersCache = cacheInstances.getParameterCache();
 		
-		List<WPBParameter> wbPageParams = parametersCache.getAllForOwner(page.getExternalKey());
-		Map<String, String> pageParams = new HashMap<String, String>();
-		for(WPBParameter param: wbPageParams)
+		OwnerParameters pageParams = getOwnerParameters(parametersCache, getParametersSnapshot(parametersCache), page.getExternalKey());
+		model.getCmsModel().put(WPBModel.PAGE_PARAMETERS_KEY, new CopyOnWriteModelMap<String, String>(pageParams.values));	
+		
+	}
+
+	private ParametersSnapshot getParametersSnapshot(WPBParametersCache parametersCache)
+	{
+		String fingerPrint = parametersCache.getFingerPrint();
+		ParametersSnapshot snapshot = parametersSnapshot;
+		if (fingerPrint == null || !fingerPrint.equals(snapshot.fingerPrint))
 		{
-			pageParams.put(param.getName(), param.getValue());
+			snapshot = new ParametersSnapshot(fingerPrint);
+			parametersSnapshot = snapshot;
 		}
-				
-		model.getCmsModel().put(WPBModel.PAGE_PARAMETERS_KEY, pageParams);	
-		
+		return snapshot;
+	}
+	
+	private OwnerParameters getOwnerParameters(WPBParametersCache parametersCache, ParametersSnapshot snapshot, String owner) throws WPBException
+	{
+		OwnerParameters result = (owner != null) ? snapshot.owners.get(owner) : null;
+		if (result == null)
+		{
+			result = new OwnerParameters(parametersCache.getAllForOwner(owner));
+			if (owner != null)
+			{
+				snapshot.owners.put(owner, result);
+			}
+		}
+		return result;
 	}
 
 	private void populateUriParameters(HttpServletRequest request, String uriExternalKey,
@@ -100,34 +166,31 @@ public class ModelBuilder {
 		Set<String> supportedLanguages = projectCache.getSupportedLocales();
 		
 		Map<String, String> urlPatternParams = urlMatcherResult.getPatternParams();
-		Map<String, String> uriParams = new HashMap<String, String>();
+		OwnerParameters ownerParams = getOwnerParameters(parametersCache, getParametersSnapshot(parametersCache), uriExternalKey);
+		Map<String, String> uriParams = new CopyOnWriteModelMap<String, String>(ownerParams.values);
 		
-		List<WPBParameter> wbUriParams = parametersCache.getAllForOwner(uriExternalKey);
-		for(WPBParameter param: wbUriParams)
+		if (urlPatternParams != null)
 		{
-			String paramKey = param.getName();
-			if (urlPatternParams == null)
-			{
-				uriParams.put(paramKey, param.getValue());
-				continue;
-			}
-			if (urlPatternParams.containsKey(paramKey) && param.getOverwriteFromUrl() == 1)
-			{
-				uriParams.put(paramKey, urlPatternParams.get(paramKey));
-			} else
+			// only the parameters that depend on the url are looked at, the others are shared between requests
+			for(WPBParameter param: ownerParams.urlParameters)
 			{
-				uriParams.put(paramKey, param.getValue());
-			}
-			if (param.getLocaleType() == WPBParameter.PARAMETER_LOCALE_LANGUAGE)
-			{
-				hasLocaleParams = true;
-				languageParam = urlPatternParams.get(paramKey);
+				String paramKey = param.getName();
+				Integer localeType = param.getLocaleType();
+				if (urlPatternParams.containsKey(paramKey) && Integer.valueOf(1).equals(param.getOverwriteFromUrl()))
+				{
+					uriParams.put(paramKey, urlPatternParams.get(paramKey));
+				}
+				if (localeType != null && localeType == WPBParameter.PARAMETER_LOCALE_LANGUAGE)
+				{
+					hasLocaleParams = true;
+					languageParam = urlPatternParams.get(paramKey);
+				}
+				if (localeType != null && localeType == WPBParameter.PARAMETER_LOCALE_COUNTRY)
+				{
+					hasLocaleParams = true;
+					countryParam = urlPatternParams.get(paramKey);
+				}			
 			}
-			if (param.getLocaleType() == WPBParameter.PARAMETER_LOCALE_COUNTRY)
-			{
-				hasLocaleParams = true;
-				countryParam = urlPatternParams.get(paramKey);
-			}			
 		}
 		
 		if (languageParam == null || countryParam == null)
@@ -164,15 +227,18 @@ public class ModelBuilder {
 	public void populateGlobalParameters(InternalModel model) throws WPBException
 	{
 		// populate the GLOBALS_KEY
-		Map<String, String> globalParams = new HashMap<String, String>();
-		globalParams.putAll(setupGlobalParams);
-		
-		List<WPBParameter> wbGlobalParams = cacheInstances.getParameterCache().getAllForOwner("");
-		for(WPBParameter param: wbGlobalParams)
+		WPBParametersCache parametersCache = cacheInstances.getParameterCache();
+		ParametersSnapshot snapshot = getParametersSnapshot(parametersCache);
+		Map<String, String> globalParams = snapshot.globals;
+		if (globalParams == null)
 		{
-			globalParams.put(param.getName(), param.getValue());
+			Map<String, String> map = new HashMap<String, String>();
+			map.putAll(setupGlobalParams);
+			map.putAll(getOwnerParameters(parametersCache, snapshot, "").values);
+			globalParams = Collections.unmodifiableMap(map);
+			snapshot.globals = globalParams;
 		}
-		model.getCmsModel().put(WPBModel.GLOBALS_KEY, globalParams);
+		model.getCmsModel().put(WPBModel.GLOBALS_KEY, new CopyOnWriteModelMap<String, String>(globalParams));
 		
 	}
 	private String getProtocol(String url)
@@ -256,7 +322,7 @@ public class ModelBuilder {
 				}
 			}
 		}
-		log.log(Level.INFO, "Build WBModel.REQUEST_KEY for url:" + url);
+		WPBTrace.event("model", "requestUrl", url);
 	
 		String protocol = getProtocol(url);
 		String domain = getDomain(url);
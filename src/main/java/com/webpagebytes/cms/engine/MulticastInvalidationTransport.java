@@ -0,0 +1,156 @@
+/*
+ *   Copyright 2014 Webpagebytes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package com.webpagebytes.cms.engine;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.MulticastSocket;
+import java.net.SocketException;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.webpagebytes.cms.WPBInvalidationEvent;
+import com.webpagebytes.cms.WPBInvalidationTransport;
+
+/*
+ * WPBInvalidationTransport that sends the events as UDP multicast datagrams, for nodes running in the same network.
+ * Configuration parameters: cache_invalidation_group, cache_invalidation_port, cache_invalidation_ttl and
+ * cache_invalidation_secret.
+ * A lost datagram is not sent again, the caches of the node that lost it are updated by the next heartbeat.
+ * Anyone that can send datagrams to the group can make the nodes reload their caches. With cache_invalidation_secret
+ * the events carry a HMAC and the events without a valid one are dropped. Without it the group must only be
+ * reachable from the CMS nodes. The HMAC does not stop a captured event from being sent again, such an event
+ * only makes the nodes reload a record that did not change.
+ */
+public class MulticastInvalidationTransport implements WPBInvalidationTransport, Runnable {
+	private static final Logger log = Logger.getLogger(MulticastInvalidationTransport.class.getName());
+	
+	public static final String DEFAULT_GROUP = "239.255.27.1";
+	public static final int DEFAULT_PORT = 4446;
+	private static final int MAX_DATAGRAM_SIZE = 8192;
+	
+	private MulticastSocket socket;
+	private InetAddress group;
+	private int port;
+	private Receiver receiver;
+	private String secret;
+	private Thread receiverThread;
+	private volatile boolean closed;
+	
+	public void initialize(Map<String, String> params, Receiver receiver) throws IOException
+	{
+		this.receiver = receiver;
+		secret = params.get("cache_invalidation_secret");
+		if (secret != null && secret.length() == 0)
+		{
+			secret = null;
+		}
+		if (secret == null)
+		{
+			log.log(Level.WARNING, "No cache_invalidation_secret, the cache invalidation events are not authenticated");
+		}
+		String groupParam = params.get("cache_invalidation_group");
+		group = InetAddress.getByName(groupParam != null && groupParam.length() > 0 ? groupParam : DEFAULT_GROUP);
+		port = getIntParam(params, "cache_invalidation_port", DEFAULT_PORT);
+		socket = new MulticastSocket(port);
+		socket.setTimeToLive(getIntParam(params, "cache_invalidation_ttl", 1));
+		socket.joinGroup(group);
+		
+		receiverThread = new Thread(this, "wpb-cache-invalidation");
+		receiverThread.setDaemon(true);
+		receiverThread.start();
+	}
+	
+	private int getIntParam(Map<String, String> params, String name, int defaultValue)
+	{
+		String value = params.get(name);
+		if (value != null && value.length() > 0)
+		{
+			try
+			{
+				return Integer.parseInt(value.trim());
+			} catch (NumberFormatException e)
+			{
+				log.log(Level.WARNING, "Invalid value for " + name + ": " + value);
+			}
+		}
+		return defaultValue;
+	}
+	
+	public void send(WPBInvalidationEvent event) throws IOException
+	{
+		byte[] data = event.toBytes(secret);
+		if (data.length > MAX_DATAGRAM_SIZE)
+		{
+			throw new IOException("Cache invalidation event too large " + data.length);
+		}
+		socket.send(new DatagramPacket(data, data.length, group, port));
+	}
+	
+	public void run()
+	{
+		byte[] buffer = new byte[MAX_DATAGRAM_SIZE];
+		while (!closed)
+		{
+			DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+			try
+			{
+				socket.receive(packet);
+			} catch (SocketException e)
+			{
+				// socket closed
+				break;
+			} catch (IOException e)
+			{
+				log.log(Level.WARNING, "Cannot receive cache invalidation event", e);
+				continue;
+			}
+			WPBInvalidationEvent event = WPBInvalidationEvent.fromBytes(packet.getData(), packet.getOffset(), packet.getLength(), secret);
+			if (event == null)
+			{
+				log.log(Level.FINE, "Cache invalidation datagram dropped, from " + packet.getAddress());
+			} else
+			{
+				try
+				{
+					receiver.receive(event);
+				} catch (RuntimeException e)
+				{
+					log.log(Level.WARNING, "Cannot process cache invalidation event", e);
+				}
+			}
+		}
+	}
+	
+	public void close()
+	{
+		closed = true;
+		if (socket != null)
+		{
+			try
+			{
+				socket.leaveGroup(group);
+			} catch (IOException e)
+			{
+				// the socket is closed anyway
+			}
+			socket.close();
+		}
+	}
+}
@@ -0,0 +1,69 @@
+/*
+ *   Copyright 2014 Webpagebytes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package com.webpagebytes.cms.engine;
+
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.UnsupportedEncodingException;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+/*
+ * Response for the HEAD requests answered from GET uris, the headers go to the wrapped response
+ * and the body written by the url controllers is discarded.
+ */
+public class NoBodyResponseWrapper extends HttpServletResponseWrapper {
+
+	private final ServletOutputStream noBodyStream = new ServletOutputStream() {
+		public void write(int b)
+		{
+		}
+		public void write(byte[] b, int off, int len)
+		{
+		}
+		public boolean isReady()
+		{
+			return true;
+		}
+		public void setWriteListener(WriteListener listener)
+		{
+		}
+	};
+	private PrintWriter writer;
+	
+	public NoBodyResponseWrapper(HttpServletResponse response)
+	{
+		super(response);
+	}
+	
+	public ServletOutputStream getOutputStream()
+	{
+		return noBodyStream;
+	}
+	
+	public PrintWriter getWriter() throws UnsupportedEncodingException
+	{
+		if (writer == null)
+		{
+			writer = new PrintWriter(new OutputStreamWriter(noBodyStream, getCharacterEncoding()));
+		}
+		return writer;
+	}
+}
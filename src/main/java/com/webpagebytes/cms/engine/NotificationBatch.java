@@ -0,0 +1,116 @@
+/*
+ *   Copyright 2014 Webpagebytes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package com.webpagebytes.cms.engine;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.webpagebytes.cms.engine.WPBAdminDataStorageListener.AdminDataStorageOperation;
+
+/*
+ * Admin data storage notifications collected while a batch is open.
+ * Several changes of the same record are merged into the last one. When a type gets more than
+ * MAX_RECORD_CHANGES changed records or a bulk delete, all its changes are replaced by a single
+ * DELETE_RECORDS notification so the listeners refresh that cache once.
+ */
+class NotificationBatch {
+
+	public static final int MAX_RECORD_CHANGES = 32;
+	
+	static class Notification
+	{
+		final Object obj;
+		final AdminDataStorageOperation operation;
+		final Class<? extends Object> type;
+		Notification(Object obj, AdminDataStorageOperation operation, Class<? extends Object> type)
+		{
+			this.obj = obj;
+			this.operation = operation;
+			this.type = type;
+		}
+	}
+	
+	private static class TypeChanges
+	{
+		final LinkedHashMap<String, Notification> records = new LinkedHashMap<String, Notification>();
+		boolean bulk = false;
+	}
+	
+	private final LinkedHashMap<Class<? extends Object>, TypeChanges> changes = new LinkedHashMap<Class<? extends Object>, TypeChanges>();
+	private int depth = 0;
+	
+	public void open()
+	{
+		depth++;
+	}
+	
+	/*
+	 * Returns true when the outermost batch was closed and the notifications must be sent
+	 */
+	public boolean close()
+	{
+		depth--;
+		return depth <= 0;
+	}
+	
+	public void add(Object obj, AdminDataStorageOperation operation, Class<? extends Object> type)
+	{
+		TypeChanges typeChanges = changes.get(type);
+		if (typeChanges == null)
+		{
+			typeChanges = new TypeChanges();
+			changes.put(type, typeChanges);
+		}
+		if (typeChanges.bulk)
+		{
+			return;
+		}
+		String key = WPBCacheInvalidation.getNotificationKey(obj, operation);
+		if (key == null)
+		{
+			typeChanges.bulk = true;
+			typeChanges.records.clear();
+			return;
+		}
+		// keep the order of the last change
+		typeChanges.records.remove(key);
+		typeChanges.records.put(key, new Notification(obj, operation, type));
+		if (typeChanges.records.size() > MAX_RECORD_CHANGES)
+		{
+			typeChanges.bulk = true;
+			typeChanges.records.clear();
+		}
+	}
+	
+	public List<Notification> getNotifications()
+	{
+		List<Notification> result = new ArrayList<Notification>();
+		for(Map.Entry<Class<? extends Object>, TypeChanges> entry: changes.entrySet())
+		{
+			if (entry.getValue().bulk)
+			{
+				result.add(new Notification(null, AdminDataStorageOperation.DELETE_RECORDS, entry.getKey()));
+			} else
+			{
+				result.addAll(entry.getValue().records.values());
+			}
+		}
+		return result;
+	}
+}
@@ -16,9 +16,15 @@
 
 package com.webpagebytes.cms.engine;
 
+import java.io.IOException;
 import java.io.StringWriter;
+import java.io.Writer;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import javax.servlet.http.HttpServletRequest;
 
@@ -26,15 +32,37 @@ import com.webpagebytes.cms.WPBModel;
 import com.webpagebytes.cms.WPBPageModelProvider;
 import com.webpagebytes.cms.cmsdata.WPBPage;
 import com.webpagebytes.cms.exception.WPBException;
+import com.webpagebytes.cms.exception.WPBIOException;
 import com.webpagebytes.cms.template.WPBFreeMarkerTemplateEngine;
+import com.webpagebytes.cms.template.WPBLoadableTemplateEngine;
 import com.webpagebytes.cms.template.WPBTemplateEngine;
+import com.webpagebytes.cms.utility.CmsConfiguration;
+import com.webpagebytes.cms.utility.CmsConfigurationFactory;
+import com.webpagebytes.cms.utility.CmsConfiguration.WPBSECTION;
 
 public class PageContentBuilder {
-		
+	
+	// page parameters that control the output cache for a template page
+	public static final String PAGE_OUTPUT_CACHE_TTL_PARAM = "wpbOutputCacheTtl";
+	public static final String PAGE_OUTPUT_CACHE_BYPASS_PARAM = "wpbOutputCacheBypass";
+	
+	public static final int PAGE_OUTPUT_CACHE_SIZE = 0; // the output cache is disabled by default
+	public static final int PAGE_OUTPUT_CACHE_TTL = 60; // in seconds
+	
+	public static final int TEMPLATE_WARMUP_THREADS = 4;
+	public static final int TEMPLATE_WARMUP_TIME = 60; // in seconds
+	
+	private static final Logger log = Logger.getLogger(PageContentBuilder.class.getName());
+	
 	private WPBTemplateEngine templateEngine;
 	private WPBCacheInstances cacheInstances;
 	private Map<String, WPBPageModelProvider> customControllers;
 	private ModelBuilder modelBuilder;
+	private PageOutputCache outputCache;
+	private StaticPageCache staticPageCache = new StaticPageCache();
+	private boolean templateWarmUp = false;
+	private int templateWarmUpThreads = TEMPLATE_WARMUP_THREADS;
+	private int templateWarmUpTime = TEMPLATE_WARMUP_TIME;
 
 	public PageContentBuilder(WPBCacheInstances cacheInstances, ModelBuilder modelBuilder)
 							
@@ -44,11 +72,94 @@ public class PageContentBuilder {
 		this.modelBuilder = modelBuilder;
 		this.templateEngine = new WPBFreeMarkerTemplateEngine(cacheInstances);
 		
+		CmsConfiguration configuration = CmsConfigurationFactory.getConfiguration();
+		Map<String, String> generalParams = (configuration != null) ? configuration.getSectionParams(WPBSECTION.SECTION_GENERAL) : null;
+		int outputCacheSize = PAGE_OUTPUT_CACHE_SIZE;
+		int outputCacheTtl = PAGE_OUTPUT_CACHE_TTL;
+		if (generalParams != null)
+		{
+			try
+			{
+				if (generalParams.containsKey("page_output_cache_size"))
+				{
+					outputCacheSize = Integer.valueOf(generalParams.get("page_output_cache_size"));
+				}
+				if (generalParams.containsKey("page_output_cache_ttl"))
+				{
+					outputCacheTtl = Integer.valueOf(generalParams.get("page_output_cache_ttl"));
+				}
+			} catch (NumberFormatException e)
+			{
+				outputCacheSize = PAGE_OUTPUT_CACHE_SIZE;
+			}
+		}
+		if (outputCacheSize > 0 && outputCacheTtl > 0)
+		{
+			this.outputCache = new PageOutputCache(outputCacheSize, outputCacheTtl * 1000L);
+		}
+		if (generalParams != null)
+		{
+			templateWarmUp = "true".equalsIgnoreCase(generalParams.get("template_warmup"));
+			try
+			{
+				if (generalParams.containsKey("template_warmup_threads"))
+				{
+					templateWarmUpThreads = Integer.valueOf(generalParams.get("template_warmup_threads"));
+				}
+				if (generalParams.containsKey("template_warmup_time"))
+				{
+					templateWarmUpTime = Integer.valueOf(generalParams.get("template_warmup_time"));
+				}
+			} catch (NumberFormatException e)
+			{
+				templateWarmUpThreads = TEMPLATE_WARMUP_THREADS;
+				templateWarmUpTime = TEMPLATE_WARMUP_TIME;
+			}
+		}
 	}
 	
 	public void initialize() throws WPBException
 	{
 			templateEngine.initialize();
+			if (templateWarmUp)
+			{
+				warmUpTemplates(WPBAdminDataStorageFactory.getInstance());
+			}
+	}
+	
+	/*
+	 * Parses all template pages and modules, a template that fails to parse is reported and left for the first request
+	 */
+	TemplateWarmUp.Report warmUpTemplates(WPBInternalAdminDataStorage adminStorage)
+	{
+		if (adminStorage == null)
+		{
+			log.log(Level.WARNING, "Template warm up skipped, there is no admin data storage");
+			return null;
+		}
+		if (!(templateEngine instanceof WPBLoadableTemplateEngine))
+		{
+			log.log(Level.WARNING, "Template warm up skipped, the template engine cannot load templates without rendering them");
+			return null;
+		}
+		List<String> names = null;
+		try
+		{
+			names = TemplateWarmUp.getTemplateNames(adminStorage);
+		} catch (WPBIOException e)
+		{
+			log.log(Level.WARNING, "Template warm up skipped, cannot read the pages and modules", e);
+			return null;
+		}
+		TemplateWarmUp warmUp = new TemplateWarmUp((WPBLoadableTemplateEngine) templateEngine, templateWarmUpThreads, templateWarmUpTime * 1000L);
+		TemplateWarmUp.Report report = warmUp.run(names);
+		for(Map.Entry<String, String> error: report.getErrors().entrySet())
+		{
+			log.log(Level.WARNING, "Template warm up cannot parse {0}: {1}", new Object[] {error.getKey(), error.getValue()});
+		}
+		log.log(Level.INFO, "Template warm up parsed {0} of {1} templates in {2} ms, {3} errors{4}", 
+				new Object[] {report.getParsed(), report.getTotal(), report.getElapsed(), report.getErrors().size(), report.isTimedOut() ? ", time budget exceeded" : ""});
+		return report;
 	}
 	
 	public WPBPage findWebPage(String pageExternalKey) throws WPBException
@@ -56,6 +167,20 @@ public class PageContentBuilder {
 		return cacheInstances.getPageCache().getByExternalKey(pageExternalKey);		
 	}
 		
+	/*
+	 * Returns the encoded response data for a static (non template) page
+	 */
+	public StaticPageEntry getStaticPageEntry(WPBPage wbWebPage) throws WPBException
+	{
+		try
+		{
+			return staticPageCache.get(wbWebPage, cacheInstances.getPageCache().getFingerPrint());
+		} catch (IOException e)
+		{
+			throw new WPBIOException("Cannot encode page content", e);
+		}
+	}
+	
 	private WPBPageModelProvider getPageModelProvider(String controllerClassName) throws WPBException
 	{
 		WPBPageModelProvider controllerInst = null;
@@ -76,13 +201,55 @@ public class PageContentBuilder {
 			WPBPage wbWebPage, 
 			InternalModel model) throws WPBException
 	{
+		return buildPageContent(wbWebPage, model);
+	}
+
+	public String buildPageContent(
+			WPBPage wbWebPage, 
+			InternalModel model) throws WPBException
+	{
 
 		Integer istemplateSource = wbWebPage.getIsTemplateSource();
 		if (istemplateSource == null || istemplateSource == 0)
 		{
 			return wbWebPage.getHtmlSource();
 		}
-						
+		StringWriter out = new StringWriter();
+		writeTemplateContent(wbWebPage, model, out);
+		return out.toString();
+	}
+
+	/*
+	 * Writes the page content to out, template pages are rendered straight into out unless the
+	 * page output is cached
+	 */
+	public void writePageContent(HttpServletRequest request,
+			WPBPage wbWebPage, 
+			InternalModel model,
+			Writer out) throws WPBException
+	{
+		Integer istemplateSource = wbWebPage.getIsTemplateSource();
+		if (istemplateSource == null || istemplateSource == 0)
+		{
+			write(wbWebPage.getHtmlSource(), out);
+			return;
+		}
+		writeTemplateContent(wbWebPage, model, out);
+	}
+	
+	private void write(String content, Writer out) throws WPBException
+	{
+		try
+		{
+			out.write(content);
+		} catch (IOException e)
+		{
+			throw new WPBIOException("Cannot write page content", e);
+		}
+	}
+	
+	private void writeTemplateContent(WPBPage wbWebPage, InternalModel model, Writer out) throws WPBException
+	{
 		modelBuilder.populateModelForWebPage(wbWebPage, model);
 		
 		String controllerClassName = wbWebPage.getPageModelProvider();
@@ -91,6 +258,31 @@ public class PageContentBuilder {
 		
 		boolean hasController = controllerClassName!=null && controllerClassName.length()>0;
 		
+		// pages with a model provider or with an application model set by an url controller are not cached
+		long outputTtl = 0;
+		List<Object> outputKey = null;
+		String outputFingerPrint = null;
+		if (outputCache != null && !hasController && model.getCmsApplicationModel().isEmpty())
+		{
+			outputTtl = getOutputCacheTtl(model);
+			if (outputTtl > 0)
+			{
+				outputKey = getOutputCacheKey(wbWebPage, model);
+				// the fingerprint read before the page and the model were fetched, so older records are never cached under a newer one
+				outputFingerPrint = model.getOutputCacheFingerPrint();
+				if (outputFingerPrint == null)
+				{
+					outputFingerPrint = getOutputCacheFingerPrint();
+				}
+				String content = outputCache.get(outputKey, outputFingerPrint, System.currentTimeMillis());
+				if (content != null)
+				{
+					write(content, out);
+					return;
+				}
+			}
+		}
+		
 		if (hasController)
 		{
 			WPBPageModelProvider controllerInst = getPageModelProvider(controllerClassName);
@@ -105,63 +297,83 @@ public class PageContentBuilder {
 			rootModel.put(WPBModel.LOCALE_LANGUAGE_KEY, model.getCmsModel().get(WPBModel.LOCALE_KEY).get(WPBModel.LOCALE_LANGUAGE_KEY));
 		}
 		
-		String result = "";
-		try {
-			StringWriter out = new StringWriter();			
+		if (outputKey == null)
+		{
 			templateEngine.process(WPBTemplateEngine.WEBPAGES_PATH_PREFIX + wbWebPage.getExternalKey(), rootModel, out);
-			result += out.toString();
-		} catch (WPBException e)
+			return;
+		}
+		// the content is kept as String for the output cache
+		StringWriter stringOut = new StringWriter();			
+		templateEngine.process(WPBTemplateEngine.WEBPAGES_PATH_PREFIX + wbWebPage.getExternalKey(), rootModel, stringOut);
+		String result = stringOut.toString();
+		// a cache that changed while the page was rendered may have been read in its new state, the output is not kept
+		if (outputFingerPrint.equals(getOutputCacheFingerPrint()))
 		{
-			throw e;
+			outputCache.put(outputKey, outputFingerPrint, result, System.currentTimeMillis() + outputTtl);
 		}
-		
-		return result;
+		write(result, out);
 	}
 
-	public String buildPageContent(
-			WPBPage wbWebPage, 
-			InternalModel model) throws WPBException
+	/*
+	 * Returns the output cache time to live in milliseconds for the page, 0 if the page output must not be cached
+	 */
+	private long getOutputCacheTtl(InternalModel model)
 	{
-
-		Integer istemplateSource = wbWebPage.getIsTemplateSource();
-		if (istemplateSource == null || istemplateSource == 0)
+		Map<String, String> pageParams = model.getCmsModel().get(WPBModel.PAGE_PARAMETERS_KEY);
+		if (pageParams == null)
 		{
-			return wbWebPage.getHtmlSource();
+			return outputCache.getDefaultTtl();
 		}
-						
-		modelBuilder.populateModelForWebPage(wbWebPage, model);
-		
-		String controllerClassName = wbWebPage.getPageModelProvider();
-
-		Map<String, Object> rootModel = new HashMap<String, Object>();
-		
-		boolean hasController = controllerClassName!=null && controllerClassName.length()>0;
-		
-		if (hasController)
+		String bypass = pageParams.get(PAGE_OUTPUT_CACHE_BYPASS_PARAM);
+		if (bypass != null && (bypass.equals("1") || bypass.equalsIgnoreCase("true")))
 		{
-			WPBPageModelProvider controllerInst = getPageModelProvider(controllerClassName);
-			controllerInst.populatePageModel(model);
+			return 0;
 		}
-		model.transferModel(rootModel);
-		rootModel.put(WPBModel.APPLICATION_CONTROLLER_MODEL_KEY, model.getCmsApplicationModel());
-		
-		if (model.getCmsModel().containsKey(WPBModel.LOCALE_KEY))
+		String ttl = pageParams.get(PAGE_OUTPUT_CACHE_TTL_PARAM);
+		if (ttl != null)
 		{
-			rootModel.put(WPBModel.LOCALE_COUNTRY_KEY, model.getCmsModel().get(WPBModel.LOCALE_KEY).get(WPBModel.LOCALE_COUNTRY_KEY));
-			rootModel.put(WPBModel.LOCALE_LANGUAGE_KEY, model.getCmsModel().get(WPBModel.LOCALE_KEY).get(WPBModel.LOCALE_LANGUAGE_KEY));
+			try
+			{
+				return Math.max(0, Long.valueOf(ttl.trim()) * 1000L);
+			} catch (NumberFormatException e)
+			{
+				return 0;
+			}
 		}
-		
-		String result = "";
-		try {
-			StringWriter out = new StringWriter();			
-			templateEngine.process(WPBTemplateEngine.WEBPAGES_PATH_PREFIX + wbWebPage.getExternalKey(), rootModel, out);
-			result += out.toString();
-		} catch (WPBException e)
+		return outputCache.getDefaultTtl();
+	}
+	
+	/*
+	 * The page content depends on the page, the locale, the uri parameters and the request base url,
+	 * the globals and the page parameters are covered by the parameters cache fingerprint
+	 */
+	private List<Object> getOutputCacheKey(WPBPage wbWebPage, InternalModel model)
+	{
+		return Arrays.asList((Object)wbWebPage.getExternalKey(), 
+				model.getCmsModel().get(WPBModel.LOCALE_KEY),
+				model.getCmsModel().get(WPBModel.URI_PARAMETERS_KEY),
+				model.getCmsModel().get(WPBModel.REQUEST_KEY));
+	}
+	
+	/*
+	 * Fingerprint of all the caches a page can read while rendering, files and uris included
+	 * because the pages embed file links and hashes. Returns null when the output cache is disabled.
+	 */
+	public String getOutputCacheFingerPrint()
+	{
+		if (outputCache == null)
 		{
-			throw e;
+			return null;
 		}
-		
-		return result;
+		StringBuilder builder = new StringBuilder();
+		builder.append(cacheInstances.getPageCache().getFingerPrint()).append('/')
+			   .append(cacheInstances.getPageModuleCache().getFingerPrint()).append('/')
+			   .append(cacheInstances.getParameterCache().getFingerPrint()).append('/')
+			   .append(cacheInstances.getMessageCache().getFingerPrint()).append('/')
+			   .append(cacheInstances.getArticleCache().getFingerPrint()).append('/')
+			   .append(cacheInstances.getFilesCache().getFingerPrint()).append('/')
+			   .append(cacheInstances.getUriCache().getFingerPrint());
+		return builder.toString();
 	}
 
 }
@@ -0,0 +1,114 @@
+/*
+ *   Copyright 2014 Webpagebytes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package com.webpagebytes.cms.engine;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/*
+ * Size bounded LRU cache for the rendered content of template pages.
+ * All entries are dropped when the fingerprint of the caches used to render the pages changes.
+ */
+class PageOutputCache {
+
+	private static class Entry
+	{
+		String content;
+		long expiresAt;
+		Entry(String content, long expiresAt)
+		{
+			this.content = content;
+			this.expiresAt = expiresAt;
+		}
+	}
+
+	private final int maxSize;
+	private final long defaultTtl;
+	private final LinkedHashMap<Object, Entry> entries;
+	private String fingerPrint = "";
+
+	/*
+	 * maxSize is the maximum number of cached pages, defaultTtl the default time to live in milliseconds
+	 */
+	public PageOutputCache(final int maxSize, long defaultTtl)
+	{
+		this.maxSize = maxSize;
+		this.defaultTtl = defaultTtl;
+		this.entries = new LinkedHashMap<Object, Entry>(16, 0.75f, true)
+		{
+			private static final long serialVersionUID = 1L;
+			protected boolean removeEldestEntry(Map.Entry<Object, Entry> eldest)
+			{
+				return size() > maxSize;
+			}
+		};
+	}
+
+	public long getDefaultTtl()
+	{
+		return defaultTtl;
+	}
+
+	public int getMaxSize()
+	{
+		return maxSize;
+	}
+
+	/*
+	 * Returns the cached content or null if there is no valid entry for the key
+	 */
+	public synchronized String get(Object key, String fingerPrint, long now)
+	{
+		if (!this.fingerPrint.equals(fingerPrint))
+		{
+			entries.clear();
+			this.fingerPrint = fingerPrint;
+			return null;
+		}
+		Entry entry = entries.get(key);
+		if (entry == null)
+		{
+			return null;
+		}
+		if (entry.expiresAt <= now)
+		{
+			entries.remove(key);
+			return null;
+		}
+		return entry.content;
+	}
+
+	public synchronized void put(Object key, String fingerPrint, String content, long expiresAt)
+	{
+		if (!this.fingerPrint.equals(fingerPrint))
+		{
+			// the content was rendered with data that is not current anymore
+			return;
+		}
+		entries.put(key, new Entry(content, expiresAt));
+	}
+
+	public synchronized int size()
+	{
+		return entries.size();
+	}
+
+	public synchronized void clear()
+	{
+		entries.clear();
+	}
+}
@@ -0,0 +1,106 @@
+/*
+ *   Copyright 2014 Webpagebytes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package com.webpagebytes.cms.engine;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/*
+ * Growable byte buffer kept per thread and reused between requests.
+ * It is used when the response needs a Content-Length, the content is rendered in the buffer and then
+ * written with a single write. Buffers that grew over MAX_RETAINED_SIZE are not kept for the next request.
+ */
+public class ReusableByteArrayOutputStream extends OutputStream {
+
+	private static final int INITIAL_SIZE = 16384;
+	private static final int MAX_RETAINED_SIZE = 1024 * 1024;
+
+	private static final ThreadLocal<ReusableByteArrayOutputStream> pool = new ThreadLocal<ReusableByteArrayOutputStream>();
+
+	private byte[] buffer;
+	private int count;
+	private boolean inUse;
+
+	private ReusableByteArrayOutputStream()
+	{
+		buffer = new byte[INITIAL_SIZE];
+	}
+
+	/*
+	 * Gets the buffer of the current thread, release() must be called when done
+	 */
+	public static ReusableByteArrayOutputStream acquire()
+	{
+		ReusableByteArrayOutputStream result = pool.get();
+		if (result == null || result.inUse)
+		{
+			result = new ReusableByteArrayOutputStream();
+			if (pool.get() == null)
+			{
+				pool.set(result);
+			}
+		}
+		result.inUse = true;
+		result.count = 0;
+		return result;
+	}
+
+	public void release()
+	{
+		inUse = false;
+		count = 0;
+		if (buffer.length > MAX_RETAINED_SIZE)
+		{
+			buffer = new byte[INITIAL_SIZE];
+		}
+	}
+
+	private void ensureCapacity(int capacity)
+	{
+		if (capacity > buffer.length)
+		{
+			int newLength = Math.max(buffer.length << 1, capacity);
+			byte[] newBuffer = new byte[newLength];
+			System.arraycopy(buffer, 0, newBuffer, 0, count);
+			buffer = newBuffer;
+		}
+	}
+
+	public void write(int b)
+	{
+		ensureCapacity(count + 1);
+		buffer[count++] = (byte)b;
+	}
+
+	public void write(byte[] b, int off, int len)
+	{
+		ensureCapacity(count + len);
+		System.arraycopy(b, off, buffer, count, len);
+		count += len;
+	}
+
+	public int size()
+	{
+		return count;
+	}
+
+	public void writeTo(OutputStream out) throws IOException
+	{
+		out.write(buffer, 0, count);
+	}
+
+}
@@ -0,0 +1,69 @@
+/*
+ *   Copyright 2014 Webpagebytes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package com.webpagebytes.cms.engine;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.webpagebytes.cms.cmsdata.WPBPage;
+
+/*
+ * Cache of StaticPageEntry per page external key.
+ * An entry is valid while the page hash is the same, all entries are dropped when the pages cache fingerprint changes.
+ */
+class StaticPageCache {
+
+	private static class Entries
+	{
+		final String fingerPrint;
+		final ConcurrentHashMap<String, StaticPageEntry> map = new ConcurrentHashMap<String, StaticPageEntry>();
+		Entries(String fingerPrint)
+		{
+			this.fingerPrint = fingerPrint;
+		}
+	}
+	
+	private volatile Entries entries = new Entries(null);
+	
+	public StaticPageEntry get(WPBPage page, String fingerPrint) throws IOException
+	{
+		Entries current = entries;
+		if (fingerPrint == null || !fingerPrint.equals(current.fingerPrint))
+		{
+			current = new Entries(fingerPrint);
+			entries = current;
+		}
+		String key = page.getExternalKey();
+		StaticPageEntry entry = (key != null) ? current.map.get(key) : null;
+		Long hash = page.getHash();
+		if (entry != null && hash != null && hash.equals(entry.getHash()))
+		{
+			return entry;
+		}
+		entry = new StaticPageEntry(page);
+		if (key != null)
+		{
+			current.map.put(key, entry);
+		}
+		return entry;
+	}
+	
+	public int size()
+	{
+		return entries.map.size();
+	}
+}
@@ -0,0 +1,88 @@
+/*
+ *   Copyright 2014 Webpagebytes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package com.webpagebytes.cms.engine;
+
+import java.io.IOException;
+
+import com.webpagebytes.cms.cmsdata.WPBPage;
+import com.webpagebytes.cms.utility.ContentTypeDetector;
+
+/*
+ * Immutable response data of a static (non template) page: the UTF-8 encoded content,
+ * the content length, the ETag and the content type. For compressible content types the gzip variant
+ * is computed once, together with its own length and ETag.
+ * The content arrays are shared between requests and must not be modified.
+ */
+public class StaticPageEntry {
+	private final Long hash;
+	private final byte[] content;
+	private final String contentLength;
+	private final String eTag;
+	private final String contentType;
+	private final boolean compressible;
+	private final byte[] gzipContent;
+	private final String gzipContentLength;
+	private final String gzipETag;
+	
+	public StaticPageEntry(WPBPage page) throws IOException
+	{
+		String htmlSource = page.getHtmlSource();
+		this.hash = page.getHash();
+		this.content = (htmlSource != null) ? htmlSource.getBytes("UTF-8") : new byte[0];
+		this.contentLength = Integer.toString(content.length);
+		this.eTag = (hash != null) ? hash.toString() : null;
+		this.contentType = page.getContentType();
+		this.compressible = ContentTypeDetector.isCompressible(contentType);
+		this.gzipContent = compressible ? GzipEncoding.compress(content, 0, content.length) : null;
+		this.gzipContentLength = (gzipContent != null) ? Integer.toString(gzipContent.length) : null;
+		this.gzipETag = (gzipContent != null && eTag != null) ? eTag.concat("-").concat(GzipEncoding.GZIP) : eTag;
+	}
+	
+	public Long getHash() {
+		return hash;
+	}
+	public byte[] getContent() {
+		return content;
+	}
+	public String getContentLength() {
+		return contentLength;
+	}
+	public String getETag() {
+		return eTag;
+	}
+	public String getContentType() {
+		return contentType;
+	}
+	/*
+	 * True if the response depends on the Accept-Encoding request header
+	 */
+	public boolean isCompressible() {
+		return compressible;
+	}
+	/*
+	 * Returns the gzip variant or null if the content is not compressed
+	 */
+	public byte[] getGzipContent() {
+		return gzipContent;
+	}
+	public String getGzipContentLength() {
+		return gzipContentLength;
+	}
+	public String getGzipETag() {
+		return gzipETag;
+	}
+}
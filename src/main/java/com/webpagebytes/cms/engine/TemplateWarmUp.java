@@ -0,0 +1,160 @@
+/*
+ *   Copyright 2014 Webpagebytes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package com.webpagebytes.cms.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.webpagebytes.cms.cmsdata.WPBPage;
+import com.webpagebytes.cms.cmsdata.WPBPageModule;
+import com.webpagebytes.cms.exception.WPBException;
+import com.webpagebytes.cms.exception.WPBIOException;
+import com.webpagebytes.cms.template.WPBLoadableTemplateEngine;
+import com.webpagebytes.cms.template.WPBTemplateEngine;
+
+/*
+ * Parses the template pages and modules on a bounded pool so that the first requests
+ * after a deploy do not pay the template parse cost.
+ * The templates that are not parsed within the time budget are left for the first request that needs them.
+ */
+class TemplateWarmUp {
+
+	public static class Report
+	{
+		private final int total;
+		private final int parsed;
+		private final Map<String, String> errors;
+		private final boolean timedOut;
+		private final long elapsed;
+		
+		Report(int total, int parsed, Map<String, String> errors, boolean timedOut, long elapsed)
+		{
+			this.total = total;
+			this.parsed = parsed;
+			this.errors = errors;
+			this.timedOut = timedOut;
+			this.elapsed = elapsed;
+		}
+		public int getTotal() {
+			return total;
+		}
+		public int getParsed() {
+			return parsed;
+		}
+		/*
+		 * Template name to error message for the templates that could not be parsed
+		 */
+		public Map<String, String> getErrors() {
+			return errors;
+		}
+		public boolean isTimedOut() {
+			return timedOut;
+		}
+		/*
+		 * in milliseconds
+		 */
+		public long getElapsed() {
+			return elapsed;
+		}
+	}
+	
+	private final WPBLoadableTemplateEngine templateEngine;
+	private final int threads;
+	private final long timeBudget;
+	
+	/*
+	 * timeBudget is in milliseconds
+	 */
+	public TemplateWarmUp(WPBLoadableTemplateEngine templateEngine, int threads, long timeBudget)
+	{
+		this.templateEngine = templateEngine;
+		this.threads = Math.max(1, threads);
+		this.timeBudget = timeBudget;
+	}
+	
+	public static List<String> getTemplateNames(WPBInternalAdminDataStorage adminStorage) throws WPBIOException
+	{
+		List<String> names = new ArrayList<String>();
+		for(WPBPage page: adminStorage.getAllRecords(WPBPage.class))
+		{
+			if (page.getIsTemplateSource() != null && page.getIsTemplateSource() == 1)
+			{
+				names.add(WPBTemplateEngine.WEBPAGES_PATH_PREFIX + page.getExternalKey());
+			}
+		}
+		for(WPBPageModule module: adminStorage.getAllRecords(WPBPageModule.class))
+		{
+			if (module.getIsTemplateSource() != null && module.getIsTemplateSource() == 1)
+			{
+				names.add(WPBTemplateEngine.WEBMODULES_PATH_PREFIX + module.getExternalKey());
+			}
+		}
+		return names;
+	}
+	
+	public Report run(List<String> templateNames)
+	{
+		final long start = System.currentTimeMillis();
+		final long deadline = start + timeBudget;
+		final AtomicInteger parsed = new AtomicInteger();
+		final Map<String, String> errors = new ConcurrentHashMap<String, String>();
+		
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, Math.max(1, templateNames.size())));
+		for(final String name: templateNames)
+		{
+			executor.execute(new Runnable() {
+				public void run()
+				{
+					if (System.currentTimeMillis() > deadline)
+					{
+						return;
+					}
+					try
+					{
+						templateEngine.loadTemplate(name);
+						parsed.incrementAndGet();
+					} catch (WPBException e)
+					{
+						errors.put(name, String.valueOf(e.getMessage()));
+					}
+				}
+			});
+		}
+		executor.shutdown();
+		boolean timedOut = false;
+		try
+		{
+			timedOut = !executor.awaitTermination(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			timedOut = true;
+		}
+		if (timedOut)
+		{
+			executor.shutdownNow();
+		}
+		int done = parsed.get() + errors.size();
+		return new Report(templateNames.size(), parsed.get(), errors, timedOut || done < templateNames.size(), System.currentTimeMillis() - start);
+	}
+}
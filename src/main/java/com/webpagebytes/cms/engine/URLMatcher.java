@@ -17,10 +17,9 @@
 package com.webpagebytes.cms.engine;
 
 import java.util.ArrayList;
-
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -29,9 +28,18 @@ public class URLMatcher {
 private String fingerPrint;
 private Set<String> patterns;
 private Set<String> simplePatterns; // patterns with no parameters
-private Map<String, URLDataStructure> patternsWithParams; // the patterns with parameters
-private Map<Integer, Set<String>> deepToPatternUrls; // fast lookup to get all patterns with a certain deep value
-private Map<String, URLDataStructure> patternsWithAllMatch; // the patterns with all match params (these are patterns that ends with {**}
+private Map<Integer, URLTrieNode> deepToTrie; // the segment trie of the patterns with parameters for each deep value
+private URLTrieNode allMatchTrie; // the trie of the base urls for the all match patterns (these are patterns that ends with /{**})
+
+/*
+ * Holds the best pattern found while searching the trie and the trie nodes used to reach it
+ */
+private static class TrieMatch
+{
+	String pattern;
+	int score = -1;
+	URLTrieNode[] path;
+}
 
 public URLMatcher()
 {
@@ -44,39 +52,66 @@ public void initialize(Set<String> patterns, String fingerPrint)
 	// newSimplePatterns are all the patterns that do not contain any parameter
 	HashSet<String> newSimplePatterns = new HashSet<String>();
 	
-	// newPatternsWithParams is a map between patterns with params and their URLDataStructure
-	HashMap<String, URLDataStructure> newPatternsWithParams = new HashMap<String, URLDataStructure>();
+	// newDeepToTrie is a map between deep url levels and the trie of the patterns with that deep ( /home/test has deed 2, /home has deep 1) 
+	HashMap<Integer, URLTrieNode> newDeepToTrie = new HashMap<Integer, URLTrieNode>();
 	
-	// newDeepToPatternUrls is a map between deep url levels and their patterns ( /home/test has deed 2, /home has deep 1) 
-	HashMap<Integer, Set<String>> newDeepToPatternUrls = new HashMap<Integer, Set<String>>();
-	// newPatternsAllMatch are patterns that ends with /{**}
-	HashMap<String, URLDataStructure> newPatternsAllMatch = new HashMap<String, URLDataStructure>();
+	// newAllMatchTrie is the trie of patterns that ends with /{**}, keyed by the sub urls of their base url
+	URLTrieNode newAllMatchTrie = new URLTrieNode();
 	
 	for (String pattern : patterns)
 	{
 		URLDataStructure aUrlStructure = new URLDataStructure(pattern);
 		if (aUrlStructure.hasParams()) {
-			newPatternsWithParams.put(pattern, aUrlStructure);
-			if (newDeepToPatternUrls.containsKey(aUrlStructure.getDeep()) == false)
+			URLTrieNode node = newDeepToTrie.get(aUrlStructure.getDeep());
+			if (null == node)
 			{
-				newDeepToPatternUrls.put(aUrlStructure.getDeep(), new HashSet<String>());
+				node = new URLTrieNode();
+				newDeepToTrie.put(aUrlStructure.getDeep(), node);
+			}
+			Map<Integer, String> dirtySubUrls = aUrlStructure.getDirtySubUrl();
+			ArrayList<String> subUrls = aUrlStructure.getSubUrls();
+			for(int i = 0; i < subUrls.size(); i++)
+			{
+				if (dirtySubUrls.containsKey(i))
+				{
+					node = node.addDirty(subUrls.get(i));
+				} else
+				{
+					node = node.addLiteral(subUrls.get(i));
+				}
 			}
-			newDeepToPatternUrls.get(aUrlStructure.getDeep()).add(pattern);
+			node.setPattern(pattern);
 		} else
 		{
 			newSimplePatterns.add(pattern);
 		}
 		if (aUrlStructure.isAllMatch())
 		{
-		    newPatternsAllMatch.put(pattern, aUrlStructure);
+			// the base url is the pattern without {**}, the base url always ends with /
+			URLTrieNode node = newAllMatchTrie;
+			int start = 0;
+			int end = pattern.length()-4;
+			for(int i = 0; i < end; i++)
+			{
+				if (pattern.charAt(i) == '/')
+				{
+					node = node.addLiteral(pattern.substring(start, i));
+					start = i+1;
+				}
+			}
+			node.setTailPattern(pattern);
 		}
 	}
+	for(URLTrieNode root: newDeepToTrie.values())
+	{
+		root.compile();
+	}
+	newAllMatchTrie.compile();
 	
 	this.patterns = newPatters;
 	this.simplePatterns = newSimplePatterns;
-	this.patternsWithParams = newPatternsWithParams;
-	this.deepToPatternUrls = newDeepToPatternUrls;
-	this.patternsWithAllMatch = newPatternsAllMatch;
+	this.deepToTrie = newDeepToTrie;
+	this.allMatchTrie = newAllMatchTrie;
 	
 	setFingerPrint(fingerPrint);
 }
@@ -105,244 +140,163 @@ public URLMatcherResult matchUrlToPattern(String url)
 		return result;
 	}
 	
-	URLDataStructure urlDataStructure = new URLDataStructure(url);
-	Map<Integer, String> urlClearSubUrls = urlDataStructure.getClearSubUrl();
-    Map<String, String> mapParams = new HashMap<String, String>();
-
-	// get all the patterns with the same url deep
-	Set<String> toSearchLevel1 = this.deepToPatternUrls.get(urlDataStructure.getDeep());
-	if (null != toSearchLevel1)
+	// split the url in sub urls the same way URLDataStructure does it, empty sub urls are skipped 
+	// with the exception of the last one when the url ends with /
+	// the sub urls are kept as [start, end) offsets in the url, bounds[2*i] and bounds[2*i+1]
+	int length = url.length();
+	int deep = 0;
+	for(int i = 0; i < length; i++)
 	{
-    	// toSearchLevel2 will contain all patterns that have the same clear sub urls and the same deep as the url
-    	// the key is the pattern and the value a weight that measures the possibility to have a match, as greater the value as greater the posibility.
-    	Map<String, Integer> toSearchLevel2 = new HashMap<String, Integer>(); 
-    	for (String pattern: toSearchLevel1)
-    	{
-    		Map<Integer, String> patternClearSubUrl = this.patternsWithParams.get(pattern).getClearSubUrl();
-    		if (isMapIncluded(patternClearSubUrl, urlClearSubUrls))
-    		{
-    			toSearchLevel2.put(pattern, patternClearSubUrl.size()*1000);
-    			
-    			Map<Integer, String> patternDirtySubUrl = this.patternsWithParams.get(pattern).getDirtySubUrl();
-    			for(int i: patternDirtySubUrl.keySet())
-    			{
-    			    // increase the weight with the common number of characters in each dirty suburl 
-    			    String patternSubUrl = patternDirtySubUrl.get(i);
-    			    String inputSubUrl = urlClearSubUrls.get(i);
-    			    int weight = toSearchLevel2.get(pattern);
-    			    int lengthP = patternSubUrl.length();
-    			    int lengthI = inputSubUrl.length();
-    			    if (lengthP > lengthI) lengthP = lengthI;
-    			    for(int x = 0; x< lengthP; x++)
-    			    {
-    			        if (patternSubUrl.charAt(x) == inputSubUrl.charAt(x))
-    			        {
-    			            weight = weight + 1;
-    			        } else
-    			            break;
-    			    }
-    			    toSearchLevel2.put(pattern, weight);
-    			}
-    		}
-    	} 
-    	
-    	//the search was narrowed enough, we match against patterns with the same deep and common clear suburls 
-    	// the match begins with the most probable patterns, the ones that have the most common clear suburls
-    	String urlPatternMatched = "";
-    	ArrayList<Integer> searchLevel2Order = new ArrayList<Integer>(toSearchLevel2.values());
-    	Collections.sort(searchLevel2Order);
-    	ArrayList<String> orderedPatterns = new ArrayList<String>();
-    	for(int i= searchLevel2Order.size()-1; i >=0; i--)
-    	{
-    		Set<String> keySet = toSearchLevel2.keySet();
-    		for( String s : keySet)
-    		{
-    			if (toSearchLevel2.get(s).compareTo(searchLevel2Order.get(i)) == 0)
-    			{
-    				orderedPatterns.add(s);
-    				toSearchLevel2.remove(s);
-    				break;
-    			}
-    		}
-    	}
-    	// orderedPatterns now contain candidates ordered by their probability to match our request 
-    	for (String pattern: orderedPatterns)
-    	{
-    		//search though each narrowed pattern
-    		URLDataStructure aDataStructure = patternsWithParams.get(pattern);
-    		Map<Integer, String> aDirtySubUrls = aDataStructure.getDirtySubUrl();
-    		boolean found = true;
-    		
-    		urlPatternMatched = pattern; //keep track of the last pattern checked
-    		Set<Integer> keySet = aDirtySubUrls.keySet();
-    		// each pattern has a set of sub urls with params (called dirty sub urls)
-    		// each such sub pattern is matched against the corresponding index from the url
-    		for(Integer key : keySet)
-    		{
-    			String subPattern = aDirtySubUrls.get(key);
-    			if (urlClearSubUrls.containsKey(key))
-    			{
-    				String subUrl = urlClearSubUrls.get(key);
-    				Map<String, String> tempMap = null;
-    				if ((tempMap = matchSubUrls(subPattern, subUrl))!= null)
-    				{
-    					mapParams.putAll(tempMap);
-    				} else
-    				{
-    					// one of the sub urls does not match
-    					found = false;
-    					break;
-    				}
-    			} else
-    			{
-    				found = false;
-    				break;
-    			}
-    		}
-    		
-    		if (found)
-    		{
-    			result.setPatternParams(mapParams);
-    			result.setUrlPattern(urlPatternMatched);
-    			return result;
-    		} else
-    		{
-    			// current pattern did not match,clear the params for next pattern
-    			mapParams.clear();
-    		}		
-    	}
+		if (url.charAt(i) == '/') deep += 1;
 	}
-	
-	// match for /{**} match all
-	if (this.patternsWithAllMatch.size()>0)
+	int[] bounds = new int[2*deep + 2];
+	int count = 0;
+	int start = 0;
+	for(int i = 0; i < length; i++)
+	{
+		if (url.charAt(i) == '/')
+		{
+			if (i > start)
+			{
+				bounds[2*count] = start;
+				bounds[2*count+1] = i;
+				count += 1;
+			}
+			start = i+1;
+		}
+	}
+	if (length > 0)
 	{
-	    String bestPatternMarch = "";
-	    for(String pattern: patternsWithAllMatch.keySet())
-	    {
-	        // length of '/{**} is 5 but we will test also the ending /
-	        String baseUrl = pattern.substring(0, pattern.length()-4);
-	        if (url.startsWith(baseUrl))
-	        {
-	            if (bestPatternMarch.length() < pattern.length())
-	            {
-	                bestPatternMarch = pattern;
-	            }
-	        }
-	    }
-	    if (bestPatternMarch.length() > 0)
-	    {
-	        result.setUrlPattern(bestPatternMarch);
-	        String baseUrl = bestPatternMarch.substring(0, bestPatternMarch.length()-5);
-	        String paramValue = url.substring(baseUrl.length()+1);
-	        mapParams.put("**", paramValue);
-	        result.setPatternParams(mapParams);
-	        return result;
-	    }
-	    
+		// the last sub url, it is empty if the url ends with /
+		bounds[2*count] = start;
+		bounds[2*count+1] = length;
+		count += 1;
 	}
-	return null;
-}
-
-public Map<String, String> matchSubUrls(String subUrlPattern, String subUrl)
-{
-	// will match 'test-{id}' against 'test-234' and in this case will return a Map with key id=234
-	// test-{*}-{id}
-	// if subUrlPattern == subUrl and there are no params it will return an empty Map
-	// if no match then will return null
-	// there can be any number of parameters 'test-{keywords}-id-{id}' <-> 'test-sports-news-id-345'
-	boolean canContinue = true;
-	Map<String, String> result = new HashMap<String, String>();	
-	while (canContinue)
+	
+	// search the trie of the patterns with the same url deep
+	// each matching pattern gets a weight computed as 1000 for each clear sub url plus the number of common 
+	// characters between each dirty sub url and the url sub url, the pattern with the greatest weight wins
+	URLTrieNode root = deepToTrie.get(deep);
+	if (null != root)
 	{
-		int dpos = subUrlPattern.indexOf('{');
-		if (dpos >= 0)
+		TrieMatch match = new TrieMatch();
+		searchTrie(root, url, bounds, count, 0, 0, new URLTrieNode[count], match);
+		if (match.pattern != null)
 		{
-			if (dpos > 0) // fixed prefix before { 
+			// the parameter values are extracted only for the matched pattern
+			Map<String, String> mapParams = new HashMap<String, String>();
+			for(int i = 0; i < count; i++)
 			{
-				if (subUrl.startsWith(subUrlPattern.substring(0, dpos)))
+				URLTrieNode node = match.path[i];
+				if (node == null) continue;
+				if (node.getParamName() != null)
 				{
-					subUrl = subUrl.substring(dpos);
-					subUrlPattern = subUrlPattern.substring(dpos+1); //count also the '{'
+					mapParams.put(node.getParamName(), url.substring(bounds[2*i], bounds[2*i+1]));
 				} else
 				{
-					return null; // no match 
+					node.getSubPatternTemplate().putParams(url, bounds[2*i], bounds[2*i+1], mapParams);
 				}
-			} else
-			{
-				subUrlPattern = subUrlPattern.substring(1);	
 			}
-			
-			dpos = subUrlPattern.indexOf('}');
-			int epos = subUrlPattern.indexOf('{');
-			if ((epos >=0) && (dpos > epos))
-			{
-				// protect against cases '{id{}'
-				return null;
-			}
-			if (dpos >=0)
-			{
-				String parameter = subUrlPattern.substring(0, dpos);
-				subUrlPattern = subUrlPattern.substring(dpos+1);
-				if (subUrlPattern.length()>0)
-				{
-					// do we have another parameter?
-					int tempPos = subUrlPattern.indexOf('{');
-					if (tempPos >= 0)
-					{				
-						// we have another parameter so get the value for the first one
-						String fixedValue = subUrlPattern.substring(0, tempPos);
-						int fixedPos = -1;
-						if (parameter.equals("*"))
-						{
-							fixedPos = subUrl.lastIndexOf(fixedValue);
-						} else
-						{
-							fixedPos = subUrl.indexOf(fixedValue);
-						}
-						if (fixedPos >=0)
-						{
-							String parameterValue = subUrl.substring(0, fixedPos);
-							result.put(parameter, parameterValue);
-							subUrl = subUrl.substring(fixedPos);
-						} else
-						{
-							return null;
-						}
-					} else
-					{
-						// check if the subUrl ends with the fixed value
-						if (subUrl.endsWith(subUrlPattern))
-						{
-							subUrl = subUrl.substring(0,subUrl.length() - subUrlPattern.length());
-							result.put(parameter, subUrl);
-							return result;
-						} else
-						{
-							return null;
-						}
-					}
-				} else
-				{
-					result.put(parameter, subUrl);
-					return result;
-				}
-			} else
+			result.setPatternParams(mapParams);
+			result.setUrlPattern(match.pattern);
+			return result;
+		}
+	}
+	
+	// match for /{**} match all, the longest base url that prefixes the url wins
+	String bestPatternMatch = null;
+	int bestBaseLength = 0;
+	URLTrieNode node = allMatchTrie;
+	start = 0;
+	for(int i = 0; i < length && node != null; i++)
+	{
+		if (url.charAt(i) == '/')
+		{
+			node = node.getLiteral(url, start, i);
+			start = i+1;
+			if (node != null && node.getTailPattern() != null)
 			{
-				return null; // wrong formatted pattern: contains '{' but no closing '}'
+				bestPatternMatch = node.getTailPattern();
+				bestBaseLength = start;
 			}
-		} else
+		}
+	}
+	if (bestPatternMatch != null)
+	{
+		result.setUrlPattern(bestPatternMatch);
+		Map<String, String> mapParams = new HashMap<String, String>();
+		mapParams.put("**", url.substring(bestBaseLength));
+		result.setPatternParams(mapParams);
+		return result;
+	}
+	return null;
+}
+
+private void searchTrie(URLTrieNode node, String url, int[] bounds, int count, int index, int score, URLTrieNode[] path, TrieMatch match)
+{
+	if (index == count)
+	{
+		if (node.getPattern() != null && score > match.score)
 		{
-			if (subUrl.equals(subUrlPattern))
-			{
-				return result;
-			} else
+			match.pattern = node.getPattern();
+			match.score = score;
+			match.path = path.clone();
+		}
+		return;
+	}
+	int start = bounds[2*index];
+	int end = bounds[2*index+1];
+	URLTrieNode child = node.getLiteral(url, start, end);
+	if (child != null)
+	{
+		path[index] = null;
+		searchTrie(child, url, bounds, count, index+1, score + 1000, path, match);
+	}
+	// on equal weights the first pattern found wins, templated sub urls are more specific than single parameter sub urls
+	List<URLTrieNode> children = node.getParamChildren();
+	if (children != null)
+	{
+		for(URLTrieNode param: children)
+		{
+			if (param.getSubPatternTemplate().matches(url, start, end))
 			{
-				return null;
+				path[index] = param;
+				searchTrie(param, url, bounds, count, index+1, score + commonPrefix(param.getSubPattern(), url, start, end), path, match);
 			}
 		}
 	}
-		
-	return null;
+	children = node.getCaptureChildren();
+	if (children != null)
+	{
+		for(URLTrieNode capture: children)
+		{
+			path[index] = capture;
+			searchTrie(capture, url, bounds, count, index+1, score + commonPrefix(capture.getSubPattern(), url, start, end), path, match);
+		}
+	}
+	path[index] = null;
+}
+
+private static int commonPrefix(String subPattern, String url, int start, int end)
+{
+	int length = Math.min(subPattern.length(), end - start);
+	int x = 0;
+	while (x < length && subPattern.charAt(x) == url.charAt(start + x))
+	{
+		x++;
+	}
+	return x;
+}
+
+public Map<String, String> matchSubUrls(String subUrlPattern, String subUrl)
+{
+	// will match 'test-{id}' against 'test-234' and in this case will return a Map with key id=234
+	// test-{*}-{id}
+	// if subUrlPattern == subUrl and there are no params it will return an empty Map
+	// if no match then will return null
+	// there can be any number of parameters 'test-{keywords}-id-{id}' <-> 'test-sports-news-id-345'
+	// the trie keeps the compiled sub url patterns, this method compiles the pattern on each call
+	return URLSubPattern.compile(subUrlPattern).match(subUrl);
 }
 
 public boolean isMapIncluded(Map<Integer, String> small, Map<Integer, String> large)
@@ -0,0 +1,114 @@
+/*
+ *   Copyright 2014 Webpagebytes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package com.webpagebytes.cms.engine;
+
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.webpagebytes.cms.WPBUrisCache;
+import com.webpagebytes.cms.exception.WPBIOException;
+
+/*
+ * Holds one URLMatcher for each HTTP verb index.
+ * A URLMatcher is never changed after it is published: when the uris cache fingerprint changes a new
+ * URLMatcher is built aside and replaces the old one with a single atomic write.
+ * Only one thread rebuilds the URLMatcher of a verb, the other threads keep using the previous one
+ * until the new one is published.
+ */
+public class URLMatcherTable {
+
+private WPBUrisCache urisCache;
+private AtomicReferenceArray<URLMatcher> matchers;
+private AtomicBoolean[] rebuilding;
+
+public URLMatcherTable(WPBUrisCache urisCache, int size)
+{
+	this.urisCache = urisCache;
+	this.matchers = new AtomicReferenceArray<URLMatcher>(size);
+	this.rebuilding = new AtomicBoolean[size];
+	for(int i = 0; i < size; i++)
+	{
+		rebuilding[i] = new AtomicBoolean(false);
+	}
+}
+
+public void initialize() throws WPBIOException
+{
+	for(int i = 0; i < matchers.length(); i++)
+	{
+		Set<String> uris = urisCache.getAllUris(i);
+		matchers.set(i, build(uris, urisCache.getFingerPrint()));
+	}
+}
+
+private URLMatcher build(Set<String> uris, String fingerPrint)
+{
+	URLMatcher urlMatcher = new URLMatcher();
+	urlMatcher.initialize(uris, fingerPrint);
+	return urlMatcher;
+}
+
+/*
+ * Returns the URLMatcher for a HTTP verb index, rebuilding it if the uris cache was refreshed.
+ */
+public URLMatcher get(int httpIndex) throws WPBIOException
+{
+	URLMatcher current = matchers.get(httpIndex);
+	String fingerPrint = urisCache.getFingerPrint();
+	if (current != null && fingerPrint != null && fingerPrint.equals(current.getFingerPrint()))
+	{
+		return current;
+	}
+	AtomicBoolean flag = rebuilding[httpIndex];
+	boolean owner = flag.compareAndSet(false, true);
+	if (!owner && current != null)
+	{
+		// another thread is rebuilding the matcher, keep serving the previous routes
+		return current;
+	}
+	try
+	{
+		if (owner)
+		{
+			// the matcher might have been rebuilt by the previous owner
+			current = matchers.get(httpIndex);
+			fingerPrint = urisCache.getFingerPrint();
+			if (current != null && fingerPrint != null && fingerPrint.equals(current.getFingerPrint()))
+			{
+				return current;
+			}
+		}
+		// the fingerprint is read before the uris, a refresh in between will trigger another rebuild
+		URLMatcher urlMatcher = build(urisCache.getAllUris(httpIndex), fingerPrint);
+		matchers.set(httpIndex, urlMatcher);
+		return urlMatcher;
+	} finally
+	{
+		if (owner)
+		{
+			flag.set(false);
+		}
+	}
+}
+
+public int size()
+{
+	return matchers.length();
+}
+
+}
@@ -0,0 +1,156 @@
+/*
+ *   Copyright 2014 Webpagebytes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package com.webpagebytes.cms.engine;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * A compiled dirty sub url like 'test-{keywords}-id-{id}'.
+ * The sub url is parsed once in a list of fixed texts and parameter names:
+ *   literals[0] {names[0]} literals[1] {names[1]} ... {names[n-1]} literals[n]
+ * Matching is done over a region of the request url using only offsets, the parameters map
+ * and the parameter values are created only when the match succeeds.
+ */
+class URLSubPattern {
+
+private static final String ASTERIX = "*";
+
+private String[] literals;
+private String[] names;
+private boolean valid;
+
+private URLSubPattern()
+{
+
+}
+
+public static URLSubPattern compile(String subUrlPattern)
+{
+	URLSubPattern result = new URLSubPattern();
+	List<String> literals = new ArrayList<String>();
+	List<String> names = new ArrayList<String>();
+	int pos = 0;
+	int dpos;
+	while ((dpos = subUrlPattern.indexOf('{', pos)) >= 0)
+	{
+		literals.add(subUrlPattern.substring(pos, dpos));
+		int epos = subUrlPattern.indexOf('}', dpos+1);
+		int npos = subUrlPattern.indexOf('{', dpos+1);
+		if (epos < 0 || (npos >= 0 && npos < epos))
+		{
+			// wrong formatted pattern: contains '{' but no closing '}' or cases like '{id{}', it will never match
+			result.valid = false;
+			return result;
+		}
+		names.add(subUrlPattern.substring(dpos+1, epos));
+		pos = epos+1;
+	}
+	literals.add(subUrlPattern.substring(pos));
+	result.literals = literals.toArray(new String[literals.size()]);
+	result.names = names.toArray(new String[names.size()]);
+	result.valid = true;
+	return result;
+}
+
+/*
+ * Returns the end position of the value for the parameter with the index param when the parameter value
+ * starts at pos, or -1 if the url region cannot match
+ */
+private int valueEnd(int param, String url, int pos, int end)
+{
+	String fixedValue = literals[param+1];
+	if (param < names.length-1)
+	{
+		// there is another parameter so the value ends where the next fixed value starts
+		// {*} takes as much as possible, the other parameters as less as possible
+		int fixedPos;
+		if (names[param].equals(ASTERIX))
+		{
+			fixedPos = url.lastIndexOf(fixedValue, end - fixedValue.length());
+		} else
+		{
+			fixedPos = url.indexOf(fixedValue, pos);
+			if (fixedPos + fixedValue.length() > end) fixedPos = -1;
+		}
+		return (fixedPos >= pos) ? fixedPos : -1;
+	}
+	// last parameter, the url region must end with the fixed value
+	int fixedPos = end - fixedValue.length();
+	if (fixedPos >= pos && url.regionMatches(fixedPos, fixedValue, 0, fixedValue.length()))
+	{
+		return fixedPos;
+	}
+	return -1;
+}
+
+/*
+ * Returns true if the region [start, end) of the url matches this sub url pattern
+ */
+public boolean matches(String url, int start, int end)
+{
+	if (!valid) return false;
+	String prefix = literals[0];
+	if (names.length == 0)
+	{
+		return (end - start == prefix.length()) && url.regionMatches(start, prefix, 0, prefix.length());
+	}
+	if (end - start < prefix.length() || !url.regionMatches(start, prefix, 0, prefix.length()))
+	{
+		return false;
+	}
+	int pos = start + prefix.length();
+	for(int i = 0; i < names.length; i++)
+	{
+		int valueEnd = valueEnd(i, url, pos, end);
+		if (valueEnd < 0) return false;
+		pos = valueEnd + literals[i+1].length();
+	}
+	return true;
+}
+
+/*
+ * Puts the parameters of the region [start, end) in params, the region must match this sub url pattern
+ */
+public void putParams(String url, int start, int end, Map<String, String> params)
+{
+	int pos = start + literals[0].length();
+	for(int i = 0; i < names.length; i++)
+	{
+		int valueEnd = valueEnd(i, url, pos, end);
+		params.put(names[i], url.substring(pos, valueEnd));
+		pos = valueEnd + literals[i+1].length();
+	}
+}
+
+/*
+ * Returns the parameters map if the sub url matches this pattern, null otherwise
+ */
+public Map<String, String> match(String subUrl)
+{
+	if (!matches(subUrl, 0, subUrl.length()))
+	{
+		return null;
+	}
+	Map<String, String> result = new HashMap<String, String>();
+	putParams(subUrl, 0, subUrl.length(), result);
+	return result;
+}
+
+}
@@ -0,0 +1,210 @@
+/*
+ *   Copyright 2014 Webpagebytes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package com.webpagebytes.cms.engine;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * A node of the URLMatcher segment trie.
+ * A node is reached from its parent through one sub url of a pattern:
+ *  - literal children are reached through clear sub urls (i.e. 'news')
+ *  - capture children are reached through sub urls that are a single parameter (i.e. '{id}' or '{*}')
+ *  - param children are reached through dirty sub urls that mix fixed text and parameters (i.e. 'test-{id}')
+ * The tail trie used for the /{**} patterns reuses the literal children and the tailPattern field.
+ * Once all patterns are added, compile() builds the lookup tables that allow matching a region
+ * of the request url without creating sub url strings.
+ */
+class URLTrieNode {
+
+private Map<String, URLTrieNode> literalChildren;
+private List<URLTrieNode> captureChildren;
+private List<URLTrieNode> paramChildren;
+
+// open addressing table of the literal children, keyed by the same hash as String.hashCode
+private String[] literalKeys;
+private URLTrieNode[] literalNodes;
+
+private String subPattern; // the dirty sub url that leads to this node, null for literal children
+private URLSubPattern subPatternTemplate; // the compiled dirty sub url for param children
+private String paramName; // the parameter name for capture children
+private String pattern; // the pattern that ends in this node, if any
+private String tailPattern; // the /{**} pattern whose base url ends in this node, if any
+
+public URLTrieNode()
+{
+
+}
+
+private URLTrieNode(String subPattern, String paramName)
+{
+	this.subPattern = subPattern;
+	this.paramName = paramName;
+	if (null == paramName)
+	{
+		this.subPatternTemplate = URLSubPattern.compile(subPattern);
+	}
+}
+
+public URLTrieNode addLiteral(String subUrl)
+{
+	if (null == literalChildren)
+	{
+		literalChildren = new HashMap<String, URLTrieNode>();
+	}
+	URLTrieNode child = literalChildren.get(subUrl);
+	if (null == child)
+	{
+		child = new URLTrieNode();
+		literalChildren.put(subUrl, child);
+	}
+	return child;
+}
+
+public URLTrieNode addDirty(String subUrl)
+{
+	// a sub url like {id} or {*} will always match the whole request sub url
+	boolean isCapture = subUrl.length() > 2 && subUrl.charAt(0) == '{' && subUrl.indexOf('}') == subUrl.length()-1 && subUrl.indexOf('{', 1) < 0;
+	List<URLTrieNode> children = isCapture ? captureChildren : paramChildren;
+	if (null == children)
+	{
+		children = new ArrayList<URLTrieNode>();
+		if (isCapture)
+		{
+			captureChildren = children;
+		} else
+		{
+			paramChildren = children;
+		}
+	}
+	for(URLTrieNode child: children)
+	{
+		if (child.subPattern.equals(subUrl))
+		{
+			return child;
+		}
+	}
+	URLTrieNode child = new URLTrieNode(subUrl, isCapture ? subUrl.substring(1, subUrl.length()-1) : null);
+	children.add(child);
+	return child;
+}
+
+/*
+ * Builds the literal lookup tables for this node and all its children
+ */
+public void compile()
+{
+	if (literalChildren != null)
+	{
+		// keep the load factor under 0.5
+		int capacity = 2;
+		while (capacity < literalChildren.size() * 2)
+		{
+			capacity = capacity << 1;
+		}
+		literalKeys = new String[capacity];
+		literalNodes = new URLTrieNode[capacity];
+		for(Map.Entry<String, URLTrieNode> entry: literalChildren.entrySet())
+		{
+			int index = entry.getKey().hashCode() & (capacity-1);
+			while (literalKeys[index] != null)
+			{
+				index = (index+1) & (capacity-1);
+			}
+			literalKeys[index] = entry.getKey();
+			literalNodes[index] = entry.getValue();
+			entry.getValue().compile();
+		}
+	}
+	if (captureChildren != null)
+	{
+		for(URLTrieNode child: captureChildren) child.compile();
+	}
+	if (paramChildren != null)
+	{
+		for(URLTrieNode child: paramChildren) child.compile();
+	}
+}
+
+/*
+ * Returns the literal child for the region [start, end) of url, or null
+ */
+public URLTrieNode getLiteral(String url, int start, int end)
+{
+	if (null == literalKeys)
+	{
+		return null;
+	}
+	int hash = 0;
+	for(int i = start; i < end; i++)
+	{
+		hash = 31*hash + url.charAt(i);
+	}
+	int length = end - start;
+	int mask = literalKeys.length-1;
+	int index = hash & mask;
+	String key;
+	while ((key = literalKeys[index]) != null)
+	{
+		if (key.length() == length && url.regionMatches(start, key, 0, length))
+		{
+			return literalNodes[index];
+		}
+		index = (index+1) & mask;
+	}
+	return null;
+}
+
+public List<URLTrieNode> getCaptureChildren() {
+	return captureChildren;
+}
+
+public List<URLTrieNode> getParamChildren() {
+	return paramChildren;
+}
+
+public String getSubPattern() {
+	return subPattern;
+}
+
+public URLSubPattern getSubPatternTemplate() {
+	return subPatternTemplate;
+}
+
+public String getParamName() {
+	return paramName;
+}
+
+public String getPattern() {
+	return pattern;
+}
+
+public void setPattern(String pattern) {
+	this.pattern = pattern;
+}
+
+public String getTailPattern() {
+	return tailPattern;
+}
+
+public void setTailPattern(String tailPattern) {
+	this.tailPattern = tailPattern;
+}
+
+}
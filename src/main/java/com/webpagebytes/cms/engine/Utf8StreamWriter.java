@@ -0,0 +1,182 @@
+/*
+ *   Copyright 2014 Webpagebytes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package com.webpagebytes.cms.engine;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/*
+ * Writer that encodes the characters in UTF-8 straight into an OutputStream.
+ * The encoder and its char and byte buffers are kept per thread and reused between requests,
+ * so writing a page does not create intermediate Strings or byte arrays.
+ * A Utf8StreamWriter must be used and closed by the thread that created it.
+ */
+public class Utf8StreamWriter extends Writer {
+
+	private static final int BUFFER_SIZE = 8192;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static class Buffers
+	{
+		CharsetEncoder encoder = UTF8.newEncoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+		CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE);
+		ByteBuffer bytes = ByteBuffer.allocate(BUFFER_SIZE * 3);
+		boolean inUse;
+	}
+
+	private static final ThreadLocal<Buffers> pool = new ThreadLocal<Buffers>()
+	{
+		protected Buffers initialValue()
+		{
+			return new Buffers();
+		}
+	};
+
+	private OutputStream out;
+	private Buffers buffers;
+	private boolean closed;
+
+	public Utf8StreamWriter(OutputStream out)
+	{
+		this.out = out;
+		Buffers pooled = pool.get();
+		if (pooled.inUse)
+		{
+			// nested writer on the same thread, use private buffers
+			pooled = new Buffers();
+		}
+		pooled.inUse = true;
+		pooled.encoder.reset();
+		pooled.chars.clear();
+		pooled.bytes.clear();
+		this.buffers = pooled;
+	}
+
+	public void write(char[] cbuf, int off, int len) throws IOException
+	{
+		CharBuffer chars = buffers.chars;
+		while (len > 0)
+		{
+			int count = Math.min(len, chars.remaining());
+			chars.put(cbuf, off, count);
+			off += count;
+			len -= count;
+			if (!chars.hasRemaining())
+			{
+				encode(false);
+			}
+		}
+	}
+
+	public void write(String str, int off, int len) throws IOException
+	{
+		CharBuffer chars = buffers.chars;
+		char[] array = chars.array();
+		while (len > 0)
+		{
+			int count = Math.min(len, chars.remaining());
+			str.getChars(off, off + count, array, chars.position());
+			chars.position(chars.position() + count);
+			off += count;
+			len -= count;
+			if (!chars.hasRemaining())
+			{
+				encode(false);
+			}
+		}
+	}
+
+	public void write(int c) throws IOException
+	{
+		CharBuffer chars = buffers.chars;
+		chars.put((char)c);
+		if (!chars.hasRemaining())
+		{
+			encode(false);
+		}
+	}
+
+	private void encode(boolean endOfInput) throws IOException
+	{
+		CharBuffer chars = buffers.chars;
+		ByteBuffer bytes = buffers.bytes;
+		chars.flip();
+		while (true)
+		{
+			CoderResult result = buffers.encoder.encode(chars, bytes, endOfInput);
+			if (result.isOverflow())
+			{
+				writeBytes();
+			} else
+			{
+				break;
+			}
+		}
+		if (endOfInput)
+		{
+			while (buffers.encoder.flush(bytes).isOverflow())
+			{
+				writeBytes();
+			}
+		}
+		// an incomplete surrogate pair stays in the buffer for the next write
+		chars.compact();
+		writeBytes();
+	}
+
+	private void writeBytes() throws IOException
+	{
+		ByteBuffer bytes = buffers.bytes;
+		if (bytes.position() > 0)
+		{
+			out.write(bytes.array(), 0, bytes.position());
+			bytes.clear();
+		}
+	}
+
+	public void flush() throws IOException
+	{
+		if (closed) return;
+		encode(false);
+		out.flush();
+	}
+
+	/*
+	 * Writes all the pending characters and gives back the buffers, the underlying stream is not closed
+	 */
+	public void close() throws IOException
+	{
+		if (closed) return;
+		try
+		{
+			encode(true);
+		} finally
+		{
+			closed = true;
+			buffers.inUse = false;
+			buffers = null;
+		}
+	}
+
+}
@@ -24,7 +24,7 @@ import java.util.logging.Logger;
 
 import com.webpagebytes.cms.WPBAdminDataStorage;
 import com.webpagebytes.cms.exception.WPBIOException;
-import com.webpagebytes.cms.utility.WPBStopWatch;
+import com.webpagebytes.cms.utility.WPBTrace;
 
 public class WPBAdminDataStorageDecorator implements WPBAdminDataStorage {
 	private static final Logger log = Logger.getLogger(WPBAdminDataStorageDecorator.class.getName());
@@ -34,76 +34,102 @@ public class WPBAdminDataStorageDecorator implements WPBAdminDataStorage {
 	{
 		this.instance = instance;		
 	}
+	
+	private boolean isTraced()
+	{
+		return WPBTrace.isActive() || log.isLoggable(Level.FINE);
+	}
+	
+	private void trace(String operation, String arguments, long start)
+	{
+		long elapsed = (System.nanoTime() - start) / 1000000;
+		if (WPBTrace.isActive())
+		{
+			WPBTrace.event("storage", operation, arguments, elapsed);
+		} else
+		{
+			log.log(Level.FINE, "WPBAdminDataStorage:{0}({1}) took {2} ms", new Object[] {operation, arguments, elapsed});
+		}
+	}
 	@Override
 	public void initialize(Map<String, String> params) throws WPBIOException { 
-		WPBStopWatch stopWatch = WPBStopWatch.newInstance();
+		boolean traced = isTraced();
+		long start = traced ? System.nanoTime() : 0;
 		instance.initialize(params);
-		log.log(Level.INFO, String.format("WPBAdminDataStorage:initialize took %d ms", stopWatch.stop()));
+		if (traced) trace("initialize", "", start);
 	}
 	
 	@Override
 	public <T> void delete(String recordid, Class<T> dataClass)
 			throws WPBIOException {
-		WPBStopWatch stopWatch = WPBStopWatch.newInstance();
+		boolean traced = isTraced();
+		long start = traced ? System.nanoTime() : 0;
 		instance.delete(recordid, dataClass);
-		log.log(Level.INFO, String.format("WPBAdminDataStorage:delete(recordid, %s) took %d ms", dataClass.getSimpleName(), stopWatch.stop()));
+		if (traced) trace("delete", dataClass.getSimpleName(), start);
 	}
 	
 	@Override
 	public <T> void delete(Class<T> dataClass, String property,
 			AdminQueryOperator operator, Object parameter)
 			throws WPBIOException {
-		WPBStopWatch stopWatch = WPBStopWatch.newInstance();
+		boolean traced = isTraced();
+		long start = traced ? System.nanoTime() : 0;
 		instance.delete(dataClass, property, operator, parameter);
-		log.log(Level.INFO, String.format("WPBAdminDataStorage:delete(%s,%s,operator,parameter) took %d ms", dataClass.getSimpleName(), property, stopWatch.stop()));
+		if (traced) trace("delete", dataClass.getSimpleName() + "," + property, start);
 	}
 	
 	@Override
 	public <T> List<T> getAllRecords(Class<T> dataClass) throws WPBIOException {
-		WPBStopWatch stopWatch = WPBStopWatch.newInstance();
+		boolean traced = isTraced();
+		long start = traced ? System.nanoTime() : 0;
 		List<T> result = instance.getAllRecords(dataClass);
-		log.log(Level.INFO, String.format("WPBAdminDataStorage:getAllRecords(%s) took %d ms", dataClass.getSimpleName(), stopWatch.stop()));
+		if (traced) trace("getAllRecords", dataClass.getSimpleName(), start);
 		return result;
 	}
 	
 	@Override
 	public <T> List<T> getAllRecords(Class<T> dataClass, String property,
 			AdminSortOperator operator) throws WPBIOException {
-		WPBStopWatch stopWatch = WPBStopWatch.newInstance();
+		boolean traced = isTraced();
+		long start = traced ? System.nanoTime() : 0;
 		List<T> result = instance.getAllRecords(dataClass, property, operator);
-		log.log(Level.INFO, String.format("WPBAdminDataStorage:getAllRecords(%s,%s,operator) took %d ms", dataClass.getSimpleName(), property, stopWatch.stop()));
+		if (traced) trace("getAllRecords", dataClass.getSimpleName() + "," + property, start);
 		return result;
 	}
 	
 	@Override
 	public <T> T add(T record) throws WPBIOException {
-		WPBStopWatch stopWatch = WPBStopWatch.newInstance();
+		boolean traced = isTraced();
+		long start = traced ? System.nanoTime() : 0;
 		T result = instance.add(record);
-		log.log(Level.INFO, String.format("WPBAdminDataStorage:add (%s) took %d ms", record.getClass().getSimpleName(), stopWatch.stop()));
+		if (traced) trace("add", record.getClass().getSimpleName(), start);
 		return result;
 	}
 	
 	@Override
 	public <T> T addWithKey(T record) throws WPBIOException {
-		WPBStopWatch stopWatch = WPBStopWatch.newInstance();
+		boolean traced = isTraced();
+		long start = traced ? System.nanoTime() : 0;
 		T result = instance.addWithKey(record);
-		log.log(Level.INFO, String.format("WPBAdminDataStorage:addWithKey (%s) took %d ms", record.getClass().getSimpleName(), stopWatch.stop()));
+		if (traced) trace("addWithKey", record.getClass().getSimpleName(), start);
 		return result;
 	}
 	
 	@Override
 	public <T> T get(String recordid, Class<T> dataClass) throws WPBIOException {
-		WPBStopWatch stopWatch = WPBStopWatch.newInstance();
+		boolean traced = isTraced();
+		long start = traced ? System.nanoTime() : 0;
 		T result = instance.get(recordid, dataClass);
-		log.log(Level.INFO, String.format("WPBAdminDataStorage:get(%s, %s) took %d ms", recordid, dataClass.getSimpleName(), stopWatch.stop()));
+		if (traced) trace("get", recordid + "," + dataClass.getSimpleName(), start);
 		return result;
 	}
 	
 	@Override
 	public <T> T update(T record) throws WPBIOException {
-		WPBStopWatch stopWatch = WPBStopWatch.newInstance();
+		boolean traced = isTraced();
+		long start = traced ? System.nanoTime() : 0;
 		T result = instance.update(record);
-		log.log(Level.INFO, String.format("WPBAdminDataStorage:update (%s) took %d ms", record.getClass().getSimpleName(), stopWatch.stop()));
+		if (traced) trace("update", record.getClass().getSimpleName(), start);
 		return result;
 	}
 	
@@ -111,9 +137,10 @@ public class WPBAdminDataStorageDecorator implements WPBAdminDataStorage {
 	public <T> List<T> query(Class<T> dataClass, String property,
 			AdminQueryOperator operator, Object parameter)
 			throws WPBIOException {
-		WPBStopWatch stopWatch = WPBStopWatch.newInstance();
+		boolean traced = isTraced();
+		long start = traced ? System.nanoTime() : 0;
 		List<T> result = instance.query(dataClass, property, operator, parameter);
-		log.log(Level.INFO, String.format("WPBAdminDataStorage:query(%s, %s) took %d ms", dataClass.getSimpleName(), property, stopWatch.stop()));
+		if (traced) trace("query", dataClass.getSimpleName() + "," + property, start);
 		return result;
 	}
 	
@@ -121,9 +148,10 @@ public class WPBAdminDataStorageDecorator implements WPBAdminDataStorage {
 	public <T> List<T> queryEx(Class<T> dataClass, Set<String> propertyNames,
 			Map<String, AdminQueryOperator> operators,
 			Map<String, Object> values) throws WPBIOException {
-		WPBStopWatch stopWatch = WPBStopWatch.newInstance();
+		boolean traced = isTraced();
+		long start = traced ? System.nanoTime() : 0;
 		List<T> result = instance.queryEx(dataClass, propertyNames, operators, values);
-		log.log(Level.INFO, String.format("WPBAdminDataStorage:queryEx(%s, propertyNames) took %d ms", dataClass.getSimpleName(), stopWatch.stop()));
+		if (traced) trace("queryEx", dataClass.getSimpleName(), start);
 		return result;
 	}
 	
@@ -131,17 +159,19 @@ public class WPBAdminDataStorageDecorator implements WPBAdminDataStorage {
 	public <T> List<T> queryWithSort(Class<T> dataClass, String property,
 			AdminQueryOperator operator, Object parameter, String sortProperty,
 			AdminSortOperator sortOperator) throws WPBIOException {
-		WPBStopWatch stopWatch = WPBStopWatch.newInstance();
+		boolean traced = isTraced();
+		long start = traced ? System.nanoTime() : 0;
 		List<T> result = instance.queryWithSort(dataClass, property, operator, parameter, sortProperty, sortOperator);
-		log.log(Level.INFO, String.format("WPBAdminDataStorage:queryWithSort(%s,%s,..,%s) took %d ms", dataClass.getSimpleName(), property, sortProperty, stopWatch.stop()));
+		if (traced) trace("queryWithSort", dataClass.getSimpleName() + "," + property + "," + sortProperty, start);
 		return result;
 	}
 
 	@Override
 	public <T> void deleteAllRecords(Class<T> dataClass) throws WPBIOException {
-		WPBStopWatch stopWatch = WPBStopWatch.newInstance();
+		boolean traced = isTraced();
+		long start = traced ? System.nanoTime() : 0;
 		instance.deleteAllRecords(dataClass);
-		log.log(Level.INFO, String.format("WPBAdminDataStorage:deleteAllRecords(%s) took %d ms", dataClass.getSimpleName(), stopWatch.stop()));
+		if (traced) trace("deleteAllRecords", dataClass.getSimpleName(), start);
 	}
 
 }
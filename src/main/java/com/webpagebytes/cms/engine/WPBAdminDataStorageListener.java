@@ -26,5 +26,9 @@ public interface WPBAdminDataStorageListener {
 		DELETE_RECORDS
 		
 	}
+	/*
+	 * obj is the record for CREATE_RECORD and UPDATE_RECORD, the externalKey of the deleted record
+	 * for DELETE_RECORD and null for DELETE_RECORDS
+	 */
 	public<T> void notify (T obj, AdminDataStorageOperation o, Class<? extends Object> type);
 }
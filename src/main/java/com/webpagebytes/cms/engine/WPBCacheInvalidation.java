@@ -0,0 +1,128 @@
+/*
+ *   Copyright 2014 Webpagebytes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package com.webpagebytes.cms.engine;
+
+import java.lang.reflect.Field;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.webpagebytes.cms.WPBIncrementalCache;
+import com.webpagebytes.cms.WPBRefreshableCache;
+import com.webpagebytes.cms.cmsdata.WPBAdminFieldKey;
+import com.webpagebytes.cms.engine.WPBAdminDataStorageListener.AdminDataStorageOperation;
+import com.webpagebytes.cms.exception.WPBIOException;
+
+/*
+ * Applies an admin data storage notification to a cache. Caches that implement WPBIncrementalCache
+ * get only the created, changed or deleted record, the others and the bulk deletes are handled with Refresh().
+ */
+public class WPBCacheInvalidation {
+	private static final Logger log = Logger.getLogger(WPBCacheInvalidation.class.getName());
+	
+	// the field annotated with WPBAdminFieldKey for each record class, null values are stored as NO_KEY_FIELD
+	private static final ConcurrentHashMap<Class<?>, Object> keyFields = new ConcurrentHashMap<Class<?>, Object>();
+	private static final Object NO_KEY_FIELD = new Object();
+	
+	private WPBCacheInvalidation() { };
+	
+	/*
+	 * obj is the record for CREATE_RECORD and UPDATE_RECORD, the record externalKey for DELETE_RECORD
+	 */
+	public static<T> void invalidate(WPBRefreshableCache cache, T obj, AdminDataStorageOperation operation) throws WPBIOException
+	{
+		invalidateKey(cache, getNotificationKey(obj, operation), operation);
+	}
+	
+	/*
+	 * Same as invalidate when only the externalKey of the record is known, a null externalKey refreshes the whole cache
+	 */
+	public static void invalidateKey(WPBRefreshableCache cache, String externalKey, AdminDataStorageOperation operation) throws WPBIOException
+	{
+		if (cache instanceof WPBIncrementalCache && operation != null && externalKey != null)
+		{
+			WPBIncrementalCache incrementalCache = (WPBIncrementalCache) cache;
+			switch (operation)
+			{
+			case CREATE_RECORD:
+			case UPDATE_RECORD:
+				incrementalCache.upsert(externalKey);
+				return;
+			case DELETE_RECORD:
+				incrementalCache.evict(externalKey);
+				return;
+			default:
+				break;
+			}
+		}
+		cache.Refresh();
+	}
+	
+	/*
+	 * The externalKey a notification refers to, null when the notification is for many records
+	 */
+	static String getNotificationKey(Object obj, AdminDataStorageOperation operation)
+	{
+		if (operation == AdminDataStorageOperation.DELETE_RECORD)
+		{
+			return (obj instanceof String) ? (String) obj : null;
+		} else if (operation != AdminDataStorageOperation.DELETE_RECORDS)
+		{
+			return getExternalKey(obj);
+		}
+		return null;
+	}
+	
+	static String getExternalKey(Object record)
+	{
+		if (record == null)
+		{
+			return null;
+		}
+		Object field = keyFields.get(record.getClass());
+		if (field == null)
+		{
+			field = NO_KEY_FIELD;
+			for(Class<?> type = record.getClass(); type != null && field == NO_KEY_FIELD; type = type.getSuperclass())
+			{
+				for(Field item: type.getDeclaredFields())
+				{
+					if (item.isAnnotationPresent(WPBAdminFieldKey.class))
+					{
+						item.setAccessible(true);
+						field = item;
+						break;
+					}
+				}
+			}
+			keyFields.put(record.getClass(), field);
+		}
+		if (field == NO_KEY_FIELD)
+		{
+			return null;
+		}
+		try
+		{
+			Object value = ((Field) field).get(record);
+			return (value != null) ? value.toString() : null;
+		} catch (IllegalAccessException e)
+		{
+			log.log(Level.WARNING, "Cannot read the key of " + record.getClass().getName(), e);
+			return null;
+		}
+	}
+}
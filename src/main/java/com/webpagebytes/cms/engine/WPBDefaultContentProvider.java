@@ -62,6 +62,11 @@ public class WPBDefaultContentProvider implements WPBContentProvider {
 	{
 		try
 		{
+			// the output cache fingerprint is read before the page is fetched
+			if (model instanceof InternalModel && ((InternalModel)model).getOutputCacheFingerPrint() == null)
+			{
+				((InternalModel)model).setOutputCacheFingerPrint(pageContentBuilder.getOutputCacheFingerPrint());
+			}
 			WPBPage wbWebPage = pageContentBuilder.findWebPage(externalKey);
 			if (null == wbWebPage)
 			{
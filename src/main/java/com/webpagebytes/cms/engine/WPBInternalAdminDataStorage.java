@@ -15,6 +15,8 @@ public class WPBInternalAdminDataStorage implements WPBAdminDataStorage {
 	private WPBAdminDataStorage instance;
 	private Vector<WPBAdminDataStorageListener> storageListeners = new Vector<WPBAdminDataStorageListener>();
 	private boolean notificationsFlag = true;
+	private final ThreadLocal<NotificationBatch> batches = new ThreadLocal<NotificationBatch>();
+	private volatile WPBAdminDataStorageListener invalidationBus;
 
 	
 	WPBInternalAdminDataStorage(WPBAdminDataStorage instance)
@@ -31,7 +33,7 @@ public class WPBInternalAdminDataStorage implements WPBAdminDataStorage {
 	public <T> void delete(String recordid, Class<T> dataClass)
 			throws WPBIOException {
 		instance.delete(recordid, dataClass);		
-		notifyOperation(null, AdminDataStorageOperation.DELETE_RECORD, dataClass);			
+		notifyOperation(recordid, AdminDataStorageOperation.DELETE_RECORD, dataClass);			
 	}
 	
 	@Override
@@ -112,6 +114,33 @@ public class WPBInternalAdminDataStorage implements WPBAdminDataStorage {
         return notificationsFlag;
     }
     
+    /*
+     * Starts collecting the notifications of the current thread, the listeners get them merged by record type
+     * when the matching endBatch is called. Batches can be nested, only the outermost endBatch sends the notifications.
+     */
+    public void startBatch() {
+        NotificationBatch batch = batches.get();
+        if (batch == null)
+        {
+            batch = new NotificationBatch();
+            batches.set(batch);
+        }
+        batch.open();
+    }
+    
+    public void endBatch() {
+        NotificationBatch batch = batches.get();
+        if (batch == null || !batch.close())
+        {
+            return;
+        }
+        batches.remove();
+        for(NotificationBatch.Notification notification: batch.getNotifications())
+        {
+            dispatch(notification.obj, notification.operation, notification.type);
+        }
+    }
+    
 	public void addStorageListener(WPBAdminDataStorageListener listener)
 	{
 		synchronized (storageListeners)
@@ -135,20 +164,45 @@ public class WPBInternalAdminDataStorage implements WPBAdminDataStorage {
 		}
 	}
 	
+	/*
+	 * Listener that forwards the notifications to the other nodes, it is notified after all the storage listeners
+	 * so the local caches are already updated
+	 */
+	public void setInvalidationBus(WPBAdminDataStorageListener invalidationBus)
+	{
+		this.invalidationBus = invalidationBus;
+	}
+	
 	protected<T> void notifyOperation(T obj, WPBAdminDataStorageListener.AdminDataStorageOperation operation, Class<? extends Object> type)
 	{
 	    if (notificationsFlag)
 	    {
-    		synchronized (storageListeners)
-    		{
-    			for(int i=0; i< storageListeners.size(); i++)
-    			{
-    				storageListeners.get(i).notify(obj, operation, type);
-    			}
-    		}
+	        NotificationBatch batch = batches.get();
+	        if (batch != null)
+	        {
+	            batch.add(obj, operation, type);
+	            return;
+	        }
+	        dispatch(obj, operation, type);
 	    }
 	}
 	
+	private void dispatch(Object obj, WPBAdminDataStorageListener.AdminDataStorageOperation operation, Class<? extends Object> type)
+	{
+		synchronized (storageListeners)
+		{
+			for(int i=0; i< storageListeners.size(); i++)
+			{
+				storageListeners.get(i).notify(obj, operation, type);
+			}
+		}
+		WPBAdminDataStorageListener bus = invalidationBus;
+		if (bus != null)
+		{
+			bus.notify(obj, operation, type);
+		}
+	}
+	
 	@Override
 	public <T> void deleteAllRecords(Class<T> dataClass) throws WPBIOException {
 		instance.deleteAllRecords(dataClass);
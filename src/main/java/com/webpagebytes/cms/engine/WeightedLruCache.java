@@ -0,0 +1,148 @@
+/*
+ *   Copyright 2014 Webpagebytes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package com.webpagebytes.cms.engine;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/*
+ * LRU cache bounded by the total weight of its values, the subclasses say what the weight of a value is.
+ * All entries are dropped when the fingerprint of the cache the content comes from changes,
+ * content is never kept for a null fingerprint.
+ */
+public abstract class WeightedLruCache<K, V> {
+
+	private final long maxWeight;
+	private final long maxEntryWeight;
+	private final LinkedHashMap<K, V> entries = new LinkedHashMap<K, V>(16, 0.75f, true);
+	private long weight;
+	private String fingerPrint = "";
+	private long hits;
+	private long misses;
+	private long evictions;
+	
+	/*
+	 * maxWeight is the maximum total weight kept, maxEntryWeight the maximum weight of one value
+	 */
+	protected WeightedLruCache(long maxWeight, long maxEntryWeight)
+	{
+		this.maxWeight = maxWeight;
+		this.maxEntryWeight = Math.min(maxWeight, maxEntryWeight);
+	}
+	
+	protected abstract long weigh(V value);
+	
+	/*
+	 * Returns true if a value of this weight can be kept
+	 */
+	public boolean accepts(long entryWeight)
+	{
+		return entryWeight <= maxEntryWeight;
+	}
+	
+	/*
+	 * Returns the cached value or null if there is no entry for the key
+	 */
+	public synchronized V get(K key, String fingerPrint)
+	{
+		if (fingerPrint == null || !this.fingerPrint.equals(fingerPrint))
+		{
+			reset(fingerPrint);
+			misses++;
+			return null;
+		}
+		V value = entries.get(key);
+		if (value == null)
+		{
+			misses++;
+		} else
+		{
+			hits++;
+		}
+		return value;
+	}
+	
+	public synchronized void put(K key, String fingerPrint, V value)
+	{
+		long valueWeight = weigh(value);
+		if (fingerPrint == null || !this.fingerPrint.equals(fingerPrint) || !accepts(valueWeight))
+		{
+			// stale content or content that would evict too much of the rest
+			return;
+		}
+		V previous = entries.put(key, value);
+		if (previous != null)
+		{
+			weight -= weigh(previous);
+		}
+		weight += valueWeight;
+		Iterator<Map.Entry<K, V>> iterator = entries.entrySet().iterator();
+		while (weight > maxWeight && iterator.hasNext())
+		{
+			Map.Entry<K, V> eldest = iterator.next();
+			weight -= weigh(eldest.getValue());
+			iterator.remove();
+			evictions++;
+		}
+	}
+	
+	public long getMaxWeight()
+	{
+		return maxWeight;
+	}
+	
+	public synchronized long getWeight()
+	{
+		return weight;
+	}
+	
+	public synchronized int size()
+	{
+		return entries.size();
+	}
+	
+	public synchronized long getHits()
+	{
+		return hits;
+	}
+	
+	public synchronized long getMisses()
+	{
+		return misses;
+	}
+	
+	public synchronized long getEvictions()
+	{
+		return evictions;
+	}
+	
+	/*
+	 * Drops all the entries, the content put from now on has to be for this fingerprint
+	 */
+	public synchronized void reset(String fingerPrint)
+	{
+		clear();
+		this.fingerPrint = (fingerPrint != null) ? fingerPrint : "";
+	}
+	
+	public synchronized void clear()
+	{
+		entries.clear();
+		weight = 0;
+	}
+}
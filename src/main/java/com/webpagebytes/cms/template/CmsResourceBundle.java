@@ -18,7 +18,6 @@ package com.webpagebytes.cms.template;
 
 import java.util.Collections;
 import java.util.Enumeration;
-import java.util.HashMap;
 import java.util.Locale;
 import java.util.Map;
 import java.util.ResourceBundle;
@@ -36,7 +35,7 @@ public class CmsResourceBundle extends ResourceBundle {
 	{
 		this.messageCache = messageCache;
 		fingerPrint = "";
-		messages = new HashMap<String, String>();
+		messages = Collections.emptyMap();
 		Refresh(locale);
 	}
 	
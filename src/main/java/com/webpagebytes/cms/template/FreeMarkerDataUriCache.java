@@ -0,0 +1,93 @@
+/*
+ *   Copyright 2014 Webpagebytes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package com.webpagebytes.cms.template;
+
+import com.webpagebytes.cms.engine.WeightedLruCache;
+
+/*
+ * LRU cache for the data uris of the embedded images, bounded by the total number of chars.
+ * An entry is valid while the file hash is the same, all entries are dropped when the files cache fingerprint changes.
+ */
+class FreeMarkerDataUriCache {
+
+	private static class Entry
+	{
+		final Long hash;
+		final String dataUri;
+		Entry(Long hash, String dataUri)
+		{
+			this.hash = hash;
+			this.dataUri = dataUri;
+		}
+	}
+	
+	private final WeightedLruCache<String, Entry> entries;
+	
+	/*
+	 * maxWeight is the maximum number of chars kept, maxEntryWeight the maximum length of one data uri
+	 */
+	public FreeMarkerDataUriCache(long maxWeight, long maxEntryWeight)
+	{
+		entries = new WeightedLruCache<String, Entry>(maxWeight, maxEntryWeight) {
+			protected long weigh(Entry entry)
+			{
+				return entry.dataUri.length();
+			}
+		};
+	}
+	
+	/*
+	 * Returns true if a data uri of this length can be kept
+	 */
+	public boolean accepts(long length)
+	{
+		return entries.accepts(length);
+	}
+	
+	public String get(String blobKey, Long hash, String fingerPrint)
+	{
+		Entry entry = entries.get(blobKey, fingerPrint);
+		if (entry == null || hash == null || !hash.equals(entry.hash))
+		{
+			return null;
+		}
+		return entry.dataUri;
+	}
+	
+	public void put(String blobKey, Long hash, String fingerPrint, String dataUri)
+	{
+		if (hash != null)
+		{
+			entries.put(blobKey, fingerPrint, new Entry(hash, dataUri));
+		}
+	}
+	
+	public long getWeight()
+	{
+		return entries.getWeight();
+	}
+	
+	public int size()
+	{
+		return entries.size();
+	}
+	
+	public void clear()
+	{
+		entries.clear();
+	}
+}
@@ -0,0 +1,169 @@
+/*
+ *   Copyright 2014 Webpagebytes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package com.webpagebytes.cms.template;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.webpagebytes.cms.cmsdata.WPBPageModule;
+import com.webpagebytes.cms.engine.WeightedLruCache;
+
+/*
+ * Cache used by the module directive for the page modules and for the rendered content of the
+ * template modules that have the fragment cache flag set.
+ * A snapshot is valid for one set of fingerprints of the caches the rendered content is read from,
+ * a new empty snapshot is used as soon as one of them changes.
+ */
+class FreeMarkerFragmentCache {
+
+	/*
+	 * A page module and the names of the params its content depends on
+	 */
+	static class ModuleEntry
+	{
+		final WPBPageModule module;
+		final String[] dependencyParams;
+		ModuleEntry(WPBPageModule module)
+		{
+			this.module = module;
+			this.dependencyParams = parseParams(module.getFragmentCacheParams());
+		}
+		boolean isFragmentCached()
+		{
+			return module.getIsFragmentCached() != null && module.getIsFragmentCached() == 1;
+		}
+	}
+	
+	static class Snapshot
+	{
+		final String fingerPrint;
+		final ConcurrentHashMap<String, ModuleEntry> modules = new ConcurrentHashMap<String, ModuleEntry>();
+		private final WeightedLruCache<Object, String> fragments;
+		
+		Snapshot(String fingerPrint, WeightedLruCache<Object, String> fragments)
+		{
+			this.fingerPrint = fingerPrint;
+			this.fragments = fragments;
+		}
+		
+		boolean matches(String fingerPrint)
+		{
+			return fingerPrint != null && fingerPrint.equals(this.fingerPrint);
+		}
+		
+		public ModuleEntry getModule(String externalKey)
+		{
+			return modules.get(externalKey);
+		}
+		
+		public ModuleEntry putModule(String externalKey, WPBPageModule module)
+		{
+			ModuleEntry entry = new ModuleEntry(module);
+			modules.put(externalKey, entry);
+			return entry;
+		}
+		
+		public String getFragment(Object key)
+		{
+			return fragments.get(key, fingerPrint);
+		}
+		
+		public void putFragment(Object key, String content)
+		{
+			fragments.put(key, fingerPrint, content);
+		}
+		
+		public int getFragmentsSize()
+		{
+			return fragments.size();
+		}
+	}
+	
+	private final int maxSize;
+	private final WeightedLruCache<Object, String> fragments;
+	private volatile Snapshot snapshot;
+	
+	/*
+	 * maxSize is the maximum number of rendered fragments kept
+	 */
+	public FreeMarkerFragmentCache(int maxSize)
+	{
+		this.maxSize = maxSize;
+		// every fragment weighs 1 so the weight is the number of fragments
+		this.fragments = new WeightedLruCache<Object, String>(maxSize, 1) {
+			protected long weigh(String value)
+			{
+				return 1;
+			}
+		};
+		this.snapshot = new Snapshot(null, fragments);
+	}
+	
+	public int getMaxSize()
+	{
+		return maxSize;
+	}
+	
+	/*
+	 * Returns the snapshot for the fingerprints of the page modules, messages, parameters, articles, files and uris caches.
+	 * A null fingerprint means the cache content is not known, nothing is kept for it.
+	 */
+	public Snapshot getSnapshot(String... fingerPrints)
+	{
+		String fingerPrint = combine(fingerPrints);
+		Snapshot current = snapshot;
+		if (!current.matches(fingerPrint))
+		{
+			current = new Snapshot(fingerPrint, fragments);
+			fragments.reset(fingerPrint);
+			snapshot = current;
+		}
+		return current;
+	}
+	
+	static String combine(String[] fingerPrints)
+	{
+		StringBuilder sb = new StringBuilder();
+		for(String fingerPrint: fingerPrints)
+		{
+			if (fingerPrint == null)
+			{
+				return null;
+			}
+			sb.append(fingerPrint).append('|');
+		}
+		return sb.toString();
+	}
+	
+	static String[] parseParams(String params)
+	{
+		List<String> result = new ArrayList<String>();
+		if (params != null)
+		{
+			for(String param: params.split(","))
+			{
+				param = param.trim();
+				if (param.length() > 0)
+				{
+					result.add(param);
+				}
+			}
+		}
+		return result.toArray(new String[result.size()]);
+	}
+}
@@ -16,14 +16,15 @@
 
 package com.webpagebytes.cms.template;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.Writer;
 import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.StringBuilderWriter;
 
 import com.webpagebytes.cms.WPBFilePath;
 import com.webpagebytes.cms.WPBFileStorage;
@@ -31,6 +32,9 @@ import com.webpagebytes.cms.cmsdata.WPBFile;
 import com.webpagebytes.cms.engine.WPBCacheInstances;
 import com.webpagebytes.cms.exception.WPBIOException;
 import com.webpagebytes.cms.utility.CmsBase64Utility;
+import com.webpagebytes.cms.utility.CmsConfiguration;
+import com.webpagebytes.cms.utility.CmsConfiguration.WPBSECTION;
+import com.webpagebytes.cms.utility.CmsConfigurationFactory;
 
 import freemarker.core.Environment;
 import freemarker.template.TemplateDirectiveBody;
@@ -44,6 +48,10 @@ class FreeMarkerImageDirective implements TemplateDirectiveModel {
 	private static final Logger log = Logger.getLogger(FreeMarkerModuleDirective.class.getName());
 	WPBCacheInstances cacheInstances;
 	WPBFileStorage cloudFileStorage;
+	FreeMarkerDataUriCache dataUriCache;
+	
+	public static final long EMBEDDED_IMAGE_CACHE_SIZE = 4 * 1024 * 1024; // in chars, 0 disables the cache
+	public static final long EMBEDDED_IMAGE_CACHE_MAX_SIZE = 256 * 1024; // in chars
 	
 	public FreeMarkerImageDirective()
 	{
@@ -53,6 +61,30 @@ class FreeMarkerImageDirective implements TemplateDirectiveModel {
 	{
 		this.cacheInstances = cacheInstances;
 		this.cloudFileStorage = cloudFileStorage;
+		
+		CmsConfiguration configuration = CmsConfigurationFactory.getConfiguration();
+		Map<String, String> generalParams = (configuration != null) ? configuration.getSectionParams(WPBSECTION.SECTION_GENERAL) : null;
+		long cacheSize = EMBEDDED_IMAGE_CACHE_SIZE;
+		long cacheMaxSize = EMBEDDED_IMAGE_CACHE_MAX_SIZE;
+		if (generalParams != null)
+		{
+			try
+			{
+				if (generalParams.containsKey("embedded_image_cache_size"))
+				{
+					cacheSize = Long.valueOf(generalParams.get("embedded_image_cache_size"));
+				}
+				if (generalParams.containsKey("embedded_image_cache_max_size"))
+				{
+					cacheMaxSize = Long.valueOf(generalParams.get("embedded_image_cache_max_size"));
+				}
+			} catch (NumberFormatException e)
+			{
+				cacheSize = EMBEDDED_IMAGE_CACHE_SIZE;
+				cacheMaxSize = EMBEDDED_IMAGE_CACHE_MAX_SIZE;
+			}
+		}
+		dataUriCache = (cacheSize > 0) ? new FreeMarkerDataUriCache(cacheSize, cacheMaxSize) : null;
 	}
 	
     public void execute(Environment env,
@@ -94,27 +126,7 @@ class FreeMarkerImageDirective implements TemplateDirectiveModel {
         		env.getOut().write(serveUrl);
         	} else
         	{
-        		
-        		InputStream is = null;
-        		ByteArrayOutputStream baos = null;
-        		try
-        		{
-	        		is = cloudFileStorage.getFileContent(cloudFile);
-	        		baos = new ByteArrayOutputStream(4046);
-	        		IOUtils.copy(is, baos);
-	        		String base64 = CmsBase64Utility.toBase64(baos.toByteArray());
-	        		String htmlImage = String.format("data:%s;base64,%s", file.getAdjustedContentType(), base64);
-	        		env.getOut().write(htmlImage);
-        		} catch (IOException e)
-        		{
-        			log.log(Level.SEVERE, "Error when generating base64 image for " + externalKey);
-        			throw e;
-        		}
-        		finally 
-        		{
-        			IOUtils.closeQuietly(is);
-        			IOUtils.closeQuietly(baos);
-        		}
+        		writeDataUri(env.getOut(), file, cloudFile, externalKey);
         	}
         } catch (WPBIOException e)
         {
@@ -123,4 +135,52 @@ class FreeMarkerImageDirective implements TemplateDirectiveModel {
         }
     }
 
+    /*
+     * Writes the data uri of an image, from the cache when possible. On a miss the base64 content is
+     * streamed to out, it is kept in memory only when the data uri is small enough to be cached.
+     */
+    void writeDataUri(Writer out, WPBFile file, WPBFilePath cloudFile, String externalKey) throws IOException, WPBIOException
+    {
+    	String fingerPrint = null;
+    	if (dataUriCache != null)
+    	{
+    		fingerPrint = cacheInstances.getFilesCache().getFingerPrint();
+    		String dataUri = dataUriCache.get(file.getBlobKey(), file.getHash(), fingerPrint);
+    		if (dataUri != null)
+    		{
+    			out.write(dataUri);
+    			return;
+    		}
+    	}
+    	String prefix = "data:" + file.getAdjustedContentType() + ";base64,";
+    	long length = (file.getSize() != null) ? prefix.length() + 4 * ((file.getSize() + 2) / 3) : -1;
+    	boolean cacheable = dataUriCache != null && length >= 0 && dataUriCache.accepts(length);
+    	
+    	InputStream is = null;
+    	try
+    	{
+    		is = cloudFileStorage.getFileContent(cloudFile);
+    		if (cacheable)
+    		{
+    			StringBuilderWriter dataUriOut = new StringBuilderWriter((int) length);
+    			dataUriOut.write(prefix);
+    			CmsBase64Utility.toBase64(is, dataUriOut);
+    			String dataUri = dataUriOut.toString();
+    			dataUriCache.put(file.getBlobKey(), file.getHash(), fingerPrint, dataUri);
+    			out.write(dataUri);
+    		} else
+    		{
+    			out.write(prefix);
+    			CmsBase64Utility.toBase64(is, out);
+    		}
+    	} catch (IOException e)
+    	{
+    		log.log(Level.SEVERE, "Error when generating base64 image for " + externalKey);
+    		throw e;
+    	}
+    	finally 
+    	{
+    		IOUtils.closeQuietly(is);
+    	}
+    }
 }
@@ -17,17 +17,29 @@
 package com.webpagebytes.cms.template;
 
 import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.logging.Logger;
 
+import com.webpagebytes.cms.WPBModel;
 import com.webpagebytes.cms.cmsdata.WPBPageModule;
 import com.webpagebytes.cms.engine.WPBCacheInstances;
 import com.webpagebytes.cms.exception.WPBException;
 import com.webpagebytes.cms.exception.WPBTemplateException;
+import com.webpagebytes.cms.utility.CmsConfiguration;
+import com.webpagebytes.cms.utility.CmsConfiguration.WPBSECTION;
+import com.webpagebytes.cms.utility.CmsConfigurationFactory;
 
 import freemarker.core.Environment;
+import freemarker.core.Environment.Namespace;
+import freemarker.template.Template;
 import freemarker.template.TemplateDirectiveBody;
 import freemarker.template.TemplateException;
+import freemarker.template.TemplateHashModel;
 import freemarker.template.TemplateModel;
 import freemarker.template.TemplateModelException;
 import freemarker.template.utility.DeepUnwrap;
@@ -36,6 +48,12 @@ public class FreeMarkerModuleDirective extends FreeMarkerDirectiveBase {
 	private static final Logger log = Logger.getLogger(FreeMarkerModuleDirective.class.getName());
 	WPBTemplateEngine templateEngine;
 	WPBCacheInstances cacheInstances;
+	FreeMarkerFragmentCache fragmentCache;
+	
+	public static final int MODULE_FRAGMENT_CACHE_SIZE = 0; // the fragment cache is disabled by default
+	
+	// the values of the request map a module can use to build its links
+	private static final String[] REQUEST_KEY_PARAMS = {WPBModel.GLOBAL_PROTOCOL, WPBModel.GLOBAL_DOMAIN, WPBModel.GLOBAL_CONTEXT_PATH, WPBModel.GLOBAL_BASE_URL};
 	
 	public FreeMarkerModuleDirective()
 	{
@@ -45,6 +63,24 @@ public class FreeMarkerModuleDirective extends FreeMarkerDirectiveBase {
 	{
 		this.templateEngine = engine;
 		this.cacheInstances = cacheInstances;
+		
+		CmsConfiguration configuration = CmsConfigurationFactory.getConfiguration();
+		Map<String, String> generalParams = (configuration != null) ? configuration.getSectionParams(WPBSECTION.SECTION_GENERAL) : null;
+		int fragmentCacheSize = MODULE_FRAGMENT_CACHE_SIZE;
+		if (generalParams != null && generalParams.containsKey("module_fragment_cache_size"))
+		{
+			try
+			{
+				fragmentCacheSize = Integer.valueOf(generalParams.get("module_fragment_cache_size"));
+			} catch (NumberFormatException e)
+			{
+				fragmentCacheSize = MODULE_FRAGMENT_CACHE_SIZE;
+			}
+		}
+		if (fragmentCacheSize > 0)
+		{
+			fragmentCache = new FreeMarkerFragmentCache(fragmentCacheSize);
+		}
 	}
 	
     public void execute(Environment env,
@@ -55,8 +91,6 @@ public class FreeMarkerModuleDirective extends FreeMarkerDirectiveBase {
         // Check if no parameters were given:
     	if (body != null) throw new TemplateModelException("WBFreeMarkerModuleDirective does not suport directive body");
         
-    	copyParams(env, params);
-    	
     	String externalKey = null;
     	if (params.containsKey("externalKey"))
     	{
@@ -66,15 +100,47 @@ public class FreeMarkerModuleDirective extends FreeMarkerDirectiveBase {
     	
         try
         {
-        	WPBPageModule pageModule = cacheInstances.getPageModuleCache().getByExternalKey(externalKey);
+        	FreeMarkerFragmentCache.Snapshot snapshot = null;
+        	FreeMarkerFragmentCache.ModuleEntry moduleEntry = null;
+        	if (fragmentCache != null)
+        	{
+        		snapshot = fragmentCache.getSnapshot(cacheInstances.getPageModuleCache().getFingerPrint(), 
+        											 cacheInstances.getMessageCache().getFingerPrint(),
+        											 cacheInstances.getParameterCache().getFingerPrint(),
+        											 cacheInstances.getArticleCache().getFingerPrint(),
+        											 cacheInstances.getFilesCache().getFingerPrint(),
+        											 cacheInstances.getUriCache().getFingerPrint());
+        		moduleEntry = snapshot.getModule(externalKey);
+        	}
+        	WPBPageModule pageModule = (moduleEntry != null) ? moduleEntry.module : cacheInstances.getPageModuleCache().getByExternalKey(externalKey);
         	if (pageModule == null)
         	{
         		throw new TemplateModelException("WBFreeMarkerModuleDirective directive name does not match any existing page module: " + externalKey);       
         	}
+        	if (snapshot != null && moduleEntry == null)
+        	{
+        		moduleEntry = snapshot.putModule(externalKey, pageModule);
+        	}
         	if (pageModule.getIsTemplateSource() == 1)
         	{
         		String moduleName = WPBTemplateEngine.WEBMODULES_PATH_PREFIX + pageModule.getExternalKey();
-        	    templateEngine.process(moduleName, params, env.getOut());        	 
+        		if (moduleEntry != null && moduleEntry.isFragmentCached())
+        		{
+        			// the key is built before rendering, copyParams adds the data model keys to params
+        			Object fragmentKey = getFragmentKey(env, externalKey, moduleEntry, params);
+        			String content = snapshot.getFragment(fragmentKey);
+        			if (content == null)
+        			{
+        				StringWriter fragmentOut = new StringWriter();
+        				renderModule(env, moduleName, params, fragmentOut);
+        				content = fragmentOut.toString();
+        				snapshot.putFragment(fragmentKey, content);
+        			}
+        			env.getOut().write(content);
+        		} else
+        		{
+        			renderModule(env, moduleName, params, null);
+        		}
         	} else
         	{
         		env.getOut().write(pageModule.getHtmlSource());
@@ -93,5 +159,114 @@ public class FreeMarkerModuleDirective extends FreeMarkerDirectiveBase {
         }
     }
 
-	   
+    /*
+     * Renders a template module to out, or to the page output when out is null
+     */
+    void renderModule(Environment env, String moduleName, Map params, Writer out) throws TemplateException, IOException, WPBException
+    {
+    	if (templateEngine instanceof WPBFreeMarkerTemplateEngine && ((WPBFreeMarkerTemplateEngine) templateEngine).isModuleIncludeMode())
+    	{
+    		Template template = ((WPBFreeMarkerTemplateEngine) templateEngine).getModuleTemplate(moduleName);
+    		if (out == null)
+    		{
+    			includeModule(env, template, params);
+    			return;
+    		}
+    		Writer pageOut = env.getOut();
+    		env.setOut(out);
+    		try
+    		{
+    			includeModule(env, template, params);
+    		}
+    		finally
+    		{
+    			env.setOut(pageOut);
+    		}
+    	} else
+    	{
+    		copyParams(env, params);
+    		templateEngine.process(moduleName, params, (out != null) ? out : env.getOut());
+    	}
+    }
+    
+    /*
+     * The rendered content of a module depends on the module, the locale, the request url values (base url, domain,
+     * context path) and the values of the params the module declares. Each param is read from the directive params,
+     * then from the uri parameters.
+     * Globals, page parameters, messages, articles, files and uris are covered by the snapshot fingerprints.
+     */
+    Object getFragmentKey(Environment env, String externalKey, FreeMarkerFragmentCache.ModuleEntry moduleEntry, Map params) throws TemplateModelException
+    {
+    	TemplateHashModel dataModel = env.getDataModel();
+    	List<Object> key = new ArrayList<Object>(3 + REQUEST_KEY_PARAMS.length + moduleEntry.dependencyParams.length);
+    	key.add(externalKey);
+    	key.add(unwrap(dataModel.get(WPBModel.LOCALE_LANGUAGE_KEY)));
+    	key.add(unwrap(dataModel.get(WPBModel.LOCALE_COUNTRY_KEY)));
+    	TemplateModel requestParams = dataModel.get(WPBModel.REQUEST_KEY);
+    	for(String name: REQUEST_KEY_PARAMS)
+    	{
+    		key.add((requestParams instanceof TemplateHashModel) ? unwrap(((TemplateHashModel) requestParams).get(name)) : null);
+    	}
+    	TemplateModel uriParams = null;
+    	for(String name: moduleEntry.dependencyParams)
+    	{
+    		TemplateModel value = (TemplateModel) params.get(name);
+    		if (value == null)
+    		{
+    			if (uriParams == null)
+    			{
+    				uriParams = dataModel.get(WPBModel.URI_PARAMETERS_KEY);
+    			}
+    			if (uriParams instanceof TemplateHashModel)
+    			{
+    				value = ((TemplateHashModel) uriParams).get(name);
+    			}
+    		}
+    		key.add(unwrap(value));
+    	}
+    	return key;
+    }
+    
+    private Object unwrap(TemplateModel model) throws TemplateModelException
+    {
+    	return (model != null) ? DeepUnwrap.unwrap(model) : null;
+    }
+    
+    /*
+     * Renders the module template in the page Environment, like #include does.
+     * The directive params are set in the current namespace only while the module renders.
+     */
+    void includeModule(Environment env, Template template, Map params) throws TemplateException, IOException
+    {
+    	Namespace namespace = env.getCurrentNamespace();
+    	Map<String, TemplateModel> previous = new HashMap<String, TemplateModel>();
+    	for(Object item: params.entrySet())
+    	{
+    		Map.Entry entry = (Map.Entry) item;
+    		String name = (String) entry.getKey();
+    		if (name.equals("externalKey"))
+    		{
+    			continue;
+    		}
+    		previous.put(name, namespace.get(name));
+    		namespace.put(name, (TemplateModel) entry.getValue());
+    	}
+    	try
+    	{
+    		env.include(template);
+    	}
+    	finally
+    	{
+    		for(Map.Entry<String, TemplateModel> entry: previous.entrySet())
+    		{
+    			if (entry.getValue() == null)
+    			{
+    				namespace.remove(entry.getKey());
+    			} else
+    			{
+    				namespace.put(entry.getKey(), entry.getValue());
+    			}
+    		}
+    	}
+    }
 }
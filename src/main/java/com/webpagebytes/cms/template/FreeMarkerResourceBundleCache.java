@@ -0,0 +1,74 @@
+/*
+ *   Copyright 2014 Webpagebytes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package com.webpagebytes.cms.template;
+
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.webpagebytes.cms.WPBMessagesCache;
+
+import freemarker.ext.beans.ResourceBundleModel;
+import freemarker.template.DefaultObjectWrapper;
+
+/*
+ * One CmsResourceBundle and its ResourceBundleModel per locale, shared by all renders.
+ * An entry is never changed, it is replaced when the messages cache fingerprint for its locale changes.
+ */
+class FreeMarkerResourceBundleCache {
+
+	private static class Entry
+	{
+		final CmsResourceBundle bundle;
+		final ResourceBundleModel model;
+		Entry(CmsResourceBundle bundle, ResourceBundleModel model)
+		{
+			this.bundle = bundle;
+			this.model = model;
+		}
+	}
+	
+	private final ConcurrentHashMap<Locale, Entry> entries = new ConcurrentHashMap<Locale, Entry>();
+	private final DefaultObjectWrapper objectWrapper;
+	
+	public FreeMarkerResourceBundleCache(DefaultObjectWrapper objectWrapper)
+	{
+		this.objectWrapper = objectWrapper;
+	}
+	
+	public ResourceBundleModel get(FreeMarkerResourcesFactory factory, WPBMessagesCache messageCache, Locale locale)
+	{
+		Entry entry = entries.get(locale);
+		if (entry != null && !FreeMarkerResourceBundleControl.needsReload(messageCache, entry.bundle, locale))
+		{
+			return entry.model;
+		}
+		CmsResourceBundle bundle = factory.createResourceBundle(messageCache, locale);
+		entry = new Entry(bundle, new ResourceBundleModel(bundle, objectWrapper));
+		entries.put(locale, entry);
+		return entry.model;
+	}
+	
+	public int size()
+	{
+		return entries.size();
+	}
+	
+	public void clear()
+	{
+		entries.clear();
+	}
+}
@@ -59,11 +59,19 @@ public class FreeMarkerResourceBundleControl extends ResourceBundle.Control {
             ResourceBundle bundle,
             long loadTime)
 	{
-		CmsResourceBundle wbresource = (CmsResourceBundle) bundle;
-		if (!wbresource.getFingerPrint().equals(messageCache.getFingerPrint(locale)))
+		return needsReload(messageCache, (CmsResourceBundle) bundle, locale);
+	}
+	
+	/*
+	 * A bundle is stale when the locale fingerprint moved or when it was loaded without one
+	 */
+	static boolean needsReload(WPBMessagesCache messageCache, CmsResourceBundle bundle, Locale locale)
+	{
+		String bundleFingerPrint = bundle.getFingerPrint();
+		if (bundleFingerPrint == null || bundleFingerPrint.length() == 0)
 		{
 			return true;
 		}
-		return false;
+		return !bundleFingerPrint.equals(messageCache.getFingerPrint(locale));
 	}
 }
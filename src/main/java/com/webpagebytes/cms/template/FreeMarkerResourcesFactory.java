@@ -22,6 +22,8 @@ import com.webpagebytes.cms.WPBMessagesCache;
 import com.webpagebytes.cms.engine.WPBCacheInstances;
 
 import freemarker.template.Configuration;
+import freemarker.template.DefaultObjectWrapper;
+import freemarker.template.DefaultObjectWrapperBuilder;
 
 class FreeMarkerResourcesFactory {
 
@@ -34,6 +36,14 @@ class FreeMarkerResourcesFactory {
 		return new Configuration();
 	}
 	
+	/*
+	 * The builder returns a shared wrapper instance, its class introspection cache is shared by all the engines
+	 */
+	public DefaultObjectWrapper createObjectWrapper()
+	{
+		return new DefaultObjectWrapperBuilder(Configuration.VERSION_2_3_0).build();
+	}
+	
 	public FreeMarkerTemplateLoader createWBFreeMarkerTemplateLoader(WPBCacheInstances cacheInstances)
 	{
 		return new FreeMarkerTemplateLoader(cacheInstances);
@@ -21,7 +21,7 @@ import java.io.IOException;
 import java.io.Writer;
 import java.util.Locale;
 import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -32,7 +32,14 @@ import com.webpagebytes.cms.engine.WPBFileStorageFactory;
 import com.webpagebytes.cms.exception.WPBException;
 import com.webpagebytes.cms.exception.WPBIOException;
 import com.webpagebytes.cms.exception.WPBTemplateException;
+import com.webpagebytes.cms.utility.CmsConfiguration;
+import com.webpagebytes.cms.utility.CmsConfiguration.WPBSECTION;
+import com.webpagebytes.cms.utility.CmsConfigurationFactory;
+import com.webpagebytes.cms.utility.WPBTrace;
 
+import freemarker.cache.MruCacheStorage;
+import freemarker.cache.SoftCacheStorage;
+import freemarker.cache.StrongCacheStorage;
 import freemarker.core.Environment;
 import freemarker.core.ParseException;
 import freemarker.ext.beans.ResourceBundleModel;
@@ -43,17 +50,48 @@ import freemarker.template.Template;
 import freemarker.template.TemplateException;
 import freemarker.template.TemplateHashModel;
 
-public class WPBFreeMarkerTemplateEngine implements WPBTemplateEngine {
+public class WPBFreeMarkerTemplateEngine implements WPBLoadableTemplateEngine {
 	private static final Logger log = Logger.getLogger(WPBFreeMarkerTemplateEngine.class.getName());
 	private FreeMarkerResourcesFactory wbFreeMarkerFactory;
 	private Configuration configuration;
 	private FreeMarkerTemplateLoader templateLoader;
 	private WPBCacheInstances cacheInstances;
 	private WPBFileStorage cloudFileStorage;
+	private FreeMarkerResourceBundleCache resourceBundleCache;
+	private DefaultObjectWrapper objectWrapper;
+	private boolean moduleIncludeMode = false;
+	private boolean fingerPrintInvalidation = false;
+	
+	public static final String TEMPLATE_CACHE_SOFT = "soft";
+	public static final String TEMPLATE_CACHE_STRONG = "strong";
+	public static final String TEMPLATE_CACHE_MRU = "mru";
+	public static final int TEMPLATE_CACHE_STRONG_SIZE = 256;
+	public static final int TEMPLATE_CACHE_SOFT_SIZE = 1024;
+	public static final String TEMPLATE_INVALIDATION_FINGERPRINT = "fingerprint";
+	
+	// the pages and page modules cache fingerprints the template cache was filled for
+	private volatile String pagesFingerPrint;
+	private volatile String modulesFingerPrint;
+	
+	/*
+	 * The module templates looked up for one fingerprint of the page modules cache
+	 */
+	private static class ModuleTemplates
+	{
+		final String fingerPrint;
+		final ConcurrentHashMap<String, Template> map = new ConcurrentHashMap<String, Template>();
+		ModuleTemplates(String fingerPrint)
+		{
+			this.fingerPrint = fingerPrint;
+		}
+	}
+	private volatile ModuleTemplates moduleTemplates = new ModuleTemplates(null);
 	
 	public WPBFreeMarkerTemplateEngine(WPBCacheInstances cacheInstances)
 	{
 		wbFreeMarkerFactory = new FreeMarkerResourcesFactory();
+		objectWrapper = wbFreeMarkerFactory.createObjectWrapper();
+		resourceBundleCache = new FreeMarkerResourceBundleCache(objectWrapper);
 		this.cacheInstances = cacheInstances;
 	}
 	
@@ -61,9 +99,19 @@ public class WPBFreeMarkerTemplateEngine implements WPBTemplateEngine {
 	{
 		log.log(Level.INFO, "WBFreeMarkerTemplateEngine initialize");
 		
+		CmsConfiguration cmsConfiguration = CmsConfigurationFactory.getConfiguration();
+		Map<String, String> generalParams = (cmsConfiguration != null) ? cmsConfiguration.getSectionParams(WPBSECTION.SECTION_GENERAL) : null;
+		if (generalParams != null && generalParams.containsKey("module_include_mode"))
+		{
+			String includeMode = generalParams.get("module_include_mode");
+			moduleIncludeMode = includeMode.equals("1") || includeMode.equalsIgnoreCase("true");
+		}
+		
 		configuration = wbFreeMarkerFactory.createConfiguration();
 		configuration.setDefaultEncoding("UTF-8");
 		configuration.setOutputEncoding("UTF-8");
+		configuration.setObjectWrapper(objectWrapper);
+		setTemplateCachePolicy(generalParams);
 		templateLoader = wbFreeMarkerFactory.createWBFreeMarkerTemplateLoader(cacheInstances);
  
 		cloudFileStorage = WPBFileStorageFactory.getInstance();
@@ -87,11 +135,160 @@ public class WPBFreeMarkerTemplateEngine implements WPBTemplateEngine {
 		uriDirective.initialize(this, cacheInstances);
 		configuration.setSharedVariable(WPBModel.URI_DIRECTIVE, uriDirective);
 	}
+	/*
+	 * Sets the template cache storage and how often the templates are checked for changes.
+	 * template_cache_storage is soft (default), strong or mru, the mru sizes come from
+	 * template_cache_strong_size and template_cache_soft_size. template_update_delay is the
+	 * number of seconds between checks. With template_invalidation set to fingerprint the loader
+	 * is never asked for changes and the whole template cache is dropped when the pages
+	 * or page modules cache fingerprint changes.
+	 */
+	private void setTemplateCachePolicy(Map<String, String> generalParams)
+	{
+		if (generalParams == null)
+		{
+			return;
+		}
+		String storage = generalParams.get("template_cache_storage");
+		if (TEMPLATE_CACHE_STRONG.equalsIgnoreCase(storage))
+		{
+			configuration.setCacheStorage(new StrongCacheStorage());
+		} else if (TEMPLATE_CACHE_MRU.equalsIgnoreCase(storage))
+		{
+			int strongSize = getIntParam(generalParams, "template_cache_strong_size", TEMPLATE_CACHE_STRONG_SIZE);
+			int softSize = getIntParam(generalParams, "template_cache_soft_size", TEMPLATE_CACHE_SOFT_SIZE);
+			configuration.setCacheStorage(new MruCacheStorage(strongSize, softSize));
+		} else if (TEMPLATE_CACHE_SOFT.equalsIgnoreCase(storage))
+		{
+			configuration.setCacheStorage(new SoftCacheStorage());
+		}
+		
+		fingerPrintInvalidation = TEMPLATE_INVALIDATION_FINGERPRINT.equalsIgnoreCase(generalParams.get("template_invalidation"));
+		if (fingerPrintInvalidation)
+		{
+			configuration.setTemplateUpdateDelayMilliseconds(Long.MAX_VALUE);
+		} else if (generalParams.containsKey("template_update_delay"))
+		{
+			int delay = getIntParam(generalParams, "template_update_delay", -1);
+			if (delay >= 0)
+			{
+				configuration.setTemplateUpdateDelayMilliseconds(delay * 1000L);
+			}
+		}
+	}
+	
+	private static int getIntParam(Map<String, String> params, String name, int defaultValue)
+	{
+		String value = params.get(name);
+		if (value == null)
+		{
+			return defaultValue;
+		}
+		try
+		{
+			return Integer.valueOf(value.trim());
+		} catch (NumberFormatException e)
+		{
+			log.log(Level.WARNING, "Invalid value for " + name + ": " + value);
+			return defaultValue;
+		}
+	}
+	
+	/*
+	 * In fingerprint invalidation mode drops the parsed templates when pages or page modules changed
+	 */
+	void checkTemplatesFingerPrint()
+	{
+		if (!fingerPrintInvalidation)
+		{
+			return;
+		}
+		String pagesFp = cacheInstances.getPageCache().getFingerPrint();
+		String modulesFp = cacheInstances.getPageModuleCache().getFingerPrint();
+		if (!sameFingerPrint(pagesFp, pagesFingerPrint) || !sameFingerPrint(modulesFp, modulesFingerPrint))
+		{
+			configuration.clearTemplateCache();
+			moduleTemplates = new ModuleTemplates(null);
+			pagesFingerPrint = pagesFp;
+			modulesFingerPrint = modulesFp;
+		}
+	}
+	
+	private static boolean sameFingerPrint(String fp1, String fp2)
+	{
+		return (fp1 == null) ? (fp2 == null) : fp1.equals(fp2);
+	}
+	
+	public boolean isFingerPrintInvalidation()
+	{
+		return fingerPrintInvalidation;
+	}
+	
+	/*
+	 * When true the module directive renders the template modules inside the page Environment
+	 */
+	public boolean isModuleIncludeMode()
+	{
+		return moduleIncludeMode;
+	}
+	
+	/*
+	 * Returns the template of a page module, kept while the page modules cache fingerprint is the same
+	 */
+	public Template getModuleTemplate(String moduleName) throws IOException
+	{
+		checkTemplatesFingerPrint();
+		String fingerPrint = cacheInstances.getPageModuleCache().getFingerPrint();
+		ModuleTemplates current = moduleTemplates;
+		if (fingerPrint == null || !fingerPrint.equals(current.fingerPrint))
+		{
+			current = new ModuleTemplates(fingerPrint);
+			moduleTemplates = current;
+		}
+		Template template = current.map.get(moduleName);
+		if (template == null)
+		{
+			template = configuration.getTemplate(moduleName);
+			if (fingerPrint != null)
+			{
+				current.map.put(moduleName, template);
+			}
+		}
+		return template;
+	}
+	
+	/*
+	 * Parses a template and keeps it in the template cache, without rendering it
+	 */
+	public void loadTemplate(String templateName) throws WPBException
+	{
+		try
+		{
+			if (templateName.startsWith(WEBMODULES_PATH_PREFIX))
+			{
+				getModuleTemplate(templateName);
+			} else
+			{
+				checkTemplatesFingerPrint();
+				configuration.getTemplate(templateName);
+			}
+		}
+		catch (ParseException e)
+		{
+			throw new WPBTemplateException("Freemarker Template Exception " + e.getMessage(), e);
+		}
+		catch (IOException e)
+		{
+			throw new WPBIOException("IO Exception", e);
+		}
+	}
+	
 	public void process(String templateName, Map<String, Object> rootMap, Writer out) throws WPBException
 	{
 		try {
-			log.log(Level.INFO, "call WBFreeMarkerTemplateEngine process for " + templateName);
+			WPBTrace.event("template", "process", templateName);
 					
+			checkTemplatesFingerPrint();
 			Template t = configuration.getTemplate(templateName);
 			
 			Object textFormatMethod = rootMap.get(WPBModel.FORMAT_TEXT_METHOD);
@@ -114,23 +311,18 @@ public class WPBFreeMarkerTemplateEngine implements WPBTemplateEngine {
 				{
 					locale = new Locale(localeLanguage);
 				}
-				log.log(Level.INFO, "WBFreeMarkerTemplateEngine process create resource bundle for " + locale.toString());	
-				CmsResourceBundle r = wbFreeMarkerFactory.createResourceBundle(cacheInstances.getMessageCache(), locale);
-				ResourceBundleModel fmBundle = new ResourceBundleModel(r, new DefaultObjectWrapper()); 
+				WPBTrace.event("template", "resourceBundle", locale);
+				ResourceBundleModel fmBundle = resourceBundleCache.get(wbFreeMarkerFactory, cacheInstances.getMessageCache(), locale);
 				rootMap.put(WPBModel.LOCALE_MESSAGES, fmBundle);
-			} else
-			{
-				log.log(Level.INFO, "WBFreeMarkerTemplateEngine process found wpbmessages in root " + templateName);	
 			}
 			
-			Set<String> rootKeys = rootMap.keySet();
-			for(String key: rootKeys)
+			for(Map.Entry<String, Object> entry: rootMap.entrySet())
 			{
-				Object params = rootMap.get(key);
+				Object params = entry.getValue();
 				if (params instanceof Map)
 				{
-					TemplateHashModel hashModel = new SimpleMapModel((Map)params, new DefaultObjectWrapper());
-					rootMap.put(key, hashModel);			
+					TemplateHashModel hashModel = new SimpleMapModel((Map)params, objectWrapper);
+					entry.setValue(hashModel);
 				} else
 				if (params instanceof String)
 				{
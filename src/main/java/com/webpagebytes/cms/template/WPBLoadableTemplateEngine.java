@@ -0,0 +1,35 @@
+/*
+ *   Copyright 2014 Webpagebytes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package com.webpagebytes.cms.template;
+
+import com.webpagebytes.cms.exception.WPBException;
+
+/**
+ * Optional interface for template engines that can parse a template without rendering it.
+ * With the template_warmup parameter the CMS loads all the template pages and modules at startup on the
+ * engines that implement this interface. The warm up is skipped for the other engines.
+ *
+ */
+public interface WPBLoadableTemplateEngine extends WPBTemplateEngine {
+	
+	/**
+	 * Parses a template and keeps it in the engine cache, without rendering it.
+	 * @param templateName Name of the template, prefixed with WEBPAGES_PATH_PREFIX or WEBMODULES_PATH_PREFIX
+	 * @throws WPBException Exception
+	 */
+	public void loadTemplate(String templateName) throws WPBException;
+}
@@ -16,9 +16,65 @@
 
 package com.webpagebytes.cms.utility;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+
 import javax.xml.bind.DatatypeConverter;
 
 public class CmsBase64Utility {
+	private static final char[] BASE64_CHARS = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+	
+	/*
+	 * Writes the base64 encoding of the stream content to out, without keeping the whole content in memory.
+	 * Returns the number of chars written.
+	 */
+	public static long toBase64(InputStream is, Writer out) throws IOException
+	{
+		byte[] in = new byte[3 * 1024];
+		char[] chars = new char[4 * 1024];
+		long count = 0;
+		int pending = 0;
+		int read;
+		while ((read = is.read(in, pending, in.length - pending)) != -1)
+		{
+			int available = pending + read;
+			int whole = available - available % 3;
+			int len = 0;
+			for(int i = 0; i < whole; i += 3)
+			{
+				int group = ((in[i] & 0xff) << 16) | ((in[i+1] & 0xff) << 8) | (in[i+2] & 0xff);
+				chars[len++] = BASE64_CHARS[(group >> 18) & 0x3f];
+				chars[len++] = BASE64_CHARS[(group >> 12) & 0x3f];
+				chars[len++] = BASE64_CHARS[(group >> 6) & 0x3f];
+				chars[len++] = BASE64_CHARS[group & 0x3f];
+			}
+			out.write(chars, 0, len);
+			count += len;
+			// the bytes that do not make a full group are kept for the next read
+			pending = available - whole;
+			for(int i = 0; i < pending; i++)
+			{
+				in[i] = in[whole + i];
+			}
+		}
+		if (pending > 0)
+		{
+			int group = (in[0] & 0xff) << 16;
+			if (pending == 2)
+			{
+				group |= (in[1] & 0xff) << 8;
+			}
+			chars[0] = BASE64_CHARS[(group >> 18) & 0x3f];
+			chars[1] = BASE64_CHARS[(group >> 12) & 0x3f];
+			chars[2] = (pending == 2) ? BASE64_CHARS[(group >> 6) & 0x3f] : '=';
+			chars[3] = '=';
+			out.write(chars, 0, 4);
+			count += 4;
+		}
+		return count;
+	}
+	
 	public static String toBase64(byte[] value)
 	{
 		return DatatypeConverter.printBase64Binary(value);
@@ -97,6 +97,34 @@ public class ContentTypeDetector {
 		return APP_CONTENT_NAME;		
 	}
 
+	/*
+	 * Returns true for the content types that get smaller when compressed (text, scripts, xml, svg, uncompressed fonts)
+	 */
+	public static boolean isCompressible(String contentType)
+	{
+		if (contentType == null)
+		{
+			return false;
+		}
+		contentType = contentType.toLowerCase();
+		int pos = contentType.indexOf(';');
+		if (pos >= 0)
+		{
+			contentType = contentType.substring(0, pos).trim();
+		}
+		return contentType.startsWith("text/") ||
+			   contentType.endsWith("+xml") ||
+			   contentType.endsWith("+json") ||
+			   contentType.equals("application/javascript") ||
+			   contentType.equals("application/x-javascript") ||
+			   contentType.equals("application/json") ||
+			   contentType.equals("application/xml") ||
+			   contentType.equals("application/font-sfnt") ||
+			   contentType.equals("application/vnd.ms-fontobject") ||
+			   contentType.equals("image/x-icon") ||
+			   contentType.equals("image/bmp");
+	}
+
 	public static String fileNameToContentType(String fileName)
 	{
 		int index = fileName.lastIndexOf(".");
@@ -1,5 +1,9 @@
 package com.webpagebytes.cms.utility;
 
+/**
+ * @deprecated The CMS no longer uses it, the request timings are reported by WPBTrace.
+ */
+@Deprecated
 public class WPBStopWatch {
 
 	private Long start = 0L;
@@ -0,0 +1,181 @@
+/*
+ *   Copyright 2014 Webpagebytes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package com.webpagebytes.cms.utility;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/*
+ * Request tracing for the public content path.
+ * Tracing is off unless a sample rate is set and the com.webpagebytes.cms.utility.WPBTrace logger is at FINE level.
+ * When on, one request in sampleRate is traced: every event of that request is logged at FINE level as key=value pairs
+ * that start with the request correlation id.
+ * When off, begin() only reads a volatile field and the event methods return without allocating,
+ * the callers must not build the event arguments (i.e. box primitives) unless isActive() returns true.
+ */
+public class WPBTrace {
+
+	public static final String CORRELATION_ID_HEADER = "X-Request-Id";
+	public static final int MAX_CORRELATION_ID_LENGTH = 64;
+	
+	private static final Logger log = Logger.getLogger(WPBTrace.class.getName());
+	private static final String EVENT_FORMAT = "trace={0} t_us={1} component={2} event={3}";
+	private static final String EVENT_FORMAT_1 = EVENT_FORMAT + " value={4}";
+	private static final String EVENT_FORMAT_2 = EVENT_FORMAT_1 + " value2={5}";
+	
+	private static volatile int sampleRate = 0;
+	private static final AtomicLong requestsCounter = new AtomicLong();
+	private static final ThreadLocal<WPBTrace> current = new ThreadLocal<WPBTrace>();
+	
+	private final String correlationId;
+	private final long startTime;
+	
+	private WPBTrace(String correlationId)
+	{
+		this.correlationId = correlationId;
+		this.startTime = System.nanoTime();
+	}
+	
+	/*
+	 * One request in sampleRate is traced, 0 disables the tracing
+	 */
+	public static void setSampleRate(int rate)
+	{
+		sampleRate = Math.max(0, rate);
+	}
+	
+	public static int getSampleRate()
+	{
+		return sampleRate;
+	}
+	
+	public static boolean isEnabled()
+	{
+		return sampleRate > 0;
+	}
+	
+	/*
+	 * Returns true if the current request is traced
+	 */
+	public static boolean isActive()
+	{
+		return sampleRate > 0 && current.get() != null;
+	}
+	
+	/*
+	 * Starts the trace of the current request if it is sampled.
+	 * Returns the correlation id of the trace or null if the request is not traced, end() must be called
+	 * when the result is not null.
+	 * The correlation id comes from the client so it is cleaned before it gets in the logs and the response header.
+	 */
+	public static String begin(String correlationId)
+	{
+		int rate = sampleRate;
+		if (rate <= 0 || !log.isLoggable(Level.FINE))
+		{
+			return null;
+		}
+		long count = requestsCounter.incrementAndGet();
+		if (count % rate != 0)
+		{
+			return null;
+		}
+		correlationId = cleanCorrelationId(correlationId);
+		if (correlationId == null || correlationId.length() == 0)
+		{
+			correlationId = Long.toHexString(System.currentTimeMillis()) + "-" + Long.toHexString(count);
+		}
+		WPBTrace trace = new WPBTrace(correlationId);
+		current.set(trace);
+		trace.log(EVENT_FORMAT, "request", "begin", null, null);
+		return correlationId;
+	}
+	
+	/*
+	 * Drops the control characters (CR, LF included) and cuts the id at MAX_CORRELATION_ID_LENGTH characters
+	 */
+	static String cleanCorrelationId(String correlationId)
+	{
+		if (correlationId == null)
+		{
+			return null;
+		}
+		StringBuilder sb = new StringBuilder(Math.min(correlationId.length(), MAX_CORRELATION_ID_LENGTH));
+		for(int i = 0; i < correlationId.length() && sb.length() < MAX_CORRELATION_ID_LENGTH; i++)
+		{
+			char c = correlationId.charAt(i);
+			if (c >= 0x20 && c != 0x7f)
+			{
+				sb.append(c);
+			}
+		}
+		return sb.toString();
+	}
+	
+	public static void end()
+	{
+		WPBTrace trace = current.get();
+		if (trace != null)
+		{
+			current.remove();
+			trace.log(EVENT_FORMAT, "request", "end", null, null);
+		}
+	}
+	
+	public static void event(String component, String event)
+	{
+		if (sampleRate > 0)
+		{
+			WPBTrace trace = current.get();
+			if (trace != null)
+			{
+				trace.log(EVENT_FORMAT, component, event, null, null);
+			}
+		}
+	}
+
+	public static void event(String component, String event, Object value)
+	{
+		if (sampleRate > 0)
+		{
+			WPBTrace trace = current.get();
+			if (trace != null)
+			{
+				trace.log(EVENT_FORMAT_1, component, event, value, null);
+			}
+		}
+	}
+
+	public static void event(String component, String event, Object value, Object value2)
+	{
+		if (sampleRate > 0)
+		{
+			WPBTrace trace = current.get();
+			if (trace != null)
+			{
+				trace.log(EVENT_FORMAT_2, component, event, value, value2);
+			}
+		}
+	}
+	
+	private void log(String format, String component, String event, Object value, Object value2)
+	{
+		long elapsed = (System.nanoTime() - startTime) / 1000;
+		log.log(Level.FINE, format, new Object[] {correlationId, elapsed, component, event, value, value2});
+	}
+}
@@ -16,7 +16,7 @@ $().ready( function () {
 									  errorGeneral:"errageneral",
 									  errorLabelClassName: 'errorvalidationlabel',
 									  errorInputClassName: 'errorvalidationinput',
-									  fieldsDefaults: { isTemplateSource: 0 },
+									  fieldsDefaults: { isTemplateSource: 0, isFragmentCached: 0 },
 									  validationRules: wbPageModuleValidations
 									 });
 	
@@ -0,0 +1,295 @@
+package com.webpagebytes.cms.engine;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.easymock.EasyMock;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.webpagebytes.cms.WPBAdminDataStorage;
+import com.webpagebytes.cms.WPBCacheFactory;
+import com.webpagebytes.cms.WPBInvalidationEvent;
+import com.webpagebytes.cms.WPBInvalidationTransport;
+import com.webpagebytes.cms.WPBPagesCache;
+import com.webpagebytes.cms.WPBUrisCache;
+import com.webpagebytes.cms.cmsdata.WPBPage;
+import com.webpagebytes.cms.cmsdata.WPBUri;
+import com.webpagebytes.cms.engine.WPBAdminDataStorageListener.AdminDataStorageOperation;
+
+public class TestCacheInvalidationBus {
+
+/*
+ * In process transport that delivers every event to all the receivers, the sender included
+ */
+private static class LocalTransport implements WPBInvalidationTransport
+{
+	private List<Receiver> receivers;
+	private List<WPBInvalidationEvent> sent = new ArrayList<WPBInvalidationEvent>();
+	
+	LocalTransport(List<Receiver> receivers)
+	{
+		this.receivers = receivers;
+	}
+	public void initialize(Map<String, String> params, Receiver receiver) throws IOException
+	{
+		receivers.add(receiver);
+	}
+	public void send(WPBInvalidationEvent event) throws IOException
+	{
+		sent.add(event);
+		WPBInvalidationEvent received = WPBInvalidationEvent.fromBytes(event.toBytes(), 0, event.toBytes().length);
+		for(Receiver receiver: receivers)
+		{
+			receiver.receive(received);
+		}
+	}
+	public void close()
+	{
+	}
+}
+
+private WPBCacheFactory cacheFactoryA;
+private WPBCacheFactory cacheFactoryB;
+private WPBPagesCache pagesCacheA;
+private WPBPagesCache pagesCacheB;
+private List<WPBInvalidationTransport.Receiver> receivers;
+private LocalTransport transportA;
+private CacheInvalidationBus busA;
+private CacheInvalidationBus busB;
+
+@Before
+public void setUp() throws Exception
+{
+	cacheFactoryA = EasyMock.createMock(WPBCacheFactory.class);
+	cacheFactoryB = EasyMock.createMock(WPBCacheFactory.class);
+	pagesCacheA = EasyMock.createMock(WPBPagesCache.class);
+	pagesCacheB = EasyMock.createMock(WPBPagesCache.class);
+	receivers = new ArrayList<WPBInvalidationTransport.Receiver>();
+	transportA = new LocalTransport(receivers);
+	LocalTransport transportB = new LocalTransport(receivers);
+	busA = new CacheInvalidationBus(transportA, cacheFactoryA, "nodeA", true);
+	busB = new CacheInvalidationBus(transportB, cacheFactoryB, "nodeB", true);
+	transportA.initialize(null, busA);
+	transportB.initialize(null, busB);
+}
+
+@Test
+public void test_event_bytes()
+{
+	WPBInvalidationEvent event = new WPBInvalidationEvent("nodeA", "WPBPage", "DELETE_RECORDS", null, "fp");
+	byte[] data = event.toBytes();
+	WPBInvalidationEvent result = WPBInvalidationEvent.fromBytes(data, 0, data.length);
+	assertTrue (result.getNodeId().equals("nodeA"));
+	assertTrue (result.getType().equals("WPBPage"));
+	assertTrue (result.getOperation().equals("DELETE_RECORDS"));
+	assertTrue (result.getExternalKey() == null);
+	assertTrue (result.getFingerPrint().equals("fp"));
+	assertTrue (WPBInvalidationEvent.fromBytes(new byte[] {1, 2, 3}, 0, 3) == null);
+}
+
+@Test
+public void test_event_signed()
+{
+	WPBInvalidationEvent event = new WPBInvalidationEvent("nodeA", "WPBPage", "UPDATE_RECORD", "p1", "fp");
+	byte[] data = event.toBytes("secret");
+	WPBInvalidationEvent result = WPBInvalidationEvent.fromBytes(data, 0, data.length, "secret");
+	assertTrue (result.getExternalKey().equals("p1"));
+	assertTrue (result.getFingerPrint().equals("fp"));
+	assertTrue (WPBInvalidationEvent.fromBytes(data, 0, data.length, "other") == null);
+	byte[] unsigned = event.toBytes();
+	assertTrue (WPBInvalidationEvent.fromBytes(unsigned, 0, unsigned.length, "secret") == null);
+	data[data.length - 1] = (byte)(data[data.length - 1] == '0' ? '1' : '0');
+	assertTrue (WPBInvalidationEvent.fromBytes(data, 0, data.length, "secret") == null);
+}
+
+@Test
+public void test_upsert_remote()
+{
+	try
+	{
+		WPBUri uri = new WPBUri();
+		uri.setExternalKey("u1");
+		uri.setUri("/index");
+		uri.setHttpOperation("GET");
+		List<WPBUri> uris = new ArrayList<WPBUri>();
+		uris.add(uri);
+		WPBAdminDataStorage storageMockA = EasyMock.createMock(WPBAdminDataStorage.class);
+		EasyMock.expect(storageMockA.getAllRecords(WPBUri.class)).andReturn(uris);
+		InMemoryUrisCache urisCacheA = new InMemoryUrisCache(storageMockA);
+		WPBAdminDataStorage storageMock = EasyMock.createMock(WPBAdminDataStorage.class);
+		EasyMock.expect(storageMock.getAllRecords(WPBUri.class)).andReturn(new ArrayList<WPBUri>());
+		EasyMock.expect(storageMock.get("u1", WPBUri.class)).andReturn(uri);
+		InMemoryUrisCache urisCacheB = new InMemoryUrisCache(storageMock);
+		
+		EasyMock.expect(cacheFactoryA.getUrisCacheInstance()).andReturn(urisCacheA);
+		EasyMock.expect(cacheFactoryB.getUrisCacheInstance()).andReturn(urisCacheB);
+		EasyMock.replay(cacheFactoryA, cacheFactoryB, storageMockA, storageMock);
+		
+		urisCacheA.Refresh();
+		urisCacheB.Refresh();
+		busA.notify(uri, AdminDataStorageOperation.UPDATE_RECORD, WPBUri.class);
+		
+		assertTrue (transportA.sent.size() == 1);
+		assertTrue (transportA.sent.get(0).getExternalKey().equals("u1"));
+		assertTrue (urisCacheB.get("/index", WPBUrisCache.HTTP_GET_INDEX) == uri);
+		assertTrue (urisCacheB.getFingerPrint().equals(urisCacheA.getFingerPrint()));
+		EasyMock.verify(cacheFactoryA, cacheFactoryB, storageMockA, storageMock);
+	} catch (Exception e)
+	{
+		assertTrue (false);
+	}
+}
+
+@Test
+public void test_upsert_remote_fingerprint_differs()
+{
+	try
+	{
+		WPBUri uri = new WPBUri();
+		uri.setExternalKey("u1");
+		uri.setUri("/index");
+		uri.setHttpOperation("GET");
+		List<WPBUri> uris = new ArrayList<WPBUri>();
+		uris.add(uri);
+		WPBAdminDataStorage storageMock = EasyMock.createMock(WPBAdminDataStorage.class);
+		EasyMock.expect(storageMock.getAllRecords(WPBUri.class)).andReturn(new ArrayList<WPBUri>());
+		EasyMock.expect(storageMock.get("u1", WPBUri.class)).andReturn(uri);
+		// node B lost an earlier event, the upsert does not bring it to the content of node A and the cache is reloaded
+		EasyMock.expect(storageMock.getAllRecords(WPBUri.class)).andReturn(uris);
+		InMemoryUrisCache urisCacheB = new InMemoryUrisCache(storageMock);
+		
+		WPBUrisCache urisCacheA = EasyMock.createMock(WPBUrisCache.class);
+		EasyMock.expect(cacheFactoryA.getUrisCacheInstance()).andReturn(urisCacheA);
+		EasyMock.expect(urisCacheA.getFingerPrint()).andReturn("fpA");
+		EasyMock.expect(cacheFactoryB.getUrisCacheInstance()).andReturn(urisCacheB);
+		EasyMock.replay(cacheFactoryA, cacheFactoryB, urisCacheA, storageMock);
+		
+		urisCacheB.Refresh();
+		busA.notify(uri, AdminDataStorageOperation.UPDATE_RECORD, WPBUri.class);
+		
+		assertTrue (urisCacheB.get("/index", WPBUrisCache.HTTP_GET_INDEX) == uri);
+		EasyMock.verify(cacheFactoryA, cacheFactoryB, urisCacheA, storageMock);
+	} catch (Exception e)
+	{
+		assertTrue (false);
+	}
+}
+
+@Test
+public void test_no_content_fingerprints()
+{
+	try
+	{
+		WPBUri uri = new WPBUri();
+		uri.setExternalKey("u1");
+		uri.setUri("/index");
+		uri.setHttpOperation("GET");
+		WPBAdminDataStorage storageMock = EasyMock.createMock(WPBAdminDataStorage.class);
+		EasyMock.expect(storageMock.getAllRecords(WPBUri.class)).andReturn(new ArrayList<WPBUri>());
+		EasyMock.expect(storageMock.get("u1", WPBUri.class)).andReturn(uri);
+		InMemoryUrisCache urisCache = new InMemoryUrisCache(storageMock);
+		WPBCacheFactory cacheFactory = EasyMock.createMock(WPBCacheFactory.class);
+		EasyMock.expect(cacheFactory.getUrisCacheInstance()).andReturn(urisCache).times(2);
+		EasyMock.replay(cacheFactory, storageMock);
+		// the fingerprints of a factory that is not InMemoryCacheFactory are never compared
+		CacheInvalidationBus bus = new CacheInvalidationBus(transportA, cacheFactory, "nodeC");
+		
+		urisCache.Refresh();
+		bus.receive(new WPBInvalidationEvent("nodeA", "WPBUri", "UPDATE_RECORD", "u1", "fpA"));
+		bus.receive(new WPBInvalidationEvent("nodeA", "WPBUri", WPBInvalidationEvent.HEARTBEAT, null, "fpA"));
+		bus.sendHeartbeat();
+		
+		assertTrue (urisCache.get("/index", WPBUrisCache.HTTP_GET_INDEX) == uri);
+		assertTrue (transportA.sent.size() == 0);
+		EasyMock.verify(cacheFactory, storageMock);
+	} catch (Exception e)
+	{
+		assertTrue (false);
+	}
+}
+
+@Test
+public void test_heartbeat()
+{
+	try
+	{
+		EasyMock.expect(cacheFactoryB.getPagesCacheInstance()).andReturn(pagesCacheB).times(3);
+		EasyMock.expect(pagesCacheB.getFingerPrint()).andReturn("fp").times(2);
+		pagesCacheB.Refresh();
+		EasyMock.replay(cacheFactoryA, cacheFactoryB, pagesCacheB);
+		
+		busB.receive(new WPBInvalidationEvent("nodeA", "WPBPage", WPBInvalidationEvent.HEARTBEAT, null, "fp"));
+		busB.receive(new WPBInvalidationEvent("nodeA", "WPBPage", WPBInvalidationEvent.HEARTBEAT, null, null));
+		busB.receive(new WPBInvalidationEvent("nodeA", "WPBPage", WPBInvalidationEvent.HEARTBEAT, null, "fpA"));
+		
+		EasyMock.verify(cacheFactoryA, cacheFactoryB, pagesCacheB);
+	} catch (Exception e)
+	{
+		assertTrue (false);
+	}
+}
+
+@Test
+public void test_bulk_same_fingerprint()
+{
+	try
+	{
+		EasyMock.expect(cacheFactoryA.getPagesCacheInstance()).andReturn(pagesCacheA);
+		EasyMock.expect(pagesCacheA.getFingerPrint()).andReturn("fp");
+		EasyMock.expect(cacheFactoryB.getPagesCacheInstance()).andReturn(pagesCacheB);
+		EasyMock.expect(pagesCacheB.getFingerPrint()).andReturn("fp");
+		EasyMock.replay(cacheFactoryA, cacheFactoryB, pagesCacheA, pagesCacheB);
+		
+		busA.notify(null, AdminDataStorageOperation.DELETE_RECORDS, WPBPage.class);
+		
+		EasyMock.verify(cacheFactoryA, cacheFactoryB, pagesCacheA, pagesCacheB);
+	} catch (Exception e)
+	{
+		assertTrue (false);
+	}
+}
+
+@Test
+public void test_bulk_refresh()
+{
+	try
+	{
+		EasyMock.expect(cacheFactoryA.getPagesCacheInstance()).andReturn(pagesCacheA);
+		EasyMock.expect(pagesCacheA.getFingerPrint()).andReturn("fpA");
+		EasyMock.expect(cacheFactoryB.getPagesCacheInstance()).andReturn(pagesCacheB);
+		EasyMock.expect(pagesCacheB.getFingerPrint()).andReturn("fpB");
+		pagesCacheB.Refresh();
+		EasyMock.replay(cacheFactoryA, cacheFactoryB, pagesCacheA, pagesCacheB);
+		
+		// a page record object without an externalKey can only be applied as a full refresh
+		busA.notify(new WPBPage(), AdminDataStorageOperation.CREATE_RECORD, WPBPage.class);
+		
+		assertTrue (transportA.sent.get(0).getOperation().equals("DELETE_RECORDS"));
+		EasyMock.verify(cacheFactoryA, cacheFactoryB, pagesCacheA, pagesCacheB);
+	} catch (Exception e)
+	{
+		assertTrue (false);
+	}
+}
+
+@Test
+public void test_ignore_own_events()
+{
+	try
+	{
+		EasyMock.replay(cacheFactoryA, cacheFactoryB);
+		busA.receive(new WPBInvalidationEvent("nodeA", "WPBPage", "DELETE_RECORDS", null, "fp"));
+		busA.receive(new WPBInvalidationEvent("nodeB", "WPBUnknown", "DELETE_RECORDS", null, "fp"));
+		EasyMock.verify(cacheFactoryA, cacheFactoryB);
+	} catch (Exception e)
+	{
+		assertTrue (false);
+	}
+}
+
+}
@@ -0,0 +1,199 @@
+package com.webpagebytes.cms.engine;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.webpagebytes.cms.exception.WPBIOException;
+
+public class TestCacheReloader {
+
+/*
+ * Cache whose load() waits for the test to release it
+ */
+private static class BlockingCache implements CacheReloader.Loadable
+{
+	private volatile CountDownLatch release = new CountDownLatch(0);
+	private volatile CountDownLatch started = new CountDownLatch(1);
+	private final AtomicInteger loads = new AtomicInteger();
+	private volatile String snapshot = "v0";
+	private volatile String next = "v0";
+	private volatile boolean fail = false;
+	private CacheReloader.Task task;
+	
+	public void load() throws WPBIOException
+	{
+		started.countDown();
+		try
+		{
+			release.await();
+		} catch (InterruptedException e)
+		{
+			throw new WPBIOException("interrupted");
+		}
+		loads.incrementAndGet();
+		if (fail)
+		{
+			throw new WPBIOException("storage error");
+		}
+		snapshot = next;
+	}
+	public void setReloadTask(CacheReloader.Task task)
+	{
+		this.task = task;
+	}
+	public CacheReloader.Task getReloadTask()
+	{
+		return task;
+	}
+}
+
+private CacheReloader reloader;
+private BlockingCache cache;
+
+@Before
+public void setUp()
+{
+	cache = new BlockingCache();
+}
+
+@After
+public void tearDown()
+{
+	if (reloader != null)
+	{
+		reloader.shutdown();
+	}
+}
+
+@Test
+public void test_no_reloader()
+{
+	try
+	{
+		cache.next = "v1";
+		CacheReloader.refresh(cache);
+		assertTrue (cache.snapshot.equals("v1"));
+		assertTrue (!CacheReloader.isReloadPending(cache));
+	} catch (Exception e)
+	{
+		assertTrue (false);
+	}
+}
+
+@Test
+public void test_stale_while_revalidate()
+{
+	try
+	{
+		reloader = new CacheReloader(60000);
+		CacheReloader.Task task = reloader.register(cache);
+		cache.release = new CountDownLatch(1);
+		cache.next = "v1";
+		CacheReloader.refresh(cache);
+		assertTrue (cache.started.await(5, TimeUnit.SECONDS));
+		
+		// the reload is running, the refresh requests return and the previous snapshot is served
+		CacheReloader.refresh(cache);
+		CacheReloader.refresh(cache);
+		assertTrue (cache.snapshot.equals("v0"));
+		assertTrue (CacheReloader.isReloadPending(cache));
+		
+		cache.release.countDown();
+		long end = System.currentTimeMillis() + 5000;
+		while (task.isPending() && System.currentTimeMillis() < end)
+		{
+			Thread.sleep(10);
+		}
+		assertTrue (!task.isPending());
+		assertTrue (cache.snapshot.equals("v1"));
+		// the two requests received during the first load are coalesced in one reload
+		assertTrue (cache.loads.get() == 2);
+		assertTrue (task.getReloads() == 2);
+		assertTrue (task.getMaxLag() >= task.getLastDuration());
+		assertTrue (task.getCurrentLag() == 0);
+	} catch (Exception e)
+	{
+		assertTrue (false);
+	}
+}
+
+@Test
+public void test_stats()
+{
+	try
+	{
+		reloader = new CacheReloader(0);
+		reloader.register(cache);
+		cache.next = "v1";
+		CacheReloader.refresh(cache);
+		
+		CacheReloadStats stats = reloader.getStats().get("BlockingCache");
+		assertTrue (stats.getReloads() == 1);
+		assertTrue (stats.getFailures() == 0);
+		assertTrue (stats.getMaxLag() >= stats.getLastDuration());
+		assertTrue (stats.getCurrentLag() == 0);
+		assertTrue (!stats.isPending());
+	} catch (Exception e)
+	{
+		assertTrue (false);
+	}
+}
+
+@Test
+public void test_shutdown()
+{
+	try
+	{
+		reloader = new CacheReloader(60000);
+		reloader.register(cache);
+		reloader.shutdown();
+		// the cache is detached from the stopped reloader and loads in the calling thread
+		assertTrue (cache.getReloadTask() == null);
+		cache.next = "v1";
+		CacheReloader.refresh(cache);
+		assertTrue (cache.snapshot.equals("v1"));
+	} catch (Exception e)
+	{
+		assertTrue (false);
+	}
+}
+
+@Test
+public void test_max_staleness_wait()
+{
+	try
+	{
+		reloader = new CacheReloader(0);
+		CacheReloader.Task task = reloader.register(cache);
+		cache.next = "v1";
+		// with no staleness allowed the caller waits for the reload
+		CacheReloader.refresh(cache);
+		assertTrue (cache.snapshot.equals("v1"));
+		assertTrue (!task.isPending());
+		
+		cache.fail = true;
+		cache.next = "v2";
+		try
+		{
+			CacheReloader.refresh(cache);
+			assertTrue (false);
+		} catch (WPBIOException e)
+		{
+			assertTrue (task.getFailures() == 1);
+		}
+		assertTrue (cache.snapshot.equals("v1"));
+		assertTrue (task.isPending());
+	} catch (Exception e)
+	{
+		assertTrue (false);
+	}
+}
+
+}
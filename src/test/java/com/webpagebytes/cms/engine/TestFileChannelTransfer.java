@@ -0,0 +1,74 @@
+package com.webpagebytes.cms.engine;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestFileChannelTransfer {
+
+private File tempFile;
+private String content;
+
+@Before
+public void setUp() throws IOException
+{
+	StringBuilder builder = new StringBuilder();
+	for(int i = 0; i < 20000; i++)
+	{
+		builder.append(i % 10);
+	}
+	content = builder.toString();
+	tempFile = File.createTempFile("wpb", ".txt");
+	FileUtils.writeStringToFile(tempFile, content);
+}
+
+@After
+public void tearDown()
+{
+	FileUtils.deleteQuietly(tempFile);
+}
+
+@Test
+public void test_transfer_stream()
+{
+	try
+	{
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		assertTrue (FileChannelTransfer.transfer(tempFile.toPath(), 0, Long.MAX_VALUE, bos) == content.length());
+		assertTrue (bos.toString().equals(content));
+		
+		bos = new ByteArrayOutputStream();
+		assertTrue (FileChannelTransfer.transfer(tempFile.toPath(), 19995, 100, bos) == 5);
+		assertTrue (bos.toString().equals("56789"));
+	} catch (Exception e)
+	{
+		assertTrue (false);
+	}
+}
+
+@Test
+public void test_transfer_past_end()
+{
+	try
+	{
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		assertTrue (FileChannelTransfer.transfer(tempFile.toPath(), 10, 70000, bos) == content.length() - 10);
+		assertTrue (bos.toString().equals(content.substring(10)));
+		
+		bos = new ByteArrayOutputStream();
+		assertTrue (FileChannelTransfer.transfer(tempFile.toPath(), 30000, 10, bos) == 0);
+		assertTrue (bos.size() == 0);
+	} catch (Exception e)
+	{
+		assertTrue (false);
+	}
+}
+
+}
@@ -4,13 +4,17 @@ import static org.junit.Assert.*;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.zip.GZIPInputStream;
 
 import static org.powermock.api.support.membermodification.MemberMatcher.method;
 import static org.powermock.api.support.membermodification.MemberModifier.*;
 
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import org.easymock.EasyMock;
 import org.junit.After;
 import org.junit.Before;
@@ -23,6 +27,8 @@ import org.powermock.reflect.Whitebox;
 import com.webpagebytes.cms.WPBFilePath;
 import com.webpagebytes.cms.WPBFileStorage;
 import com.webpagebytes.cms.WPBFilesCache;
+import com.webpagebytes.cms.WPBLocalFileStorage;
+import com.webpagebytes.cms.WPBRandomAccessFileStorage;
 import com.webpagebytes.cms.cmsdata.WPBFile;
 import com.webpagebytes.cms.engine.FileContentBuilder;
 import com.webpagebytes.cms.exception.WPBException;
@@ -189,4 +195,181 @@ public void test_writeFileContent_exception()
 	}
 }
 
+@Test
+public void test_getGzipFileContent()
+{
+	try
+	{
+		StringBuilder builder = new StringBuilder();
+		for(int i = 0; i < 100; i++)
+		{
+			builder.append("body { color: red; }");
+		}
+		String content = builder.toString();
+		WPBFile file = new WPBFile();
+		file.setBlobKey("abc");
+		file.setHash(1L);
+		file.setSize((long)content.length());
+		file.setAdjustedContentType("text/css");
+		// the second fingerprint read is for the file content cache
+		EasyMock.expect(filesCacheMock.getFingerPrint()).andReturn("1").times(3);
+		stub(method(FileContentBuilder.class, "getFileContent")).andReturn(new ByteArrayInputStream(content.getBytes()));
+		EasyMock.replay(cloudFileStorageMock, cacheInstancesMock, filesCacheMock);
+		fileContentBuilder = new FileContentBuilder(cacheInstancesMock);
+		
+		assertTrue (fileContentBuilder.isCompressible(file));
+		byte[] gzip = fileContentBuilder.getGzipFileContent(file);
+		byte[] result = IOUtils.toByteArray(new GZIPInputStream(new ByteArrayInputStream(gzip)));
+		assertTrue (new String(result).equals(content));
+		
+		// the second call is served from memory
+		assertTrue (fileContentBuilder.getGzipFileContent(file) == gzip);
+		EasyMock.verify(cacheInstancesMock, filesCacheMock);
+		
+		file.setAdjustedContentType("image/png");
+		assertTrue (! fileContentBuilder.isCompressible(file));
+	} catch (Exception e)
+	{
+		assertTrue(false);
+	}
+}
+
+@Test
+public void test_writeFileContent_range()
+{
+	try
+	{
+		String content = "0123456789";
+		WPBFile fileMock = EasyMock.createMock(WPBFile.class);
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		stub(method(FileContentBuilder.class, "getFileContent")).andReturn(new ByteArrayInputStream(content.getBytes()));
+		fileContentBuilder = new FileContentBuilder(cacheInstancesMock);
+		fileContentBuilder.writeFileContent(fileMock, bos, 2, 5);
+		assertTrue (bos.toString().equals("23456"));
+	} catch (Exception e)
+	{
+		assertTrue(false);
+	}
+}
+
+@Test
+public void test_writeFileContent_range_randomAccess()
+{
+	try
+	{
+		WPBFile fileMock = EasyMock.createMock(WPBFile.class);
+		EasyMock.expect(fileMock.getBlobKey()).andReturn("abc");
+		// too large for the file content cache
+		EasyMock.expect(fileMock.getSize()).andReturn(FileContentBuilder.FILE_CACHE_MAX_SIZE + 1);
+		WPBRandomAccessFileStorage fileStorageMock = EasyMock.createMock(WPBRandomAccessFileStorage.class);
+		EasyMock.expect(fileStorageMock.getFileContent(EasyMock.anyObject(WPBFilePath.class), EasyMock.eq(2L), EasyMock.eq(5L))).andReturn(new ByteArrayInputStream("23456".getBytes()));
+		EasyMock.replay(fileMock, fileStorageMock);
+		fileContentBuilder = new FileContentBuilder(cacheInstancesMock);
+		Whitebox.setInternalState(fileContentBuilder, "cloudFileStorage", fileStorageMock);
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		fileContentBuilder.writeFileContent(fileMock, bos, 2, 5);
+		EasyMock.verify(fileMock, fileStorageMock);
+		assertTrue (bos.toString().equals("23456"));
+	} catch (Exception e)
+	{
+		assertTrue(false);
+	}
+}
+
+@Test
+public void test_writeFileContent_localFile()
+{
+	File tempFile = null;
+	try
+	{
+		tempFile = File.createTempFile("wpb", ".txt");
+		FileUtils.writeStringToFile(tempFile, "0123456789");
+		WPBFile fileMock = EasyMock.createMock(WPBFile.class);
+		EasyMock.expect(fileMock.getBlobKey()).andReturn("abc").times(2);
+		EasyMock.expect(fileMock.getSize()).andReturn(FileContentBuilder.FILE_CACHE_MAX_SIZE + 1).times(2);
+		WPBLocalFileStorage fileStorageMock = EasyMock.createMock(WPBLocalFileStorage.class);
+		EasyMock.expect(fileStorageMock.getLocalPath(EasyMock.anyObject(WPBFilePath.class))).andReturn(tempFile.toPath()).times(2);
+		EasyMock.replay(fileMock, fileStorageMock);
+		fileContentBuilder = new FileContentBuilder(cacheInstancesMock);
+		Whitebox.setInternalState(fileContentBuilder, "cloudFileStorage", fileStorageMock);
+		
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		fileContentBuilder.writeFileContent(fileMock, bos);
+		assertTrue (bos.toString().equals("0123456789"));
+		
+		bos = new ByteArrayOutputStream();
+		fileContentBuilder.writeFileContent(fileMock, bos, 8, 5);
+		assertTrue (bos.toString().equals("89"));
+		EasyMock.verify(fileMock, fileStorageMock);
+	} catch (Exception e)
+	{
+		assertTrue(false);
+	} finally
+	{
+		FileUtils.deleteQuietly(tempFile);
+	}
+}
+
+@Test
+public void test_writeFileContent_fileCache()
+{
+	try
+	{
+		WPBFile file = new WPBFile();
+		file.setBlobKey("abc");
+		file.setHash(1L);
+		file.setSize(10L);
+		WPBFileStorage fileStorageMock = EasyMock.createMock(WPBFileStorage.class);
+		EasyMock.expect(fileStorageMock.getFileContent(EasyMock.anyObject(WPBFilePath.class))).andReturn(new ByteArrayInputStream("0123456789".getBytes()));
+		EasyMock.expect(fileStorageMock.getFileContent(EasyMock.anyObject(WPBFilePath.class))).andReturn(new ByteArrayInputStream("abcdefghij".getBytes()));
+		EasyMock.expect(filesCacheMock.getFingerPrint()).andReturn("1").times(3);
+		EasyMock.expect(filesCacheMock.getFingerPrint()).andReturn("2");
+		EasyMock.replay(cacheInstancesMock, filesCacheMock, fileStorageMock);
+		fileContentBuilder = new FileContentBuilder(cacheInstancesMock);
+		Whitebox.setInternalState(fileContentBuilder, "cloudFileStorage", fileStorageMock);
+		
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		fileContentBuilder.writeFileContent(file, bos);
+		assertTrue (bos.toString().equals("0123456789"));
+		
+		// served from memory
+		bos = new ByteArrayOutputStream();
+		fileContentBuilder.writeFileContent(file, bos);
+		assertTrue (bos.toString().equals("0123456789"));
+		bos = new ByteArrayOutputStream();
+		fileContentBuilder.writeFileContent(file, bos, 8, 5);
+		assertTrue (bos.toString().equals("89"));
+		assertTrue (fileContentBuilder.getFileCacheHits() == 2);
+		assertTrue (fileContentBuilder.getFileCacheMisses() == 1);
+		assertTrue (fileContentBuilder.getFileCacheWeight() == 10);
+		
+		// the files cache was refreshed
+		bos = new ByteArrayOutputStream();
+		fileContentBuilder.writeFileContent(file, bos);
+		assertTrue (bos.toString().equals("abcdefghij"));
+		assertTrue (fileContentBuilder.getFileCacheMisses() == 2);
+		EasyMock.verify(cacheInstancesMock, filesCacheMock, fileStorageMock);
+	} catch (Exception e)
+	{
+		assertTrue(false);
+	}
+}
+
+@Test
+public void test_byteArrayLruCache_eviction()
+{
+	ByteArrayLruCache cache = new ByteArrayLruCache(10);
+	cache.put("a", "", new byte[4]);
+	cache.put("b", "", new byte[4]);
+	assertTrue (cache.get("a", "") != null);
+	// b is the least recently used
+	cache.put("c", "", new byte[4]);
+	assertTrue (cache.get("b", "") == null);
+	assertTrue (cache.get("a", "") != null && cache.get("c", "") != null);
+	assertTrue (cache.getEvictions() == 1 && cache.getWeight() == 8);
+	// larger than the whole cache
+	cache.put("d", "", new byte[11]);
+	assertTrue (cache.get("d", "") == null && cache.size() == 2);
+}
+
 }
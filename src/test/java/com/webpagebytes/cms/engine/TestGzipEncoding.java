@@ -0,0 +1,53 @@
+package com.webpagebytes.cms.engine;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+public class TestGzipEncoding {
+
+@Test
+public void test_acceptsGzip()
+{
+	assertTrue (GzipEncoding.acceptsGzip("gzip"));
+	assertTrue (GzipEncoding.acceptsGzip("deflate, gzip;q=1.0, br"));
+	assertTrue (GzipEncoding.acceptsGzip("x-gzip"));
+	assertTrue (GzipEncoding.acceptsGzip("*"));
+	
+	assertTrue (! GzipEncoding.acceptsGzip(null));
+	assertTrue (! GzipEncoding.acceptsGzip(""));
+	assertTrue (! GzipEncoding.acceptsGzip("deflate, br"));
+	assertTrue (! GzipEncoding.acceptsGzip("gzip;q=0"));
+	assertTrue (! GzipEncoding.acceptsGzip("*, gzip;q=0.0"));
+	assertTrue (! GzipEncoding.acceptsGzip("*;q=0"));
+}
+
+@Test
+public void test_compress()
+{
+	try
+	{
+		StringBuilder builder = new StringBuilder();
+		for(int i = 0; i < 100; i++)
+		{
+			builder.append("<p>text</p>");
+		}
+		byte[] content = builder.toString().getBytes("UTF-8");
+		byte[] gzip = GzipEncoding.compress(content, 0, content.length);
+		assertTrue (gzip.length < content.length);
+		byte[] result = IOUtils.toByteArray(new GZIPInputStream(new ByteArrayInputStream(gzip)));
+		assertTrue (new String(result, "UTF-8").equals(builder.toString()));
+		
+		// small content is not compressed
+		assertTrue (GzipEncoding.compress("<p>text</p>".getBytes("UTF-8"), 0, 11) == null);
+	} catch (Exception e)
+	{
+		assertTrue (false);
+	}
+}
+
+}
@@ -0,0 +1,74 @@
+package com.webpagebytes.cms.engine;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+import org.junit.Test;
+
+public class TestHttpByteRange {
+
+@Test
+public void test_parse_single()
+{
+	List<HttpByteRange> ranges = HttpByteRange.parse("bytes=0-99", 1000);
+	assertTrue (ranges.size() == 1);
+	assertTrue (ranges.get(0).getStart() == 0 && ranges.get(0).getEnd() == 99 && ranges.get(0).getLength() == 100);
+	assertTrue (ranges.get(0).toContentRange(1000).equals("bytes 0-99/1000"));
+	
+	// open range
+	ranges = HttpByteRange.parse("bytes=500-", 1000);
+	assertTrue (ranges.get(0).getStart() == 500 && ranges.get(0).getEnd() == 999);
+	
+	// suffix range
+	ranges = HttpByteRange.parse("bytes=-100", 1000);
+	assertTrue (ranges.get(0).getStart() == 900 && ranges.get(0).getEnd() == 999);
+	
+	// suffix longer than the content
+	ranges = HttpByteRange.parse("bytes=-2000", 1000);
+	assertTrue (ranges.get(0).getStart() == 0 && ranges.get(0).getEnd() == 999);
+
+	// end past the content
+	ranges = HttpByteRange.parse("bytes=900-2000", 1000);
+	assertTrue (ranges.get(0).getStart() == 900 && ranges.get(0).getEnd() == 999);
+}
+
+@Test
+public void test_parse_multiple()
+{
+	List<HttpByteRange> ranges = HttpByteRange.parse("bytes=0-9, 20-29,-5", 100);
+	assertTrue (ranges.size() == 3);
+	assertTrue (ranges.get(1).getStart() == 20 && ranges.get(1).getEnd() == 29);
+	assertTrue (ranges.get(2).getStart() == 95 && ranges.get(2).getEnd() == 99);
+	
+	// the ranges that cannot be satisfied are dropped
+	ranges = HttpByteRange.parse("bytes=0-9,200-300", 100);
+	assertTrue (ranges.size() == 1);
+}
+
+@Test
+public void test_parse_not_satisfiable()
+{
+	assertTrue (HttpByteRange.parse("bytes=1000-", 1000).isEmpty());
+	assertTrue (HttpByteRange.parse("bytes=-0", 1000).isEmpty());
+	assertTrue (HttpByteRange.parse("bytes=0-10", 0).isEmpty());
+}
+
+@Test
+public void test_parse_malformed()
+{
+	assertTrue (HttpByteRange.parse(null, 1000) == null);
+	assertTrue (HttpByteRange.parse("items=0-10", 1000) == null);
+	assertTrue (HttpByteRange.parse("bytes=10", 1000) == null);
+	assertTrue (HttpByteRange.parse("bytes=20-10", 1000) == null);
+	assertTrue (HttpByteRange.parse("bytes=a-b", 1000) == null);
+	assertTrue (HttpByteRange.parse("bytes=-", 1000) == null);
+	StringBuilder builder = new StringBuilder("bytes=0-1");
+	for(int i = 0; i < HttpByteRange.MAX_RANGES; i++)
+	{
+		builder.append(",0-1");
+	}
+	assertTrue (HttpByteRange.parse(builder.toString(), 1000) == null);
+}
+
+}
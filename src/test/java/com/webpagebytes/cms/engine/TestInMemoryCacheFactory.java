@@ -0,0 +1,320 @@
+package com.webpagebytes.cms.engine;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.easymock.EasyMock;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.webpagebytes.cms.WPBAdminDataStorage;
+import com.webpagebytes.cms.WPBUrisCache;
+import com.webpagebytes.cms.cmsdata.WPBArticle;
+import com.webpagebytes.cms.cmsdata.WPBFile;
+import com.webpagebytes.cms.cmsdata.WPBMessage;
+import com.webpagebytes.cms.cmsdata.WPBPage;
+import com.webpagebytes.cms.cmsdata.WPBPageModule;
+import com.webpagebytes.cms.cmsdata.WPBParameter;
+import com.webpagebytes.cms.cmsdata.WPBProject;
+import com.webpagebytes.cms.cmsdata.WPBUri;
+
+public class TestInMemoryCacheFactory {
+
+private WPBAdminDataStorage dataStorageMock;
+
+@Before
+public void setUp()
+{
+	dataStorageMock = EasyMock.createMock(WPBAdminDataStorage.class);
+}
+
+private WPBUri uri(String key, String path, String operation)
+{
+	WPBUri uri = new WPBUri();
+	uri.setExternalKey(key);
+	uri.setUri(path);
+	uri.setHttpOperation(operation);
+	uri.setVersion("v1");
+	return uri;
+}
+
+private WPBFile file(String key, String name, String owner, int directory)
+{
+	WPBFile file = new WPBFile();
+	file.setExternalKey(key);
+	file.setFileName(name);
+	file.setOwnerExtKey(owner);
+	file.setDirectoryFlag(directory);
+	return file;
+}
+
+private WPBParameter parameter(String key, String owner)
+{
+	WPBParameter parameter = new WPBParameter();
+	parameter.setExternalKey(key);
+	parameter.setOwnerExternalKey(owner);
+	parameter.setName(key);
+	return parameter;
+}
+
+private WPBMessage message(String key, String lcid, String name, String value)
+{
+	WPBMessage message = new WPBMessage();
+	message.setExternalKey(key);
+	message.setLcid(lcid);
+	message.setName(name);
+	message.setValue(value);
+	message.setLastModified(new Date(1000));
+	return message;
+}
+
+private void expectRecords(List<WPBUri> uris, List<WPBFile> files, List<WPBParameter> parameters, List<WPBMessage> messages, WPBProject project) throws Exception
+{
+	EasyMock.expect(dataStorageMock.getAllRecords(WPBUri.class)).andReturn(uris);
+	EasyMock.expect(dataStorageMock.getAllRecords(WPBPage.class)).andReturn(new ArrayList<WPBPage>());
+	EasyMock.expect(dataStorageMock.getAllRecords(WPBPageModule.class)).andReturn(new ArrayList<WPBPageModule>());
+	EasyMock.expect(dataStorageMock.getAllRecords(WPBParameter.class)).andReturn(parameters);
+	EasyMock.expect(dataStorageMock.getAllRecords(WPBFile.class)).andReturn(files);
+	EasyMock.expect(dataStorageMock.getAllRecords(WPBArticle.class)).andReturn(new ArrayList<WPBArticle>());
+	EasyMock.expect(dataStorageMock.getAllRecords(WPBMessage.class)).andReturn(messages);
+	EasyMock.expect(dataStorageMock.get(WPBProject.PROJECT_KEY, WPBProject.class)).andReturn(project);
+}
+
+@Test
+public void test_initialize()
+{
+	try
+	{
+		WPBProject project = new WPBProject();
+		project.setExternalKey(WPBProject.PROJECT_KEY);
+		project.setDefaultLanguage("en_GB");
+		project.setSupportedLanguages("en_GB,fr");
+		expectRecords(Arrays.asList(uri("u1", "/index", "GET"), uri("u2", "/index", "POST")),
+				Arrays.asList(file("d1", "dir", "", 1), file("f1", "a.txt", "d1", 0), file("f2", "b.txt", "", 0)),
+				Arrays.asList(parameter("p1", "u1"), parameter("p2", "u1"), parameter("p3", "")),
+				Arrays.asList(message("m1", "en_GB", "hello", "Hello"), message("m2", "fr", "hello", "Bonjour")),
+				project);
+		EasyMock.replay(dataStorageMock);
+
+		InMemoryCacheFactory factory = new InMemoryCacheFactory(dataStorageMock);
+		factory.initialize(null);
+
+		assertTrue (factory.getUrisCacheInstance().get("/index", WPBUrisCache.HTTP_GET_INDEX).getExternalKey().equals("u1"));
+		assertTrue (factory.getUrisCacheInstance().get("/index", WPBUrisCache.HTTP_POST_INDEX).getExternalKey().equals("u2"));
+		assertTrue (factory.getUrisCacheInstance().get("/index", WPBUrisCache.HTTP_PUT_INDEX) == null);
+		assertTrue (factory.getUrisCacheInstance().getAllUris(WPBUrisCache.HTTP_GET_INDEX).contains("/index"));
+
+		assertTrue (factory.getFilesCacheInstance().geByPath("dir/a.txt").getExternalKey().equals("f1"));
+		assertTrue (factory.getFilesCacheInstance().geByPath("/b.txt").getExternalKey().equals("f2"));
+		assertTrue (factory.getFilesCacheInstance().getFullFilePath(file("d1", "dir", "", 1)).equals("dir/"));
+
+		assertTrue (factory.getParametersCacheInstance().getAllForOwner("u1").size() == 2);
+		assertTrue (factory.getParametersCacheInstance().getAllForOwner("u3").size() == 0);
+
+		assertTrue (factory.getMessagesCacheInstance().getAllMessages(new Locale("fr")).get("hello").equals("Bonjour"));
+		assertTrue (factory.getMessagesCacheInstance().getAllMessages("en_GB").get("hello").equals("Hello"));
+		assertTrue (!factory.getMessagesCacheInstance().getFingerPrint(new Locale("fr")).equals(factory.getMessagesCacheInstance().getFingerPrint(new Locale("en", "GB"))));
+
+		assertTrue (factory.getProjectCacheInstance().getDefaultLocale().getFirst().equals("en"));
+		assertTrue (factory.getProjectCacheInstance().getDefaultLocale().getSecond().equals("GB"));
+		assertTrue (factory.getProjectCacheInstance().getSupportedLocales().contains("fr"));
+
+		EasyMock.verify(dataStorageMock);
+	} catch (Exception e)
+	{
+		assertTrue (false);
+	}
+}
+
+@Test
+public void test_reload_stats()
+{
+	try
+	{
+		expectRecords(new ArrayList<WPBUri>(), new ArrayList<WPBFile>(), new ArrayList<WPBParameter>(), new ArrayList<WPBMessage>(), null);
+		expectRecords(new ArrayList<WPBUri>(), new ArrayList<WPBFile>(), new ArrayList<WPBParameter>(), new ArrayList<WPBMessage>(), null);
+		EasyMock.replay(dataStorageMock);
+		
+		InMemoryCacheFactory factory = new InMemoryCacheFactory(dataStorageMock);
+		factory.initialize(null);
+		assertTrue (factory.getReloadStats().isEmpty());
+		
+		Map<String, String> params = new HashMap<String, String>();
+		params.put("refresh_mode", InMemoryCacheFactory.REFRESH_MODE_BACKGROUND);
+		InMemoryCacheFactory backgroundFactory = new InMemoryCacheFactory(dataStorageMock);
+		backgroundFactory.initialize(params);
+		try
+		{
+			Map<String, CacheReloadStats> stats = backgroundFactory.getReloadStats();
+			assertTrue (stats.size() == 8);
+			assertTrue (stats.get("InMemoryPagesCache").getReloads() == 0);
+			assertTrue (!stats.get("InMemoryPagesCache").isPending());
+		} finally
+		{
+			backgroundFactory.shutdown();
+		}
+		EasyMock.verify(dataStorageMock);
+	} catch (Exception e)
+	{
+		assertTrue (false);
+	}
+}
+
+@Test
+public void test_refresh_fingerprint()
+{
+	try
+	{
+		WPBUri uri1 = uri("u1", "/index", "GET");
+		WPBUri uri2 = uri("u2", "/about", "GET");
+		WPBUri uri1Changed = uri("u1", "/index", "GET");
+		uri1Changed.setVersion("v2");
+		EasyMock.expect(dataStorageMock.getAllRecords(WPBUri.class)).andReturn(Arrays.asList(uri1, uri2));
+		EasyMock.expect(dataStorageMock.getAllRecords(WPBUri.class)).andReturn(Arrays.asList(uri2, uri1));
+		EasyMock.expect(dataStorageMock.getAllRecords(WPBUri.class)).andReturn(Arrays.asList(uri1Changed, uri2));
+		EasyMock.replay(dataStorageMock);
+
+		InMemoryUrisCache cache = new InMemoryUrisCache(dataStorageMock);
+		cache.Refresh();
+		String fingerPrint = cache.getFingerPrint();
+		cache.Refresh();
+		assertTrue (cache.getFingerPrint().equals(fingerPrint));
+		cache.Refresh();
+		assertTrue (!cache.getFingerPrint().equals(fingerPrint));
+		assertTrue (cache.getByExternalKey("u1") == uri1Changed);
+
+		EasyMock.verify(dataStorageMock);
+	} catch (Exception e)
+	{
+		assertTrue (false);
+	}
+}
+
+@Test
+public void test_refresh_fingerprint_content()
+{
+	try
+	{
+		// the content changed, the version and lastModified did not
+		WPBUri uri1 = uri("u1", "/index", "GET");
+		WPBUri uri1Changed = uri("u1", "/index", "GET");
+		uri1Changed.setResourceExternalKey("p2");
+		EasyMock.expect(dataStorageMock.getAllRecords(WPBUri.class)).andReturn(Arrays.asList(uri1));
+		EasyMock.expect(dataStorageMock.getAllRecords(WPBUri.class)).andReturn(Arrays.asList(uri1Changed));
+		EasyMock.replay(dataStorageMock);
+
+		InMemoryUrisCache cache = new InMemoryUrisCache(dataStorageMock);
+		cache.Refresh();
+		String fingerPrint = cache.getFingerPrint();
+		cache.Refresh();
+		assertTrue (!cache.getFingerPrint().equals(fingerPrint));
+
+		EasyMock.verify(dataStorageMock);
+	} catch (Exception e)
+	{
+		assertTrue (false);
+	}
+}
+
+@Test
+public void test_upsert_evict()
+{
+	try
+	{
+		WPBUri uri1 = uri("u1", "/index", "GET");
+		WPBUri uri1Moved = uri("u1", "/home", "GET");
+		uri1Moved.setVersion("v2");
+		EasyMock.expect(dataStorageMock.getAllRecords(WPBUri.class)).andReturn(Arrays.asList(uri1));
+		EasyMock.expect(dataStorageMock.get("u1", WPBUri.class)).andReturn(uri1Moved);
+		EasyMock.replay(dataStorageMock);
+
+		InMemoryUrisCache cache = new InMemoryUrisCache(dataStorageMock);
+		cache.Refresh();
+		String fingerPrint = cache.getFingerPrint();
+		cache.upsert("u1");
+		assertTrue (!cache.getFingerPrint().equals(fingerPrint));
+		assertTrue (cache.get("/index", WPBUrisCache.HTTP_GET_INDEX) == null);
+		assertTrue (cache.get("/home", WPBUrisCache.HTTP_GET_INDEX) == uri1Moved);
+		cache.evict("u1");
+		assertTrue (cache.getByExternalKey("u1") == null);
+		assertTrue (cache.getAllUris(WPBUrisCache.HTTP_GET_INDEX).isEmpty());
+
+		EasyMock.verify(dataStorageMock);
+	} catch (Exception e)
+	{
+		assertTrue (false);
+	}
+}
+
+@Test
+public void test_upsert_directory()
+{
+	try
+	{
+		WPBFile dir = file("d1", "dir", "", 1);
+		WPBFile dirRenamed = file("d1", "dir2", "", 1);
+		dirRenamed.setVersion("v2");
+		WPBFile file = file("f1", "a.txt", "d1", 0);
+		EasyMock.expect(dataStorageMock.getAllRecords(WPBFile.class)).andReturn(Arrays.asList(dir, file));
+		EasyMock.expect(dataStorageMock.get("d1", WPBFile.class)).andReturn(dirRenamed);
+		EasyMock.replay(dataStorageMock);
+
+		InMemoryFilesCache cache = new InMemoryFilesCache(dataStorageMock);
+		cache.Refresh();
+		assertTrue (cache.geByPath("dir/a.txt") == file);
+		cache.upsert("d1");
+		assertTrue (cache.geByPath("dir/a.txt") == null);
+		assertTrue (cache.geByPath("dir2/a.txt") == file);
+
+		EasyMock.verify(dataStorageMock);
+	} catch (Exception e)
+	{
+		assertTrue (false);
+	}
+}
+
+@Test
+public void test_upsert_same_key()
+{
+	try
+	{
+		WPBUri uri1 = uri("u1", "/index", "GET");
+		WPBUri uri1Changed = uri("u1", "/index", "GET");
+		uri1Changed.setVersion("v2");
+		WPBMessage message1 = message("m1", "en", "hello", "Hello");
+		WPBMessage message1Changed = message("m1", "en", "hello", "Hi");
+		EasyMock.expect(dataStorageMock.getAllRecords(WPBUri.class)).andReturn(Arrays.asList(uri1));
+		EasyMock.expect(dataStorageMock.get("u1", WPBUri.class)).andReturn(uri1Changed);
+		EasyMock.expect(dataStorageMock.getAllRecords(WPBMessage.class)).andReturn(Arrays.asList(message1));
+		EasyMock.expect(dataStorageMock.get("m1", WPBMessage.class)).andReturn(message1Changed);
+		EasyMock.replay(dataStorageMock);
+
+		InMemoryUrisCache urisCache = new InMemoryUrisCache(dataStorageMock);
+		urisCache.Refresh();
+		urisCache.upsert("u1");
+		assertTrue (urisCache.get("/index", WPBUrisCache.HTTP_GET_INDEX) == uri1Changed);
+		assertTrue (urisCache.getAllUris(WPBUrisCache.HTTP_GET_INDEX).contains("/index"));
+
+		InMemoryMessagesCache messagesCache = new InMemoryMessagesCache(dataStorageMock);
+		messagesCache.Refresh();
+		String fingerPrint = messagesCache.getFingerPrint(new Locale("en"));
+		messagesCache.upsert("m1");
+		assertTrue (messagesCache.getAllMessages("en").get("hello").equals("Hi"));
+		assertTrue (messagesCache.getSupportedLocales().contains("en"));
+		assertTrue (!messagesCache.getFingerPrint(new Locale("en")).equals(fingerPrint));
+
+		EasyMock.verify(dataStorageMock);
+	} catch (Exception e)
+	{
+		assertTrue (false);
+	}
+}
+
+}
@@ -123,6 +123,7 @@ public void test_populateModelForWebPage()
 		EasyMock.expect(webPageMock.getExternalKey()).andReturn(pageExternalKey);		
 		EasyMock.expect(cacheInstancesMock.getParameterCache()).andReturn(paramsCacheMock);
 		EasyMock.expect(paramsCacheMock.getAllForOwner("abc")).andReturn(pageParams);
+		EasyMock.expect(paramsCacheMock.getFingerPrint()).andReturn("1");
 		
 		EasyMock.replay(requestMock, webPageMock, cacheInstancesMock, paramsCacheMock, configurationMock);
 		modelBuilder = new ModelBuilder(cacheInstancesMock);
@@ -139,6 +140,50 @@ public void test_populateModelForWebPage()
 	}
 }
 
+@Test
+public void test_populateModelForWebPage_changed_by_provider()
+{
+	try
+	{
+		String pageExternalKey = "abc";
+		List<WPBParameter> pageParams = new ArrayList<WPBParameter>();
+		WPBParameter parameter = new WPBParameter();
+		parameter.setName("param1");
+		parameter.setValue("value1");
+		pageParams.add(parameter);
+		
+		WPBParametersCache paramsCacheMock = EasyMock.createMock(WPBParametersCache.class);		
+		EasyMock.expect(webPageMock.getExternalKey()).andReturn(pageExternalKey).times(2);		
+		EasyMock.expect(cacheInstancesMock.getParameterCache()).andReturn(paramsCacheMock).times(2);
+		EasyMock.expect(paramsCacheMock.getAllForOwner("abc")).andReturn(pageParams);
+		EasyMock.expect(paramsCacheMock.getFingerPrint()).andReturn("1").times(2);
+		
+		EasyMock.replay(requestMock, webPageMock, cacheInstancesMock, paramsCacheMock, configurationMock);
+		modelBuilder = new ModelBuilder(cacheInstancesMock);
+		
+		InternalModel model1 = new InternalModel();
+		modelBuilder.populateModelForWebPage(webPageMock, model1);
+		// a page model provider can change the map of its request
+		model1.getCmsModel().get(WPBModel.PAGE_PARAMETERS_KEY).put("param2", "value2");
+		model1.getCmsModel().get(WPBModel.PAGE_PARAMETERS_KEY).remove("param1");
+		
+		InternalModel model2 = new InternalModel();
+		modelBuilder.populateModelForWebPage(webPageMock, model2);
+		EasyMock.verify(requestMock, webPageMock, cacheInstancesMock, paramsCacheMock, configurationMock);
+		
+		Map<String, String> expected1 = new HashMap<String, String>();
+		expected1.put("param2", "value2");
+		Map<String, String> expected2 = new HashMap<String, String>();
+		expected2.put("param1", "value1");
+		assertTrue (model1.getCmsModel().get(WPBModel.PAGE_PARAMETERS_KEY).equals(expected1));
+		assertTrue (model2.getCmsModel().get(WPBModel.PAGE_PARAMETERS_KEY).equals(expected2));
+		
+	} catch (WPBException e)
+	{
+		assertTrue (false);
+	}
+}
+
 @Test
 public void test_populateUriParameters_OK_language_and_country()
 {
@@ -190,6 +235,7 @@ public void test_populateUriParameters_OK_language_and_country()
 		urlMatcherResult.setPatternParams(patternParams);
 		
 		EasyMock.expect(paramsCacheMock.getAllForOwner(uriExternalKey)).andReturn(pageParams);
+		EasyMock.expect(paramsCacheMock.getFingerPrint()).andReturn("1");
 		
 		
 		EasyMock.replay(requestMock, cacheInstancesMock, paramsCacheMock, projectCacheMock, configurationMock);
@@ -254,6 +300,7 @@ public void test_populateUriParameters_OK_only_language()
 		urlMatcherResult.setPatternParams(patternParams);
 		
 		EasyMock.expect(paramsCacheMock.getAllForOwner(uriExternalKey)).andReturn(pageParams);
+		EasyMock.expect(paramsCacheMock.getFingerPrint()).andReturn("1");
 		
 		
 		EasyMock.replay(requestMock, cacheInstancesMock, paramsCacheMock, projectCacheMock, configurationMock);
@@ -315,6 +362,7 @@ public void test_populateUriParameters_empty_urlmatcher()
 		URLMatcherResult urlMatcherResult = new URLMatcherResult();
 		
 		EasyMock.expect(paramsCacheMock.getAllForOwner(uriExternalKey)).andReturn(pageParams);
+		EasyMock.expect(paramsCacheMock.getFingerPrint()).andReturn("1");
 		
 		EasyMock.replay(requestMock, cacheInstancesMock, paramsCacheMock, projectCacheMock, configurationMock);
 		modelBuilder = new ModelBuilder(cacheInstancesMock);
@@ -391,6 +439,7 @@ public void test_populateUriParameters_language_not_supported()
 		urlMatcherResult.setPatternParams(patternParams);
 		
 		EasyMock.expect(paramsCacheMock.getAllForOwner(uriExternalKey)).andReturn(pageParams);
+		EasyMock.expect(paramsCacheMock.getFingerPrint()).andReturn("1");
 		
 		
 		EasyMock.replay(requestMock, cacheInstancesMock, paramsCacheMock, projectCacheMock, configurationMock);
@@ -473,6 +522,7 @@ public void test_populateUriParameters_no_language_param()
 		urlMatcherResult.setPatternParams(patternParams);
 		
 		EasyMock.expect(paramsCacheMock.getAllForOwner(uriExternalKey)).andReturn(pageParams);
+		EasyMock.expect(paramsCacheMock.getFingerPrint()).andReturn("1");
 		
 		
 		EasyMock.replay(requestMock, cacheInstancesMock, paramsCacheMock, projectCacheMock, configurationMock);
@@ -553,6 +603,7 @@ public void test_populateUriParameters_no_country_param()
 		urlMatcherResult.setPatternParams(patternParams);
 		
 		EasyMock.expect(paramsCacheMock.getAllForOwner(uriExternalKey)).andReturn(pageParams);
+		EasyMock.expect(paramsCacheMock.getFingerPrint()).andReturn("1");
 		
 		
 		EasyMock.replay(requestMock, cacheInstancesMock, paramsCacheMock, projectCacheMock, configurationMock);
@@ -628,6 +679,7 @@ public void test_populateGlobalParameters()
 		WPBParametersCache paramsCacheMock = EasyMock.createMock(WPBParametersCache.class);		
 		EasyMock.expect(cacheInstancesMock.getParameterCache()).andReturn(paramsCacheMock);
 		EasyMock.expect(paramsCacheMock.getAllForOwner("")).andReturn(globalParams);
+		EasyMock.expect(paramsCacheMock.getFingerPrint()).andReturn("1");
 		
 		EasyMock.replay(cacheInstancesMock, paramsCacheMock);
 		
@@ -812,4 +864,61 @@ public void test_populateStaticParameters_justdomain()
 }
 
 
-}
\ No newline at end of file
+@Test
+public void test_populateUriParameters_snapshot()
+{
+	try
+	{
+		String uriExternalKey = "abc";
+		List<WPBParameter> uriParams = new ArrayList<WPBParameter>();
+		WPBParameter parameter1 = new WPBParameter();
+		parameter1.setName("id");
+		parameter1.setValue("0");
+		parameter1.setOverwriteFromUrl(1);
+		uriParams.add(parameter1);
+		WPBParameter parameter2 = new WPBParameter();
+		parameter2.setName("title");
+		parameter2.setValue("text");
+		parameter2.setOverwriteFromUrl(0);
+		uriParams.add(parameter2);
+		
+		WPBParametersCache paramsCacheMock = EasyMock.createMock(WPBParametersCache.class);
+		EasyMock.expect(cacheInstancesMock.getParameterCache()).andReturn(paramsCacheMock).times(3);
+		EasyMock.expect(cacheInstancesMock.getProjectCache()).andReturn(projectCacheMock).times(3);
+		EasyMock.expect(projectCacheMock.getDefaultLocale()).andReturn(new Pair<String, String>("en", "")).times(3);
+		EasyMock.expect(projectCacheMock.getSupportedLocales()).andReturn(new HashSet<String>()).times(3);
+		EasyMock.expect(paramsCacheMock.getFingerPrint()).andReturn("1").times(2);
+		EasyMock.expect(paramsCacheMock.getFingerPrint()).andReturn("2");
+		// the parameters are read once per fingerprint
+		EasyMock.expect(paramsCacheMock.getAllForOwner(uriExternalKey)).andReturn(uriParams).times(2);
+		EasyMock.replay(requestMock, cacheInstancesMock, paramsCacheMock, projectCacheMock, configurationMock);
+		modelBuilder = new ModelBuilder(cacheInstancesMock);
+		
+		URLMatcherResult urlMatcherResult = new URLMatcherResult();
+		Map<String, String> patternParams = new HashMap<String, String>();
+		patternParams.put("id", "10");
+		patternParams.put("title", "other");
+		urlMatcherResult.setPatternParams(patternParams);
+		
+		InternalModel model1 = new InternalModel();
+		Whitebox.invokeMethod(modelBuilder, "populateUriParameters", requestMock, uriExternalKey, urlMatcherResult, model1);
+		InternalModel model2 = new InternalModel();
+		Whitebox.invokeMethod(modelBuilder, "populateUriParameters", requestMock, uriExternalKey, new URLMatcherResult(), model2);
+		InternalModel model3 = new InternalModel();
+		Whitebox.invokeMethod(modelBuilder, "populateUriParameters", requestMock, uriExternalKey, new URLMatcherResult(), model3);
+		
+		EasyMock.verify(requestMock, cacheInstancesMock, paramsCacheMock, projectCacheMock, configurationMock);
+		
+		Map<String, String> result1 = model1.getCmsModel().get(WPBModel.URI_PARAMETERS_KEY);
+		assertTrue (result1.get("id").equals("10") && result1.get("title").equals("text"));
+		// the url overwrite did not change the shared map
+		Map<String, String> result2 = model2.getCmsModel().get(WPBModel.URI_PARAMETERS_KEY);
+		assertTrue (result2.get("id").equals("0") && result2.get("title").equals("text"));
+		assertTrue (result2 != model3.getCmsModel().get(WPBModel.URI_PARAMETERS_KEY));
+	} catch (Exception e)
+	{
+		assertTrue (false);
+	}
+}
+
+}
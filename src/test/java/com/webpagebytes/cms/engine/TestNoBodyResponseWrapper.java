@@ -0,0 +1,37 @@
+package com.webpagebytes.cms.engine;
+
+import static org.junit.Assert.*;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.easymock.EasyMock;
+import org.junit.Test;
+
+public class TestNoBodyResponseWrapper {
+
+@Test
+public void test_body_discarded()
+{
+	try
+	{
+		HttpServletResponse responseMock = EasyMock.createStrictMock(HttpServletResponse.class);
+		responseMock.setContentType("text/plain");
+		responseMock.addHeader("X-Test", "1");
+		EasyMock.expect(responseMock.getCharacterEncoding()).andReturn("UTF-8");
+		EasyMock.replay(responseMock);
+		
+		NoBodyResponseWrapper response = new NoBodyResponseWrapper(responseMock);
+		response.setContentType("text/plain");
+		response.addHeader("X-Test", "1");
+		response.getOutputStream().write("body".getBytes("UTF-8"));
+		response.getWriter().write("body");
+		response.getWriter().flush();
+		
+		EasyMock.verify(responseMock);
+	} catch (Exception e)
+	{
+		assertTrue (false);
+	}
+}
+
+}
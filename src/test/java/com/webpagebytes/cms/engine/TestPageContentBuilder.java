@@ -16,9 +16,15 @@ import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 import org.powermock.reflect.Whitebox;
 
+import com.webpagebytes.cms.WPBArticlesCache;
+import com.webpagebytes.cms.WPBFilesCache;
+import com.webpagebytes.cms.WPBMessagesCache;
 import com.webpagebytes.cms.WPBModel;
+import com.webpagebytes.cms.WPBPageModulesCache;
+import com.webpagebytes.cms.WPBParametersCache;
 import com.webpagebytes.cms.WPBPageModelProvider;
 import com.webpagebytes.cms.WPBPagesCache;
+import com.webpagebytes.cms.WPBUrisCache;
 import com.webpagebytes.cms.cmsdata.WPBProject;
 import com.webpagebytes.cms.cmsdata.WPBPage;
 import com.webpagebytes.cms.engine.InternalModel;
@@ -320,4 +326,191 @@ public void test_getPageModelProvider_exception()
 	
 }
 
+private void expectOutputCacheFingerPrint(int times)
+{
+	WPBPageModulesCache modulesCacheMock = EasyMock.createMock(WPBPageModulesCache.class);
+	WPBParametersCache parametersCacheMock = EasyMock.createMock(WPBParametersCache.class);
+	WPBMessagesCache messagesCacheMock = EasyMock.createMock(WPBMessagesCache.class);
+	WPBArticlesCache articlesCacheMock = EasyMock.createMock(WPBArticlesCache.class);
+	WPBFilesCache filesCacheMock = EasyMock.createMock(WPBFilesCache.class);
+	WPBUrisCache urisCacheMock = EasyMock.createMock(WPBUrisCache.class);
+	EasyMock.expect(cacheInstancesMock.getPageCache()).andReturn(pagesCacheMock).times(times);
+	EasyMock.expect(cacheInstancesMock.getPageModuleCache()).andReturn(modulesCacheMock).times(times);
+	EasyMock.expect(cacheInstancesMock.getParameterCache()).andReturn(parametersCacheMock).times(times);
+	EasyMock.expect(cacheInstancesMock.getMessageCache()).andReturn(messagesCacheMock).times(times);
+	EasyMock.expect(cacheInstancesMock.getArticleCache()).andReturn(articlesCacheMock).times(times);
+	EasyMock.expect(cacheInstancesMock.getFilesCache()).andReturn(filesCacheMock).times(times);
+	EasyMock.expect(cacheInstancesMock.getUriCache()).andReturn(urisCacheMock).times(times);
+	EasyMock.expect(pagesCacheMock.getFingerPrint()).andReturn("1").times(times);
+	EasyMock.expect(modulesCacheMock.getFingerPrint()).andReturn("2").times(times);
+	EasyMock.expect(parametersCacheMock.getFingerPrint()).andReturn("3").times(times);
+	EasyMock.expect(messagesCacheMock.getFingerPrint()).andReturn("4").times(times);
+	EasyMock.expect(articlesCacheMock.getFingerPrint()).andReturn("5").times(times);
+	EasyMock.expect(filesCacheMock.getFingerPrint()).andReturn("6").times(times);
+	EasyMock.expect(urisCacheMock.getFingerPrint()).andReturn("7").times(times);
+	EasyMock.replay(modulesCacheMock, parametersCacheMock, messagesCacheMock, articlesCacheMock, filesCacheMock, urisCacheMock);
+}
+
+@Test
+public void test_buildPageContent_outputCache()
+{
+	try
+	{
+		Whitebox.setInternalState(pageContentBuilder, "outputCache", new PageOutputCache(10, 60000));
+		InternalModel model = new InternalModel();
+		Map<String, String> uriParams = new HashMap<String, String>();
+		uriParams.put("id", "1");
+		model.getCmsModel().put(WPBModel.URI_PARAMETERS_KEY, uriParams);
+		String externalKey = "index";
+		
+		EasyMock.expect(pageMock.getIsTemplateSource()).andReturn(1).times(2);
+		modelBuilderMock.populateModelForWebPage(pageMock, model);
+		EasyMock.expectLastCall().times(2);
+		EasyMock.expect(pageMock.getPageModelProvider()).andReturn(null).times(2);
+		EasyMock.expect(pageMock.getExternalKey()).andReturn(externalKey).times(3);
+		// read before the first render, after it and before the second one
+		expectOutputCacheFingerPrint(3);
+		// the template is processed only once
+		templateEngineMock.process(EasyMock.anyObject(String.class), EasyMock.anyObject(Map.class), EasyMock.anyObject(Writer.class));
+		
+		EasyMock.replay(cacheInstancesMock, pagesCacheMock, modelBuilderMock, templateEngineMock, pageMock, projectMock, requestMock);	
+		String result1 = pageContentBuilder.buildPageContent(requestMock, pageMock, model);
+		String result2 = pageContentBuilder.buildPageContent(requestMock, pageMock, model);
+		EasyMock.verify(cacheInstancesMock, pagesCacheMock, modelBuilderMock, templateEngineMock, pageMock, projectMock, requestMock);		
+		assertTrue (result1.equals(result2));
+	}catch (Exception e)
+	{
+		assertTrue (false);
+	}
+}
+
+@Test
+public void test_buildPageContent_outputCache_model_fingerprint()
+{
+	try
+	{
+		Whitebox.setInternalState(pageContentBuilder, "outputCache", new PageOutputCache(10, 60000));
+		InternalModel model = new InternalModel();
+		// the fingerprint read by the servlet before the page was fetched
+		model.setOutputCacheFingerPrint("1/2/3/4/5/6/7");
+		String externalKey = "index";
+		
+		EasyMock.expect(pageMock.getIsTemplateSource()).andReturn(1).times(2);
+		modelBuilderMock.populateModelForWebPage(pageMock, model);
+		EasyMock.expectLastCall().times(2);
+		EasyMock.expect(pageMock.getPageModelProvider()).andReturn(null).times(2);
+		EasyMock.expect(pageMock.getExternalKey()).andReturn(externalKey).times(3);
+		// read only after the first render
+		expectOutputCacheFingerPrint(1);
+		templateEngineMock.process(EasyMock.anyObject(String.class), EasyMock.anyObject(Map.class), EasyMock.anyObject(Writer.class));
+		
+		EasyMock.replay(cacheInstancesMock, pagesCacheMock, modelBuilderMock, templateEngineMock, pageMock, projectMock, requestMock);	
+		pageContentBuilder.buildPageContent(requestMock, pageMock, model);
+		pageContentBuilder.buildPageContent(requestMock, pageMock, model);
+		EasyMock.verify(cacheInstancesMock, pagesCacheMock, modelBuilderMock, templateEngineMock, pageMock, projectMock, requestMock);		
+	}catch (Exception e)
+	{
+		assertTrue (false);
+	}
+}
+
+@Test
+public void test_buildPageContent_outputCache_changed()
+{
+	try
+	{
+		Whitebox.setInternalState(pageContentBuilder, "outputCache", new PageOutputCache(10, 60000));
+		InternalModel model = new InternalModel();
+		// the caches changed after the fingerprint was read, the output is not cached
+		model.setOutputCacheFingerPrint("0/2/3/4/5/6/7");
+		String externalKey = "index";
+		
+		EasyMock.expect(pageMock.getIsTemplateSource()).andReturn(1).times(2);
+		modelBuilderMock.populateModelForWebPage(pageMock, model);
+		EasyMock.expectLastCall().times(2);
+		EasyMock.expect(pageMock.getPageModelProvider()).andReturn(null).times(2);
+		EasyMock.expect(pageMock.getExternalKey()).andReturn(externalKey).times(4);
+		expectOutputCacheFingerPrint(2);
+		templateEngineMock.process(EasyMock.anyObject(String.class), EasyMock.anyObject(Map.class), EasyMock.anyObject(Writer.class));
+		EasyMock.expectLastCall().times(2);
+		
+		EasyMock.replay(cacheInstancesMock, pagesCacheMock, modelBuilderMock, templateEngineMock, pageMock, projectMock, requestMock);	
+		pageContentBuilder.buildPageContent(requestMock, pageMock, model);
+		pageContentBuilder.buildPageContent(requestMock, pageMock, model);
+		EasyMock.verify(cacheInstancesMock, pagesCacheMock, modelBuilderMock, templateEngineMock, pageMock, projectMock, requestMock);		
+	}catch (Exception e)
+	{
+		assertTrue (false);
+	}
+}
+
+@Test
+public void test_buildPageContent_outputCache_bypass()
+{
+	try
+	{
+		Whitebox.setInternalState(pageContentBuilder, "outputCache", new PageOutputCache(10, 60000));
+		InternalModel model = new InternalModel();
+		Map<String, String> pageParams = new HashMap<String, String>();
+		pageParams.put(PageContentBuilder.PAGE_OUTPUT_CACHE_BYPASS_PARAM, "1");
+		model.getCmsModel().put(WPBModel.PAGE_PARAMETERS_KEY, pageParams);
+		String externalKey = "index";
+		
+		EasyMock.expect(pageMock.getIsTemplateSource()).andReturn(1).times(2);
+		modelBuilderMock.populateModelForWebPage(pageMock, model);
+		EasyMock.expectLastCall().times(2);
+		EasyMock.expect(pageMock.getPageModelProvider()).andReturn(null).times(2);
+		EasyMock.expect(pageMock.getExternalKey()).andReturn(externalKey).times(2);
+		templateEngineMock.process(EasyMock.anyObject(String.class), EasyMock.anyObject(Map.class), EasyMock.anyObject(Writer.class));
+		EasyMock.expectLastCall().times(2);
+		
+		EasyMock.replay(cacheInstancesMock, pagesCacheMock, modelBuilderMock, templateEngineMock, pageMock, projectMock, requestMock);	
+		pageContentBuilder.buildPageContent(requestMock, pageMock, model);
+		pageContentBuilder.buildPageContent(requestMock, pageMock, model);
+		EasyMock.verify(cacheInstancesMock, pagesCacheMock, modelBuilderMock, templateEngineMock, pageMock, projectMock, requestMock);		
+	}catch (Exception e)
+	{
+		assertTrue (false);
+	}
+}
+
+@Test
+public void test_getStaticPageEntry()
+{
+	try
+	{
+		WPBPage page = new WPBPage();
+		page.setExternalKey("abc");
+		page.setHtmlSource("<html>text</html>");
+		page.setHash(1L);
+		page.setContentType("text/html");
+		EasyMock.expect(cacheInstancesMock.getPageCache()).andReturn(pagesCacheMock).times(4);
+		EasyMock.expect(pagesCacheMock.getFingerPrint()).andReturn("1").times(3);
+		EasyMock.expect(pagesCacheMock.getFingerPrint()).andReturn("2");
+		EasyMock.replay(cacheInstancesMock, pagesCacheMock, modelBuilderMock, templateEngineMock);
+		
+		StaticPageEntry entry = pageContentBuilder.getStaticPageEntry(page);
+		assertTrue (new String(entry.getContent(), "UTF-8").equals("<html>text</html>"));
+		assertTrue (entry.getContentLength().equals("17"));
+		assertTrue (entry.getETag().equals("1"));
+		assertTrue (entry.getContentType().equals("text/html"));
+		
+		// same page version, the entry is reused
+		assertTrue (pageContentBuilder.getStaticPageEntry(page) == entry);
+		
+		// the page changed
+		page.setHtmlSource("<html>new</html>");
+		page.setHash(2L);
+		StaticPageEntry entry2 = pageContentBuilder.getStaticPageEntry(page);
+		assertTrue (entry2 != entry && entry2.getETag().equals("2"));
+		
+		// the pages cache was refreshed
+		assertTrue (pageContentBuilder.getStaticPageEntry(page) != entry2);
+		EasyMock.verify(cacheInstancesMock, pagesCacheMock, modelBuilderMock, templateEngineMock);
+	}catch (Exception e)
+	{
+		assertTrue (false);
+	}
+}
+
 }
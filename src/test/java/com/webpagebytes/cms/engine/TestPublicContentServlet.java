@@ -3,6 +3,7 @@ package com.webpagebytes.cms.engine;
 import static org.junit.Assert.*;
 
 
+import java.util.Date;
 import java.util.logging.Logger;
 
 import javax.servlet.ServletConfig;
@@ -32,9 +33,12 @@ import com.webpagebytes.cms.WPBParametersCache;
 import com.webpagebytes.cms.WPBProjectCache;
 import com.webpagebytes.cms.WPBPublicContentServlet;
 import com.webpagebytes.cms.WPBUrisCache;
+import com.webpagebytes.cms.cmsdata.WPBFile;
 import com.webpagebytes.cms.cmsdata.WPBPage;
+import com.webpagebytes.cms.engine.FileContentBuilder;
 import com.webpagebytes.cms.engine.InternalModel;
 import com.webpagebytes.cms.engine.PageContentBuilder;
+import com.webpagebytes.cms.engine.StaticPageEntry;
 import com.webpagebytes.cms.engine.WPBServletUtility;
 import com.webpagebytes.cms.exception.WPBIOException;
 import com.webpagebytes.cms.utility.CmsConfigurationFactory;
@@ -282,6 +286,15 @@ public void test_handleRequestTypeText_cache_null()
 	handleRequestTypeText_cache(null);
 }
 
+private StaticPageEntry createStaticPageEntry(String content, Long hash, String contentType) throws Exception
+{
+	WPBPage page = new WPBPage();
+	page.setHtmlSource(content);
+	page.setHash(hash);
+	page.setContentType(contentType);
+	return new StaticPageEntry(page);
+}
+
 private void handleRequestTypeText_cache(Integer templateSource)
 {
 	try
@@ -291,18 +304,16 @@ private void handleRequestTypeText_cache(Integer templateSource)
 	PageContentBuilder pageBuilderMock = EasyMock.createMock(PageContentBuilder.class);
 	Whitebox.setInternalState(publicServlet, "pageContentBuilder", pageBuilderMock);
 	String content = "aContent";
-	EasyMock.expect(pageBuilderMock.buildPageContent(requestMock, pageMock, modelMock)).andReturn(content);
+	Long hash = 123L;
+	String contentType="plain/text";
+	EasyMock.expect(pageBuilderMock.getStaticPageEntry(pageMock)).andReturn(createStaticPageEntry(content, hash, contentType));
 	responseMock.setCharacterEncoding("UTF-8");
-	EasyMock.expect(pageMock.getIsTemplateSource()).andReturn(0);
+	EasyMock.expect(pageMock.getIsTemplateSource()).andReturn(templateSource);
 	
 	EasyMock.expect(requestMock.getHeader(WPBPublicContentServlet.HEADER_IF_NONE_MATCH)).andReturn(null);
-	Long hash = 123L;
 	EasyMock.expect(requestMock.getParameter(WPBPublicContentServlet.CACHE_QUERY_PARAM)).andReturn(hash.toString());
-	EasyMock.expect(pageMock.getHash()).andReturn(hash);
 	responseMock.addHeader(WPBPublicContentServlet.HEADER_ETAG, hash.toString());
 	responseMock.addHeader(WPBPublicContentServlet.HEADER_CACHE_CONTROL, "max-age=31536000");
-	String contentType="plain/text";
-	EasyMock.expect(pageMock.getContentType()).andReturn(contentType);	
 	responseMock.setContentType(contentType);
 	responseMock.addHeader(WPBPublicContentServlet.HEADER_CONTENT_LENGTH, Integer.toString(content.length()));
 	ServletOutputStream sos_ = EasyMock.createMock(ServletOutputStream.class);
@@ -331,17 +342,17 @@ private void handleRequestTypeText_etag(Integer templateSource)
     Whitebox.setInternalState(publicServlet, "pageContentBuilder", pageBuilderMock);
     
     responseMock.setCharacterEncoding("UTF-8");
-    EasyMock.expect(pageMock.getIsTemplateSource()).andReturn(0);
+    EasyMock.expect(pageMock.getIsTemplateSource()).andReturn(templateSource);
     Long hash = 123L;
+    EasyMock.expect(pageBuilderMock.getStaticPageEntry(pageMock)).andReturn(createStaticPageEntry("aContent", hash, "plain/text"));
     
     EasyMock.expect(requestMock.getHeader("If-None-Match")).andReturn(hash.toString());
-    EasyMock.expect(pageMock.getHash()).andReturn(hash);
     
     responseMock.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
     
     EasyMock.replay(requestMock, responseMock, pageMock, modelMock, pageBuilderMock);
     Whitebox.invokeMethod(publicServlet, "handleRequestTypeText", pageMock, requestMock, responseMock, modelMock);
-    
+    EasyMock.verify(responseMock, pageBuilderMock);
    
     } catch (Exception e)
     {
@@ -349,6 +360,74 @@ private void handleRequestTypeText_etag(Integer templateSource)
     }
 }
 
+@Test
+public void test_handleRequestTypeText_gzip()
+{
+	try
+	{
+	WPBPage pageMock = EasyMock.createMock(WPBPage.class);
+	InternalModel modelMock = EasyMock.createMock(InternalModel.class);
+	PageContentBuilder pageBuilderMock = EasyMock.createMock(PageContentBuilder.class);
+	Whitebox.setInternalState(publicServlet, "pageContentBuilder", pageBuilderMock);
+	StringBuilder builder = new StringBuilder();
+	for(int i = 0; i < 100; i++)
+	{
+		builder.append("<p>text</p>");
+	}
+	StaticPageEntry entry = createStaticPageEntry(builder.toString(), 123L, "text/html");
+	EasyMock.expect(pageBuilderMock.getStaticPageEntry(pageMock)).andReturn(entry);
+	responseMock.setCharacterEncoding("UTF-8");
+	EasyMock.expect(pageMock.getIsTemplateSource()).andReturn(0);
+	EasyMock.expect(requestMock.getHeader(WPBPublicContentServlet.HEADER_ACCEPT_ENCODING)).andReturn("gzip, deflate");
+	EasyMock.expect(requestMock.getHeader(WPBPublicContentServlet.HEADER_IF_NONE_MATCH)).andReturn("123");
+	EasyMock.expect(requestMock.getParameter(WPBPublicContentServlet.CACHE_QUERY_PARAM)).andReturn(null);
+	responseMock.addHeader(WPBPublicContentServlet.HEADER_VARY, WPBPublicContentServlet.HEADER_ACCEPT_ENCODING);
+	responseMock.addHeader(WPBPublicContentServlet.HEADER_ETAG, "123-gzip");
+	responseMock.addHeader(WPBPublicContentServlet.HEADER_CONTENT_ENCODING, "gzip");
+	responseMock.addHeader(WPBPublicContentServlet.HEADER_CONTENT_LENGTH, Integer.toString(entry.getGzipContent().length));
+	responseMock.setContentType("text/html");
+	ServletOutputStream sos_ = EasyMock.createMock(ServletOutputStream.class);
+	CacheServletOutputStream cacheOutputStream = new CacheServletOutputStream(sos_);
+	EasyMock.expect(responseMock.getOutputStream()).andReturn(cacheOutputStream);
+	Capture<byte[]> capture = new Capture<byte[]>();
+	sos_.write(EasyMock.capture(capture));
+	EasyMock.replay(requestMock, responseMock, pageMock, modelMock, sos_, pageBuilderMock);
+	Whitebox.invokeMethod(publicServlet, "handleRequestTypeText", pageMock, requestMock, responseMock, modelMock);
+	EasyMock.verify(responseMock, pageBuilderMock);
+	assertTrue (capture.getValue() == entry.getGzipContent());
+	} catch (Exception e)
+	{
+		assertTrue(false);
+	}
+}
+
+@Test
+public void test_handleRequestTypeText_static_nobody()
+{
+	try
+	{
+	WPBPage pageMock = EasyMock.createMock(WPBPage.class);
+	InternalModel modelMock = EasyMock.createMock(InternalModel.class);
+	PageContentBuilder pageBuilderMock = EasyMock.createMock(PageContentBuilder.class);
+	Whitebox.setInternalState(publicServlet, "pageContentBuilder", pageBuilderMock);
+	String content = "aContent\u00e9";
+	EasyMock.expect(pageBuilderMock.getStaticPageEntry(pageMock)).andReturn(createStaticPageEntry(content, 123L, "plain/text"));
+	responseMock.setCharacterEncoding("UTF-8");
+	EasyMock.expect(pageMock.getIsTemplateSource()).andReturn(0);
+	EasyMock.expect(requestMock.getHeader(WPBPublicContentServlet.HEADER_IF_NONE_MATCH)).andReturn(null);
+	EasyMock.expect(requestMock.getParameter(WPBPublicContentServlet.CACHE_QUERY_PARAM)).andReturn(null);
+	responseMock.addHeader(WPBPublicContentServlet.HEADER_ETAG, "123");
+	responseMock.addHeader(WPBPublicContentServlet.HEADER_CONTENT_LENGTH, Integer.toString(content.getBytes("UTF-8").length));
+	responseMock.setContentType("plain/text");
+	EasyMock.replay(requestMock, responseMock, pageMock, modelMock, pageBuilderMock);
+	Whitebox.invokeMethod(publicServlet, "handleRequestTypeText", pageMock, requestMock, responseMock, modelMock, false);
+	EasyMock.verify(responseMock, pageBuilderMock);
+	} catch (Exception e)
+	{
+		assertTrue(false);
+	}
+}
+
 @Test 
 public void handleRequestTypeText_notModified_304()
 {
@@ -371,4 +450,134 @@ public void test_handleRequestTypeText_no_page()
 	}
 }
 
+@Test
+public void test_handleRequestTypeText_nobody()
+{
+	try
+	{
+	WPBPage pageMock = EasyMock.createMock(WPBPage.class);
+	InternalModel modelMock = EasyMock.createMock(InternalModel.class);
+	PageContentBuilder pageBuilderMock = EasyMock.createMock(PageContentBuilder.class);
+	Whitebox.setInternalState(publicServlet, "pageContentBuilder", pageBuilderMock);
+	responseMock.setCharacterEncoding("UTF-8");
+	EasyMock.expect(pageMock.getIsTemplateSource()).andReturn(1);
+	responseMock.addHeader("Cache-Control", "no-cache;no-store;");
+	String contentType="plain/text";
+	EasyMock.expect(pageMock.getContentType()).andReturn(contentType);	
+	responseMock.setContentType(contentType);
+	EasyMock.replay(requestMock, responseMock, pageMock, modelMock, pageBuilderMock);
+	Whitebox.invokeMethod(publicServlet, "handleRequestTypeText", pageMock, requestMock, responseMock, modelMock, false);
+	EasyMock.verify(responseMock, pageBuilderMock);
+	} catch (Exception e)
+	{
+		assertTrue(false);
+	}
+}
+
+private WPBFile createFile(long size, Date lastModified)
+{
+	WPBFile file = new WPBFile();
+	file.setHash(123L);
+	file.setSize(size);
+	file.setAdjustedContentType("video/mp4");
+	file.setLastModified(lastModified);
+	return file;
+}
+
+@Test
+public void test_handleRequestTypeFile_range()
+{
+	try
+	{
+	Date lastModified = new Date(1400000000000L);
+	WPBFile file = createFile(1000, lastModified);
+	FileContentBuilder fileBuilderMock = EasyMock.createMock(FileContentBuilder.class);
+	WPBCacheFactory cacheFactoryMock = EasyMock.createMock(WPBCacheFactory.class);
+	Whitebox.setInternalState(publicServlet, "fileContentBuilder", fileBuilderMock);
+	Whitebox.setInternalState(publicServlet, "cacheFactory", cacheFactoryMock);
+	EasyMock.expect(fileBuilderMock.find("abc")).andReturn(file);
+	EasyMock.expect(fileBuilderMock.isCompressible(file)).andReturn(false);
+	EasyMock.expect(cacheFactoryMock.getFilesCacheInstance()).andReturn(filesCacheMock);
+	EasyMock.expect(requestMock.getHeader(WPBPublicContentServlet.HEADER_RANGE)).andReturn("bytes=100-199");
+	EasyMock.expect(requestMock.getHeader(WPBPublicContentServlet.HEADER_IF_RANGE)).andReturn("123");
+	EasyMock.expect(requestMock.getHeader(WPBPublicContentServlet.HEADER_IF_NONE_MATCH)).andReturn(null);
+	EasyMock.expect(requestMock.getDateHeader(WPBPublicContentServlet.HEADER_IF_MODIFIED_SINCE)).andReturn(-1L);
+	EasyMock.expect(requestMock.getParameter(WPBPublicContentServlet.CACHE_QUERY_PARAM)).andReturn(null);
+	responseMock.addHeader(WPBPublicContentServlet.HEADER_ETAG, "123");
+	responseMock.setDateHeader(WPBPublicContentServlet.HEADER_LAST_MODIFIED, lastModified.getTime());
+	responseMock.addHeader(WPBPublicContentServlet.HEADER_ACCEPT_RANGES, "bytes");
+	responseMock.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+	responseMock.addHeader(WPBPublicContentServlet.HEADER_CONTENT_RANGE, "bytes 100-199/1000");
+	responseMock.addHeader(WPBPublicContentServlet.HEADER_CONTENT_LENGTH, "100");
+	responseMock.setContentType("video/mp4");
+	ServletOutputStream sos = EasyMock.createMock(ServletOutputStream.class);
+	EasyMock.expect(responseMock.getOutputStream()).andReturn(sos);
+	fileBuilderMock.writeFileContent(file, sos, 100L, 100L);
+	EasyMock.replay(requestMock, responseMock, fileBuilderMock, cacheFactoryMock, sos);
+	Whitebox.invokeMethod(publicServlet, "handleRequestTypeFile", "abc", (URLMatcherResult)null, requestMock, responseMock);
+	EasyMock.verify(requestMock, responseMock, fileBuilderMock, cacheFactoryMock);
+	} catch (Exception e)
+	{
+		assertTrue(false);
+	}
+}
+
+@Test
+public void test_handleRequestTypeFile_range_not_satisfiable()
+{
+	try
+	{
+	WPBFile file = createFile(1000, null);
+	FileContentBuilder fileBuilderMock = EasyMock.createMock(FileContentBuilder.class);
+	WPBCacheFactory cacheFactoryMock = EasyMock.createMock(WPBCacheFactory.class);
+	Whitebox.setInternalState(publicServlet, "fileContentBuilder", fileBuilderMock);
+	Whitebox.setInternalState(publicServlet, "cacheFactory", cacheFactoryMock);
+	EasyMock.expect(fileBuilderMock.find("abc")).andReturn(file);
+	EasyMock.expect(fileBuilderMock.isCompressible(file)).andReturn(false);
+	EasyMock.expect(cacheFactoryMock.getFilesCacheInstance()).andReturn(filesCacheMock);
+	EasyMock.expect(requestMock.getHeader(WPBPublicContentServlet.HEADER_RANGE)).andReturn("bytes=2000-");
+	EasyMock.expect(requestMock.getHeader(WPBPublicContentServlet.HEADER_IF_RANGE)).andReturn(null);
+	EasyMock.expect(requestMock.getHeader(WPBPublicContentServlet.HEADER_IF_NONE_MATCH)).andReturn(null);
+	EasyMock.expect(requestMock.getParameter(WPBPublicContentServlet.CACHE_QUERY_PARAM)).andReturn(null);
+	responseMock.addHeader(WPBPublicContentServlet.HEADER_ETAG, "123");
+	responseMock.addHeader(WPBPublicContentServlet.HEADER_ACCEPT_RANGES, "bytes");
+	responseMock.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+	responseMock.addHeader(WPBPublicContentServlet.HEADER_CONTENT_RANGE, "bytes */1000");
+	EasyMock.replay(requestMock, responseMock, fileBuilderMock, cacheFactoryMock);
+	Whitebox.invokeMethod(publicServlet, "handleRequestTypeFile", "abc", (URLMatcherResult)null, requestMock, responseMock);
+	EasyMock.verify(requestMock, responseMock, fileBuilderMock, cacheFactoryMock);
+	} catch (Exception e)
+	{
+		assertTrue(false);
+	}
+}
+
+@Test
+public void test_handleRequestTypeFile_notModifiedSince()
+{
+	try
+	{
+	Date lastModified = new Date(1400000000000L);
+	WPBFile file = createFile(1000, lastModified);
+	FileContentBuilder fileBuilderMock = EasyMock.createMock(FileContentBuilder.class);
+	WPBCacheFactory cacheFactoryMock = EasyMock.createMock(WPBCacheFactory.class);
+	Whitebox.setInternalState(publicServlet, "fileContentBuilder", fileBuilderMock);
+	Whitebox.setInternalState(publicServlet, "cacheFactory", cacheFactoryMock);
+	EasyMock.expect(fileBuilderMock.find("abc")).andReturn(file);
+	EasyMock.expect(fileBuilderMock.isCompressible(file)).andReturn(false);
+	EasyMock.expect(cacheFactoryMock.getFilesCacheInstance()).andReturn(filesCacheMock);
+	EasyMock.expect(requestMock.getHeader(WPBPublicContentServlet.HEADER_RANGE)).andReturn(null);
+	EasyMock.expect(requestMock.getHeader(WPBPublicContentServlet.HEADER_IF_NONE_MATCH)).andReturn(null);
+	// the If-Modified-Since date has no milliseconds
+	EasyMock.expect(requestMock.getDateHeader(WPBPublicContentServlet.HEADER_IF_MODIFIED_SINCE)).andReturn(1400000000000L - 500L + 999L);
+	responseMock.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+	EasyMock.replay(requestMock, responseMock, fileBuilderMock, cacheFactoryMock);
+	Whitebox.invokeMethod(publicServlet, "handleRequestTypeFile", "abc", (URLMatcherResult)null, requestMock, responseMock);
+	EasyMock.verify(requestMock, responseMock, fileBuilderMock, cacheFactoryMock);
+	} catch (Exception e)
+	{
+		assertTrue(false);
+	}
+}
+
 }
@@ -0,0 +1,128 @@
+package com.webpagebytes.cms.engine;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.easymock.EasyMock;
+import org.easymock.IAnswer;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powermock.api.easymock.PowerMock;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import com.webpagebytes.cms.cmsdata.WPBPage;
+import com.webpagebytes.cms.cmsdata.WPBPageModule;
+import com.webpagebytes.cms.exception.WPBTemplateException;
+import com.webpagebytes.cms.template.WPBLoadableTemplateEngine;
+import com.webpagebytes.cms.template.WPBTemplateEngine;
+
+@RunWith(PowerMockRunner.class)
+public class TestTemplateWarmUp {
+
+private WPBLoadableTemplateEngine templateEngineMock;
+
+@Before
+public void setUp()
+{
+	templateEngineMock = EasyMock.createMock(WPBLoadableTemplateEngine.class);
+}
+
+@Test
+public void test_getTemplateNames()
+{
+	try
+	{
+		WPBInternalAdminDataStorage adminStorageMock = PowerMock.createMock(WPBInternalAdminDataStorage.class);
+		WPBPage templatePage = new WPBPage();
+		templatePage.setExternalKey("p1");
+		templatePage.setIsTemplateSource(1);
+		WPBPage plainPage = new WPBPage();
+		plainPage.setExternalKey("p2");
+		plainPage.setIsTemplateSource(0);
+		WPBPageModule templateModule = new WPBPageModule();
+		templateModule.setExternalKey("m1");
+		templateModule.setIsTemplateSource(1);
+		EasyMock.expect(adminStorageMock.getAllRecords(WPBPage.class)).andReturn(Arrays.asList(templatePage, plainPage));
+		EasyMock.expect(adminStorageMock.getAllRecords(WPBPageModule.class)).andReturn(Arrays.asList(templateModule));
+		PowerMock.replay(adminStorageMock);
+		
+		List<String> names = TemplateWarmUp.getTemplateNames(adminStorageMock);
+		
+		PowerMock.verify(adminStorageMock);
+		assertTrue (names.equals(Arrays.asList(WPBTemplateEngine.WEBPAGES_PATH_PREFIX + "p1", WPBTemplateEngine.WEBMODULES_PATH_PREFIX + "m1")));
+	} catch (Exception e)
+	{
+		assertTrue (false);
+	}
+}
+
+@Test
+public void test_run()
+{
+	try
+	{
+		templateEngineMock.loadTemplate("webpages/p1");
+		templateEngineMock.loadTemplate("webpages/p2");
+		EasyMock.expectLastCall().andThrow(new WPBTemplateException("parse error"));
+		templateEngineMock.loadTemplate("webmodules/m1");
+		EasyMock.replay(templateEngineMock);
+		
+		TemplateWarmUp warmUp = new TemplateWarmUp(templateEngineMock, 2, 10000);
+		TemplateWarmUp.Report report = warmUp.run(Arrays.asList("webpages/p1", "webpages/p2", "webmodules/m1"));
+		
+		EasyMock.verify(templateEngineMock);
+		assertTrue (report.getTotal() == 3);
+		assertTrue (report.getParsed() == 2);
+		assertTrue (report.getErrors().size() == 1);
+		assertTrue (report.getErrors().get("webpages/p2").equals("parse error"));
+		assertFalse (report.isTimedOut());
+	} catch (Exception e)
+	{
+		assertTrue (false);
+	}
+}
+
+@Test
+public void test_run_time_budget()
+{
+	try
+	{
+		templateEngineMock.loadTemplate(EasyMock.anyObject(String.class));
+		EasyMock.expectLastCall().andAnswer(new IAnswer<Object>() {
+			public Object answer() throws Throwable {
+				Thread.sleep(50);
+				return null;
+			}
+		}).anyTimes();
+		EasyMock.replay(templateEngineMock);
+		
+		List<String> names = new ArrayList<String>();
+		for(int i = 0; i < 100; i++)
+		{
+			names.add("webpages/p" + i);
+		}
+		TemplateWarmUp warmUp = new TemplateWarmUp(templateEngineMock, 1, 100);
+		TemplateWarmUp.Report report = warmUp.run(names);
+		
+		assertTrue (report.isTimedOut());
+		assertTrue (report.getParsed() < 100);
+	} catch (Exception e)
+	{
+		assertTrue (false);
+	}
+}
+
+@Test
+public void test_run_empty()
+{
+	EasyMock.replay(templateEngineMock);
+	TemplateWarmUp.Report report = new TemplateWarmUp(templateEngineMock, 4, 1000).run(new ArrayList<String>());
+	assertTrue (report.getTotal() == 0);
+	assertFalse (report.isTimedOut());
+}
+
+}
@@ -433,4 +433,72 @@ public void test_matchAll_empty2()
     assertTrue(result == null);
 }
 
+@Test
+public void test_matchUrlToPattern_most_clear_suburls_wins()
+{
+    URLMatcher urlMarcher = new URLMatcher();
+    Set<String> patterns = new HashSet<String>();
+    patterns.add("/news/{id}/{key}");
+    patterns.add("/{language}/sports/all");
+    patterns.add("/{language}/{category}/all");
+    urlMarcher.initialize(patterns, "xyz");
+    URLMatcherResult result = urlMarcher.matchUrlToPattern("/news/sports/all");
+    Map<String, String> params = new HashMap<String, String>();
+    params.put("language", "news");
+    
+    assertTrue (result.getUrlPattern().equals("/{language}/sports/all"));
+    assertTrue (result.getPatternParams().equals(params));
+}
+
+@Test
+public void test_matchUrlToPattern_backtrack()
+{
+    URLMatcher urlMarcher = new URLMatcher();
+    Set<String> patterns = new HashSet<String>();
+    patterns.add("/news/{id}/abc");
+    patterns.add("/{language}/{category}/xyz");
+    urlMarcher.initialize(patterns, "xyz");
+    URLMatcherResult result = urlMarcher.matchUrlToPattern("/news/sports/xyz");
+    Map<String, String> params = new HashMap<String, String>();
+    params.put("language", "news");
+    params.put("category", "sports");
+    
+    assertTrue (result.getUrlPattern().equals("/{language}/{category}/xyz"));
+    assertTrue (result.getPatternParams().equals(params));
+}
+
+@Test
+public void test_matchUrlToPattern_longest_common_prefix_wins()
+{
+    URLMatcher urlMarcher = new URLMatcher();
+    Set<String> patterns = new HashSet<String>();
+    patterns.add("/{key}");
+    patterns.add("/news-{id}");
+    urlMarcher.initialize(patterns, "xyz");
+    URLMatcherResult result = urlMarcher.matchUrlToPattern("/news-123");
+    Map<String, String> params = new HashMap<String, String>();
+    params.put("id", "123");
+    
+    assertTrue (result.getUrlPattern().equals("/news-{id}"));
+    assertTrue (result.getPatternParams().equals(params));
+}
+
+@Test
+public void test_matchUrlToPattern_asterix_not_last_level()
+{
+    URLMatcher urlMarcher = new URLMatcher();
+    Set<String> patterns = new HashSet<String>();
+    patterns.add("/news-{*}-{id}/page-{page}");
+    urlMarcher.initialize(patterns, "xyz");
+    URLMatcherResult result = urlMarcher.matchUrlToPattern("/news-a-b-12/page-3-4");
+    Map<String, String> params = new HashMap<String, String>();
+    params.put("*", "a-b");
+    params.put("id", "12");
+    params.put("page", "3-4");
+    
+    assertTrue (result.getUrlPattern().equals("/news-{*}-{id}/page-{page}"));
+    assertTrue (result.getPatternParams().equals(params));
+    assertTrue (urlMarcher.matchUrlToPattern("/news-a-b-12/pag-3") == null);
+}
+
 }
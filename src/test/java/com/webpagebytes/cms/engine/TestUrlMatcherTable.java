@@ -0,0 +1,79 @@
+package com.webpagebytes.cms.engine;
+
+import static org.junit.Assert.*;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.easymock.EasyMock;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import com.webpagebytes.cms.WPBUrisCache;
+import com.webpagebytes.cms.exception.WPBIOException;
+
+@RunWith(PowerMockRunner.class)
+public class TestUrlMatcherTable {
+
+private WPBUrisCache urisCacheMock;
+private Set<String> uris;
+
+@Before
+public void setUp()
+{
+	urisCacheMock = EasyMock.createMock(WPBUrisCache.class);
+	uris = new HashSet<String>();
+	uris.add("/test");
+	uris.add("/news-{id}");
+}
+
+@Test
+public void test_get_same_fingerprint()
+{
+	try
+	{
+		EasyMock.expect(urisCacheMock.getAllUris(0)).andReturn(uris);
+		EasyMock.expect(urisCacheMock.getFingerPrint()).andReturn("abc").times(3);
+		EasyMock.replay(urisCacheMock);
+		
+		URLMatcherTable table = new URLMatcherTable(urisCacheMock, 1);
+		table.initialize();
+		URLMatcher urlMatcher = table.get(0);
+		assertTrue (urlMatcher == table.get(0));
+		assertTrue (urlMatcher.matchUrlToPattern("/news-1").getUrlPattern().equals("/news-{id}"));
+		EasyMock.verify(urisCacheMock);
+	} catch (WPBIOException e)
+	{
+		assertTrue (false);
+	}
+}
+
+@Test
+public void test_get_fingerprint_changed()
+{
+	try
+	{
+		Set<String> newUris = new HashSet<String>();
+		newUris.add("/articles/{id}");
+		EasyMock.expect(urisCacheMock.getAllUris(0)).andReturn(uris);
+		EasyMock.expect(urisCacheMock.getFingerPrint()).andReturn("abc");
+		EasyMock.expect(urisCacheMock.getFingerPrint()).andReturn("xyz").times(2);
+		EasyMock.expect(urisCacheMock.getAllUris(0)).andReturn(newUris);
+		EasyMock.replay(urisCacheMock);
+		
+		URLMatcherTable table = new URLMatcherTable(urisCacheMock, 1);
+		table.initialize();
+		URLMatcher urlMatcher = table.get(0);
+		assertTrue (urlMatcher.getFingerPrint().equals("xyz"));
+		assertTrue (urlMatcher.matchUrlToPattern("/news-1") == null);
+		assertTrue (urlMatcher.matchUrlToPattern("/articles/1").getUrlPattern().equals("/articles/{id}"));
+		EasyMock.verify(urisCacheMock);
+	} catch (WPBIOException e)
+	{
+		assertTrue (false);
+	}
+}
+
+}
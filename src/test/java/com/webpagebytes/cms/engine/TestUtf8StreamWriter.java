@@ -0,0 +1,78 @@
+package com.webpagebytes.cms.engine;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+
+import org.junit.Test;
+
+public class TestUtf8StreamWriter {
+
+@Test
+public void test_write_ascii()
+{
+	try
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		Utf8StreamWriter writer = new Utf8StreamWriter(out);
+		writer.write("<html>");
+		writer.write('a');
+		writer.write("text".toCharArray(), 1, 2);
+		writer.close();
+		assertTrue (new String(out.toByteArray(), "UTF-8").equals("<html>aex"));
+	} catch (Exception e)
+	{
+		assertTrue (false);
+	}
+}
+
+@Test
+public void test_write_multibyte_large()
+{
+	try
+	{
+		StringBuilder builder = new StringBuilder();
+		for(int i = 0; i < 10000; i++)
+		{
+			// 'a', e acute, euro sign and a surrogate pair that will cross the internal buffer boundaries
+			builder.append("aé€😀");
+		}
+		String content = builder.toString();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		Utf8StreamWriter writer = new Utf8StreamWriter(out);
+		writer.write(content);
+		writer.close();
+		assertTrue (new String(out.toByteArray(), "UTF-8").equals(content));
+		assertTrue (out.toByteArray().length == content.getBytes("UTF-8").length);
+	} catch (Exception e)
+	{
+		assertTrue (false);
+	}
+}
+
+@Test
+public void test_reusable_buffer()
+{
+	try
+	{
+		ReusableByteArrayOutputStream buffer = ReusableByteArrayOutputStream.acquire();
+		Utf8StreamWriter writer = new Utf8StreamWriter(buffer);
+		writer.write("test é");
+		writer.close();
+		assertTrue (buffer.size() == 7);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		buffer.writeTo(out);
+		buffer.release();
+		assertTrue (new String(out.toByteArray(), "UTF-8").equals("test é"));
+		
+		ReusableByteArrayOutputStream buffer2 = ReusableByteArrayOutputStream.acquire();
+		assertTrue (buffer2 == buffer);
+		assertTrue (buffer2.size() == 0);
+		buffer2.release();
+	} catch (Exception e)
+	{
+		assertTrue (false);
+	}
+}
+
+}
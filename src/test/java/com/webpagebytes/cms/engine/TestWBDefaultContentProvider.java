@@ -114,6 +114,9 @@ public void test_writePageContent()
 		OutputStream osMock  = EasyMock.createMock(OutputStream.class);
 		WPBPage pageMock = EasyMock.createMock(WPBPage.class);
 		InternalModel modelMock = EasyMock.createMock(InternalModel.class);
+		EasyMock.expect(modelMock.getOutputCacheFingerPrint()).andReturn(null);
+		EasyMock.expect(pageContentBuilderMock.getOutputCacheFingerPrint()).andReturn("fp");
+		modelMock.setOutputCacheFingerPrint("fp");
 		EasyMock.expect(pageContentBuilderMock.findWebPage(externalKey)).andReturn(pageMock);
 		EasyMock.expect(pageContentBuilderMock.buildPageContent(pageMock, modelMock)).andReturn(content);
 		EasyMock.replay(fileContentBuilderMock, pageContentBuilderMock, pageMock, modelMock, osMock);
@@ -156,6 +159,9 @@ public void test_writePageContent_ioexception()
 		OutputStream osMock  = PowerMock.createMock(OutputStream.class);
 		WPBPage pageMock = EasyMock.createMock(WPBPage.class);
 		InternalModel modelMock = EasyMock.createMock(InternalModel.class);
+		EasyMock.expect(modelMock.getOutputCacheFingerPrint()).andReturn(null);
+		EasyMock.expect(pageContentBuilderMock.getOutputCacheFingerPrint()).andReturn("fp");
+		modelMock.setOutputCacheFingerPrint("fp");
 		EasyMock.expect(pageContentBuilderMock.findWebPage(externalKey)).andReturn(pageMock);
 		EasyMock.expect(pageContentBuilderMock.buildPageContent(pageMock, modelMock)).andReturn(content);
 		Capture<byte[]> capture = new Capture<byte[]>();
@@ -181,6 +187,9 @@ public void test_writePageContent_wbexception()
 		OutputStream osMock  = PowerMock.createMock(OutputStream.class);
 		WPBPage pageMock = EasyMock.createMock(WPBPage.class);
 		InternalModel modelMock = EasyMock.createMock(InternalModel.class);
+		EasyMock.expect(modelMock.getOutputCacheFingerPrint()).andReturn(null);
+		EasyMock.expect(pageContentBuilderMock.getOutputCacheFingerPrint()).andReturn("fp");
+		modelMock.setOutputCacheFingerPrint("fp");
 		EasyMock.expect(pageContentBuilderMock.findWebPage(externalKey)).andReturn(pageMock);
 		EasyMock.expect(pageContentBuilderMock.buildPageContent(pageMock, modelMock)).andThrow(new WPBException(""));
 		EasyMock.replay(fileContentBuilderMock, pageContentBuilderMock, pageMock, modelMock, osMock);
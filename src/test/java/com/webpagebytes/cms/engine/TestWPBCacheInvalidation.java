@@ -0,0 +1,71 @@
+package com.webpagebytes.cms.engine;
+
+import static org.junit.Assert.*;
+
+import org.easymock.EasyMock;
+import org.junit.Test;
+
+import com.webpagebytes.cms.WPBIncrementalCache;
+import com.webpagebytes.cms.WPBPagesCache;
+import com.webpagebytes.cms.cmsdata.WPBPage;
+import com.webpagebytes.cms.engine.WPBAdminDataStorageListener.AdminDataStorageOperation;
+
+public class TestWPBCacheInvalidation {
+
+@Test
+public void test_invalidate_incremental()
+{
+	try
+	{
+		WPBIncrementalCache cacheMock = EasyMock.createStrictMock(WPBIncrementalCache.class);
+		WPBPage page = new WPBPage();
+		page.setExternalKey("p1");
+		cacheMock.upsert("p1");
+		cacheMock.evict("p2");
+		cacheMock.Refresh();
+		EasyMock.replay(cacheMock);
+
+		WPBCacheInvalidation.invalidate(cacheMock, page, AdminDataStorageOperation.UPDATE_RECORD);
+		WPBCacheInvalidation.invalidate(cacheMock, "p2", AdminDataStorageOperation.DELETE_RECORD);
+		WPBCacheInvalidation.invalidate(cacheMock, null, AdminDataStorageOperation.DELETE_RECORDS);
+
+		EasyMock.verify(cacheMock);
+	} catch (Exception e)
+	{
+		assertTrue (false);
+	}
+}
+
+@Test
+public void test_invalidate_refresh()
+{
+	try
+	{
+		WPBPagesCache cacheMock = EasyMock.createMock(WPBPagesCache.class);
+		WPBPage page = new WPBPage();
+		page.setExternalKey("p1");
+		cacheMock.Refresh();
+		EasyMock.expectLastCall().times(2);
+		EasyMock.replay(cacheMock);
+
+		WPBCacheInvalidation.invalidate(cacheMock, page, AdminDataStorageOperation.CREATE_RECORD);
+		WPBCacheInvalidation.invalidate(cacheMock, "p1", AdminDataStorageOperation.DELETE_RECORD);
+
+		EasyMock.verify(cacheMock);
+	} catch (Exception e)
+	{
+		assertTrue (false);
+	}
+}
+
+@Test
+public void test_getExternalKey()
+{
+	WPBPage page = new WPBPage();
+	page.setExternalKey("p1");
+	assertTrue (WPBCacheInvalidation.getExternalKey(page).equals("p1"));
+	assertTrue (WPBCacheInvalidation.getExternalKey("no key") == null);
+	assertTrue (WPBCacheInvalidation.getExternalKey(null) == null);
+}
+
+}
@@ -0,0 +1,120 @@
+package com.webpagebytes.cms.engine;
+
+import static org.junit.Assert.*;
+
+import org.easymock.EasyMock;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.webpagebytes.cms.WPBAdminDataStorage;
+import com.webpagebytes.cms.cmsdata.WPBFile;
+import com.webpagebytes.cms.cmsdata.WPBPage;
+import com.webpagebytes.cms.engine.WPBAdminDataStorageListener.AdminDataStorageOperation;
+
+public class TestWPBInternalAdminDataStorage {
+
+private WPBAdminDataStorage dataStorageMock;
+private WPBAdminDataStorageListener listenerMock;
+private WPBInternalAdminDataStorage adminStorage;
+
+@Before
+public void setUp()
+{
+	dataStorageMock = EasyMock.createMock(WPBAdminDataStorage.class);
+	listenerMock = EasyMock.createStrictMock(WPBAdminDataStorageListener.class);
+	adminStorage = new WPBInternalAdminDataStorage(dataStorageMock);
+	adminStorage.addStorageListener(listenerMock);
+}
+
+private WPBFile file(String key)
+{
+	WPBFile file = new WPBFile();
+	file.setExternalKey(key);
+	return file;
+}
+
+@Test
+public void test_notify_no_batch()
+{
+	try
+	{
+		WPBFile file = file("f1");
+		dataStorageMock.delete("f1", WPBFile.class);
+		EasyMock.expect(dataStorageMock.addWithKey(file)).andReturn(file);
+		listenerMock.notify("f1", AdminDataStorageOperation.DELETE_RECORD, WPBFile.class);
+		listenerMock.notify(file, AdminDataStorageOperation.CREATE_RECORD, WPBFile.class);
+		EasyMock.replay(dataStorageMock, listenerMock);
+
+		adminStorage.delete("f1", WPBFile.class);
+		adminStorage.addWithKey(file);
+
+		EasyMock.verify(dataStorageMock, listenerMock);
+	} catch (Exception e)
+	{
+		assertTrue (false);
+	}
+}
+
+@Test
+public void test_batch_merges_records()
+{
+	try
+	{
+		WPBFile file1 = file("f1");
+		WPBFile file2 = file("f2");
+		WPBPage page = new WPBPage();
+		page.setExternalKey("p1");
+		dataStorageMock.delete("f1", WPBFile.class);
+		EasyMock.expect(dataStorageMock.addWithKey(file1)).andReturn(file1);
+		EasyMock.expect(dataStorageMock.addWithKey(file2)).andReturn(file2);
+		EasyMock.expect(dataStorageMock.update(page)).andReturn(page);
+		listenerMock.notify(file1, AdminDataStorageOperation.CREATE_RECORD, WPBFile.class);
+		listenerMock.notify(file2, AdminDataStorageOperation.CREATE_RECORD, WPBFile.class);
+		listenerMock.notify(page, AdminDataStorageOperation.UPDATE_RECORD, WPBPage.class);
+		EasyMock.replay(dataStorageMock, listenerMock);
+
+		adminStorage.startBatch();
+		adminStorage.delete("f1", WPBFile.class);
+		adminStorage.addWithKey(file1);
+		adminStorage.startBatch();
+		adminStorage.addWithKey(file2);
+		adminStorage.endBatch();
+		adminStorage.update(page);
+		adminStorage.endBatch();
+
+		EasyMock.verify(dataStorageMock, listenerMock);
+	} catch (Exception e)
+	{
+		assertTrue (false);
+	}
+}
+
+@Test
+public void test_batch_bulk()
+{
+	try
+	{
+		WPBFile[] files = new WPBFile[NotificationBatch.MAX_RECORD_CHANGES + 1];
+		for(int i = 0; i < files.length; i++)
+		{
+			files[i] = file("f" + i);
+			EasyMock.expect(dataStorageMock.addWithKey(files[i])).andReturn(files[i]);
+		}
+		listenerMock.notify(null, AdminDataStorageOperation.DELETE_RECORDS, WPBFile.class);
+		EasyMock.replay(dataStorageMock, listenerMock);
+
+		adminStorage.startBatch();
+		for(WPBFile file: files)
+		{
+			adminStorage.addWithKey(file);
+		}
+		adminStorage.endBatch();
+
+		EasyMock.verify(dataStorageMock, listenerMock);
+	} catch (Exception e)
+	{
+		assertTrue (false);
+	}
+}
+
+}
@@ -0,0 +1,58 @@
+package com.webpagebytes.cms.template;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class TestFreeMarkerDataUriCache {
+
+@Test
+public void test_get_put()
+{
+	FreeMarkerDataUriCache cache = new FreeMarkerDataUriCache(100, 50);
+	assertTrue (cache.get("blob1", 1L, "fp1") == null);
+	cache.put("blob1", 1L, "fp1", "data:image/png;base64,AAAA");
+	assertTrue (cache.get("blob1", 1L, "fp1").equals("data:image/png;base64,AAAA"));
+	assertTrue (cache.get("blob1", 2L, "fp1") == null);
+	assertTrue (cache.getWeight() == "data:image/png;base64,AAAA".length());
+}
+
+@Test
+public void test_fingerprint_changed()
+{
+	FreeMarkerDataUriCache cache = new FreeMarkerDataUriCache(100, 50);
+	cache.get("blob1", 1L, "fp1");
+	cache.put("blob1", 1L, "fp1", "data");
+	assertTrue (cache.get("blob1", 1L, "fp2") == null);
+	assertTrue (cache.size() == 0);
+	cache.put("blob1", 1L, "fp1", "data");
+	assertTrue (cache.size() == 0);
+}
+
+@Test
+public void test_max_entry_weight()
+{
+	FreeMarkerDataUriCache cache = new FreeMarkerDataUriCache(100, 5);
+	cache.get("blob1", 1L, "fp1");
+	assertTrue (cache.accepts(5));
+	assertFalse (cache.accepts(6));
+	cache.put("blob1", 1L, "fp1", "123456");
+	assertTrue (cache.size() == 0);
+}
+
+@Test
+public void test_eviction()
+{
+	FreeMarkerDataUriCache cache = new FreeMarkerDataUriCache(10, 10);
+	cache.get("blob1", 1L, "fp1");
+	cache.put("blob1", 1L, "fp1", "1234");
+	cache.put("blob2", 1L, "fp1", "1234");
+	cache.get("blob1", 1L, "fp1");
+	cache.put("blob3", 1L, "fp1", "1234");
+	assertTrue (cache.size() == 2);
+	assertTrue (cache.getWeight() == 8);
+	assertTrue (cache.get("blob1", 1L, "fp1") != null);
+	assertTrue (cache.get("blob2", 1L, "fp1") == null);
+}
+
+}
@@ -0,0 +1,89 @@
+package com.webpagebytes.cms.template;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.webpagebytes.cms.cmsdata.WPBPageModule;
+
+public class TestFreeMarkerFragmentCache {
+
+@Test
+public void test_parseParams()
+{
+	assertTrue (FreeMarkerFragmentCache.parseParams(null).length == 0);
+	assertTrue (FreeMarkerFragmentCache.parseParams(" , ").length == 0);
+	assertTrue (Arrays.equals(FreeMarkerFragmentCache.parseParams("title, category ,"), new String[] {"title", "category"}));
+}
+
+@Test
+public void test_snapshot_same_fingerprints()
+{
+	FreeMarkerFragmentCache cache = new FreeMarkerFragmentCache(10);
+	FreeMarkerFragmentCache.Snapshot snapshot = cache.getSnapshot("m1", "msg1", "p1");
+	snapshot.putFragment("key", "content");
+	
+	FreeMarkerFragmentCache.Snapshot same = cache.getSnapshot("m1", "msg1", "p1");
+	assertTrue (same == snapshot);
+	assertTrue (same.getFragment("key").equals("content"));
+}
+
+@Test
+public void test_snapshot_fingerprint_changed()
+{
+	FreeMarkerFragmentCache cache = new FreeMarkerFragmentCache(10);
+	FreeMarkerFragmentCache.Snapshot snapshot = cache.getSnapshot("m1", "msg1", "p1");
+	snapshot.putFragment("key", "content");
+	
+	assertTrue (cache.getSnapshot("m1", "msg2", "p1").getFragment("key") == null);
+	assertTrue (cache.getSnapshot("m2", "msg2", "p1") != snapshot);
+	assertTrue (cache.getSnapshot(null, "msg2", "p1") != cache.getSnapshot(null, "msg2", "p1"));
+}
+
+@Test
+public void test_snapshot_all_fingerprints()
+{
+	FreeMarkerFragmentCache cache = new FreeMarkerFragmentCache(10);
+	FreeMarkerFragmentCache.Snapshot snapshot = cache.getSnapshot("m1", "msg1", "p1", "a1", "f1", "u1");
+	snapshot.putFragment("key", "content");
+	
+	assertTrue (cache.getSnapshot("m1", "msg1", "p1", "a1", "f1", "u1").getFragment("key").equals("content"));
+	assertTrue (cache.getSnapshot("m1", "msg1", "p1", "a1", "f1", "u2").getFragment("key") == null);
+	assertTrue (cache.getSnapshot("m1", "msg1", "p1", null, "f1", "u2").fingerPrint == null);
+}
+
+@Test
+public void test_snapshot_modules()
+{
+	FreeMarkerFragmentCache cache = new FreeMarkerFragmentCache(10);
+	FreeMarkerFragmentCache.Snapshot snapshot = cache.getSnapshot("m1", "msg1", "p1");
+	WPBPageModule module = new WPBPageModule();
+	module.setIsFragmentCached(1);
+	module.setFragmentCacheParams("title");
+	snapshot.putModule("key1", module);
+	
+	FreeMarkerFragmentCache.ModuleEntry entry = snapshot.getModule("key1");
+	assertTrue (entry.module == module);
+	assertTrue (entry.isFragmentCached());
+	assertTrue (Arrays.equals(entry.dependencyParams, new String[] {"title"}));
+	assertTrue (snapshot.getModule("key2") == null);
+}
+
+@Test
+public void test_snapshot_max_size()
+{
+	FreeMarkerFragmentCache cache = new FreeMarkerFragmentCache(2);
+	FreeMarkerFragmentCache.Snapshot snapshot = cache.getSnapshot("m1", "msg1", "p1");
+	snapshot.putFragment("key1", "content1");
+	snapshot.putFragment("key2", "content2");
+	snapshot.getFragment("key1");
+	snapshot.putFragment("key3", "content3");
+	
+	assertTrue (snapshot.getFragmentsSize() == 2);
+	assertTrue (snapshot.getFragment("key1") != null);
+	assertTrue (snapshot.getFragment("key2") == null);
+}
+
+}
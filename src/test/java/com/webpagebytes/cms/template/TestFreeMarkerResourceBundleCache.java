@@ -0,0 +1,124 @@
+package com.webpagebytes.cms.template;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import org.easymock.EasyMock;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.webpagebytes.cms.WPBMessagesCache;
+
+import freemarker.ext.beans.ResourceBundleModel;
+
+public class TestFreeMarkerResourceBundleCache {
+
+private WPBMessagesCache messageCacheMock;
+private FreeMarkerResourcesFactory factory;
+private FreeMarkerResourceBundleCache cache;
+private Locale locale;
+private Map<String, String> messages;
+
+@Before
+public void setUp()
+{
+	messageCacheMock = EasyMock.createMock(WPBMessagesCache.class);
+	factory = new FreeMarkerResourcesFactory();
+	cache = new FreeMarkerResourceBundleCache(factory.createObjectWrapper());
+	locale = new Locale("en");
+	messages = new HashMap<String, String>();
+	messages.put("key", "value");
+}
+
+@Test
+public void test_get_reuses_model()
+{
+	try
+	{
+		EasyMock.expect(messageCacheMock.getFingerPrint(locale)).andReturn("fp1").anyTimes();
+		EasyMock.expect(messageCacheMock.getAllMessages(locale)).andReturn(messages).once();
+		EasyMock.replay(messageCacheMock);
+		
+		ResourceBundleModel first = cache.get(factory, messageCacheMock, locale);
+		ResourceBundleModel second = cache.get(factory, messageCacheMock, new Locale("en"));
+		
+		EasyMock.verify(messageCacheMock);
+		assertTrue (first == second);
+		assertTrue (cache.size() == 1);
+		assertTrue (((CmsResourceBundle)first.getWrappedObject()).getString("key").equals("value"));
+	} catch (Exception e)
+	{
+		assertTrue (false);
+	}
+}
+
+@Test
+public void test_get_fingerprint_changed()
+{
+	try
+	{
+		EasyMock.expect(messageCacheMock.getFingerPrint(locale)).andReturn("fp1").times(2);
+		EasyMock.expect(messageCacheMock.getFingerPrint(locale)).andReturn("fp2").anyTimes();
+		EasyMock.expect(messageCacheMock.getAllMessages(locale)).andReturn(messages).times(2);
+		EasyMock.replay(messageCacheMock);
+		
+		ResourceBundleModel first = cache.get(factory, messageCacheMock, locale);
+		ResourceBundleModel second = cache.get(factory, messageCacheMock, locale);
+		
+		EasyMock.verify(messageCacheMock);
+		assertTrue (first != second);
+		assertTrue (((CmsResourceBundle)second.getWrappedObject()).getFingerPrint().equals("fp2"));
+	} catch (Exception e)
+	{
+		assertTrue (false);
+	}
+}
+
+@Test
+public void test_get_empty_fingerprint()
+{
+	try
+	{
+		EasyMock.expect(messageCacheMock.getFingerPrint(locale)).andReturn("").anyTimes();
+		EasyMock.expect(messageCacheMock.getAllMessages(locale)).andReturn(messages).times(2);
+		EasyMock.replay(messageCacheMock);
+		
+		ResourceBundleModel first = cache.get(factory, messageCacheMock, locale);
+		ResourceBundleModel second = cache.get(factory, messageCacheMock, locale);
+		
+		EasyMock.verify(messageCacheMock);
+		assertTrue (first != second);
+	} catch (Exception e)
+	{
+		assertTrue (false);
+	}
+}
+
+@Test
+public void test_get_per_locale()
+{
+	try
+	{
+		Locale localeGB = new Locale("en", "GB");
+		EasyMock.expect(messageCacheMock.getFingerPrint(locale)).andReturn("fp1").anyTimes();
+		EasyMock.expect(messageCacheMock.getFingerPrint(localeGB)).andReturn("fp1").anyTimes();
+		EasyMock.expect(messageCacheMock.getAllMessages(locale)).andReturn(messages).once();
+		EasyMock.expect(messageCacheMock.getAllMessages(localeGB)).andReturn(new HashMap<String, String>()).once();
+		EasyMock.replay(messageCacheMock);
+		
+		ResourceBundleModel en = cache.get(factory, messageCacheMock, locale);
+		ResourceBundleModel enGB = cache.get(factory, messageCacheMock, localeGB);
+		
+		EasyMock.verify(messageCacheMock);
+		assertTrue (en != enGB);
+		assertTrue (cache.size() == 2);
+	} catch (Exception e)
+	{
+		assertTrue (false);
+	}
+}
+
+}
@@ -19,6 +19,7 @@ import com.webpagebytes.cms.template.FreeMarkerModuleDirective;
 import com.webpagebytes.cms.template.FreeMarkerTemplateLoader;
 
 import freemarker.template.Configuration;
+import freemarker.template.DefaultObjectWrapper;
 
 @RunWith(PowerMockRunner.class)
 public class TestWBFreeMarkerFactory {
@@ -31,6 +32,15 @@ public void createConfiguration()
 	assertTrue (configuration != null);
 }
 
+@Test
+public void createObjectWrapper()
+{
+	FreeMarkerResourcesFactory factory = new FreeMarkerResourcesFactory();
+	DefaultObjectWrapper wrapper = factory.createObjectWrapper();
+	assertTrue (wrapper != null);
+	assertTrue (wrapper == factory.createObjectWrapper());
+}
+
 @Test
 public void createWBFreeMarkerModuleDirective()
 {
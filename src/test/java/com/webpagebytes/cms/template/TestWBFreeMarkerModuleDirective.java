@@ -8,6 +8,7 @@ import java.util.logging.Logger;
 
 import org.easymock.Capture;
 import org.easymock.EasyMock;
+import org.easymock.IAnswer;
 import org.junit.Before;
 import org.junit.runner.RunWith;
 import org.powermock.api.easymock.PowerMock;
@@ -20,23 +21,34 @@ import static org.junit.Assert.*;
 
 import org.junit.Test;
 
+import com.webpagebytes.cms.WPBArticlesCache;
+import com.webpagebytes.cms.WPBFilesCache;
+import com.webpagebytes.cms.WPBMessagesCache;
+import com.webpagebytes.cms.WPBModel;
 import com.webpagebytes.cms.WPBPageModulesCache;
+import com.webpagebytes.cms.WPBParametersCache;
+import com.webpagebytes.cms.WPBUrisCache;
 import com.webpagebytes.cms.cmsdata.WPBPageModule;
 import com.webpagebytes.cms.engine.WPBCacheInstances;
 import com.webpagebytes.cms.exception.WPBIOException;
 import com.webpagebytes.cms.template.FreeMarkerModuleDirective;
+import com.webpagebytes.cms.template.WPBFreeMarkerTemplateEngine;
 import com.webpagebytes.cms.template.WPBTemplateEngine;
 
 import freemarker.core.Environment;
 import freemarker.ext.beans.StringModel;
 import freemarker.template.DefaultObjectWrapper;
+import freemarker.template.Template;
+import freemarker.template.SimpleHash;
+import freemarker.template.SimpleScalar;
 import freemarker.template.TemplateDirectiveBody;
+import freemarker.template.TemplateHashModel;
 import freemarker.template.TemplateModel;
 import freemarker.template.TemplateModelException;
 
 @RunWith(PowerMockRunner.class)
 @SuppressStaticInitializationFor("WBFreeMarkerModuleDirective.class")
-@PrepareForTest({Environment.class, FreeMarkerModuleDirective.class})
+@PrepareForTest({Environment.class, FreeMarkerModuleDirective.class, WPBFreeMarkerTemplateEngine.class})
 public class TestWBFreeMarkerModuleDirective {
 
 private WPBCacheInstances cacheInstancesMock;
@@ -248,6 +260,143 @@ public void test_execute_templatehtml()
 	}
 }
 
+@Test
+public void test_execute_template_include_mode()
+{
+	Environment envMock = PowerMock.createMock(Environment.class);
+	TemplateModel[] loopVars = null;
+	TemplateDirectiveBody directiveBodyMock = null;
+	
+	Map params = new HashMap();
+	String key = "test123";
+	StringModel keyModel = new StringModel(key, new DefaultObjectWrapper() );
+	params.put("externalKey", keyModel);
+	StringModel titleModel = new StringModel("title", new DefaultObjectWrapper() );
+	params.put("title", titleModel);
+	String name = "name123";
+	try
+	{
+		WPBFreeMarkerTemplateEngine freeMarkerEngineMock = PowerMock.createMock(WPBFreeMarkerTemplateEngine.class);
+		Template templateMock = PowerMock.createMock(Template.class);
+		Environment.Namespace namespaceMock = PowerMock.createMock(Environment.Namespace.class);
+		
+		WPBPageModule pageModuleMock = PowerMock.createMock(WPBPageModule.class);
+		EasyMock.expect(pageModuleMock.getExternalKey()).andReturn(name);
+		WPBPageModulesCache pageModuleCacheMock = PowerMock.createMock(WPBPageModulesCache.class);
+		EasyMock.expect(pageModuleCacheMock.getByExternalKey(key)).andReturn(pageModuleMock);
+		EasyMock.expect(pageModuleMock.getIsTemplateSource()).andReturn(1);
+		EasyMock.expect(cacheInstancesMock.getPageModuleCache()).andReturn(pageModuleCacheMock);
+
+		EasyMock.expect(freeMarkerEngineMock.isModuleIncludeMode()).andReturn(true);
+		EasyMock.expect(freeMarkerEngineMock.getModuleTemplate(WPBTemplateEngine.WEBMODULES_PATH_PREFIX + name)).andReturn(templateMock);
+		EasyMock.expect(envMock.getCurrentNamespace()).andReturn(namespaceMock);
+		EasyMock.expect(namespaceMock.get("title")).andReturn(null);
+		namespaceMock.put("title", titleModel);
+		envMock.include(templateMock);
+		namespaceMock.remove("title");
+		
+		PowerMock.replay(cacheInstancesMock, freeMarkerEngineMock, templateMock, namespaceMock, envMock, pageModuleMock, pageModuleCacheMock);
+		
+		FreeMarkerModuleDirective templateDirective = new FreeMarkerModuleDirective();
+		Whitebox.setInternalState(templateDirective, "templateEngine",freeMarkerEngineMock);
+		Whitebox.setInternalState(templateDirective, "cacheInstances",cacheInstancesMock);
+		
+		templateDirective.execute(envMock, params, loopVars, directiveBodyMock);
+		
+		PowerMock.verify(cacheInstancesMock, freeMarkerEngineMock, templateMock, namespaceMock, envMock, pageModuleMock, pageModuleCacheMock);
+	} catch (Exception e)
+	{
+		assertTrue(false);
+	}
+}
+
+@Test
+public void test_execute_template_fragment_cached()
+{
+	Environment envMock = PowerMock.createMock(Environment.class);
+	TemplateModel[] loopVars = null;
+	TemplateDirectiveBody directiveBodyMock = null;
+	
+	String key = "test123";
+	String name = "name123";
+	try
+	{
+		WPBPageModule pageModule = new WPBPageModule();
+		pageModule.setExternalKey(name);
+		pageModule.setIsTemplateSource(1);
+		pageModule.setIsFragmentCached(1);
+		pageModule.setFragmentCacheParams("title");
+		WPBPageModulesCache pageModuleCacheMock = PowerMock.createMock(WPBPageModulesCache.class);
+		EasyMock.expect(pageModuleCacheMock.getByExternalKey(key)).andReturn(pageModule).once();
+		EasyMock.expect(pageModuleCacheMock.getFingerPrint()).andReturn("fp").anyTimes();
+		WPBMessagesCache messageCacheMock = PowerMock.createMock(WPBMessagesCache.class);
+		EasyMock.expect(messageCacheMock.getFingerPrint()).andReturn("fp").anyTimes();
+		WPBParametersCache parameterCacheMock = PowerMock.createMock(WPBParametersCache.class);
+		EasyMock.expect(parameterCacheMock.getFingerPrint()).andReturn("fp").anyTimes();
+		WPBArticlesCache articleCacheMock = PowerMock.createMock(WPBArticlesCache.class);
+		EasyMock.expect(articleCacheMock.getFingerPrint()).andReturn("fp").anyTimes();
+		WPBFilesCache filesCacheMock = PowerMock.createMock(WPBFilesCache.class);
+		EasyMock.expect(filesCacheMock.getFingerPrint()).andReturn("fp").anyTimes();
+		WPBUrisCache uriCacheMock = PowerMock.createMock(WPBUrisCache.class);
+		EasyMock.expect(uriCacheMock.getFingerPrint()).andReturn("fp").anyTimes();
+		EasyMock.expect(cacheInstancesMock.getPageModuleCache()).andReturn(pageModuleCacheMock).anyTimes();
+		EasyMock.expect(cacheInstancesMock.getMessageCache()).andReturn(messageCacheMock).anyTimes();
+		EasyMock.expect(cacheInstancesMock.getParameterCache()).andReturn(parameterCacheMock).anyTimes();
+		EasyMock.expect(cacheInstancesMock.getArticleCache()).andReturn(articleCacheMock).anyTimes();
+		EasyMock.expect(cacheInstancesMock.getFilesCache()).andReturn(filesCacheMock).anyTimes();
+		EasyMock.expect(cacheInstancesMock.getUriCache()).andReturn(uriCacheMock).anyTimes();
+		
+		Map<String, String> requestParams1 = new HashMap<String, String>();
+		requestParams1.put(WPBModel.GLOBAL_BASE_URL, "http://www.example.com");
+		Map<String, String> requestParams2 = new HashMap<String, String>();
+		requestParams2.put(WPBModel.GLOBAL_BASE_URL, "http://www.example.org");
+		TemplateHashModel dataModelMock = PowerMock.createMock(TemplateHashModel.class);
+		EasyMock.expect(dataModelMock.get(WPBModel.LOCALE_LANGUAGE_KEY)).andReturn(new SimpleScalar("en")).anyTimes();
+		EasyMock.expect(dataModelMock.get(WPBModel.LOCALE_COUNTRY_KEY)).andReturn(null).anyTimes();
+		// the same base url twice, then another base url
+		EasyMock.expect(dataModelMock.get(WPBModel.REQUEST_KEY)).andReturn(new SimpleHash(requestParams1, new DefaultObjectWrapper())).times(2);
+		EasyMock.expect(dataModelMock.get(WPBModel.REQUEST_KEY)).andReturn(new SimpleHash(requestParams2, new DefaultObjectWrapper()));
+		EasyMock.expect(envMock.getDataModel()).andReturn(dataModelMock).anyTimes();
+		
+		StringWriter outWriter = new StringWriter();
+		EasyMock.expect(envMock.getOut()).andReturn(outWriter).anyTimes();
+	
+		final Capture<Writer> captureWriter = new Capture<Writer>();
+		templateEngineMock.process(EasyMock.eq(WPBTemplateEngine.WEBMODULES_PATH_PREFIX + name), EasyMock.anyObject(Map.class), EasyMock.capture(captureWriter));
+		EasyMock.expectLastCall().andAnswer(new IAnswer<Object>() {
+			public Object answer() throws Throwable {
+				captureWriter.getValue().write("<b>module</b>");
+				return null;
+			}
+		}).times(2);
+		EasyMock.replay(cacheInstancesMock, templateEngineMock, envMock, dataModelMock, pageModuleCacheMock, messageCacheMock, parameterCacheMock,
+				articleCacheMock, filesCacheMock, uriCacheMock);
+		
+		FreeMarkerModuleDirective templateDirective = new FreeMarkerModuleDirective();
+		Whitebox.setInternalState(templateDirective, "templateEngine",templateEngineMock);
+		Whitebox.setInternalState(templateDirective, "cacheInstances",cacheInstancesMock);
+		Whitebox.setInternalState(templateDirective, "fragmentCache", new FreeMarkerFragmentCache(10));
+		PowerMock.suppressMethod(FreeMarkerModuleDirective.class, "copyParams");
+		
+		for(int i = 0; i < 3; i++)
+		{
+			Map params = new HashMap();
+			params.put("externalKey", new SimpleScalar(key));
+			params.put("title", new SimpleScalar("title1"));
+			templateDirective.execute(envMock, params, loopVars, directiveBodyMock);
+		}
+		
+		EasyMock.verify(cacheInstancesMock, templateEngineMock, envMock, dataModelMock, pageModuleCacheMock, messageCacheMock, parameterCacheMock,
+				articleCacheMock, filesCacheMock, uriCacheMock);
+		assertTrue(outWriter.toString().equals("<b>module</b><b>module</b><b>module</b>"));
+		assertTrue(captureWriter.getValue() != outWriter);
+
+	} catch (Exception e)
+	{
+		assertTrue(false);
+	}
+}
+
 @Test
 public void test_execute_catch_exception()
 {
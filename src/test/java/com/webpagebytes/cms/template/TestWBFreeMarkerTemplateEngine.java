@@ -27,6 +27,8 @@ import com.webpagebytes.cms.WPBCacheFactory;
 import com.webpagebytes.cms.WPBFileStorage;
 import com.webpagebytes.cms.WPBMessagesCache;
 import com.webpagebytes.cms.WPBModel;
+import com.webpagebytes.cms.WPBPageModulesCache;
+import com.webpagebytes.cms.WPBPagesCache;
 import com.webpagebytes.cms.engine.WPBCacheInstances;
 import com.webpagebytes.cms.engine.WPBFileStorageFactory;
 import com.webpagebytes.cms.exception.WPBIOException;
@@ -36,10 +38,12 @@ import com.webpagebytes.cms.template.FreeMarkerImageDirective;
 import com.webpagebytes.cms.template.FreeMarkerModuleDirective;
 import com.webpagebytes.cms.template.WPBFreeMarkerTemplateEngine;
 import com.webpagebytes.cms.template.FreeMarkerTemplateLoader;
+import com.webpagebytes.cms.template.WPBTemplateEngine;
 import com.webpagebytes.cms.template.CmsResourceBundle;
 
 import freemarker.core.Environment;
 import freemarker.template.Configuration;
+import freemarker.template.ObjectWrapper;
 import freemarker.template.Template;
 
 @RunWith(PowerMockRunner.class)
@@ -101,6 +105,7 @@ public void test_initialize()
 	EasyMock.expect(freeMarkerFactoryMock.createFreeMarkerUriDirective()).andReturn(uriDirectiveMock);
 	configurationMock.setLocalizedLookup(false);
 	configurationMock.setTemplateLoader(templateLoaderMock);
+	configurationMock.setObjectWrapper(EasyMock.anyObject(ObjectWrapper.class));
 	moduleDirectiveMock.initialize(templateEngine, cacheInstancesMock);
 	imageDirectiveMock.initialize(cloudStorageMock, cacheInstancesMock);
 	configurationMock.setSharedVariable(WPBModel.MODULE_DIRECTIVE, moduleDirectiveMock);
@@ -258,4 +263,102 @@ public void process_exception()
 	
 }
 
+@Test
+@SuppressStaticInitializationFor("WBFreeMarkerTemplateEngine.class")
+@PrepareForTest({Environment.class, WPBFreeMarkerTemplateEngine.class})
+public void getModuleTemplate_cached()
+{
+	try
+	{
+		WPBFreeMarkerTemplateEngine templateEngine = new WPBFreeMarkerTemplateEngine(cacheInstancesMock);
+		Whitebox.setInternalState(templateEngine, "configuration", configurationMock);
+		String moduleName = WPBTemplateEngine.WEBMODULES_PATH_PREFIX + "module1";
+		
+		WPBPageModulesCache pageModuleCacheMock = PowerMock.createMock(WPBPageModulesCache.class);
+		EasyMock.expect(cacheInstancesMock.getPageModuleCache()).andReturn(pageModuleCacheMock).anyTimes();
+		EasyMock.expect(pageModuleCacheMock.getFingerPrint()).andReturn("fp1").times(2);
+		EasyMock.expect(pageModuleCacheMock.getFingerPrint()).andReturn("fp2");
+		
+		Template templateMock = PowerMock.createMock(Template.class);
+		Template templateMock2 = PowerMock.createMock(Template.class);
+		EasyMock.expect(configurationMock.getTemplate(moduleName)).andReturn(templateMock);
+		EasyMock.expect(configurationMock.getTemplate(moduleName)).andReturn(templateMock2);
+		
+		PowerMock.replay(cacheInstancesMock, pageModuleCacheMock, configurationMock, templateMock, templateMock2);
+		
+		assertTrue (templateEngine.getModuleTemplate(moduleName) == templateMock);
+		assertTrue (templateEngine.getModuleTemplate(moduleName) == templateMock);
+		assertTrue (templateEngine.getModuleTemplate(moduleName) == templateMock2);
+		
+		PowerMock.verify(cacheInstancesMock, pageModuleCacheMock, configurationMock, templateMock, templateMock2);
+	} catch (Exception e)
+	{
+		assertTrue (false);
+	}
+}
+
+@Test
+@SuppressStaticInitializationFor("WBFreeMarkerTemplateEngine.class")
+@PrepareForTest({Environment.class, WPBFreeMarkerTemplateEngine.class})
+public void loadTemplate()
+{
+	try
+	{
+		WPBFreeMarkerTemplateEngine templateEngine = new WPBFreeMarkerTemplateEngine(cacheInstancesMock);
+		Whitebox.setInternalState(templateEngine, "configuration", configurationMock);
+		Template templateMock = PowerMock.createMock(Template.class);
+		EasyMock.expect(configurationMock.getTemplate("webpages/p1")).andReturn(templateMock);
+		EasyMock.expect(configurationMock.getTemplate("webpages/p2")).andThrow(new IOException());
+		PowerMock.replay(configurationMock, templateMock);
+		
+		templateEngine.loadTemplate("webpages/p1");
+		try
+		{
+			templateEngine.loadTemplate("webpages/p2");
+			assertTrue (false);
+		} catch (WPBIOException e)
+		{
+			// expected
+		}
+		PowerMock.verify(configurationMock, templateMock);
+	} catch (Exception e)
+	{
+		assertTrue (false);
+	}
+}
+
+@Test
+@SuppressStaticInitializationFor("WBFreeMarkerTemplateEngine.class")
+@PrepareForTest({Environment.class, WPBFreeMarkerTemplateEngine.class})
+public void checkTemplatesFingerPrint()
+{
+	try
+	{
+		WPBFreeMarkerTemplateEngine templateEngine = new WPBFreeMarkerTemplateEngine(cacheInstancesMock);
+		Whitebox.setInternalState(templateEngine, "configuration", configurationMock);
+		Whitebox.setInternalState(templateEngine, "fingerPrintInvalidation", true);
+		
+		WPBPagesCache pageCacheMock = PowerMock.createMock(WPBPagesCache.class);
+		WPBPageModulesCache pageModuleCacheMock = PowerMock.createMock(WPBPageModulesCache.class);
+		EasyMock.expect(cacheInstancesMock.getPageCache()).andReturn(pageCacheMock).anyTimes();
+		EasyMock.expect(cacheInstancesMock.getPageModuleCache()).andReturn(pageModuleCacheMock).anyTimes();
+		EasyMock.expect(pageCacheMock.getFingerPrint()).andReturn("p1").times(2);
+		EasyMock.expect(pageCacheMock.getFingerPrint()).andReturn("p2");
+		EasyMock.expect(pageModuleCacheMock.getFingerPrint()).andReturn("m1").times(3);
+		configurationMock.clearTemplateCache();
+		EasyMock.expectLastCall().times(2);
+		
+		PowerMock.replay(cacheInstancesMock, pageCacheMock, pageModuleCacheMock, configurationMock);
+		
+		templateEngine.checkTemplatesFingerPrint();
+		templateEngine.checkTemplatesFingerPrint();
+		templateEngine.checkTemplatesFingerPrint();
+		
+		PowerMock.verify(cacheInstancesMock, pageCacheMock, pageModuleCacheMock, configurationMock);
+	} catch (Exception e)
+	{
+		assertTrue (false);
+	}
+}
+
 }
@@ -40,6 +40,20 @@ public void test_fileNameToContentType()
 	assertTrue(ContentTypeDetector.fileNameToContentType("application/ogg").equals(ContentTypeDetector.DEFAULT_TYPE));
 }
 
+@Test
+public void test_isCompressible()
+{
+	assertTrue(ContentTypeDetector.isCompressible("text/html"));
+	assertTrue(ContentTypeDetector.isCompressible("Text/CSS; charset=UTF-8"));
+	assertTrue(ContentTypeDetector.isCompressible("application/javascript"));
+	assertTrue(ContentTypeDetector.isCompressible("image/svg+xml"));
+	
+	assertTrue(! ContentTypeDetector.isCompressible("image/png"));
+	assertTrue(! ContentTypeDetector.isCompressible("application/zip"));
+	assertTrue(! ContentTypeDetector.isCompressible("application/font-woff"));
+	assertTrue(! ContentTypeDetector.isCompressible(null));
+}
+
 @Test
 public void test_constructor()
 {
@@ -2,6 +2,9 @@ package com.webpagebytes.cms.utility;
 
 import static org.junit.Assert.*;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringWriter;
 import java.nio.charset.Charset;
 
 import org.junit.Test;
@@ -22,6 +25,28 @@ public void test_fromSafePathBase64()
 	assertTrue (decode.equals(x));
 }
 @Test 
+public void test_toBase64_stream()
+{
+	try
+	{
+		for(int size: new int[] {0, 1, 2, 3, 4, 3071, 3072, 3073, 10000})
+		{
+			byte[] content = new byte[size];
+			for(int i = 0; i < size; i++)
+			{
+				content[i] = (byte) (i * 31);
+			}
+			StringWriter out = new StringWriter();
+			long count = CmsBase64Utility.toBase64(new ByteArrayInputStream(content), out);
+			assertTrue (out.toString().equals(CmsBase64Utility.toBase64(content)));
+			assertTrue (count == out.toString().length());
+		}
+	} catch (IOException e)
+	{
+		assertTrue (false);
+	}
+}
+@Test 
 public void test_constructor()
 {
 	CmsBase64Utility u = new CmsBase64Utility();
@@ -0,0 +1,121 @@
+package com.webpagebytes.cms.utility;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestWPBTrace {
+
+private Logger logger = Logger.getLogger(WPBTrace.class.getName());
+private List<LogRecord> records = new ArrayList<LogRecord>();
+private Handler handler = new Handler()
+{
+	public void publish(LogRecord record)
+	{
+		records.add(record);
+	}
+	public void flush() {}
+	public void close() {}
+};
+
+@Before
+public void setUp()
+{
+	logger.setLevel(Level.FINE);
+	logger.addHandler(handler);
+}
+
+@After
+public void tearDown()
+{
+	WPBTrace.end();
+	WPBTrace.setSampleRate(0);
+	logger.removeHandler(handler);
+	logger.setLevel(null);
+}
+
+@Test
+public void test_disabled()
+{
+	assertTrue (!WPBTrace.isEnabled());
+	assertTrue (WPBTrace.begin("abc") == null);
+	WPBTrace.event("test", "event", "value");
+	assertTrue (!WPBTrace.isActive());
+	assertTrue (records.isEmpty());
+}
+
+@Test
+public void test_logger_level()
+{
+	WPBTrace.setSampleRate(1);
+	logger.setLevel(Level.INFO);
+	assertTrue (WPBTrace.begin("abc") == null);
+	assertTrue (records.isEmpty());
+}
+
+@Test
+public void test_trace()
+{
+	WPBTrace.setSampleRate(1);
+	assertTrue (WPBTrace.begin("abc").equals("abc"));
+	assertTrue (WPBTrace.isActive());
+	WPBTrace.event("test", "event", "value", 10);
+	WPBTrace.end();
+	assertTrue (!WPBTrace.isActive());
+	WPBTrace.event("test", "notTraced");
+	
+	assertTrue (records.size() == 3);
+	LogRecord record = records.get(1);
+	assertTrue (record.getLevel() == Level.FINE);
+	assertTrue (record.getParameters()[0].equals("abc"));
+	assertTrue (record.getParameters()[2].equals("test"));
+	assertTrue (record.getParameters()[3].equals("event"));
+	assertTrue (record.getParameters()[4].equals("value"));
+	assertTrue (record.getParameters()[5].equals(10));
+}
+
+@Test
+public void test_client_correlation_id()
+{
+	WPBTrace.setSampleRate(1);
+	assertTrue (WPBTrace.begin("abc\r\nSet-Cookie: x=1").equals("abcSet-Cookie: x=1"));
+	WPBTrace.end();
+	StringBuilder longId = new StringBuilder();
+	for(int i = 0; i < 100; i++)
+	{
+		longId.append('a');
+	}
+	assertTrue (WPBTrace.begin(longId.toString()).length() == WPBTrace.MAX_CORRELATION_ID_LENGTH);
+	WPBTrace.end();
+	String id = WPBTrace.begin("\r\n");
+	assertTrue (id.length() > 0 && id.indexOf('\n') < 0);
+}
+
+@Test
+public void test_sampling()
+{
+	WPBTrace.setSampleRate(4);
+	int traced = 0;
+	for(int i = 0; i < 20; i++)
+	{
+		String id = WPBTrace.begin(null);
+		if (id != null)
+		{
+			assertTrue (id.length() > 0);
+			traced++;
+			WPBTrace.end();
+		}
+	}
+	assertTrue (traced == 5);
+}
+
+}